@@ -3,16 +3,19 @@
 ECHO Entering 'test' directory...
 CD test
 
+IF "%1"=="-c" IF EXIST answer.txt GOTO compare
+
 ECHO Running Mars...
 CALL java -jar ../out/Mars.jar nc mc Default me we ae1 se2 mips.txt < input.txt > output.txt
+IF "%1"=="-c" ECHO No answer.txt found, skipping comparison...
+GOTO done
 
-IF "%1"=="-c" IF EXIST answer.txt (
-    ECHO Comparing output.txt and answer.txt...
-    FC output.txt answer.txt
-) ELSE (
-    ECHO No answer.txt found, skipping comparison...
-)
+:compare
+REM Output is compared with answer.txt while running, stopping at the first difference (exit code 3).
+ECHO Running Mars, comparing output with answer.txt...
+CALL java -jar ../out/Mars.jar nc mc Default me we ae1 se2 expect answer.txt mips.txt < input.txt > output.txt
 
+:done
 ECHO Exiting 'test' directory...
 CD ..
 
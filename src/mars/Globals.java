@@ -123,6 +123,14 @@ public class Globals {
      * Maximum number of back-step operations to buffer
      */
     public static final int maximumBacksteps = getBackstepLimit();
+    /**
+     * Whether back-steps beyond maximumBacksteps are kept in a temporary file rather than discarded
+     */
+    public static final boolean backstepSpillEnabled = getBackstepSpill();
+    /**
+     * Number of instructions executed between machine snapshots when time travel is enabled
+     */
+    public static final int snapshotInterval = getSnapshotInterval();
     /**
      * Placeholder for non-printable ASCII codes
      */
@@ -187,6 +195,17 @@ public class Globals {
         return getIntegerProperty(configPropertiesFile, "BackstepLimit", 1000);
     }
 
+    // Read backstep spill option (keep older back-steps on disk) from properties file.
+    private static boolean getBackstepSpill() {
+        String spill = getPropertyEntry(configPropertiesFile, "BackstepSpill");
+        return spill != null && spill.trim().equalsIgnoreCase("true");
+    }
+
+    // Read time travel snapshot interval (instructions between snapshots) from properties file.
+    private static int getSnapshotInterval() {
+        return getIntegerProperty(configPropertiesFile, "SnapshotInterval", 100000);
+    }
+
     // Read ASCII default display character for non-printing characters, from properties file.
     public static String getAsciiNonPrint() {
         String anp = getPropertyEntry(configPropertiesFile, "AsciiNonPrint");
@@ -53,14 +53,18 @@ public class MIPSprogram {
     private boolean steppedExecution = false;
 
     private String filename;
-    private ArrayList sourceList;
+    private SourceText sourceText;
+    private ArrayList sourceList; // made from sourceLines or sourceText when first asked for
+    private SourceLine[] sourceLines; // source line list as tokenizing began, before .eqv substitutions
     private ArrayList tokenList;
     private ArrayList parsedList;
     private ArrayList machineList;
     private BackStepper backStepper;
+    private TimeTravel timeTravel;
     private SymbolTable localSymbolTable;
     private MacroPool macroPool;
     private ArrayList<SourceLine> sourceLineList;
+    private ArrayList includedFiles;
     private Tokenizer tokenizer;
 
     /**
@@ -70,9 +74,32 @@ public class MIPSprogram {
      **/
 
     public ArrayList getSourceList() {
+        if (sourceList == null) {
+            ArrayList list = new ArrayList();
+            if (sourceLines != null) {
+                for (int i = 0; i < sourceLines.length; i++) {
+                    list.add(sourceLines[i].getSource());
+                }
+            } else if (sourceText != null) {
+                for (int i = 0; i < sourceText.getLineCount(); i++) {
+                    list.add(sourceText.getLine(i));
+                }
+            }
+            sourceList = list;
+        }
         return sourceList;
     }
 
+    /**
+     * Produces the text of the source file as read, for scanning without a String per line.
+     *
+     * @return the text, or null if the source has not been read.
+     **/
+
+    public SourceText getSourceText() {
+        return sourceText;
+    }
+
     /**
      * Retrieve list of source statements that comprise the program.
      *
@@ -93,10 +120,29 @@ public class MIPSprogram {
 
     public void setSourceLineList(ArrayList<SourceLine> sourceLineList) {
         this.sourceLineList = sourceLineList;
-        sourceList = new ArrayList();
-        for (SourceLine sl : sourceLineList) {
-            sourceList.add(sl.getSource());
-        }
+        sourceLines = sourceLineList.toArray(new SourceLine[sourceLineList.size()]);
+        sourceList = null;
+    }
+
+    /**
+     * Retrieve names of the files included by .include directives, directly or through
+     * other included files, in the order first included.  Set by tokenize().
+     *
+     * @return ArrayList of String, empty if none; null if the program was not tokenized.
+     **/
+
+    public ArrayList getIncludedFiles() {
+        return this.includedFiles;
+    }
+
+    /**
+     * Set names of the files included by .include directives.
+     *
+     * @param includedFiles ArrayList of String, the file names.
+     **/
+
+    public void setIncludedFiles(ArrayList includedFiles) {
+        this.includedFiles = includedFiles;
     }
 
     /**
@@ -179,6 +225,17 @@ public class MIPSprogram {
         return backStepper;
     }
 
+    /**
+     * Returns TimeTravel associated with this program.  It is created upon successful assembly
+     * if the time travel setting is enabled.
+     *
+     * @return TimeTravel object, null if there is none.
+     **/
+
+    public TimeTravel getTimeTravel() {
+        return timeTravel;
+    }
+
     /**
      * Returns SymbolTable associated with this program.  It is created at assembly time,
      * and stores local labels (those not declared using .globl directive).
@@ -207,7 +264,13 @@ public class MIPSprogram {
      **/
 
     public String getSourceLine(int i) {
-        if ((i >= 1) && (i <= sourceList.size())) {
+        if (sourceList == null && sourceLines != null) {
+            return (i >= 1 && i <= sourceLines.length) ? sourceLines[i - 1].getSource() : null;
+        }
+        if (sourceList == null && sourceText != null) {
+            return (i >= 1 && i <= sourceText.getLineCount()) ? sourceText.getLine(i - 1) : null;
+        }
+        if ((i >= 1) && (i <= getSourceList().size())) {
             return (String) sourceList.get(i - 1);
         } else {
             return null;
@@ -226,17 +289,15 @@ public class MIPSprogram {
 
     public void readSource(String file) throws ProcessingException {
         this.filename = file;
-        this.sourceList = new ArrayList();
+        this.sourceList = null;
+        this.sourceLines = null;
         ErrorList errors = null;
-        BufferedReader inputFile;
-        String line;
-        int lengthSoFar = 0;
         try {
-            inputFile = new BufferedReader(new FileReader(file));
-            line = inputFile.readLine();
-            while (line != null) {
-                sourceList.add(line);
-                line = inputFile.readLine();
+            Reader inputFile = new FileReader(file);
+            try {
+                sourceText = SourceText.read(inputFile);
+            } finally {
+                inputFile.close();
             }
         } catch (Exception e) {
             errors = new ErrorList();
@@ -329,13 +390,86 @@ public class MIPSprogram {
     public ErrorList assemble(ArrayList MIPSprogramsToAssemble, boolean extendedAssemblerEnabled,
                               boolean warningsAreErrors) throws ProcessingException {
         this.backStepper = null;
+        this.timeTravel = null;
         Assembler asm = new Assembler();
         this.machineList = asm.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
         this.backStepper = new BackStepper();
+        if (Globals.getSettings().getBooleanSetting(Settings.TIME_TRAVEL_ENABLED)) {
+            this.timeTravel = new TimeTravel(this);
+        }
         return asm.getErrorList();
     }
 
 
+    /**
+     * Sets up this program as the assembler would have, from what a program image
+     * saved: the source file is read again, but neither tokenized nor assembled.
+     *
+     * @param file             name of the source file.
+     * @param localSymbolTable restored local symbol table.
+     * @param machineList      restored machine statements, for the program that leads
+     *                         the assembly; null for the others.
+     * @throws ProcessingException if the source file cannot be read.
+     **/
+
+    void restoreAssembled(String file, SymbolTable localSymbolTable, ArrayList machineList) throws ProcessingException {
+        readSource(file);
+        this.localSymbolTable = localSymbolTable;
+        this.tokenList = null;
+        this.parsedList = null;
+        if (machineList != null) {
+            this.machineList = machineList;
+            this.backStepper = new BackStepper();
+            this.timeTravel = null;
+            if (Globals.getSettings().getBooleanSetting(Settings.TIME_TRAVEL_ENABLED)) {
+                this.timeTravel = new TimeTravel(this);
+            }
+        }
+    }
+
+
+    /**
+     * Releases the assembler's intermediate structures for this program once it has been
+     * assembled: the per-line token lists, the parsed (pre-expansion) statement list, and
+     * the token lists and intermediate strings of each assembled ProgramStatement.  Only
+     * what is needed for simulation is kept; display strings are regenerated on demand.
+     * A statement whose source is a line of the source line list keeps only the index of
+     * that line; lines generated by macro expansion are not in the list and are kept.
+     * Intended for command-line runs of very large programs.  Must be called for every
+     * MIPSprogram that was assembled, since each statement refers back to its source program.
+     *
+     * @see ProgramStatement#compact()
+     **/
+
+    public void compact() {
+        if (machineList != null) {
+            // The assembler gives each statement the very String of its source line, so
+            // the line is found by identity in the list of the statement's own program.
+            HashMap<MIPSprogram, IdentityHashMap<String, Integer>> sourceIndexes =
+                    new HashMap<MIPSprogram, IdentityHashMap<String, Integer>>();
+            for (int i = 0; i < machineList.size(); i++) {
+                ProgramStatement statement = (ProgramStatement) machineList.get(i);
+                MIPSprogram program = statement.getSourceMIPSprogram();
+                Integer sourceIndex = null;
+                if (program != null && program.getSourceLineList() != null && statement.getSource().length() > 0) {
+                    IdentityHashMap<String, Integer> indexes = sourceIndexes.get(program);
+                    if (indexes == null) {
+                        indexes = new IdentityHashMap<String, Integer>();
+                        for (int line = 0; line < program.getSourceLineList().size(); line++) {
+                            indexes.put(program.getSourceLineList().get(line).getSource(), line + 1);
+                        }
+                        sourceIndexes.put(program, indexes);
+                    }
+                    sourceIndex = indexes.get(statement.getSource());
+                }
+                statement.compact((sourceIndex == null) ? 0 : sourceIndex.intValue());
+            }
+        }
+        this.tokenList = null;
+        this.parsedList = null;
+    }
+
+
     /**
      * Simulates execution of the MIPS program. Program must have already been assembled.
      * Begins simulation at beginning of text segment and continues to completion.
@@ -1,5 +1,7 @@
 package mars;
 
+import mars.bench.Kernels;
+import mars.bench.ProgramBenchmark;
 import mars.venus.*;
 import mars.util.*;
 import mars.mips.dump.*;
@@ -53,6 +55,13 @@ public class MarsLaunch {
     private static final int DECIMAL = 0; // memory and register display format
     private static final int HEXADECIMAL = 1;// memory and register display format
     private static final int ASCII = 2;// memory and register display format
+    private static final int OUTPUT_MISMATCH_EXIT_CODE = 3; // "expect" option: output differs from file
+    private static final int TIME_LIMIT_EXIT_CODE = 4; // "timeout" option: wall-clock limit exceeded
+    private static final int OUTPUT_LIMIT_EXIT_CODE = 5; // "maxoutput" option: output limit exceeded
+    private static final int HEAP_LIMIT_EXIT_CODE = 6; // "maxheap" option: heap limit exceeded
+    private static final int INSTRUCTION_LIMIT_EXIT_CODE = 7; // "maxinstructions" option: instruction limit reached
+    private static final long DEFAULT_CACHE_SIZE = 256L * 1024 * 1024; // "cache" option: bytes of results kept
+    private static final int DEFAULT_BENCHMARK_WARMUP = 3; // "bench" option: runs before those measured
     /**
      * Main takes a number of command line arguments.<br>
      * Usage:  Mars  [options] filename<br>
@@ -62,6 +71,17 @@ public class MarsLaunch {
      * ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.<br>
      * ascii  -- display memory or register contents interpreted as ASCII
      * b  -- brief - do not display register/memory address along with contents<br>
+     * bench  -- benchmark: assemble and run the program repeatedly, reporting as JSON the<br>
+     * assembly time, simulation time, instructions per second, GC time and peak heap size.<br>
+     * Option has 1 argument, e.g. <tt>bench &lt;runs&gt;</tt>, the number of runs measured after<br>
+     * those given by <tt>warmup</tt>.  Without a program file, the bundled kernels are run.<br>
+     * cache  -- reuse the result of an identical earlier run.  Option has 1 argument, e.g.<br>
+     * <tt>cache &lt;dir&gt;</tt>, the directory holding results.  Standard input is read to its<br>
+     * end before the run.<br>
+     * cachesize  -- total size in megabytes of the results kept by <tt>cache</tt> (default 256).<br>
+     * checkpoint  -- write a checkpoint of the run to file.  Option has 2 arguments, e.g.<br>
+     * <tt>checkpoint &lt;n&gt; &lt;file&gt;</tt>, where &lt;n&gt; is the number of steps after<br>
+     * which the checkpoint is written.  The run then continues.<br>
      * d  -- print debugging statements<br>
      * da  -- both a and d<br>
      * db  -- MIPS delayed branching is enabled.<br>
@@ -71,9 +91,23 @@ public class MarsLaunch {
      * an address range (see <i>m-n</i> below).  Current supported <br>
      * segments are <tt>.text</tt> and <tt>.data</tt>.  Current supported dump formats <br>
      * are <tt>Binary</tt>, <tt>HexText</tt>, <tt>BinaryText</tt>.<br>
+     * expect  -- compare program output with a file as it is produced.  Option has 1 argument, e.g.<br>
+     * <tt>expect &lt;file&gt;</tt>.  The run stops at the first byte that differs, and the exit<br>
+     * code is 3 (unless a simulation error exit code was set).<br>
      * h  -- display help.  Use by itself and with no filename</br>
      * hex  -- display memory or register contents in hexadecimal (default)<br>
      * ic  -- display count of MIPS basic instructions 'executed'");
+     * maxheap  -- limit heap growth (syscall 9) to &lt;bytes&gt;.  A request beyond it fails<br>
+     * as if the heap were full, and the exit code is 6.<br>
+     * maxinstructions  -- stop after &lt;count&gt; instructions, a 64-bit count unlike &lt;n&gt;.<br>
+     * The exit code is then 7.<br>
+     * maxoutput  -- stop once the program has printed &lt;bytes&gt; bytes to STDOUT and STDERR.<br>
+     * Output beyond the limit is dropped, and the exit code is 5.<br>
+     * jmx  -- publish live simulation metrics (instruction count and rate, PC, syscalls, memory)<br>
+     * as the JMX MBean <tt>mars:type=SimulationMetrics</tt>, for jconsole and similar tools.<br>
+     * imagecache  -- keep images of assembled programs in a directory.  Option has 1 argument, e.g.<br>
+     * <tt>imagecache &lt;dir&gt;</tt>.  Files assembled before with the same settings are loaded<br>
+     * from their image instead of being assembled again.<br>
      * mc  -- set memory configuration.  Option has 1 argument, e.g.<br>
      * <tt>mc &lt;config$gt;</tt>, where &lt;config$gt; is <tt>Default</tt><br>
      * for the MARS default 32-bit address space, <tt>CompactDataAtZero</tt> for<br>
@@ -83,9 +117,31 @@ public class MarsLaunch {
      * nc  -- do not display copyright notice (for cleaner redirected/piped output).</br>
      * np  -- No Pseudo-instructions allowed ("ne" will work also).<br>
      * p  -- Project mode - assemble all files in the same directory as given file.<br>
+     * progress  -- print a one-line progress report to standard error every &lt;seconds&gt;<br>
+     * during the run: instructions executed and their rate, PC, syscall in progress and memory.<br>
+     * report  -- write a JSON report of the run to a file instead of InstructionStatistics.txt.<br>
+     * Option has 1 argument, e.g. <tt>report &lt;file&gt;</tt>.  Besides the instruction statistics<br>
+     * it has the stop reason, times, memory blocks allocated and syscalls made.<br>
+     * resume  -- resume the run from a checkpoint file.  Option has 1 argument, e.g.<br>
+     * <tt>resume &lt;file&gt;</tt>.  The same files must be assembled with the same options<br>
+     * as when the checkpoint was written.<br>
      * se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.<br>
      * sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
      * smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
+     * timeout  -- stop the run after &lt;seconds&gt; of wall-clock time.  The exit code is then 4.<br>
+     * trace  -- record a binary trace of the run to file.  Option has 1 argument, e.g.<br>
+     * <tt>trace &lt;file&gt;</tt>.  Every instruction executed is recorded with the registers<br>
+     * it writes and the memory it loads and stores.<br>
+     * tracedump  -- print a trace recorded by <tt>trace</tt> as text.  Option has 1 argument, e.g.<br>
+     * <tt>tracedump &lt;file&gt;</tt>.  May be used without a program file.<br>
+     * tracediff  -- report where two traces recorded by <tt>trace</tt> first differ.  Option has<br>
+     * 2 arguments, e.g. <tt>tracediff &lt;file1&gt; &lt;file2&gt;</tt>.  Program files given are<br>
+     * assembled, not run, to show labels and source lines.  Exit code is 1 if the traces differ.<br>
+     * tt  -- Time Travel - after the run, run back to an earlier state.  Option has 1 argument, e.g.<br>
+     * <tt>tt &lt;target&gt;</tt>, where &lt;target&gt; is an instruction count to run back to, or<br>
+     * the name of a register to run back to just before its latest change.  Displays and dumps<br>
+     * then show that state.<br>
+     * warmup  -- number of runs before those measured by <tt>bench</tt> (default 3).<br>
      * we  -- assembler Warnings will be considered Errors<br>
      * <n>  -- where <n> is an integer maximum count of steps to simulate.<br>
      * If 0, negative or not specified, there is no maximum.<br>
@@ -113,12 +169,36 @@ public class MarsLaunch {
     private boolean startAtMain; // Whether to start execution at statement labeled 'main'
     private boolean countInstructions; // Whether to count and report number of instructions executed
     private boolean selfModifyingCode; // Whether to allow self-modifying code (e.g. write to text segment)
+    private String timeTravelTarget; // Instruction count or register name to run back to after the run, or null
+    private int checkpointSteps; // Number of steps after which to write a checkpoint, or 0 for none
+    private String checkpointFile; // File to write the checkpoint to
+    private String resumeFile; // Checkpoint file to resume the run from, or null
+    private String traceFile; // File to record a binary execution trace to, or null
+    private String traceDumpFile; // Trace file to print as text, or null
+    private String[] traceDiffFiles; // Two trace files to compare, or null
+    private ExecutionTrace trace; // Trace being recorded
+    private String expectedOutputFile; // File holding the expected program output, or null
+    private ExpectedOutput expectedOutput; // Comparison with expected output in progress
+    private ResourceLimits limits; // Time, output, heap and instruction limits for the run
+    private String cacheDirectory; // Directory of cached run results, or null
+    private long cacheSize; // Total bytes of cached results to keep
+    private ResultCache cache; // Cache the result of this run is stored in, if it can be
+    private boolean resultReplayed; // Whether the run was replaced by a cached result
+    private String[] commandArgs; // Command line arguments, part of the cache key
+    private String imageDirectory; // Directory of assembled program images, or null
+    private int benchmarkRuns; // Number of runs measured by the "bench" option, or 0 for a normal run
+    private int benchmarkWarmup; // Number of runs before those measured
+    private long progressPeriod; // Milliseconds between "progress" reports, or 0 for none
+    private java.util.Timer progressReports; // Timer printing the reports during the run
+    private boolean publishMetrics; // Whether to publish simulation metrics as a JMX MBean
+    private String reportFile; // File the JSON run report is written to, or null for InstructionStatistics.txt
+    private RunReport report; // Report of this run, if there is a report file
     private ArrayList registerDisplayList;
     private ArrayList memoryDisplayList;
     private ArrayList filenameList;
     private MIPSprogram code;
     private int maxSteps;
-    private int instructionCount;
+    private long instructionCount;
     private PrintStream out; // stream for display of command line output
     private ArrayList dumpTriples = null; // each element holds 3 arguments for dump option
     private ArrayList programArgumentList; // optional program args for MIPS program (becomes argc, argv)
@@ -143,6 +223,24 @@ public class MarsLaunch {
             startAtMain = false;
             countInstructions = false;
             selfModifyingCode = false;
+            timeTravelTarget = null;
+            checkpointSteps = 0;
+            checkpointFile = null;
+            resumeFile = null;
+            traceFile = null;
+            traceDumpFile = null;
+            traceDiffFiles = null;
+            expectedOutputFile = null;
+            limits = new ResourceLimits();
+            cacheDirectory = null;
+            imageDirectory = null;
+            benchmarkRuns = 0;
+            benchmarkWarmup = DEFAULT_BENCHMARK_WARMUP;
+            progressPeriod = 0;
+            publishMetrics = false;
+            reportFile = null;
+            cacheSize = DEFAULT_CACHE_SIZE;
+            resultReplayed = false;
             instructionCount = 0;
             assembleErrorExitCode = 0;
             simulateErrorExitCode = 0;
@@ -152,19 +250,41 @@ public class MarsLaunch {
             MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getDefaultConfiguration());
             // do NOT use Globals.program for command line MARS -- it triggers 'backstep' log.
             code = new MIPSprogram();
+            // Nothing but the simulation writes the machine here, so it need not lock it per instruction.
+            Simulator.getInstance().setSnapshotReadersOnly(true);
             maxSteps = -1;
             out = System.out;
 
             InstructionStatisticsDump dump = new InstructionStatisticsDump();
             if (parseCommandArgs(args)) {
-                if (runCommand()) {
-                    displayMiscellaneousPostMortem();
-                    displayRegistersPostMortem();
-                    displayMemoryPostMortem();
+                registerMetrics();
+                if (reportFile != null) {
+                    report = new RunReport();
+                }
+                if (benchmarkRuns > 0) {
+                    runBenchmark();
+                } else {
+                    if (runCommand()) {
+                        displayMiscellaneousPostMortem();
+                        displayRegistersPostMortem();
+                        displayMemoryPostMortem();
+                    }
+                    dumpSegments();
+                    printTrace();
+                    compareTraces();
                 }
-                dumpSegments();
             }
-            dump.dump();
+            // Statistics summed over benchmark runs would describe no single run.
+            if (!resultReplayed && benchmarkRuns == 0) {
+                if (report != null) {
+                    writeReport(dump);
+                } else {
+                    dump.dump();
+                }
+            }
+            if (cache != null) {
+                cache.store(Globals.exitCode);
+            }
 
             System.exit(Globals.exitCode);
         }
@@ -242,6 +362,11 @@ public class MarsLaunch {
                         //Turn off metal's use of bold fonts
                         //UIManager.put("swing.boldMetal", Boolean.FALSE);
                         new VenusUI("MARS " + Globals.version);
+                        try {
+                            SimulationMetrics.register(); // for jconsole and the like
+                        } catch (javax.management.JMException e) {
+                            // Only monitoring is lost.
+                        }
                     }
                 });
         return;
@@ -261,6 +386,7 @@ public class MarsLaunch {
         boolean argsOK = true;
         boolean inProgramArgumentList = false;
         programArgumentList = null;
+        commandArgs = args;
         if (args.length == 0) {
             return true; // should not get here...
         }
@@ -310,6 +436,214 @@ public class MarsLaunch {
                 }
                 continue;
             }
+            if (args[i].toLowerCase().equals("checkpoint")) {
+                if (args.length <= (i + 2)) {
+                    out.println("Checkpoint command line argument requires a step count and file name.");
+                    argsOK = false;
+                } else {
+                    String steps = args[++i];
+                    checkpointFile = args[++i];
+                    try {
+                        checkpointSteps = Integer.decode(steps).intValue();
+                    } catch (NumberFormatException nfe) {
+                        checkpointSteps = 0;
+                    }
+                    if (checkpointSteps <= 0) {
+                        out.println("Invalid checkpoint step count: " + steps);
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("resume")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Resume command line argument requires a checkpoint file name.");
+                    argsOK = false;
+                } else {
+                    resumeFile = args[++i];
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("trace")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Trace command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    traceFile = args[++i];
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("tracedump")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Tracedump command line argument requires a trace file name.");
+                    argsOK = false;
+                } else {
+                    traceDumpFile = args[++i];
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("tracediff")) {
+                if (args.length <= (i + 2)) {
+                    out.println("Tracediff command line argument requires two trace file names.");
+                    argsOK = false;
+                } else {
+                    traceDiffFiles = new String[]{ args[++i], args[++i] };
+                    simulate = false; // assemble only, for labels and source lines
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("expect")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Expect command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    expectedOutputFile = args[++i];
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("cache")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Cache command line argument requires a directory name.");
+                    argsOK = false;
+                } else {
+                    cacheDirectory = args[++i];
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("imagecache")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Imagecache command line argument requires a directory name.");
+                    argsOK = false;
+                } else {
+                    imageDirectory = args[++i];
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("cachesize")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Cachesize command line argument requires a number of megabytes.");
+                    argsOK = false;
+                    continue;
+                }
+                String megabytes = args[++i];
+                try {
+                    cacheSize = Long.decode(megabytes).longValue() * 1024 * 1024;
+                } catch (NumberFormatException nfe) {
+                    cacheSize = -1;
+                }
+                if (cacheSize < 0) {
+                    out.println("Invalid cache size: " + megabytes);
+                    argsOK = false;
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("bench") || args[i].toLowerCase().equals("warmup")) {
+                String option = args[i].toLowerCase();
+                if (args.length <= (i + 1)) {
+                    out.println("The " + option + " command line argument requires a number of runs.");
+                    argsOK = false;
+                    continue;
+                }
+                String number = args[++i];
+                int runs;
+                try {
+                    runs = Integer.decode(number).intValue();
+                } catch (NumberFormatException nfe) {
+                    runs = -1;
+                }
+                if (runs < 0 || (runs == 0 && option.equals("bench"))) {
+                    out.println("Invalid " + option + " run count: " + number);
+                    argsOK = false;
+                } else if (option.equals("bench")) {
+                    benchmarkRuns = runs;
+                } else {
+                    benchmarkWarmup = runs;
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("timeout")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Timeout command line argument requires a number of seconds.");
+                    argsOK = false;
+                } else {
+                    String seconds = args[++i];
+                    double timeout;
+                    try {
+                        timeout = Double.parseDouble(seconds);
+                    } catch (NumberFormatException nfe) {
+                        timeout = 0;
+                    }
+                    if (timeout <= 0) {
+                        out.println("Invalid timeout: " + seconds);
+                        argsOK = false;
+                    } else {
+                        limits.setTimeLimit(Math.max(1, (long) (timeout * 1000)));
+                    }
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("progress")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Progress command line argument requires a number of seconds.");
+                    argsOK = false;
+                } else {
+                    String seconds = args[++i];
+                    double period;
+                    try {
+                        period = Double.parseDouble(seconds);
+                    } catch (NumberFormatException nfe) {
+                        period = 0;
+                    }
+                    if (period <= 0) {
+                        out.println("Invalid progress interval: " + seconds);
+                        argsOK = false;
+                    } else {
+                        progressPeriod = Math.max(1, (long) (period * 1000));
+                    }
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("report")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Report command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    reportFile = args[++i];
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("jmx")) {
+                publishMetrics = true;
+                continue;
+            }
+            if (args[i].toLowerCase().equals("maxoutput")
+                    || args[i].toLowerCase().equals("maxheap")
+                    || args[i].toLowerCase().equals("maxinstructions")) {
+                String option = args[i].toLowerCase();
+                if (args.length <= (i + 1)) {
+                    out.println("The " + option + " command line argument requires a number.");
+                    argsOK = false;
+                    continue;
+                }
+                String number = args[++i];
+                long limit;
+                try {
+                    limit = Long.decode(number).longValue();
+                } catch (NumberFormatException nfe) {
+                    limit = -1;
+                }
+                if (limit < 0 || (limit == 0 && option.equals("maxinstructions"))) {
+                    out.println("Invalid " + option + " limit: " + number);
+                    argsOK = false;
+                } else if (option.equals("maxoutput")) {
+                    limits.setOutputLimit(limit);
+                } else if (option.equals("maxheap")) {
+                    limits.setHeapLimit(limit);
+                } else {
+                    limits.setInstructionLimit(limit);
+                }
+                continue;
+            }
             if (args[i].toLowerCase().equals("mc")) {
                 String configName = args[++i];
                 MemoryConfiguration config = MemoryConfigurations.getConfigurationByName(configName);
@@ -399,6 +733,19 @@ public class MarsLaunch {
                 countInstructions = true;
                 continue;
             }
+            if (args[i].toLowerCase().equals("tt")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Time travel command line argument requires an instruction count or register name.");
+                    argsOK = false;
+                } else {
+                    timeTravelTarget = args[++i];
+                    if (!isInteger(timeTravelTarget) && TimeTravel.findRegister(timeTravelTarget) == null) {
+                        out.println("Invalid time travel target: " + timeTravelTarget);
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
 
 
             if (args[i].indexOf("$") == 0) {
@@ -457,57 +804,59 @@ public class MarsLaunch {
             return programRan;
         }
         try {
-            Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching);
-            Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode);
+            applySettings();
             File mainFile = new File((String) filenameList.get(0)).getAbsoluteFile();// First file is "main" file
-            ArrayList filesToAssemble;
-            if (assembleProject) {
-                filesToAssemble = FilenameFinder.getFilenameList(mainFile.getParent(), Globals.fileExtensions);
-                if (filenameList.size() > 1) {
-                    // Using "p" project option PLUS listing more than one filename on command line.
-                    // Add the additional files, avoiding duplicates.
-                    filenameList.remove(0); // first one has already been processed
-                    ArrayList moreFilesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
-                    // Remove any duplicates then merge the two lists.
-                    for (int index2 = 0; index2 < moreFilesToAssemble.size(); index2++) {
-                        for (int index1 = 0; index1 < filesToAssemble.size(); index1++) {
-                            if (filesToAssemble.get(index1).equals(moreFilesToAssemble.get(index2))) {
-                                moreFilesToAssemble.remove(index2);
-                                index2--; // adjust for left shift in moreFilesToAssemble...
-                                break;    // break out of inner loop...
-                            }
-                        }
-                    }
-                    filesToAssemble.addAll(moreFilesToAssemble);
-                }
-            } else {
-                filesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
-            }
-            if (Globals.debug) {
-                out.println("--------  TOKENIZING BEGINS  -----------");
-            }
-            ArrayList MIPSprogramsToAssemble =
-                    code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null);
-            if (Globals.debug) {
-                out.println("--------  ASSEMBLY BEGINS  -----------");
-            }
-            // Added logic to check for warnings and print if any. DPS 11/28/06
-            ErrorList warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors);
-            if (warnings != null && warnings.warningsOccurred()) {
-                out.println(warnings.generateWarningReport());
+            ArrayList filesToAssemble = getFilesToAssemble(mainFile);
+            long assemblyStart = System.nanoTime();
+            assembleFiles(filesToAssemble, mainFile.getAbsolutePath());
+            if (report != null) {
+                report.addAssemblyTime(System.nanoTime() - assemblyStart);
             }
             RegisterFile.initializeProgramCounter(startAtMain); // DPS 3/9/09
             if (simulate) {
                 // store program args (if any) in MIPS memory
                 new ProgramArgumentList(programArgumentList).storeProgramArguments();
+                long resumedCount = 0;
+                if (resumeFile != null) {
+                    try {
+                        resumedCount = Checkpoint.read(new File(resumeFile), code);
+                    } catch (IOException e) {
+                        out.println("Error while attempting to resume from checkpoint " + resumeFile + ": " + e.getMessage());
+                        Globals.exitCode = simulateErrorExitCode;
+                        return programRan;
+                    }
+                    instructionCount = resumedCount;
+                }
+                if (replayCachedResult()) {
+                    return programRan;
+                }
                 // establish observer if specified
                 establishObserver();
                 if (Globals.debug) {
                     out.println("--------  SIMULATION BEGINS  -----------");
                 }
+                if (!startExpectedOutput()) {
+                    return programRan;
+                }
                 programRan = true;
-                boolean done = code.simulate(maxSteps);
-                if (!done) {
+                startTrace();
+                if (!limits.isEmpty()) {
+                    limits.start();
+                }
+                if (progressPeriod > 0) {
+                    progressReports = SimulationMetrics.startProgressReports(progressPeriod, System.err);
+                }
+                boolean done;
+                if (checkpointFile != null && (maxSteps <= 0 || checkpointSteps < maxSteps)) {
+                    done = code.simulate(checkpointSteps);
+                    if (!done && !stoppedEarly()) {
+                        writeCheckpoint(resumedCount + checkpointSteps);
+                        done = code.simulate((maxSteps > 0) ? maxSteps - checkpointSteps : -1);
+                    }
+                } else {
+                    done = code.simulate(maxSteps);
+                }
+                if (!done && !stoppedEarly()) {
                     out.println("\nProgram terminated when maximum step limit " + maxSteps + " reached.");
                 }
             }
@@ -519,9 +868,400 @@ public class MarsLaunch {
             out.println(e.errors().generateErrorAndWarningReport());
             out.println("Processing terminated due to errors.");
         }
+        stopTrace();
+        if (progressReports != null) {
+            progressReports.cancel();
+            progressReports = null;
+        }
+        finishLimits();
+        finishExpectedOutput();
+        // Run back after normal termination, step limit or runtime error alike.
+        if (programRan && timeTravelTarget != null) {
+            runBack();
+        }
         return programRan;
     }
 
+    //////////////////////////////////////////////////////////////////////
+    // Carry out the "bench" option: assemble and run the program, or each
+    // of the bundled kernels if no file is given, "warmup" times and then
+    // the given number of times more, measured.  The measurements are
+    // printed as JSON to standard output.
+
+    private void runBenchmark() {
+        applySettings();
+        ArrayList benchmarks = new ArrayList();
+        byte[] input = new byte[0];
+        try {
+            if (filenameList.size() == 0) {
+                File directory = Kernels.createTemporaryDirectory();
+                for (int i = 0; i < Kernels.NAMES.length; i++) {
+                    benchmarks.add(ProgramBenchmark.forKernel(Kernels.extract(Kernels.NAMES[i], directory)));
+                }
+            } else {
+                File mainFile = new File((String) filenameList.get(0)).getAbsoluteFile();
+                benchmarks.add(new ProgramBenchmark(mainFile.getName(), getFilesToAssemble(mainFile), mainFile.getAbsolutePath()));
+                input = readFully(System.in); // given to every run
+            }
+        } catch (IOException e) {
+            out.println("Error while attempting to prepare benchmark: " + e.getMessage());
+            Globals.exitCode = simulateErrorExitCode;
+            return;
+        }
+        for (int i = 0; i < benchmarks.size(); i++) {
+            ProgramBenchmark benchmark = (ProgramBenchmark) benchmarks.get(i);
+            benchmark.setOptions(pseudo, warningsAreErrors, startAtMain, maxSteps, programArgumentList);
+            try {
+                benchmark.measure(benchmarkWarmup, benchmarkRuns, input);
+            } catch (ProcessingException e) {
+                Globals.exitCode = benchmark.failedInSimulation() ? simulateErrorExitCode : assembleErrorExitCode;
+                out.println(e.errors().generateErrorAndWarningReport());
+                out.println("Benchmark of " + benchmark.getName() + " terminated due to errors.");
+                return;
+            }
+        }
+        Globals.exitCode = 0;
+        ProgramBenchmark.writeReport(benchmarks, benchmarkWarmup, benchmarkRuns, System.out);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int length = in.read(buffer); length >= 0; length = in.read(buffer)) {
+            bytes.write(buffer, 0, length);
+        }
+        return bytes.toByteArray();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Apply the options that MARS reads from its settings during assembly
+    // and simulation, without changing the saved settings.
+
+    private void applySettings() {
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching);
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode);
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.TIME_TRAVEL_ENABLED, timeTravelTarget != null);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // The files to assemble: those named on the command line or, in
+    // project mode, all those in the directory of the main file as well.
+
+    private ArrayList getFilesToAssemble(File mainFile) {
+        ArrayList filesToAssemble;
+        if (assembleProject) {
+            filesToAssemble = FilenameFinder.getFilenameList(mainFile.getParent(), Globals.fileExtensions);
+            if (filenameList.size() > 1) {
+                // Using "p" project option PLUS listing more than one filename on command line.
+                // Add the additional files, avoiding duplicates.
+                filenameList.remove(0); // first one has already been processed
+                ArrayList moreFilesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
+                // Remove any duplicates then merge the two lists.
+                for (int index2 = 0; index2 < moreFilesToAssemble.size(); index2++) {
+                    for (int index1 = 0; index1 < filesToAssemble.size(); index1++) {
+                        if (filesToAssemble.get(index1).equals(moreFilesToAssemble.get(index2))) {
+                            moreFilesToAssemble.remove(index2);
+                            index2--; // adjust for left shift in moreFilesToAssemble...
+                            break;    // break out of inner loop...
+                        }
+                    }
+                }
+                filesToAssemble.addAll(moreFilesToAssemble);
+            }
+        } else {
+            filesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
+        }
+        return filesToAssemble;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Tokenize and assemble the files.  With the "imagecache" option, load
+    // their image instead if they were assembled before with the same
+    // settings, or save it for next time.
+
+    private void assembleFiles(ArrayList filesToAssemble, String leadFilename) throws ProcessingException {
+        ProgramImage image = null;
+        if (imageDirectory != null) {
+            try {
+                image = new ProgramImage(new File(imageDirectory), filesToAssemble, leadFilename, pseudo, warningsAreErrors);
+            } catch (IOException e) {
+                image = null; // reading the source reports the problem
+            }
+            if (image != null && image.load(code)) {
+                if (image.getWarnings().length() > 0) {
+                    out.println(image.getWarnings());
+                }
+                return;
+            }
+        }
+        if (Globals.debug) {
+            out.println("--------  TOKENIZING BEGINS  -----------");
+        }
+        ArrayList MIPSprogramsToAssemble =
+                code.prepareFilesForAssembly(filesToAssemble, leadFilename, null);
+        if (Globals.debug) {
+            out.println("--------  ASSEMBLY BEGINS  -----------");
+        }
+        // Added logic to check for warnings and print if any. DPS 11/28/06
+        ErrorList warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors);
+        if (warnings != null && warnings.warningsOccurred()) {
+            out.println(warnings.generateWarningReport());
+        }
+        if (image != null) {
+            image.save(code, MIPSprogramsToAssemble, warnings);
+        }
+        // No editor or Text Segment display here, so keep only what simulation needs.
+        for (int i = 0; i < MIPSprogramsToAssemble.size(); i++) {
+            ((MIPSprogram) MIPSprogramsToAssemble.get(i)).compact();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Look up the run in the cache given by the "cache" option, replaying
+    // the stored result if there is one, or else capture the run's output to
+    // store once MARS is done.  Runs that write files besides standard output
+    // (dumps, traces, checkpoints) or start from a checkpoint are not cached.
+
+    private boolean replayCachedResult() {
+        if (cacheDirectory == null || dumpTriples != null || traceFile != null || checkpointFile != null
+                || resumeFile != null || timeTravelTarget != null) {
+            return false;
+        }
+        File statistics = new File((reportFile != null) ? reportFile : InstructionStatisticsDump.FILE_NAME);
+        ResultCache results = new ResultCache(new File(cacheDirectory), cacheSize, statistics);
+        try {
+            if (results.find(code, commandArgs,
+                    (expectedOutputFile == null) ? null : new String[]{expectedOutputFile})) {
+                out.flush();
+                Globals.exitCode = results.replay();
+                resultReplayed = true;
+                return true;
+            }
+        } catch (IOException e) {
+            out.println("Error while attempting to use result cache " + cacheDirectory + ": " + e.getMessage());
+            return false;
+        }
+        boolean messagesToErr = (out == System.err);
+        results.startCapture();
+        out = messagesToErr ? System.err : System.out;
+        cache = results;
+        return false;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Start and finish comparing output with the file given by the "expect"
+    // option.  A mismatch is reported with its own exit code.
+
+    private boolean startExpectedOutput() {
+        if (expectedOutputFile == null) {
+            return true;
+        }
+        try {
+            expectedOutput = ExpectedOutput.start(new File(expectedOutputFile));
+            return true;
+        } catch (IOException e) {
+            out.println("Error while attempting to read expected output " + expectedOutputFile + ": " + e.getMessage());
+            Globals.exitCode = OUTPUT_MISMATCH_EXIT_CODE;
+            return false;
+        }
+    }
+
+    private void finishExpectedOutput() {
+        if (expectedOutput == null) {
+            return;
+        }
+        if (!expectedOutput.finish()) {
+            System.out.flush();
+            out.println("\nExpected output mismatch: " + expectedOutput.getMessage()
+                    + " (instruction " + expectedOutput.getInstructionCount() + ").");
+            if (Globals.exitCode == 0) {
+                Globals.exitCode = OUTPUT_MISMATCH_EXIT_CODE;
+            }
+        }
+        expectedOutput = null;
+    }
+
+    // Whether the run was stopped before the step limit, e.g. by an output mismatch
+    // or a resource limit.
+    private boolean stoppedEarly() {
+        return (expectedOutput != null && expectedOutput.isMismatch())
+                || limits.getExceeded() != ResourceLimits.NONE;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Stop applying the limits given by the "timeout", "maxoutput", "maxheap"
+    // and "maxinstructions" options.  Each limit exceeded has its own exit
+    // code, which takes precedence over that of a simulation error.
+
+    private void finishLimits() {
+        if (limits.isEmpty()) {
+            return;
+        }
+        limits.finish();
+        int exceeded = limits.getExceeded();
+        if (exceeded == ResourceLimits.NONE) {
+            return;
+        }
+        if (exceeded == ResourceLimits.TIME) {
+            ResultCache.uncacheable(); // where it stops is not repeatable
+        }
+        System.out.flush();
+        out.println("\n" + limits.getSummary());
+        switch (exceeded) {
+            case ResourceLimits.TIME:
+                Globals.exitCode = TIME_LIMIT_EXIT_CODE;
+                break;
+            case ResourceLimits.OUTPUT:
+                Globals.exitCode = OUTPUT_LIMIT_EXIT_CODE;
+                break;
+            case ResourceLimits.HEAP:
+                Globals.exitCode = HEAP_LIMIT_EXIT_CODE;
+                break;
+            default:
+                Globals.exitCode = INSTRUCTION_LIMIT_EXIT_CODE;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Write the JSON run report given by the "report" option, with the
+    // instruction statistics that would otherwise go to their own file.
+
+    private void writeReport(InstructionStatisticsDump dump) {
+        String limitExceeded = (limits.getExceeded() == ResourceLimits.NONE) ? null : limits.getSummary();
+        try {
+            report.write(new File(reportFile), dump.getStatistics(), limitExceeded);
+        } catch (IOException e) {
+            out.println("Error while attempting to write report " + reportFile + ": " + e.getMessage());
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Publish the simulation metrics as a JMX MBean if the "jmx" option
+    // is given.  Failure is reported but does not stop the run.
+
+    private void registerMetrics() {
+        if (!publishMetrics) {
+            return;
+        }
+        try {
+            SimulationMetrics.register();
+        } catch (javax.management.JMException e) {
+            out.println("Error while attempting to publish simulation metrics: " + e.getMessage());
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Start and stop recording the trace given by the "trace" option.
+    // Failures are reported but do not stop the run.
+
+    private void startTrace() {
+        if (traceFile == null) {
+            return;
+        }
+        try {
+            trace = ExecutionTrace.start(new File(traceFile));
+        } catch (IOException e) {
+            out.println("Error while attempting to write trace " + traceFile + ": " + e.getMessage());
+        }
+    }
+
+    private void stopTrace() {
+        if (trace == null) {
+            return;
+        }
+        try {
+            trace.stop();
+        } catch (IOException e) {
+            out.println("Error while attempting to write trace " + traceFile + ": " + e.getMessage());
+        }
+        trace = null;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Print the trace given by the "tracedump" option to standard output,
+    // one record per line.
+
+    private void printTrace() {
+        if (traceDumpFile == null) {
+            return;
+        }
+        PrintStream text = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 65536), false);
+        try {
+            ExecutionTraceReader reader = new ExecutionTraceReader(new File(traceDumpFile));
+            try {
+                while (reader.next()) {
+                    text.println(reader.toString());
+                }
+            } finally {
+                reader.close();
+                text.flush();
+            }
+        } catch (IOException e) {
+            out.println("Error while attempting to read trace " + traceDumpFile + ": " + e.getMessage());
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Compare the traces given by the "tracediff" option and report the
+    // first difference.  Exit code is 1 if they differ, as for diff.
+
+    private void compareTraces() {
+        if (traceDiffFiles == null) {
+            return;
+        }
+        try {
+            if (!ExecutionTraceDiff.compare(new File(traceDiffFiles[0]), new File(traceDiffFiles[1]), out)) {
+                Globals.exitCode = 1;
+            }
+        } catch (IOException e) {
+            out.println("Error while attempting to compare traces: " + e.getMessage());
+            Globals.exitCode = 2;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Write the checkpoint given by the "checkpoint" option.  A failure is
+    // reported but does not stop the run.
+
+    private void writeCheckpoint(long count) {
+        try {
+            Checkpoint.write(new File(checkpointFile), code, count);
+        } catch (IOException e) {
+            out.println("Error while attempting to write checkpoint " + checkpointFile + ": " + e.getMessage());
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Run back to the state given by the "tt" option.  The post-mortem
+    // displays and dumps will show that state.
+
+    private void runBack() {
+        TimeTravel timeTravel = code.getTimeTravel();
+        long counted = instructionCount; // replay is not counted by "ic"
+        boolean arrived;
+        if (isInteger(timeTravelTarget)) {
+            arrived = timeTravel.runBackTo(Long.decode(timeTravelTarget).longValue());
+        } else {
+            arrived = timeTravel.runBackToChange(TimeTravel.findRegister(timeTravelTarget));
+        }
+        instructionCount = counted;
+        if (arrived) {
+            out.println("\nRan back to instruction " + timeTravel.getInstructionCount() + ".");
+        } else {
+            out.println("\nUnable to run back: " + timeTravel.getMessage()
+                    + ".  Now at instruction " + timeTravel.getInstructionCount() + ".");
+        }
+    }
+
+    private static boolean isInteger(String arg) {
+        try {
+            Long.decode(arg);
+            return true;
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+    }
+
 
     //////////////////////////////////////////////////////////////////////
     // Check for memory address subrange.  Has to be two integers separated
@@ -778,6 +1518,18 @@ public class MarsLaunch {
         out.println("  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.");
         out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.");
         out.println("      b  -- brief - do not display register/memory address along with contents");
+        out.println("   bench <runs> -- benchmark: assemble and run the program 'warmup' times, then");
+        out.println("            <runs> times more, and print as JSON the assembly and simulation times,");
+        out.println("            instructions per second, GC time and peak heap size of those runs.");
+        out.println("            Program output is discarded; standard input is read to its end and");
+        out.println("            given to every run.  Without a filename, the bundled kernels are run.");
+        out.println("   cache <dir> -- reuse the result (output, exit code, instruction statistics) of an");
+        out.println("            identical earlier run stored in <dir>, or store this one.  Standard");
+        out.println("            input is read to its end before the run.");
+        out.println("   cachesize <megabytes> -- size limit of 'cache' results; least recently used");
+        out.println("            results are deleted beyond it.  Default is 256.");
+        out.println("   checkpoint <n> <file> -- after <n> steps, write a checkpoint of the run to");
+        out.println("            <file>, then continue.  See 'resume'.");
         out.println("      d  -- display MARS debugging statements");
         out.println("     db  -- MIPS delayed branching is enabled");
         out.println("    dec  -- display memory or register contents in decimal.");
@@ -787,9 +1539,21 @@ public class MarsLaunch {
         out.println("            Segment and format are case-sensitive and possible values are:");
         out.println("            <segment> = " + segments);
         out.println("            <format> = " + formats);
+        out.println("   expect <file> -- compare program output with <file> as it is produced. The run");
+        out.println("            stops at the first byte that differs; exit code is then 3.");
         out.println("      h  -- display this help.  Use by itself with no filename.");
         out.println("    hex  -- display memory or register contents in hexadecimal (default)");
         out.println("     ic  -- display count of MIPS basic instructions 'executed'");
+        out.println("   imagecache <dir> -- save the assembled program as an image in <dir>.  Later runs");
+        out.println("            of the same files with the same settings load it instead of assembling.");
+        out.println("   maxheap <bytes> -- fail heap requests (syscall 9) that would grow the heap");
+        out.println("            beyond <bytes>; exit code is then 6.");
+        out.println("   maxinstructions <count> -- stop after <count> instructions; exit code is then 7.");
+        out.println("            Unlike <n>, <count> may exceed 2147483647.");
+        out.println("   maxoutput <bytes> -- stop once <bytes> bytes have been printed to STDOUT and");
+        out.println("            STDERR, dropping the rest; exit code is then 5.");
+        out.println("    jmx  -- publish live simulation metrics (instruction count and rate, PC, syscalls,");
+        out.println("            memory blocks, heap, back-steps) as JMX MBean mars:type=SimulationMetrics.");
         out.println("     mc <config>  -- set memory configuration.  Argument <config> is");
         out.println("            case-sensitive and possible values are: Default for the default");
         out.println("            32-bit address space, CompactDataAtZero for a 32KB memory with");
@@ -800,9 +1564,32 @@ public class MarsLaunch {
         out.println("     nc  -- do not display copyright notice (for cleaner redirected/piped output).");
         out.println("     np  -- use of pseudo instructions and formats not permitted");
         out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
+        out.println("   progress <seconds> -- during the run, print a line to standard error every");
+        out.println("            <seconds> with instructions executed and their rate, the PC, the");
+        out.println("            syscall in progress (e.g. waiting for input), memory and heap.");
+        out.println("   report <file> -- write a JSON report of the run to <file> instead of");
+        out.println("            InstructionStatistics.txt: instruction statistics, stop reason, exit");
+        out.println("            code, wall/assembly/simulation times, memory blocks and syscall counts.");
+        out.println("   resume <file> -- resume the run from a checkpoint written by 'checkpoint'.  The");
+        out.println("            same files must be assembled with the same options.  Step counts");
+        out.println("            given with <n> and 'checkpoint' count from the resumed point.");
         out.println("  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.");
         out.println("     sm  -- start execution at statement with global label main, if defined");
         out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+        out.println("   timeout <seconds> -- stop the run after <seconds> of wall-clock time; exit code");
+        out.println("            is then 4.");
+        out.println("   trace <file> -- record a binary trace of the run to <file>: every instruction");
+        out.println("            executed, the registers it writes and the memory it loads and stores.");
+        out.println("   tracedump <file> -- print a trace recorded by 'trace' as text, one line per");
+        out.println("            instruction, register write, load or store.  No program file needed.");
+        out.println("   tracediff <file1> <file2> -- report the first instruction where two traces");
+        out.println("            differ in PC, register writes or memory accesses, with context.");
+        out.println("            Program files given are assembled (not run) to show labels and");
+        out.println("            source lines.  Exit code is 1 if the traces differ.");
+        out.println("     tt <target>  -- Time Travel - after the run, run back to instruction count <target>,");
+        out.println("            or if <target> is a register name (e.g. t3, f10), to just before the");
+        out.println("            latest change of that register.  Displays and dumps then show that state.");
+        out.println("   warmup <runs> -- number of runs before those measured by 'bench'.  Default is 3.");
         out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
         out.println("            If 0, negative or not specified, there is no maximum.");
         out.println(" $<reg>  -- where <reg> is number or name (e.g. 5, t3, f10) of register whose ");
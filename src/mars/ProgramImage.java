@@ -0,0 +1,367 @@
+package mars;
+
+import mars.assembler.Symbol;
+import mars.assembler.SymbolTable;
+import mars.mips.hardware.MemoryConfigurations;
+import mars.mips.instructions.BasicInstruction;
+import mars.util.SystemIO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * A saved image of an assembled program, so that a later run of the same source files
+ * with the same assembler settings can skip tokenizing and assembling them.  The image
+ * holds the machine statements (binary code, operands and source line), the global and
+ * local symbol tables, any assembler warnings, and the memory contents right after
+ * assembly as written by Memory.writeCheckpoint().  It is stored in a directory under a
+ * SHA-256 hash of the source files and settings, and read by mapping the file.
+ * Files brought in by .include directives are only known once the sources have been
+ * tokenized, so they are not part of the hash: the image records their names and
+ * the SHA-256 hash of their contents instead, and is not loaded if any has changed.
+ * <p>
+ * Statements restored from an image are already compacted (see
+ * MIPSprogram.compact()), as for command-line runs.
+ */
+public class ProgramImage {
+    private static final byte[] MAGIC = {'M', 'A', 'R', 'S', 'P', 'I', 'M', 'G'};
+    private static final int VERSION = 2;
+    private static final String SUFFIX = ".image";
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File directory;
+    private ArrayList filenames;
+    private String key;
+    private String warnings;
+
+    /**
+     * Prepare to load or save the image of the given source files.  The files are read
+     * to compute the key of the image.
+     *
+     * @param directory                directory holding images; created if necessary.
+     * @param filenames                names of the source files to assemble.
+     * @param leadFilename             name of the file that leads the assembly, as given to
+     *                                 MIPSprogram.prepareFilesForAssembly().
+     * @param extendedAssemblerEnabled whether pseudo-instructions are permitted.
+     * @param warningsAreErrors        whether assembler warnings are errors.
+     * @throws IOException if a source file cannot be read.
+     */
+    public ProgramImage(File directory, ArrayList filenames, String leadFilename,
+                        boolean extendedAssemblerEnabled, boolean warningsAreErrors) throws IOException {
+        this.directory = directory;
+        // Same order as prepareFilesForAssembly(): the lead file, then the others.
+        this.filenames = new ArrayList();
+        for (int i = 0; i < filenames.size(); i++) {
+            if (filenames.get(i).equals(leadFilename)) {
+                this.filenames.add(0, filenames.get(i));
+            } else {
+                this.filenames.add(filenames.get(i));
+            }
+        }
+        MessageDigest digest = newDigest();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeUTF(Globals.version);
+        data.writeInt(Globals.instructionSet.getInstructionList().size());
+        data.writeBoolean(extendedAssemblerEnabled);
+        data.writeBoolean(warningsAreErrors);
+        data.writeBoolean(Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED));
+        data.writeUTF(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier());
+        int[] layout = MemoryConfigurations.getCurrentConfiguration().getConfigurationItemValues();
+        for (int i = 0; i < layout.length; i++) {
+            data.writeInt(layout[i]);
+        }
+        for (int i = 0; i < this.filenames.size(); i++) {
+            data.writeUTF((String) this.filenames.get(i));
+            byte[] contents = readFile(new File((String) this.filenames.get(i)));
+            data.writeInt(contents.length);
+            data.write(contents);
+        }
+        data.flush();
+        byte[] hash = digest.digest(bytes.toByteArray());
+        StringBuffer hex = new StringBuffer();
+        for (int i = 0; i < hash.length; i++) {
+            hex.append(Integer.toHexString(0x100 | (hash[i] & 0xFF)).substring(1));
+        }
+        key = hex.toString();
+    }
+
+    /**
+     * @return report of the warnings given when the program was assembled, or an empty
+     * string if there were none.  Valid after load() succeeds.
+     */
+    public String getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * Load the image, if there is one, leaving the program, symbol tables and memory as
+     * MIPSprogram.assemble() would.
+     *
+     * @param program the program that leads the assembly.
+     * @return false if there is no usable image; the files must then be assembled.
+     */
+    public boolean load(MIPSprogram program) {
+        File file = new File(directory, key + SUFFIX);
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel channel = in.getChannel();
+                return load(program, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        } catch (ProcessingException e) {
+            return false;
+        } catch (RuntimeException e) {
+            return false; // damaged image; assemble instead
+        }
+    }
+
+    private boolean load(MIPSprogram program, ByteBuffer buffer) throws ProcessingException, IOException {
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        byte[] hash = new byte[key.length()];
+        if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != VERSION) {
+            return false;
+        }
+        buffer.get(hash);
+        if (!key.equals(new String(hash, ASCII))) {
+            return false;
+        }
+        for (int n = buffer.getInt(); n > 0; n--) {
+            String filename = getString(buffer);
+            byte[] contentHash = new byte[buffer.getInt()];
+            buffer.get(contentHash);
+            if (!Arrays.equals(contentHash, hashFile(filename))) {
+                return false; // an included file has changed: assemble again
+            }
+        }
+        String report = getString(buffer);
+        int count = buffer.getInt();
+        if (count != filenames.size()) {
+            return false;
+        }
+        MIPSprogram[] programs = new MIPSprogram[count];
+        SymbolTable[] localSymbolTables = new SymbolTable[count];
+        for (int i = 0; i < count; i++) {
+            programs[i] = (i == 0) ? program : new MIPSprogram();
+            localSymbolTables[i] = new SymbolTable((String) filenames.get(i));
+            getSymbols(buffer, localSymbolTables[i]);
+        }
+        SymbolTable globalSymbolTable = new SymbolTable("(global)");
+        getSymbols(buffer, globalSymbolTable);
+        ArrayList instructions = Globals.instructionSet.getInstructionList();
+        ArrayList machineList = new ArrayList();
+        for (int n = buffer.getInt(); n > 0; n--) {
+            int index = buffer.getInt();
+            MIPSprogram source = (index < 0) ? null : programs[index];
+            int sourceLine = buffer.getInt();
+            String sourceStatement = getString(buffer);
+            BasicInstruction instruction = (BasicInstruction) instructions.get(buffer.getInt());
+            int numOperands = buffer.getInt();
+            int[] operands = new int[4];
+            for (int i = 0; i < numOperands; i++) {
+                operands[i] = buffer.getInt();
+            }
+            int binary = buffer.getInt();
+            int address = buffer.getInt();
+            machineList.add(new ProgramStatement(source, sourceStatement, sourceLine, instruction,
+                    operands, numOperands, binary, address));
+        }
+        for (int i = 0; i < count; i++) {
+            programs[i].restoreAssembled((String) filenames.get(i), localSymbolTables[i], (i == 0) ? machineList : null);
+        }
+        Globals.symbolTable.clear();
+        ArrayList symbols = globalSymbolTable.getAllSymbols();
+        for (int i = 0; i < symbols.size(); i++) {
+            Globals.symbolTable.addSymbol((Symbol) symbols.get(i));
+        }
+        Globals.memory.clear();
+        Globals.memory.readCheckpoint(buffer, machineList);
+        SystemIO.resetFiles();
+        warnings = report;
+        return true;
+    }
+
+    /**
+     * Save the image of a program just assembled, before anything else changes memory.
+     * Failure to save is ignored; the image is only an optimization.
+     *
+     * @param program                the program that led the assembly.
+     * @param MIPSprogramsToAssemble the programs assembled, as returned by prepareFilesForAssembly().
+     * @param warnings               warnings returned by the assembler, or null.
+     */
+    public void save(MIPSprogram program, ArrayList MIPSprogramsToAssemble, ErrorList warnings) {
+        if (MIPSprogramsToAssemble.size() != filenames.size()) {
+            return;
+        }
+        IdentityHashMap programIndex = new IdentityHashMap();
+        for (int i = 0; i < MIPSprogramsToAssemble.size(); i++) {
+            programIndex.put(MIPSprogramsToAssemble.get(i), new Integer(i));
+        }
+        IdentityHashMap instructionIndex = new IdentityHashMap();
+        ArrayList instructions = Globals.instructionSet.getInstructionList();
+        for (int i = 0; i < instructions.size(); i++) {
+            instructionIndex.put(instructions.get(i), new Integer(i));
+        }
+        File temporary = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.write(MAGIC);
+            data.writeInt(VERSION);
+            data.write(key.getBytes(ASCII));
+            ArrayList included = new ArrayList();
+            for (int i = 0; i < MIPSprogramsToAssemble.size(); i++) {
+                ArrayList files = ((MIPSprogram) MIPSprogramsToAssemble.get(i)).getIncludedFiles();
+                if (files == null) {
+                    return;
+                }
+                included.addAll(files);
+            }
+            data.writeInt(included.size());
+            for (int i = 0; i < included.size(); i++) {
+                byte[] contentHash = hashFile((String) included.get(i));
+                putString(data, (String) included.get(i));
+                data.writeInt(contentHash.length);
+                data.write(contentHash);
+            }
+            putString(data, (warnings != null && warnings.warningsOccurred()) ? warnings.generateWarningReport() : "");
+            data.writeInt(MIPSprogramsToAssemble.size());
+            for (int i = 0; i < MIPSprogramsToAssemble.size(); i++) {
+                putSymbols(data, ((MIPSprogram) MIPSprogramsToAssemble.get(i)).getLocalSymbolTable());
+            }
+            putSymbols(data, Globals.symbolTable);
+            ArrayList machineList = program.getMachineList();
+            data.writeInt(machineList.size());
+            for (int i = 0; i < machineList.size(); i++) {
+                ProgramStatement statement = (ProgramStatement) machineList.get(i);
+                Integer index = (Integer) programIndex.get(statement.getSourceMIPSprogram());
+                Integer instruction = (Integer) instructionIndex.get(statement.getInstruction());
+                if (instruction == null) {
+                    return;
+                }
+                data.writeInt((index == null) ? -1 : index.intValue());
+                data.writeInt(statement.getSourceLine());
+                putString(data, statement.getSource());
+                data.writeInt(instruction.intValue());
+                data.writeInt(statement.getNumOperands());
+                for (int j = 0; j < statement.getNumOperands(); j++) {
+                    data.writeInt(statement.getOperands()[j]);
+                }
+                data.writeInt(statement.getBinaryStatement());
+                data.writeInt(statement.getAddress());
+            }
+            data.flush();
+            directory.mkdirs();
+            temporary = File.createTempFile("image", ".tmp", directory);
+            FileOutputStream out = new FileOutputStream(temporary);
+            try {
+                FileChannel channel = out.getChannel();
+                ByteBuffer header = ByteBuffer.wrap(bytes.toByteArray());
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                Globals.memory.writeCheckpoint(channel);
+            } finally {
+                out.close();
+            }
+            File image = new File(directory, key + SUFFIX);
+            image.delete(); // renameTo does not replace on all platforms
+            if (temporary.renameTo(image)) {
+                temporary = null;
+            }
+        } catch (IOException e) {
+        } finally {
+            if (temporary != null) {
+                temporary.delete();
+            }
+        }
+    }
+
+    private static void putSymbols(DataOutputStream data, SymbolTable table) throws IOException {
+        ArrayList symbols = (table == null) ? new ArrayList() : table.getAllSymbols();
+        data.writeInt(symbols.size());
+        for (int i = 0; i < symbols.size(); i++) {
+            Symbol symbol = (Symbol) symbols.get(i);
+            putString(data, symbol.getName());
+            data.writeInt(symbol.getAddress());
+            data.writeBoolean(symbol.getType());
+        }
+    }
+
+    private static void getSymbols(ByteBuffer buffer, SymbolTable table) {
+        for (int n = buffer.getInt(); n > 0; n--) {
+            String name = getString(buffer);
+            int address = buffer.getInt();
+            table.addSymbol(new Symbol(name, address, buffer.get() != 0));
+        }
+    }
+
+    // Strings are stored as their length in bytes, then UTF-8; null as length -1.
+    private static void putString(DataOutputStream data, String string) throws IOException {
+        if (string == null) {
+            data.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(UTF8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available");
+        }
+    }
+
+    private static byte[] hashFile(String filename) throws IOException {
+        return newDigest().digest(readFile(new File(filename)));
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int length = in.read(buffer); length >= 0; length = in.read(buffer)) {
+                bytes.write(buffer, 0, length);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -56,8 +56,10 @@ public class ProgramStatement {
     private Instruction instruction;
     private int textAddress;
     private int sourceLine;
+    private int sourceIndex; // once compacted with source null, its line in sourceMIPSprogram's source line list
     private int binaryStatement;
     private boolean altered;
+    private boolean compacted;
 
     //////////////////////////////////////////////////////////////////////////////////
 
@@ -89,6 +91,7 @@ public class ProgramStatement {
         this.machineStatement = null;
         this.binaryStatement = 0;  // nop, or sll $0, $0, 0  (32 bits of 0's)
         this.altered = false;
+        this.compacted = false;
     }
 
 
@@ -147,10 +150,92 @@ public class ProgramStatement {
             this.numOperands = numOps;
         }
         this.altered = false;
+        this.compacted = false;
         this.basicStatementList = buildBasicStatementListFromBinaryCode(binaryStatement, instr, operands, numOperands);
     }
 
 
+    /////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Constructor for an assembled statement restored from a program image, already
+     * reduced to what compact() keeps.  Nothing is decoded or assembled again.
+     *
+     * @param sourceMIPSprogram The MIPSprogram object that contains this statement
+     * @param source            The corresponding MIPS source statement.
+     * @param sourceLine        Line number of the source statement.
+     * @param inst              The BasicInstruction for this statement's operator.
+     * @param operands          The assembled operands.
+     * @param numOperands       Number of operands used.
+     * @param binaryStatement   The 32-bit machine code.
+     * @param textAddress       The Text Segment address of the statement.
+     **/
+    ProgramStatement(MIPSprogram sourceMIPSprogram, String source, int sourceLine, Instruction inst,
+                     int[] operands, int numOperands, int binaryStatement, int textAddress) {
+        this.sourceMIPSprogram = sourceMIPSprogram;
+        this.source = source;
+        this.sourceLine = sourceLine;
+        this.instruction = inst;
+        this.operands = operands;
+        this.numOperands = numOperands;
+        this.binaryStatement = binaryStatement;
+        this.textAddress = textAddress;
+        this.altered = false;
+        this.compacted = true;
+    }
+
+    // Number of assembled operands, for writing a program image.
+    int getNumOperands() {
+        return numOperands;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Reduces this statement to what the simulator needs: the binary machine code,
+     * the assembled operands, the Instruction and the source line.  The token lists,
+     * the basic assembly list and the binary string built during assembly are released.
+     * The display strings are regenerated on demand from the binary code and operands, so
+     * getters keep working, but each call builds a fresh String.  Statement must already
+     * have been through buildMachineStatementFromBasicStatement().
+     **/
+    public void compact() {
+        compact(0);
+    }
+
+    /**
+     * Reduces this statement as compact() does, and also releases its source, which
+     * getSource() will then read from the source line list of the MIPSprogram.
+     *
+     * @param sourceIndex line of the source line list of the MIPSprogram that holds the
+     *                    source of this statement, first line 1, or 0 to keep the source.
+     **/
+    void compact(int sourceIndex) {
+        if (sourceIndex > 0) {
+            this.source = null;
+            this.sourceIndex = sourceIndex;
+        }
+        if (this.compacted) {
+            return;
+        }
+        this.originalTokenList = null;
+        this.strippedTokenList = null;
+        this.basicStatementList = null;
+        this.basicAssemblyStatement = null;
+        this.machineStatement = null;
+        this.compacted = true;
+    }
+
+    /**
+     * Tells whether this statement has been reduced by compact().
+     *
+     * @return true if the token lists and intermediate strings have been released.
+     **/
+    public boolean isCompacted() {
+        return this.compacted;
+    }
+
+
     /////////////////////////////////////////////////////////////////////////////
 
     /**
@@ -432,6 +517,9 @@ public class ProgramStatement {
      **/
 
     public String getSource() {
+        if (source == null) {
+            return sourceMIPSprogram.getSourceLineList().get(sourceIndex - 1).getSource();
+        }
         return source;
     }
 
@@ -464,6 +552,10 @@ public class ProgramStatement {
      **/
 
     public String getBasicAssemblyStatement() {
+        if (basicAssemblyStatement == null && compacted) {
+            return rebuildBasicStatementList().toString(mars.venus.NumberDisplayBaseChooser.DECIMAL,
+                    mars.venus.NumberDisplayBaseChooser.DECIMAL);
+        }
         return basicAssemblyStatement;
     }
 
@@ -486,6 +578,9 @@ public class ProgramStatement {
      * @return The Basic Assembly statement.
      **/
     public String getPrintableBasicAssemblyStatement() {
+        if (basicStatementList == null && compacted) {
+            return rebuildBasicStatementList().toString();
+        }
         return basicStatementList.toString();
     }
 
@@ -496,6 +591,9 @@ public class ProgramStatement {
      **/
 
     public String getMachineStatement() {
+        if (machineStatement == null && compacted) {
+            return Binary.intToBinaryString(binaryStatement);
+        }
         return machineStatement;
     }
 
@@ -532,7 +630,8 @@ public class ProgramStatement {
     /**
      * Produces token list generated from original source statement.
      *
-     * @return The TokenList of Token objects generated from original source.
+     * @return The TokenList of Token objects generated from original source.  Null if the
+     * statement has been compacted.
      **/
     public TokenList getOriginalTokenList() {
         return originalTokenList;
@@ -542,7 +641,7 @@ public class ProgramStatement {
      * Produces token list stripped of all but operator and operand tokens.
      *
      * @return The TokenList of Token objects generated by stripping original list of all
-     * except operator and operand tokens.
+     * except operator and operand tokens.  Null if the statement has been compacted.
      **/
     public TokenList getStrippedTokenList() {
         return strippedTokenList;
@@ -611,6 +710,16 @@ public class ProgramStatement {
     } // insertBinaryCode()
 
 
+    //////////////////////////////////////////////////////////////////////////////
+    //  Rebuilds the basic statement list of a compacted statement.  The operands kept
+    //  by compact() are the assembled ones, so a jump target is a word address and
+    //  immediates keep their sign, which the binary-code builder below handles.
+    private BasicStatementList rebuildBasicStatementList() {
+        BasicInstruction instr = (instruction instanceof BasicInstruction) ? (BasicInstruction) instruction : null;
+        return buildBasicStatementListFromBinaryCode(binaryStatement, instr, operands, numOperands);
+    }
+
+
     //////////////////////////////////////////////////////////////////////////////
     /*
      *   Given a model BasicInstruction and the assembled (not source) operand array for a statement,
@@ -647,6 +756,10 @@ public class ProgramStatement {
                     String marker = (tokenType.toString().contains("FP_REGISTER")) ? "$f" : "$";
                     statementList.addString(marker + operands[i]);
                     notOperand = false;
+                } else if (instr.getInstructionFormat() == BasicInstructionFormat.J_FORMAT) {
+                    // jump operand is a word address, display it as the byte address it came from
+                    statementList.addAddress(operands[i] << 2);
+                    notOperand = false;
                 } else {
                     statementList.addValue(operands[i]);
                     notOperand = false;
@@ -705,7 +818,10 @@ public class ProgramStatement {
         public String toString() {
             int addressBase = (Globals.getSettings().getBooleanSetting(Settings.DISPLAY_ADDRESSES_IN_HEX)) ? mars.venus.NumberDisplayBaseChooser.HEXADECIMAL : mars.venus.NumberDisplayBaseChooser.DECIMAL;
             int valueBase = (Globals.getSettings().getBooleanSetting(Settings.DISPLAY_VALUES_IN_HEX)) ? mars.venus.NumberDisplayBaseChooser.HEXADECIMAL : mars.venus.NumberDisplayBaseChooser.DECIMAL;
+            return toString(addressBase, valueBase);
+        }
 
+        String toString(int addressBase, int valueBase) {
             StringBuffer result = new StringBuffer();
             for (int i = 0; i < list.size(); i++) {
                 ListElement e = (ListElement) list.get(i);
@@ -153,6 +153,11 @@ public class Settings extends Observable {
      * execute that code.
      */
     public static final int SELF_MODIFYING_CODE_ENABLED = 20;
+    /**
+     * Flag to determine whether the simulator takes periodic machine snapshots so that
+     * execution can be run back to an earlier instruction (time travel).
+     */
+    public static final int TIME_TRAVEL_ENABLED = 21;
     /**
      * Current specified exception handler file (a MIPS assembly source file)
      */
@@ -316,7 +321,7 @@ public class Settings extends Observable {
      */
     public static boolean[] defaultBooleanSettingsValues = { // match the above list by position
             true, false, false, false, false, true, true, false, false,
-            true, false, false, true, true, false, true, true, false, false, true, false };
+            true, false, false, true, true, false, true, true, false, false, true, false, false };
     /* Properties file used to hold default settings. */
     private static String settingsFile = "Settings";
     // NOTE: key sequence must match up with labels above which are used for array indexes!
@@ -326,7 +331,7 @@ public class Settings extends Observable {
             "WarningsAreErrors", "ProgramArguments", "DataSegmentHighlighting",
             "RegistersHighlighting", "StartAtMain", "EditorCurrentLineHighlighting",
             "PopupInstructionGuidance", "PopupSyscallInput", "GenericTextEditor",
-            "AutoIndent", "SelfModifyingCode" };
+            "AutoIndent", "SelfModifyingCode", "TimeTravel" };
     /**
      * Last resort default values for String settings;
      * will use only if neither the Preferences nor the properties file work.
@@ -353,6 +358,8 @@ public class Settings extends Observable {
     private String[] fontSizeSettingsValues;
     private String[] colorSettingsValues;
     private Preferences preferences;
+    // Whether the font, color and syntax style settings, needed only by the IDE, have been read.
+    private boolean editorSettingsLoaded;
     /* **************************************************************************
      This section contains all code related to syntax highlighting styles settings.
      A style includes 3 components: color, bold (t/f), italic (t/f)
@@ -381,7 +388,8 @@ public class Settings extends Observable {
      * on defaults stored in this class.
      *
      * @param gui true if running the graphical IDE, false if running from command line.
-     *            Ignored as of release 3.6 but retained for compatability.
+     *            From the command line, the font, color and syntax style settings used
+     *            only by the IDE are not read until something asks for them.
      */
 
     public Settings(boolean gui) {
@@ -402,7 +410,7 @@ public class Settings extends Observable {
         // headless server and running in command mode.  The Font constructor resulted in Swing
         // initialization which caused problems.  Now this will only occur on demand from
         // Venus, which happens only when running as GUI.
-        initialize();
+        initialize(gui);
     }
 
     /**
@@ -420,13 +428,13 @@ public class Settings extends Observable {
      * Reset settings to default values, as described in the constructor comments.
      *
      * @param gui true if running from GUI IDE and false if running from command mode.
-     *            Ignored as of release 3.6 but retained for compatibility.
      */
     public void reset(boolean gui) {
-        initialize();
+        initialize(gui || editorSettingsLoaded);
     }
 
     public void setEditorSyntaxStyleByPosition(int index, SyntaxStyle syntaxStyle) {
+        loadEditorSettings();
         syntaxStyleColorSettingsValues[index] = syntaxStyle.getColorAsHexString();
         syntaxStyleItalicSettingsValues[index] = syntaxStyle.isItalic();
         syntaxStyleBoldSettingsValues[index] = syntaxStyle.isBold();
@@ -434,12 +442,14 @@ public class Settings extends Observable {
     }
 
     public SyntaxStyle getEditorSyntaxStyleByPosition(int index) {
+        loadEditorSettings();
         return new SyntaxStyle(getColorValueByPosition(index, syntaxStyleColorSettingsValues),
                 syntaxStyleItalicSettingsValues[index],
                 syntaxStyleBoldSettingsValues[index]);
     }
 
     public SyntaxStyle getDefaultEditorSyntaxStyleByPosition(int index) {
+        loadEditorSettings();
         return new SyntaxStyle(getColorValueByPosition(index, defaultSyntaxStyleColorSettingsValues),
                 defaultSyntaxStyleItalicSettingsValues[index],
                 defaultSyntaxStyleBoldSettingsValues[index]);
@@ -948,6 +958,7 @@ public class Settings extends Observable {
      * @return Font object for given item
      */
     public Font getFontByPosition(int fontSettingPosition) {
+        loadEditorSettings();
         if (fontSettingPosition >= 0 && fontSettingPosition < fontFamilySettingsValues.length) {
             return EditorFont.createFontFromStringValues(fontFamilySettingsValues[fontSettingPosition],
                     fontStyleSettingsValues[fontSettingPosition],
@@ -964,6 +975,7 @@ public class Settings extends Observable {
      * @return Font object for given item
      */
     public Font getDefaultFontByPosition(int fontSettingPosition) {
+        loadEditorSettings();
         if (fontSettingPosition >= 0 && fontSettingPosition < defaultFontFamilySettingsValues.length) {
             return EditorFont.createFontFromStringValues(defaultFontFamilySettingsValues[fontSettingPosition],
                     defaultFontStyleSettingsValues[fontSettingPosition],
@@ -1114,6 +1126,7 @@ public class Settings extends Observable {
      * @return corresponding Color, or null if key not found or value not valid color
      */
     public Color getColorSettingByKey(String key) {
+        loadEditorSettings();
         return getColorValueByKey(key, colorSettingsValues);
     }
 
@@ -1125,6 +1138,7 @@ public class Settings extends Observable {
      * @return corresponding default Color, or null if key not found or value not valid color
      */
     public Color getDefaultColorSettingByKey(String key) {
+        loadEditorSettings();
         return getColorValueByKey(key, defaultColorSettingsValues);
     }
 
@@ -1136,6 +1150,7 @@ public class Settings extends Observable {
      * @return corresponding Color, or null if argument invalid or value not valid color
      */
     public Color getColorSettingByPosition(int position) {
+        loadEditorSettings();
         return getColorValueByPosition(position, colorSettingsValues);
     }
 
@@ -1147,6 +1162,7 @@ public class Settings extends Observable {
      * @return corresponding default Color, or null if argument invalid or value not valid color
      */
     public Color getDefaultColorSettingByPosition(int position) {
+        loadEditorSettings();
         return getColorValueByPosition(position, defaultColorSettingsValues);
     }
 
@@ -1205,6 +1221,7 @@ public class Settings extends Observable {
      * @font The font to set that item to
      */
     public void setFontByPosition(int fontSettingPosition, Font font) {
+        loadEditorSettings();
         if (fontSettingPosition >= 0 && fontSettingPosition < fontFamilySettingsValues.length) {
             fontFamilySettingsValues[fontSettingPosition] = font.getFamily();
             fontStyleSettingsValues[fontSettingPosition] = EditorFont.styleIntToStyleString(font.getStyle());
@@ -1241,6 +1258,7 @@ public class Settings extends Observable {
      * @param color    the Color to save
      */
     public void setColorSettingByPosition(int position, Color color) {
+        loadEditorSettings();
         if (position >= 0 && position < colorSettingsKeys.length) {
             setColorSetting(position, color);
         }
@@ -1257,12 +1275,33 @@ public class Settings extends Observable {
     //           If that fails, set from array.
     //           In either case, use these values as defaults in call to Preferences.
 
-    private void initialize() {
+    // The editor settings (fonts, colors and syntax styles) are left until first needed
+    // unless editor is true.
+
+    private void initialize(boolean editor) {
         applyDefaultSettings();
         if (!readSettingsFromPropertiesFile(settingsFile)) {
             System.out.println("MARS System error: unable to read Settings.properties defaults. Using built-in defaults.");
         }
         getSettingsFromPreferences();
+        editorSettingsLoaded = false;
+        if (editor) {
+            loadEditorSettings();
+        }
+    }
+
+    // Initialize the editor settings the same way, if not done yet.  These are needed only by
+    // the IDE, so a command-line run does not spend its startup time on them.
+    private void loadEditorSettings() {
+        if (editorSettingsLoaded) {
+            return;
+        }
+        applyDefaultEditorSettings();
+        if (!readEditorSettingsFromPropertiesFile(settingsFile)) {
+            System.out.println("MARS System error: unable to read Settings.properties defaults. Using built-in defaults.");
+        }
+        getEditorSettingsFromPreferences();
+        editorSettingsLoaded = true;
     }
 
     // Default values.  Will be replaced if available from property file or Preferences object.
@@ -1273,6 +1312,10 @@ public class Settings extends Observable {
         for (int i = 0; i < stringSettingsValues.length; i++) {
             stringSettingsValues[i] = defaultStringSettingsValues[i];
         }
+    }
+
+    // Default values of the editor settings.
+    private void applyDefaultEditorSettings() {
         for (int i = 0; i < fontFamilySettingsValues.length; i++) {
             fontFamilySettingsValues[i] = defaultFontFamilySettingsValues[i];
             fontStyleSettingsValues[i] = defaultFontStyleSettingsValues[i];
@@ -1356,43 +1399,57 @@ public class Settings extends Observable {
     // defaultXSettingsValues arrays (x=boolean,string,color).  The latter will overwrite the
     // last-resort default values hardcoded into the arrays above.
     //
-    // NOTE: If there is NO ENTRY for the specified property, Globals.getPropertyEntry() returns
+    // NOTE: If there is NO ENTRY for the specified property, Properties.getProperty() returns
     // null.  This is no cause for alarm.  It will occur during system development or upon the
     // first use of a new MARS release in which new settings have been defined.
     // In that case, this method will NOT make an assignment to the settings array!
     // So consider it a precondition of this method: the settings arrays must already be
     // initialized with last-resort default values.
+    //
+    // The file is read once, not once per setting.
     private boolean readSettingsFromPropertiesFile(String filename) {
         String settingValue;
         try {
+            Properties properties = PropertiesFile.loadPropertiesFromFile(filename);
             for (int i = 0; i < booleanSettingsKeys.length; i++) {
-                settingValue = Globals.getPropertyEntry(filename, booleanSettingsKeys[i]);
+                settingValue = properties.getProperty(booleanSettingsKeys[i]);
                 if (settingValue != null) {
                     booleanSettingsValues[i] = defaultBooleanSettingsValues[i] = Boolean.valueOf(settingValue).booleanValue();
                 }
             }
             for (int i = 0; i < stringSettingsKeys.length; i++) {
-                settingValue = Globals.getPropertyEntry(filename, stringSettingsKeys[i]);
+                settingValue = properties.getProperty(stringSettingsKeys[i]);
                 if (settingValue != null) {
                     stringSettingsValues[i] = defaultStringSettingsValues[i] = settingValue;
                 }
             }
+        } catch (Exception e) {
+            return false;
+        }
+        return true;
+    }
+
+    // Establish the editor settings from the given properties file, as above.
+    private boolean readEditorSettingsFromPropertiesFile(String filename) {
+        String settingValue;
+        try {
+            Properties properties = PropertiesFile.loadPropertiesFromFile(filename);
             for (int i = 0; i < fontFamilySettingsValues.length; i++) {
-                settingValue = Globals.getPropertyEntry(filename, fontFamilySettingsKeys[i]);
+                settingValue = properties.getProperty(fontFamilySettingsKeys[i]);
                 if (settingValue != null) {
                     fontFamilySettingsValues[i] = defaultFontFamilySettingsValues[i] = settingValue;
                 }
-                settingValue = Globals.getPropertyEntry(filename, fontStyleSettingsKeys[i]);
+                settingValue = properties.getProperty(fontStyleSettingsKeys[i]);
                 if (settingValue != null) {
                     fontStyleSettingsValues[i] = defaultFontStyleSettingsValues[i] = settingValue;
                 }
-                settingValue = Globals.getPropertyEntry(filename, fontSizeSettingsKeys[i]);
+                settingValue = properties.getProperty(fontSizeSettingsKeys[i]);
                 if (settingValue != null) {
                     fontSizeSettingsValues[i] = defaultFontSizeSettingsValues[i] = settingValue;
                 }
             }
             for (int i = 0; i < colorSettingsKeys.length; i++) {
-                settingValue = Globals.getPropertyEntry(filename, colorSettingsKeys[i]);
+                settingValue = properties.getProperty(colorSettingsKeys[i]);
                 if (settingValue != null) {
                     colorSettingsValues[i] = defaultColorSettingsValues[i] = settingValue;
                 }
@@ -1417,6 +1474,10 @@ public class Settings extends Observable {
         for (int i = 0; i < stringSettingsKeys.length; i++) {
             stringSettingsValues[i] = preferences.get(stringSettingsKeys[i], stringSettingsValues[i]);
         }
+    }
+
+    // Get the editor settings values from Preferences object, as above.
+    private void getEditorSettingsFromPreferences() {
         for (int i = 0; i < fontFamilySettingsKeys.length; i++) {
             fontFamilySettingsValues[i] = preferences.get(fontFamilySettingsKeys[i], fontFamilySettingsValues[i]);
             fontStyleSettingsValues[i] = preferences.get(fontStyleSettingsKeys[i], fontStyleSettingsValues[i]);
@@ -3,6 +3,7 @@ package mars.assembler;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 
 import mars.ErrorList;
 import mars.ErrorMessage;
@@ -10,6 +11,7 @@ import mars.Globals;
 import mars.MIPSprogram;
 import mars.ProcessingException;
 import mars.ProgramStatement;
+import mars.jfr.AssemblyPassEvent;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 import mars.mips.instructions.BasicInstruction;
@@ -71,6 +73,7 @@ public class Assembler {
     private UserKernelAddressSpace dataAddress;
     private DataSegmentForwardReferences currentFileDataSegmentForwardReferences,
             accumulatedDataSegmentForwardReferences;
+    private DataSegmentBuffer dataSegmentBuffer;
 
     /**
      * Parse and generate machine code for the given MIPS program. It must have
@@ -178,6 +181,7 @@ public class Assembler {
         externAddress = Memory.externBaseAddress;
         currentFileDataSegmentForwardReferences = new DataSegmentForwardReferences();
         accumulatedDataSegmentForwardReferences = new DataSegmentForwardReferences();
+        dataSegmentBuffer = new DataSegmentBuffer();
         Globals.symbolTable.clear();
         Globals.memory.clear();
         this.machineList = new ArrayList();
@@ -194,6 +198,8 @@ public class Assembler {
                 break;
             }
             this.fileCurrentlyBeingAssembled = (MIPSprogram) tokenizedProgramFiles.get(fileIndex);
+            AssemblyPassEvent passEvent = new AssemblyPassEvent();
+            passEvent.begin();
             // List of labels declared ".globl". new list for each file assembled
             this.globalDeclarationList = new TokenList();
             // Parser begins by default in text segment until directed otherwise.
@@ -252,6 +258,7 @@ public class Assembler {
                     .getLocalSymbolTable());
             accumulatedDataSegmentForwardReferences.add(currentFileDataSegmentForwardReferences);
             currentFileDataSegmentForwardReferences.clear();
+            commitPassEvent(passEvent, AssemblyPassEvent.FIRST, fileCurrentlyBeingAssembled, tokenList.size(), parsedList.size());
         } // end of first-pass loop for each MIPSprogram
 
 
@@ -260,6 +267,8 @@ public class Assembler {
         // and require error message.
         accumulatedDataSegmentForwardReferences.resolve(Globals.symbolTable);
         accumulatedDataSegmentForwardReferences.generateErrorMessages(errors);
+        // Data segment contents were staged as the directives were parsed; store them now.
+        dataSegmentBuffer.install();
 
         // Throw collection of errors accumulated through the first pass.
         if (errors.errorsOccurred()) {
@@ -275,6 +284,9 @@ public class Assembler {
                 break;
             }
             this.fileCurrentlyBeingAssembled = (MIPSprogram) tokenizedProgramFiles.get(fileIndex);
+            AssemblyPassEvent passEvent = new AssemblyPassEvent();
+            passEvent.begin();
+            int machineListSize = this.machineList.size();
             ArrayList parsedList = fileCurrentlyBeingAssembled.getParsedList();
             ProgramStatement statement;
             for (int i = 0; i < parsedList.size(); i++) {
@@ -361,6 +373,8 @@ public class Assembler {
                 } // end of ELSE part for extended instruction.
 
             } // end of assembler second pass.
+            commitPassEvent(passEvent, AssemblyPassEvent.SECOND, fileCurrentlyBeingAssembled,
+                    parsedList.size(), this.machineList.size() - machineListSize);
         }
         if (Globals.debug) {
             System.out.println("Code generation begins");
@@ -368,6 +382,8 @@ public class Assembler {
         ///////////// THIRD MAJOR STEP IS PRODUCE MACHINE CODE FROM ASSEMBLY //////////
         // Generates machine code statements from the list of basic assembler statements
         // and writes the statement to memory.
+        AssemblyPassEvent codeEvent = new AssemblyPassEvent();
+        codeEvent.begin();
         ProgramStatement statement;
         for (int i = 0; i < this.machineList.size(); i++) {
             if (errors.errorLimitExceeded()) {
@@ -386,6 +402,7 @@ public class Assembler {
                         .getStartPos(), "Invalid address for text segment: " + e.getAddress()));
             }
         }
+        commitPassEvent(codeEvent, AssemblyPassEvent.CODE_GENERATION, null, 0, this.machineList.size());
         // Aug. 24, 2005 Ken Vollmar
         // Ensure that I/O "file descriptors" are initialized for a new program run
         SystemIO.resetFiles();
@@ -407,6 +424,19 @@ public class Assembler {
         return this.machineList;
     } // assemble()
 
+    // Fill in and record a flight recorder event for a pass, if it is being recorded.
+    private static void commitPassEvent(AssemblyPassEvent event, String pass, MIPSprogram file,
+                                        int lines, int statements) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.pass = pass;
+            event.file = (file == null) ? null : file.getFilename();
+            event.lines = lines;
+            event.statements = statements;
+            event.commit();
+        }
+    }
+
     // //////////////////////////////////////////////////////////////////////
     // Will check for duplicate text addresses, which can happen inadvertantly when using
     // operand on .text directive. Will generate error message for each one that occurs.
@@ -509,14 +539,21 @@ public class Assembler {
                 //                }
                 for (int i = macro.getFromLine() + 1; i < macro.getToLine(); i++) {
 
-                    String substituted = macro.getSubstitutedLine(i, tokens, counter, errors);
-                    TokenList tokenList2 = fileCurrentlyBeingAssembled.getTokenizer().tokenizeLine(
-                            i, substituted, errors);
-
-                    // If token list getProcessedLine() is not empty, then .eqv was performed and it contains the modified source.
-                    // Put it into the line to be parsed, so it will be displayed properly in text segment display. DPS 23 Jan 2013
-                    if (tokenList2.getProcessedLine().length() > 0) {
+                    // Copy the pre-parsed body line if possible; its processed line is the substituted source.
+                    String substituted;
+                    TokenList tokenList2 = macro.getSubstitutedTokens(i, tokens, counter);
+                    if (tokenList2 != null) {
                         substituted = tokenList2.getProcessedLine();
+                    } else {
+                        substituted = macro.getSubstitutedLine(i, tokens, counter, errors);
+                        tokenList2 = fileCurrentlyBeingAssembled.getTokenizer().tokenizeLine(
+                                i, substituted, errors);
+
+                        // If token list getProcessedLine() is not empty, then .eqv was performed and it contains the modified source.
+                        // Put it into the line to be parsed, so it will be displayed properly in text segment display. DPS 23 Jan 2013
+                        if (tokenList2.getProcessedLine().length() > 0) {
+                            substituted = tokenList2.getProcessedLine();
+                        }
                     }
 
                     // recursively parse lines of expanded macro
@@ -1218,7 +1255,7 @@ public class Assembler {
                         }
                     }
                     try {
-                        Globals.memory.set(this.dataAddress.get(), (int) theChar,
+                        dataSegmentBuffer.set(this.dataAddress.get(), (int) theChar,
                                 DataTypes.CHAR_SIZE);
                     } catch (AddressErrorException e) {
                         errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token
@@ -1229,7 +1266,7 @@ public class Assembler {
                 }
                 if (direct == Directives.ASCIIZ) {
                     try {
-                        Globals.memory.set(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
+                        dataSegmentBuffer.set(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
                     } catch (AddressErrorException e) {
                         errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token
                                 .getSourceLine(), token.getStartPos(), "\""
@@ -1263,7 +1300,7 @@ public class Assembler {
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
         }
         try {
-            Globals.memory.set(this.dataAddress.get(), value, lengthInBytes);
+            dataSegmentBuffer.set(this.dataAddress.get(), value, lengthInBytes);
         } catch (AddressErrorException e) {
             errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token.getSourceLine(), token
                     .getStartPos(), "\"" + this.dataAddress.get()
@@ -1286,7 +1323,10 @@ public class Assembler {
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
         }
         try {
-            Globals.memory.setDouble(this.dataAddress.get(), value);
+            // high-order word goes in the higher address regardless of endianness, as Memory.setDouble
+            long longValue = Double.doubleToLongBits(value);
+            dataSegmentBuffer.set(this.dataAddress.get() + 4, Binary.highOrderLongToInt(longValue), 4);
+            dataSegmentBuffer.set(this.dataAddress.get(), Binary.lowOrderLongToInt(longValue), 4);
         } catch (AddressErrorException e) {
             errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token.getSourceLine(), token
                     .getStartPos(), "\"" + this.dataAddress.get()
@@ -1436,20 +1476,24 @@ public class Assembler {
             int count = 0;
             int labelAddress;
             DataSegmentForwardReference entry;
+            // Unresolved entries are compacted toward the front rather than resolved ones
+            // removed one at a time, which is quadratic for large tables of label addresses.
+            int unresolved = 0;
             for (int i = 0; i < forwardReferenceList.size(); i++) {
                 entry = (DataSegmentForwardReference) forwardReferenceList.get(i);
                 labelAddress = localSymtab.getAddressLocalOrGlobal(entry.token.getValue());
                 if (labelAddress != SymbolTable.NOT_FOUND) {
                     // patch address has to be valid b/c we already stored there...
                     try {
-                        Globals.memory.set(entry.patchAddress, labelAddress, entry.length);
+                        dataSegmentBuffer.set(entry.patchAddress, labelAddress, entry.length);
                     } catch (AddressErrorException aee) {
                     }
-                    forwardReferenceList.remove(i);
-                    i--; // needed because removal shifted the remaining list indices down
                     count++;
+                } else {
+                    forwardReferenceList.set(unresolved++, entry);
                 }
             }
+            forwardReferenceList.subList(unresolved, forwardReferenceList.size()).clear();
             return count;
         }
 
@@ -1479,4 +1523,113 @@ public class Assembler {
         }
 
     }
+
+    // //////////////////////////////////////////////////////////////////////////////////
+    // Private class to stage the bytes written by data segment directives (.word, .half,
+    // .byte, .float, .double, .ascii, .asciiz) and by forward reference patches during the
+    // first pass.  Writing them one value at a time through Memory.set() is slow for large
+    // initializers: range checks, byte-at-a-time table stores and observer notification
+    // for every value.  Instead the bytes are collected in 4K pages, and install() stores
+    // the used word range of each page into Memory with one bulk call at the end of the
+    // first pass.  Memory is cleared at the start of assembly, so untouched bytes within
+    // that range are zero just as they would have been.  Addresses outside the data, kernel
+    // data, stack and memory-mapped I/O segments go directly to Memory.set() so the
+    // resulting errors (and self-modifying code writes to text) are unchanged.
+    private class DataSegmentBuffer {
+        private static final int PAGE_BYTES = 4096;
+        private static final int PAGE_WORDS = PAGE_BYTES / Memory.WORD_LENGTH_BYTES;
+        private HashMap pages; // page number (address >>> 12) to Page
+        private Page lastPage; // directives mostly write sequentially, so cache last page
+        private int[] words;
+
+        private DataSegmentBuffer() {
+            pages = new HashMap();
+            words = new int[PAGE_WORDS];
+        }
+
+        // Stage the given value over the given number of bytes starting at address,
+        // low order byte first, with the same semantics as Memory.set().
+        private void set(int address, int value, int length) throws AddressErrorException {
+            if (!isStageable(address) || !isStageable(address + length - 1)) {
+                Globals.memory.set(address, value, length);
+                return;
+            }
+            for (int i = 0; i < length; i++) {
+                int byteAddress = address + i;
+                getPage(byteAddress).setByte(byteAddress & (PAGE_BYTES - 1), value >>> (i << 3));
+            }
+        }
+
+        // Store every staged page into Memory.
+        private void install() {
+            boolean littleEndian = Globals.memory.getByteOrder() == Memory.LITTLE_ENDIAN;
+            java.util.Iterator it = pages.values().iterator();
+            while (it.hasNext()) {
+                Page page = (Page) it.next();
+                for (int w = page.lowWord; w <= page.highWord; w++) {
+                    int b = w << 2;
+                    int b0 = page.bytes[b] & 0xFF, b1 = page.bytes[b + 1] & 0xFF,
+                            b2 = page.bytes[b + 2] & 0xFF, b3 = page.bytes[b + 3] & 0xFF;
+                    words[w] = (littleEndian)
+                            ? (b3 << 24) | (b2 << 16) | (b1 << 8) | b0
+                            : (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+                }
+                try {
+                    Globals.memory.setRawWords(page.address + (page.lowWord << 2), words,
+                            page.lowWord, page.highWord - page.lowWord + 1);
+                } catch (AddressErrorException aee) {
+                    // cannot happen; only stageable addresses were buffered
+                }
+            }
+            pages.clear();
+            lastPage = null;
+        }
+
+        private Page getPage(int address) {
+            int pageAddress = address & ~(PAGE_BYTES - 1);
+            if (lastPage == null || lastPage.address != pageAddress) {
+                lastPage = (Page) pages.get(pageAddress);
+                if (lastPage == null) {
+                    lastPage = new Page(pageAddress);
+                    pages.put(pageAddress, lastPage);
+                }
+            }
+            return lastPage;
+        }
+
+        // Only segments that Memory stores as plain words are staged.
+        private boolean isStageable(int address) {
+            return Memory.inDataSegment(address)
+                    || (address > Memory.stackLimitAddress && address <= Memory.stackBaseAddress)
+                    || (address >= Memory.memoryMapBaseAddress && address < Memory.memoryMapLimitAddress)
+                    || Memory.inKernelDataSegment(address);
+        }
+
+        // inner-inner class holding the staged bytes of one page, plus the range of
+        // words actually written so untouched Memory blocks are not allocated.
+        private class Page {
+            int address;
+            byte[] bytes;
+            int lowWord;
+            int highWord;
+
+            Page(int address) {
+                this.address = address;
+                this.bytes = new byte[PAGE_BYTES];
+                this.lowWord = PAGE_WORDS;
+                this.highWord = -1;
+            }
+
+            void setByte(int offset, int value) {
+                bytes[offset] = (byte) value;
+                int word = offset >> 2;
+                if (word < lowWord) {
+                    lowWord = word;
+                }
+                if (word > highWord) {
+                    highWord = word;
+                }
+            }
+        }
+    }
 }
@@ -56,6 +56,12 @@ public class Macro {
      * arguments like <code>%arg</code> will be substituted by macro expansion
      */
     private ArrayList<String> args;
+    /**
+     * pre-parsed body lines, built on first expansion. Indexed by line number
+     * relative to {@link #fromLine}; an entry is null for a line that has to be
+     * expanded by {@link #getSubstitutedLine} and re-tokenized.
+     */
+    private LineTemplate[] templates;
 
     public Macro() {
         name = "";
@@ -236,6 +242,149 @@ public class Macro {
         return (pos < 0) ? source : source.substring(0, pos) + substitute + source.substring(pos + stringToBeReplaced.length());
     }
 
+    /**
+     * Produces the tokens of a line of the macro body with arguments and labels
+     * substituted, by copying its pre-parsed template rather than substituting
+     * into the source text and tokenizing the result. The tokens, their positions
+     * and the processed line (the substituted source) are the same as
+     * {@link #getSubstitutedLine} followed by tokenizing would give. <br>
+     * Returns null if that is not guaranteed for this line or these arguments, e.g.
+     * the program uses .eqv, the line has a sign next to a parameter, or an argument
+     * is not a plain token; the caller must then take the textual route.
+     *
+     * @param line    source line number in macro definition to be substituted
+     * @param args    tokens of the macro call, name first
+     * @param counter unique macro expansion id
+     * @return substituted tokens of <code>line</code>, or null
+     */
+    public TokenList getSubstitutedTokens(int line, TokenList args, long counter) {
+        if (program.getTokenizer() == null || program.getTokenizer().hasEquivalents()) {
+            return null;
+        }
+        if (templates == null) {
+            templates = new LineTemplate[Math.max(toLine - fromLine, 0)];
+            for (int i = 0; i < templates.length; i++) {
+                templates[i] = buildTemplate(fromLine + i);
+            }
+        }
+        int index = line - fromLine;
+        LineTemplate template = (index >= 0 && index < templates.length) ? templates[index] : null;
+        if (template == null) {
+            return null;
+        }
+        TokenList result = new TokenList();
+        StringBuilder substituted = new StringBuilder(template.source.length() + 16);
+        int copied = 0;
+        for (int i = 0; i < template.values.length; i++) {
+            String value = template.values[i];
+            TokenTypes type = template.types[i];
+            int slot = template.slots[i];
+            if (slot == LABEL_SLOT) {
+                value = value + "_M" + counter;
+                type = TokenTypes.matchTokenType(value);
+            } else if (slot != LITERAL_SLOT) {
+                value = args.get(slot + 1).getValue();
+                type = TokenTypes.matchTokenType(value);
+                if (!isPlainToken(value) || type == TokenTypes.ERROR) {
+                    return null;
+                }
+            }
+            if (template.beforeSign[i]
+                    && (type == TokenTypes.IDENTIFIER) != (template.types[i] == TokenTypes.IDENTIFIER)) {
+                return null;
+            }
+            substituted.append(template.source, copied, template.positions[i]);
+            result.add(new Token(type, value, program, line, substituted.length() + 1));
+            substituted.append(value);
+            copied = template.positions[i] + template.values[i].length();
+        }
+        substituted.append(template.source, copied, template.source.length());
+        result.setProcessedLine(substituted.toString());
+        return result;
+    }
+
+    // Builds the template for a body line from its tokens, or returns null if copying
+    // tokens might not give what re-tokenizing the substituted text would.
+    private LineTemplate buildTemplate(int line) {
+        if (line < 1 || line > program.getTokenList().size()) {
+            return null;
+        }
+        TokenList tokens = (TokenList) program.getTokenList().get(line - 1);
+        String source = program.getSourceLine(line);
+        if (source == null) {
+            return null;
+        }
+        LineTemplate template = new LineTemplate(source, tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            String value = token.getValue();
+            int position = token.getStartPos() - 1;
+            // Token must appear verbatim at its position (not so for character literals).
+            if (position < 0 || !source.startsWith(value, position)) {
+                return null;
+            }
+            TokenTypes type = TokenTypes.matchTokenType(value);
+            if (type == TokenTypes.ERROR) {
+                return null;
+            }
+            int slot = LITERAL_SLOT;
+            if (tokenIsMacroParameter(value, true)) {
+                slot = this.args.indexOf(value);
+                if (slot < 0) {
+                    return null; // let getSubstitutedLine() report the unknown parameter
+                }
+            } else if (tokenIsMacroLabel(value)) {
+                slot = LABEL_SLOT;
+            }
+            // getSubstitutedLine() replaces the first occurrence of the token text
+            if (slot != LITERAL_SLOT && source.indexOf(value) != position) {
+                return null;
+            }
+            template.values[i] = value;
+            template.types[i] = type;
+            template.positions[i] = position;
+            template.slots[i] = slot;
+        }
+        // A + or - is tokenized depending on whether the previous token is an identifier and
+        // on the next character.  Give up if a substitution touches the sign; if it only
+        // precedes it, getSubstitutedTokens() checks that the identifier test comes out the same.
+        for (int i = 0; i < tokens.size(); i++) {
+            if (template.slots[i] == LITERAL_SLOT) {
+                continue;
+            }
+            int end = template.positions[i] + template.values[i].length();
+            if (i > 0 && hasSign(template, i - 1)
+                    && template.positions[i - 1] + template.values[i - 1].length() == template.positions[i]) {
+                return null;
+            }
+            if (i + 1 < tokens.size() && hasSign(template, i + 1)) {
+                if (end == template.positions[i + 1]) {
+                    return null;
+                }
+                template.beforeSign[i] = true;
+            }
+        }
+        return template;
+    }
+
+    private static boolean hasSign(LineTemplate template, int i) {
+        return template.types[i] != TokenTypes.COMMENT && template.types[i] != TokenTypes.QUOTED_STRING
+                && (template.values[i].indexOf('+') >= 0 || template.values[i].indexOf('-') >= 0);
+    }
+
+    // true if the tokenizer would read value as one token regardless of its neighbors
+    private static boolean isPlainToken(String value) {
+        if (value.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (" \t,+-:()\"'#".indexOf(value.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void addLabel(String value) {
         labels.add(value);
     }
@@ -247,5 +396,27 @@ public class Macro {
         Collections.sort(labels);
     }
 
-
+    private static final int LITERAL_SLOT = -1;
+    private static final int LABEL_SLOT = -2;
+
+    // Pre-parsed macro body line: for each token its value, type and position in the
+    // source line, plus whether it is copied as is, replaced by an argument (index into
+    // args) or renamed as a label local to the expansion.
+    private static class LineTemplate {
+        private String source;
+        private String[] values;
+        private TokenTypes[] types;
+        private int[] positions;
+        private int[] slots;
+        private boolean[] beforeSign;
+
+        private LineTemplate(String source, int size) {
+            this.source = source;
+            this.values = new String[size];
+            this.types = new TokenTypes[size];
+            this.positions = new int[size];
+            this.slots = new int[size];
+            this.beforeSign = new boolean[size];
+        }
+    }
 }
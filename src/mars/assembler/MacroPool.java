@@ -1,6 +1,8 @@
 package mars.assembler;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Stack;
 
 import mars.ErrorList;
@@ -52,6 +54,15 @@ public class MacroPool {
      * List of macros defined by now
      */
     private ArrayList<Macro> macroList;
+    /**
+     * Index of {@link #macroList} by name and argument count, holding the macro
+     * {@link #getMatchingMacro} would choose.
+     */
+    private HashMap<String, Macro> macroIndex;
+    /**
+     * Names of the macros defined by now
+     */
+    private HashSet<String> macroNames;
     /**
      * @see #BeginMacro(String, int)
      */
@@ -72,6 +83,8 @@ public class MacroPool {
     public MacroPool(MIPSprogram mipsProgram) {
         this.program = mipsProgram;
         macroList = new ArrayList<Macro>();
+        macroIndex = new HashMap<String, Macro>();
+        macroNames = new HashSet<String>();
         callStack = new ArrayList<Integer>();
         callStackOrigLines = new ArrayList<Integer>();
         current = null;
@@ -109,6 +122,12 @@ public class MacroPool {
         current.setOriginalToLine(endToken.getOriginalSourceLine());
         current.readyForCommit();
         macroList.add(current);
+        String key = indexKey(current.getName(), current.getArgs().size());
+        Macro indexed = macroIndex.get(key);
+        if (indexed == null || indexed.getFromLine() < current.getFromLine()) {
+            macroIndex.put(key, current);
+        }
+        macroNames.add(current.getName());
         current = null;
     }
 
@@ -123,17 +142,11 @@ public class MacroPool {
         if (tokens.size() < 1) {
             return null;
         }
-        Macro ret = null;
-        Token firstToken = tokens.get(0);
-        for (Macro macro : macroList) {
-            if (macro.getName().equals(firstToken.getValue())
-                    && macro.getArgs().size() + 1 == tokens.size()
-                    //&& macro.getToLine() < callerLine  // condition removed; doesn't work nicely in conjunction with .include, and does not seem necessary.  DPS 8-MAR-2013
-                    && (ret == null || ret.getFromLine() < macro.getFromLine())) {
-                ret = macro;
-            }
-        }
-        return ret;
+        // Of the macros with this name and argument count, the one defined last (highest
+        // fromLine) is chosen.  Formerly a scan of macroList; the index gives the same macro.
+        // Calls are not limited to macros defined before the caller line: that condition
+        // didn't work nicely in conjunction with .include, and did not seem necessary.  DPS 8-MAR-2013
+        return macroIndex.get(indexKey(tokens.get(0).getValue(), tokens.size() - 1));
     }
 
     /**
@@ -142,15 +155,15 @@ public class MacroPool {
      * by now, not concerning arguments count.
      */
     public boolean matchesAnyMacroName(String value) {
-        for (Macro macro : macroList) {
-            if (macro.getName().equals(value)) {
-                return true;
-            }
-        }
-        return false;
+        return macroNames.contains(value);
     }
 
 
+    // Name and argument count as one key.  A space cannot occur in a macro name token.
+    private static String indexKey(String name, int argCount) {
+        return name + " " + argCount;
+    }
+
     public Macro getCurrent() {
         return current;
     }
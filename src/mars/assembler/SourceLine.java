@@ -42,6 +42,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 public class SourceLine {
     private String source;
+    private SourceText text;   // holds the line until source is asked for
+    private int textIndex;
     private String filename;
     private MIPSprogram mipsProgram;
     private int lineNumber;
@@ -62,15 +64,43 @@ public class SourceLine {
         this.lineNumber = lineNumber;
     }
 
+    /**
+     * SourceLine constructor for a line of a source file read whole.  The String of the
+     * line is made the first time it is asked for.
+     *
+     * @param text        The text of the source file
+     * @param textIndex   Index of the line in the text, first line 0
+     * @param mipsProgram The program (object representing source file) containing that line
+     * @param lineNumber  The line number within that program where source appears.
+     */
+    public SourceLine(SourceText text, int textIndex, MIPSprogram mipsProgram, int lineNumber) {
+        this((String) null, mipsProgram, lineNumber);
+        this.text = text;
+        this.textIndex = textIndex;
+    }
+
     /**
      * Retrieve source statement itself
      *
      * @return Source statement as String
      */
     public String getSource() {
+        if (source == null) {
+            source = text.getLine(textIndex);
+        }
         return source;
     }
 
+    // The text holding this line as read from its file, or null if the line was given as a String.
+    SourceText getText() {
+        return text;
+    }
+
+    // Index of this line in getText().
+    int getTextIndex() {
+        return textIndex;
+    }
+
     /**
      * Retrieve name of file containing source statement
      *
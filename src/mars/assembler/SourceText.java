@@ -0,0 +1,132 @@
+package mars.assembler;
+
+import java.io.*;
+
+/**
+ * The text of a source file, read whole into one char array with the start and end
+ * of each line.  The Tokenizer scans lines straight out of the array, and tokens
+ * that are rarely looked at (comments, quoted strings) and the lines themselves
+ * become Strings only when asked for.  Lines end as for BufferedReader.readLine():
+ * at a line feed, a carriage return, or both.
+ */
+public class SourceText {
+    private char[] chars;
+    private int[] lineStarts;
+    private int[] lineEnds;
+    private int lineCount;
+
+    /**
+     * Read the text of a file.
+     *
+     * @param in reader of the file, read to its end but not closed.
+     * @return the text.
+     * @throws IOException if the file cannot be read.
+     */
+    public static SourceText read(Reader in) throws IOException {
+        char[] chars = new char[8192];
+        int length = 0;
+        for (int read; (read = in.read(chars, length, chars.length - length)) >= 0; ) {
+            length += read;
+            if (length == chars.length) {
+                char[] larger = new char[2 * chars.length];
+                System.arraycopy(chars, 0, larger, 0, length);
+                chars = larger;
+            }
+        }
+        return new SourceText(chars, length);
+    }
+
+    private SourceText(char[] chars, int length) {
+        this.chars = chars;
+        lineStarts = new int[64];
+        lineEnds = new int[64];
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c == '\n' || c == '\r') {
+                addLine(start, i);
+                if (c == '\r' && i + 1 < length && chars[i + 1] == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        if (start < length) {
+            addLine(start, length);
+        }
+    }
+
+    private void addLine(int start, int end) {
+        if (lineCount == lineStarts.length) {
+            int[] larger = new int[2 * lineCount];
+            System.arraycopy(lineStarts, 0, larger, 0, lineCount);
+            lineStarts = larger;
+            larger = new int[2 * lineCount];
+            System.arraycopy(lineEnds, 0, larger, 0, lineCount);
+            lineEnds = larger;
+        }
+        lineStarts[lineCount] = start;
+        lineEnds[lineCount] = end;
+        lineCount++;
+    }
+
+    /**
+     * @return number of lines.
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the text.  Must not be modified.
+     */
+    public char[] getChars() {
+        return chars;
+    }
+
+    /**
+     * @param index line index, first line 0.
+     * @return position in getChars() of the first character of the line.
+     */
+    public int getLineStart(int index) {
+        return lineStarts[index];
+    }
+
+    /**
+     * @param index line index, first line 0.
+     * @return position in getChars() just past the last character of the line, not counting the line end.
+     */
+    public int getLineEnd(int index) {
+        return lineEnds[index];
+    }
+
+    /**
+     * @param index line index, first line 0.
+     * @return a new String holding the line.
+     */
+    public String getLine(int index) {
+        return new String(chars, lineStarts[index], lineEnds[index] - lineStarts[index]);
+    }
+
+    /**
+     * Tells whether a line contains the given text, ignoring case.  Used to pick out the
+     * few lines that need a closer look without making a String of every line.
+     *
+     * @param index line index, first line 0.
+     * @param text  text to look for, in lower case.
+     * @return true if the line contains it.
+     */
+    public boolean lineContainsIgnoreCase(int index, String text) {
+        int last = lineEnds[index] - text.length();
+        for (int i = lineStarts[index]; i <= last; i++) {
+            int j = 0;
+            while (j < text.length() && Character.toLowerCase(chars[i + j]) == text.charAt(j)) {
+                j++;
+            }
+            if (j == text.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -47,6 +47,9 @@ public class SymbolTable {
     private static String startLabel = "main";
     private String filename;
     private ArrayList table;
+    // Symbols by name, so lookups do not search the table.  Holds the first of any
+    // symbols with the same name, as a search of the table would find.
+    private HashMap index;
 
     /**
      * Create a new empty symbol table for given file
@@ -57,6 +60,7 @@ public class SymbolTable {
     public SymbolTable(String filename) {
         this.filename = filename;
         this.table = new ArrayList();
+        this.index = new HashMap();
     }
 
     /**
@@ -85,12 +89,26 @@ public class SymbolTable {
         } else {
             Symbol s = new Symbol(label, address, b);
             table.add(s);
+            index.put(label, s);
             if (Globals.debug) {
                 System.out.println("The symbol " + label + " with address " + address + " has been added to the " + this.filename + " symbol table.");
             }
         }
     }
 
+    /**
+     * Adds a Symbol object restored from a program image, without checking for duplicates.
+     *
+     * @param symbol The Symbol.
+     **/
+
+    public void addSymbol(Symbol symbol) {
+        table.add(symbol);
+        if (!index.containsKey(symbol.getName())) {
+            index.put(symbol.getName(), symbol);
+        }
+    }
+
     /**
      * Removes a symbol from the Symbol table.  If not found, it does nothing.
      * This will rarely happen (only when variable is declared .globl after already
@@ -101,12 +119,17 @@ public class SymbolTable {
 
     public void removeSymbol(Token token) {
         String label = token.getValue();
+        Symbol symbol = (Symbol) index.remove(label);
+        if (symbol == null) {
+            return;
+        }
+        table.remove(symbol);
+        if (Globals.debug) {
+            System.out.println("The symbol " + label + " has been removed from the " + this.filename + " symbol table.");
+        }
         for (int i = 0; i < table.size(); i++) {
             if (((Symbol) (table.get(i))).getName().equals(label)) {
-                table.remove(i);
-                if (Globals.debug) {
-                    System.out.println("The symbol " + label + " has been removed from the " + this.filename + " symbol table.");
-                }
+                index.put(label, table.get(i));
                 break;
             }
         }
@@ -120,12 +143,8 @@ public class SymbolTable {
      * @return The memory address of the label given, or NOT_FOUND if not found in symbol table.
      **/
     public int getAddress(String s) {
-        for (int i = 0; i < table.size(); i++) {
-            if (((Symbol) (table.get(i))).getName().equals(s)) {
-                return ((Symbol) table.get(i)).getAddress();
-            }
-        }
-        return NOT_FOUND;
+        Symbol symbol = (Symbol) index.get(s);
+        return (symbol == null) ? NOT_FOUND : symbol.getAddress();
     }
 
     /**
@@ -149,12 +168,7 @@ public class SymbolTable {
      **/
 
     public Symbol getSymbol(String s) {
-        for (int i = 0; i < table.size(); i++) {
-            if (((Symbol) (table.get(i))).getName().equals(s)) {
-                return (Symbol) table.get(i);
-            }
-        }
-        return null;
+        return (Symbol) index.get(s);
     }
 
     /**
@@ -253,6 +267,7 @@ public class SymbolTable {
 
     public void clear() {
         table = new ArrayList();
+        index = new HashMap();
     }
 
     /**
@@ -42,6 +42,8 @@ public class Token {
 
     private TokenTypes type;
     private String value;
+    private char[] valueChars; // holds the value until it is asked for, then null
+    private int valueOffset, valueLength;
     private MIPSprogram sourceMIPSprogram;
     private int sourceLine, sourcePos;
     // original program and line will differ from the above if token was defined in an included file
@@ -69,6 +71,26 @@ public class Token {
         this.originalSourceLine = line;
     }
 
+    /**
+     * Constructor for a Token whose value is a range of a source text that is never
+     * modified.  The String of the value is made the first time it is asked for.
+     *
+     * @param type              The token type that this token has. (e.g. COMMENT)
+     * @param chars             The source text holding the value
+     * @param offset            Position of the value in chars
+     * @param length            Length of the value
+     * @param sourceMIPSprogram The MIPSprogram object containing this token
+     * @param line              The line number in source program in which this token appears.
+     * @param start             The starting position in that line number of this token's source value.
+     **/
+
+    Token(TokenTypes type, char[] chars, int offset, int length, MIPSprogram sourceMIPSprogram, int line, int start) {
+        this(type, (String) null, sourceMIPSprogram, line, start);
+        this.valueChars = chars;
+        this.valueOffset = offset;
+        this.valueLength = length;
+    }
+
 
     /**
      * Set original program and line number for this token.
@@ -130,6 +152,10 @@ public class Token {
      **/
 
     public String getValue() {
+        if (value == null && valueChars != null) {
+            value = new String(valueChars, valueOffset, valueLength);
+            valueChars = null;
+        }
         return value;
     }
 
@@ -141,7 +167,7 @@ public class Token {
      */
 
     public String toString() {
-        return value;
+        return getValue();
     }
 
     /**
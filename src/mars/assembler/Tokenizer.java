@@ -1,6 +1,7 @@
 package mars.assembler;
 
 import mars.*;
+import mars.jfr.TokenizeEvent;
 
 import java.util.*;
 import java.io.*;
@@ -58,6 +59,10 @@ public class Tokenizer {
     private ErrorList errors;
     private MIPSprogram sourceMIPSprogram;
     private HashMap<String, String> equivalents; // DPS 11-July-2012
+    // Reused across lines so that tokenizing a line allocates only the Token objects
+    // and the values not seen before.  See ValueTable below.
+    private ValueTable values = new ValueTable();
+    private char[] lineBuffer = new char[128];
 
     /**
      * Simple constructor. Initializes empty error list.
@@ -87,27 +92,37 @@ public class Tokenizer {
      **/
 
     public ArrayList tokenize(MIPSprogram p) throws ProcessingException {
+        TokenizeEvent event = new TokenizeEvent();
+        event.begin();
         sourceMIPSprogram = p;
         equivalents = new HashMap<String, String>(); // DPS 11-July-2012
         ArrayList tokenList = new ArrayList();
         //ArrayList source = p.getSourceList();
-        ArrayList<SourceLine> source = processIncludes(p, new HashMap<String, String>()); // DPS 9-Jan-2013
+        Map<String, String> inclFiles = new LinkedHashMap<String, String>();
+        ArrayList<SourceLine> source = processIncludes(p, inclFiles); // DPS 9-Jan-2013
         p.setSourceLineList(source);
+        p.setIncludedFiles(new ArrayList(inclFiles.keySet()));
         TokenList currentLineTokens;
-        String sourceLine;
         for (int i = 0; i < source.size(); i++) {
-            sourceLine = source.get(i).getSource();
-            currentLineTokens = this.tokenizeLine(i + 1, sourceLine);
+            currentLineTokens = this.tokenizeSourceLine(i + 1, source.get(i));
             tokenList.add(currentLineTokens);
             // DPS 03-Jan-2013. Related to 11-July-2012. If source code substitution was made
             // based on .eqv directive during tokenizing, the processed line, a String, is
             // not the same object as the original line.  Thus I can use != instead of !equals()
             // This IF statement will replace original source with source modified by .eqv substitution.
             // Not needed by assembler, but looks better in the Text Segment Display.
-            if (sourceLine.length() > 0 && sourceLine != currentLineTokens.getProcessedLine()) {
-                source.set(i, new SourceLine(currentLineTokens.getProcessedLine(), source.get(i).getMIPSprogram(), source.get(i).getLineNumber()));
+            // Lines scanned from the source text have no processed line unless .eqv was applied.
+            String processedLine = currentLineTokens.getProcessedLine();
+            if (processedLine.length() > 0 && processedLine != source.get(i).getSource()) {
+                source.set(i, new SourceLine(processedLine, source.get(i).getMIPSprogram(), source.get(i).getLineNumber()));
             }
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = p.getFilename();
+            event.lines = source.size();
+            event.commit();
+        }
         if (errors.errorsOccurred()) {
             throw new ProcessingException(errors);
         }
@@ -122,13 +137,20 @@ public class Tokenizer {
     // files that themselves have .include.  Plus it will detect and report recursive
     // includes both direct and indirect.
     // DPS 11-Jan-2013
+    // Only lines containing the directive's name are tokenized here; the others are
+    // passed on as lines of the source text, not yet made into Strings.
     private ArrayList<SourceLine> processIncludes(MIPSprogram program, Map<String, String> inclFiles) throws ProcessingException {
-        ArrayList source = program.getSourceList();
-        ArrayList<SourceLine> result = new ArrayList<SourceLine>(source.size());
-        for (int i = 0; i < source.size(); i++) {
-            String line = (String) source.get(i);
-            TokenList tl = tokenizeLine(program, i + 1, line, false);
+        SourceText text = program.getSourceText();
+        String includeName = Directives.INCLUDE.getName().toLowerCase();
+        ArrayList<SourceLine> result = new ArrayList<SourceLine>(text.getLineCount());
+        for (int i = 0; i < text.getLineCount(); i++) {
             boolean hasInclude = false;
+            if (!text.lineContainsIgnoreCase(i, includeName)) {
+                result.add(new SourceLine(text, i, program, i + 1));
+                continue;
+            }
+            String line = text.getLine(i);
+            TokenList tl = tokenizeLine(program, i + 1, line, false);
             for (int ii = 0; ii < tl.size(); ii++) {
                 if (tl.get(ii).getValue().equalsIgnoreCase(Directives.INCLUDE.getName())
                         && (tl.size() > ii + 1)
@@ -169,6 +191,16 @@ public class Tokenizer {
         return result;
     }
 
+    /**
+     * Tells whether any .eqv equivalences have been recorded by this tokenizer.  If not,
+     * re-tokenizing a line of the program will make no substitutions.
+     *
+     * @return true if at least one .eqv directive has been processed, false otherwise.
+     **/
+    public boolean hasEquivalents() {
+        return equivalents != null && !equivalents.isEmpty();
+    }
+
     /**
      * Used only to create a token list for the example provided with each instruction
      * specification.
@@ -271,52 +303,83 @@ public class Tokenizer {
      * @return the generated token list for that line
      **/
     public TokenList tokenizeLine(MIPSprogram program, int lineNum, String theLine, boolean doEqvSubstitutes) {
-        TokenTypes tokenType;
-        TokenList result = new TokenList();
         if (theLine.length() == 0) {
-            return result;
+            return new TokenList();
+        }
+        // will be faster to work with char arrays instead of strings.  The buffer belongs to
+        // this Tokenizer and is only grown, never re-allocated per line.  The line length is
+        // kept separately since the buffer may be longer than the line.
+        int lineLength = theLine.length();
+        if (lineBuffer.length < lineLength) {
+            lineBuffer = new char[Math.max(lineLength, 2 * lineBuffer.length)];
+        }
+        theLine.getChars(0, lineLength, lineBuffer, 0);
+        TokenList result = scanLine(program, lineNum, lineBuffer, 0, lineLength, false);
+        if (doEqvSubstitutes) {
+            result = processEqv(program, lineNum, theLine, result); // DPS 11-July-2012
         }
-        // will be faster to work with char arrays instead of strings
+        return result;
+    }
+
+    // Tokenize a line of the program being tokenized, performing .eqv substitutions.  A line
+    // of the source text is scanned where it lies, and its String is only made if an .eqv
+    // directive or substitution needs it.
+    private TokenList tokenizeSourceLine(int lineNum, SourceLine line) {
+        SourceText text = line.getText();
+        if (text == null) {
+            return tokenizeLine(lineNum, line.getSource());
+        }
+        int index = line.getTextIndex();
+        TokenList result = scanLine(sourceMIPSprogram, lineNum, text.getChars(),
+                text.getLineStart(index), text.getLineEnd(index), true);
+        if (eqvApplies(result)) {
+            result = processEqv(sourceMIPSprogram, lineNum, line.getSource(), result);
+        }
+        return result;
+    }
+
+    // Tokenize the line held in chars from lineStart up to lineEnd.  A token is always a
+    // run of consecutive characters of the line, so it is passed on as its offset and
+    // length.  If keepChars is true, chars is never modified and tokens may refer to it.
+    private TokenList scanLine(MIPSprogram program, int lineNum, char[] chars, int lineStart, int lineEnd,
+                               boolean keepChars) {
+        TokenList result = new TokenList();
         char c;
-        char[] line = theLine.toCharArray();
-        int linePos = 0;
-        char[] token = new char[line.length];
-        int tokenPos = 0;
-        int tokenStartPos = 1;
+        int pos = lineStart;
+        int tokenStart = lineStart;
+        int tokenLength = 0;
         boolean insideQuotedString = false;
         if (Globals.debug) {
-            System.out.println("source line --->" + theLine + "<---");
+            System.out.println("source line --->" + new String(chars, lineStart, lineEnd - lineStart) + "<---");
         }
         // Each iteration of this loop processes one character in the source line.
-        while (linePos < line.length) {
-            c = line[linePos];
+        while (pos < lineEnd) {
+            c = chars[pos];
             if (insideQuotedString) { // everything goes into token
-                token[tokenPos++] = c;
-                if (c == '"' && token[tokenPos - 2] != '\\') { // If quote not preceded by backslash, this is end
-                    this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                    tokenPos = 0;
+                tokenLength++;
+                if (c == '"' && chars[pos - 1] != '\\') { // If quote not preceded by backslash, this is end
+                    this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, tokenLength, keepChars, program, lineNum, result);
+                    tokenLength = 0;
                     insideQuotedString = false;
                 }
             } else { // not inside a quoted string, so be sensitive to delimiters
                 switch (c) {
                     case '#':  // # denotes comment that takes remainder of line
-                        if (tokenPos > 0) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                            tokenPos = 0;
+                        if (tokenLength > 0) {
+                            this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, tokenLength, keepChars, program, lineNum, result);
                         }
-                        tokenStartPos = linePos + 1;
-                        tokenPos = line.length - linePos;
-                        System.arraycopy(line, linePos, token, 0, tokenPos);
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                        linePos = line.length;
-                        tokenPos = 0;
+                        tokenStart = pos;
+                        tokenLength = lineEnd - pos;
+                        this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, tokenLength, keepChars, program, lineNum, result);
+                        pos = lineEnd;
+                        tokenLength = 0;
                         break;
                     case ' ':
                     case '\t':
                     case ',': // space, tab or comma is delimiter
-                        if (tokenPos > 0) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                            tokenPos = 0;
+                        if (tokenLength > 0) {
+                            this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, tokenLength, keepChars, program, lineNum, result);
+                            tokenLength = 0;
                         }
                         break;
                     // These two guys are special.  Will be recognized as unary if and only if two conditions hold:
@@ -327,122 +390,132 @@ public class Tokenizer {
                     case '-':
                         // Here's the REAL hack: recognizing signed exponent in E-notation floating point!
                         // (e.g. 1.2e-5) Add the + or - to the token and keep going.  DPS 17 Aug 2005
-                        if (tokenPos > 0 && line.length >= linePos + 2 && Character.isDigit(line[linePos + 1]) &&
-                                (line[linePos - 1] == 'e' || line[linePos - 1] == 'E')) {
-                            token[tokenPos++] = c;
+                        if (tokenLength > 0 && lineEnd >= pos + 2 && Character.isDigit(chars[pos + 1]) &&
+                                (chars[pos - 1] == 'e' || chars[pos - 1] == 'E')) {
+                            tokenLength++;
                             break;
                         }
                         // End of REAL hack.
-                        if (tokenPos > 0) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                            tokenPos = 0;
+                        if (tokenLength > 0) {
+                            this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, tokenLength, keepChars, program, lineNum, result);
                         }
-                        tokenStartPos = linePos + 1;
-                        token[tokenPos++] = c;
+                        tokenStart = pos;
+                        tokenLength = 1;
                         if (!((result.isEmpty() || ((Token) result.get(result.size() - 1)).getType() != TokenTypes.IDENTIFIER) &&
-                                (line.length >= linePos + 2 && Character.isDigit(line[linePos + 1])))) {
+                                (lineEnd >= pos + 2 && Character.isDigit(chars[pos + 1])))) {
                             // treat it as binary.....
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                            tokenPos = 0;
+                            this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, tokenLength, keepChars, program, lineNum, result);
+                            tokenLength = 0;
                         }
                         break;
                     // these are other single-character tokens
                     case ':':
                     case '(':
                     case ')':
-                        if (tokenPos > 0) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                            tokenPos = 0;
+                        if (tokenLength > 0) {
+                            this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, tokenLength, keepChars, program, lineNum, result);
                         }
-                        tokenStartPos = linePos + 1;
-                        token[tokenPos++] = c;
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                        tokenPos = 0;
+                        tokenStart = pos;
+                        this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, 1, keepChars, program, lineNum, result);
+                        tokenLength = 0;
                         break;
                     case '"': // we're not inside a quoted string, so start a new token...
-                        if (tokenPos > 0) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                            tokenPos = 0;
+                        if (tokenLength > 0) {
+                            this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, tokenLength, keepChars, program, lineNum, result);
                         }
-                        tokenStartPos = linePos + 1;
-                        token[tokenPos++] = c;
+                        tokenStart = pos;
+                        tokenLength = 1;
                         insideQuotedString = true;
                         break;
                     case '\'': // start of character constant (single quote).
-                        if (tokenPos > 0) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                            tokenPos = 0;
+                        if (tokenLength > 0) {
+                            this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, tokenLength, keepChars, program, lineNum, result);
                         }
                         // Our strategy is to process the whole thing right now...
-                        tokenStartPos = linePos + 1;
-                        token[tokenPos++] = c; // Put the quote in token[0]
-                        int lookaheadChars = line.length - linePos - 1;
+                        tokenStart = pos;
+                        tokenLength = 1; // the quote
+                        int lookaheadChars = lineEnd - pos - 1;
                         // need minimum 2 more characters, 1 for char and 1 for ending quote
                         if (lookaheadChars < 2) {
                             break;  // gonna be an error
                         }
-                        c = line[++linePos];
-                        token[tokenPos++] = c; // grab second character, put it in token[1]
+                        c = chars[++pos];
+                        tokenLength++; // second character
                         if (c == '\'') {
                             break; // gonna be an error: nothing between the quotes
                         }
-                        c = line[++linePos];
-                        token[tokenPos++] = c; // grab third character, put it in token[2]
+                        c = chars[++pos];
+                        tokenLength++; // third character
                         // Process if we've either reached second, non-escaped, quote or end of line.
-                        if (c == '\'' && token[1] != '\\' || lookaheadChars == 2) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                            tokenPos = 0;
-                            tokenStartPos = linePos + 1;
+                        if (c == '\'' && chars[tokenStart + 1] != '\\' || lookaheadChars == 2) {
+                            this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, tokenLength, keepChars, program, lineNum, result);
+                            tokenLength = 0;
                             break;
                         }
                         // At this point, there is at least one more character on this line. If we're
                         // still here after seeing a second quote, it was escaped.  Not done yet;
                         // we either have an escape code, an octal code (also escaped) or invalid.
-                        c = line[++linePos];
-                        token[tokenPos++] = c; // grab fourth character, put it in token[3]
+                        c = chars[++pos];
+                        tokenLength++; // fourth character
                         // Process, if this is ending quote for escaped character or if at end of line
                         if (c == '\'' || lookaheadChars == 3) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                            tokenPos = 0;
-                            tokenStartPos = linePos + 1;
+                            this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, tokenLength, keepChars, program, lineNum, result);
+                            tokenLength = 0;
                             break;
                         }
                         // At this point, we've handled all legal possibilities except octal, e.g. '\377'
                         // Proceed, if enough characters remain to finish off octal.
                         if (lookaheadChars >= 5) {
-                            c = line[++linePos];
-                            token[tokenPos++] = c;  // grab fifth character, put it in token[4]
+                            c = chars[++pos];
+                            tokenLength++; // fifth character
                             if (c != '\'') {
                                 // still haven't reached end, last chance for validity!
-                                c = line[++linePos];
-                                token[tokenPos++] = c;  // grab sixth character, put it in token[5]
+                                c = chars[++pos];
+                                tokenLength++; // sixth character
                             }
                         }
                         // process no matter what...we either have a valid character by now or not
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                        tokenPos = 0;
-                        tokenStartPos = linePos + 1;
+                        this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, tokenLength, keepChars, program, lineNum, result);
+                        tokenLength = 0;
                         break;
                     default:
-                        if (tokenPos == 0) {
-                            tokenStartPos = linePos + 1;
+                        if (tokenLength == 0) {
+                            tokenStart = pos;
                         }
-                        token[tokenPos++] = c;
+                        tokenLength++;
                         break;
                 }  // switch
             } // if (insideQuotedString)
-            linePos++;
+            pos++;
         }  // while
-        if (tokenPos > 0) {
-            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-            tokenPos = 0;
-        }
-        if (doEqvSubstitutes) {
-            result = processEqv(program, lineNum, theLine, result); // DPS 11-July-2012
+        if (tokenLength > 0) {
+            this.processCandidateToken(chars, lineStart, lineEnd, tokenStart, tokenLength, keepChars, program, lineNum, result);
         }
         return result;
     }
 
+    // Tells whether processEqv() has anything to do for a line: it holds a .eqv directive,
+    // or an identifier defined by one.
+    private boolean eqvApplies(TokenList tokens) {
+        if (tokens.size() > 2) {
+            for (int dirPos = 0; dirPos <= 2; dirPos += 2) {
+                Token token = tokens.get(dirPos);
+                if (token.getType() == TokenTypes.DIRECTIVE && Directives.matchDirective(token.getValue()) == Directives.EQV) {
+                    return true;
+                }
+            }
+        }
+        if (equivalents != null && !equivalents.isEmpty()) {
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                if (token.getType() == TokenTypes.IDENTIFIER && equivalents.containsKey(token.getValue())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     // Process the .eqv directive, which needs to be applied prior to tokenizing of subsequent statements.
     // This handles detecting that theLine contains a .eqv directive, in which case it needs
     // to be added to the HashMap of equivalents.  It also handles detecting that theLine
@@ -501,7 +574,8 @@ public class Tokenizer {
         boolean substitutionMade = false;
         for (int i = 0; i < tokens.size(); i++) {
             Token token = tokens.get(i);
-            if (token.getType() == TokenTypes.IDENTIFIER && equivalents != null && equivalents.containsKey(token.getValue())) {
+            if (token.getType() == TokenTypes.IDENTIFIER && equivalents != null && !equivalents.isEmpty()
+                    && equivalents.containsKey(token.getValue())) {
                 // do the substitution
                 String sub = equivalents.get(token.getValue());
                 int startPos = token.getStartPos();
@@ -527,16 +601,41 @@ public class Tokenizer {
 
 
     // Given candidate token and its position, will classify and record it.
-    private void processCandidateToken(char[] token, MIPSprogram program, int line, String theLine,
-                                       int tokenPos, int tokenStartPos, TokenList tokenList) {
-        String value = new String(token, 0, tokenPos);
-        if (value.length() > 0 && value.charAt(0) == '\'') {
-            value = preprocessCharacterLiteral(value);
+    // Operators, registers, numbers and identifiers repeat endlessly in a source file, so
+    // they are looked up in the value table straight from the char buffer: a value seen
+    // before costs neither a String nor another matchTokenType().  Comments and quoted
+    // strings are mostly unique and are classified by their first character; if the
+    // buffer is kept, their String is left for Token.getValue() to make if ever asked for.
+    // Character literals are translated to their integer value right away.
+    private void processCandidateToken(char[] chars, int lineStart, int lineEnd, int offset, int length,
+                                       boolean keepChars, MIPSprogram program, int line, TokenList tokenList) {
+        int tokenStartPos = offset - lineStart + 1;
+        String value;
+        TokenTypes type;
+        char first = chars[offset];
+        if (first == '#' || first == '"') {
+            // As TokenTypes.matchTokenType() would classify them.
+            type = (first == '#') ? TokenTypes.COMMENT : TokenTypes.QUOTED_STRING;
+            if (keepChars) {
+                tokenList.add(new Token(type, chars, offset, length, program, line, tokenStartPos));
+                return;
+            }
+            value = new String(chars, offset, length);
+        } else if (first == '\'') {
+            value = preprocessCharacterLiteral(new String(chars, offset, length));
+            type = TokenTypes.matchTokenType(value);
+        } else {
+            int slot = values.find(chars, offset, length);
+            if (values.valueAt(slot) == null) {
+                String newValue = new String(chars, offset, length);
+                slot = values.add(slot, newValue, TokenTypes.matchTokenType(newValue));
+            }
+            value = values.valueAt(slot);
+            type = values.typeAt(slot);
         }
-        TokenTypes type = TokenTypes.matchTokenType(value);
         if (type == TokenTypes.ERROR) {
             errors.add(new ErrorMessage(program, line, tokenStartPos,
-                    theLine + "\nInvalid language element: " + value));
+                    new String(chars, lineStart, lineEnd - lineStart) + "\nInvalid language element: " + value));
         }
         Token toke = new Token(type, value, program, line, tokenStartPos);
         tokenList.add(toke);
@@ -573,4 +672,73 @@ public class Tokenizer {
         }
         return value;
     }
+
+    //////////////////////////////////////////////////////////////////////////////////
+    //  Table of token values seen so far by this Tokenizer, each with its TokenTypes
+    //  classification.  matchTokenType() depends on nothing but the value, so the
+    //  classification can be reused.  Lookup is by a range of the char buffer, so no
+    //  String is created for a value that is already in the table.  Open addressing
+    //  with linear probing; the table doubles when it gets half full.
+    private static class ValueTable {
+        private String[] keys = new String[1024];
+        private TokenTypes[] types = new TokenTypes[1024];
+        private int count = 0;
+
+        // Returns the slot holding the value, or the empty slot where it belongs.
+        int find(char[] chars, int offset, int length) {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + chars[offset + i];
+            }
+            int mask = keys.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != null && !matches(keys[slot], chars, offset, length)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        // Stores value into the empty slot returned by find().  Returns its slot,
+        // which moves if the table had to grow.
+        int add(int slot, String value, TokenTypes type) {
+            keys[slot] = value;
+            types[slot] = type;
+            count++;
+            if (2 * count > keys.length) {
+                String[] oldKeys = keys;
+                TokenTypes[] oldTypes = types;
+                keys = new String[2 * oldKeys.length];
+                types = new TokenTypes[keys.length];
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != null) {
+                        int newSlot = find(oldKeys[i].toCharArray(), 0, oldKeys[i].length());
+                        keys[newSlot] = oldKeys[i];
+                        types[newSlot] = oldTypes[i];
+                    }
+                }
+                slot = find(value.toCharArray(), 0, value.length());
+            }
+            return slot;
+        }
+
+        String valueAt(int slot) {
+            return keys[slot];
+        }
+
+        TokenTypes typeAt(int slot) {
+            return types[slot];
+        }
+
+        private static boolean matches(String key, char[] chars, int offset, int length) {
+            if (key.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (key.charAt(i) != chars[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
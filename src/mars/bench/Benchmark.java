@@ -0,0 +1,46 @@
+package mars.bench;
+
+/**
+ * An operation whose throughput is measured by {@link BenchmarkRunner}.  The runner
+ * calls setUp() and then run() repeatedly; only run() is timed.  run() returns how
+ * many units of work it did (instructions simulated, words read, lines assembled),
+ * and the score is units per second.  The returned count is also consumed by the
+ * runner, so work whose result is otherwise unused is not optimized away.
+ */
+public abstract class Benchmark {
+    private String name;
+    private String unit;
+
+    /**
+     * @param name name of the benchmark, as reported and as matched by name filters.
+     * @param unit the unit of work counted by run(), for the report.
+     */
+    protected Benchmark(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Prepare for the next call to run().  Not timed.  Does nothing unless overridden.
+     *
+     * @throws Exception if preparation fails, which ends the benchmark.
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Do the work being measured.
+     *
+     * @return units of work done.
+     * @throws Exception if the work fails, which ends the benchmark.
+     */
+    public abstract long run() throws Exception;
+}
@@ -0,0 +1,253 @@
+package mars.bench;
+
+import mars.util.JsonWriter;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/**
+ * Measures the throughput of benchmarks in the way JMH's throughput mode does, without
+ * depending on it: a number of warmup iterations, whose results are discarded so the
+ * JIT compiler can settle, then a number of measurement iterations.  Each iteration
+ * calls the benchmark repeatedly until the time spent in run() reaches the iteration
+ * time.  The score of an iteration is units of work per second; the result is the
+ * mean of the measurement iterations, with their standard deviation and the
+ * half-width of the 99.9% confidence interval.
+ * <p>
+ * Unlike JMH, benchmarks run in the same JVM as the runner and each other, so run
+ * one benchmark per JVM (by name filter) when comparisons must be exact.
+ */
+public class BenchmarkRunner {
+    // Student's t quantiles for a two-sided 99.9% interval, by degrees of freedom 1 to 30.
+    private static final double[] T_999 = {
+            636.62, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+            4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+            3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646
+    };
+    private static final double Z_999 = 3.291;
+
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private long iterationMillis = 1000;
+    private PrintStream log;
+    // Receives the counts returned by run(), so their computation cannot be eliminated.
+    private volatile long sink;
+
+    /**
+     * @param log stream on which progress is reported, one line per iteration, or null for none.
+     */
+    public BenchmarkRunner(PrintStream log) {
+        this.log = log;
+    }
+
+    public void setWarmupIterations(int iterations) {
+        warmupIterations = iterations;
+    }
+
+    public void setMeasurementIterations(int iterations) {
+        measurementIterations = iterations;
+    }
+
+    public void setIterationMillis(long milliseconds) {
+        iterationMillis = milliseconds;
+    }
+
+    public int getWarmupIterations() {
+        return warmupIterations;
+    }
+
+    public long getIterationMillis() {
+        return iterationMillis;
+    }
+
+    /**
+     * Measure a benchmark.
+     *
+     * @param benchmark the benchmark.
+     * @return its result.
+     * @throws Exception if setUp() or run() fails.
+     */
+    public Result measure(Benchmark benchmark) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            double score = iteration(benchmark);
+            if (log != null) {
+                log.println("# " + benchmark.getName() + " warmup " + (i + 1) + ": " + format(score) + " " + benchmark.getUnit() + "/s");
+            }
+        }
+        double[] scores = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            scores[i] = iteration(benchmark);
+            if (log != null) {
+                log.println("# " + benchmark.getName() + " iteration " + (i + 1) + ": " + format(scores[i]) + " " + benchmark.getUnit() + "/s");
+            }
+        }
+        return new Result(benchmark.getName(), benchmark.getUnit() + "/s", scores);
+    }
+
+    // Units per second over one iteration.
+    private double iteration(Benchmark benchmark) throws Exception {
+        long limit = iterationMillis * 1000000L;
+        long nanoseconds = 0;
+        long units = 0;
+        do {
+            benchmark.setUp();
+            long start = System.nanoTime();
+            long done = benchmark.run();
+            nanoseconds += System.nanoTime() - start;
+            units += done;
+            sink += done;
+        } while (nanoseconds < limit);
+        return units * 1e9 / nanoseconds;
+    }
+
+    /**
+     * Print results as a table, one line per benchmark.
+     *
+     * @param results ArrayList of Result.
+     * @param out     stream to print on.
+     */
+    public static void printTable(ArrayList results, PrintStream out) {
+        int width = "Benchmark".length();
+        for (int i = 0; i < results.size(); i++) {
+            width = Math.max(width, ((Result) results.get(i)).getName().length());
+        }
+        out.println(pad("Benchmark", width) + "  Cnt  " + padLeft("Score", 14) + "    " + padLeft("Error", 12) + "  Units");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = (Result) results.get(i);
+            out.println(pad(result.getName(), width) + "  " + padLeft(Integer.toString(result.getCount()), 3) + "  "
+                    + padLeft(format(result.getScore()), 14) + " +- " + padLeft(format(result.getError()), 12)
+                    + "  " + result.getUnit());
+        }
+    }
+
+    /**
+     * Write results as JSON: an array with one object per benchmark, laid out like the
+     * output of JMH's JSON result format so the same tools can read either.
+     *
+     * @param results ArrayList of Result.
+     * @param out     stream to write to.
+     */
+    public void writeJson(ArrayList results, PrintStream out) {
+        JsonWriter json = new JsonWriter(out);
+        json.beginArray();
+        for (int i = 0; i < results.size(); i++) {
+            Result result = (Result) results.get(i);
+            json.beginObject();
+            json.name("benchmark").value(result.getName());
+            json.name("mode").value("thrpt");
+            json.name("threads").value(1);
+            json.name("forks").value(0);
+            json.name("jvm").value(System.getProperty("java.home"));
+            json.name("jdkVersion").value(System.getProperty("java.version"));
+            json.name("vmName").value(System.getProperty("java.vm.name"));
+            json.name("warmupIterations").value(warmupIterations);
+            json.name("warmupTime").value(iterationMillis + " ms");
+            json.name("measurementIterations").value(result.getCount());
+            json.name("measurementTime").value(iterationMillis + " ms");
+            json.name("primaryMetric").beginObject();
+            json.name("score").value(result.getScore());
+            json.name("scoreError").value(result.getError());
+            json.name("scoreConfidence").beginArray()
+                    .value(result.getScore() - result.getError()).value(result.getScore() + result.getError()).endArray();
+            json.name("scoreStdev").value(result.getStandardDeviation());
+            json.name("scoreUnit").value(result.getUnit());
+            json.name("rawData").beginArray().beginArray();
+            double[] scores = result.getScores();
+            for (int j = 0; j < scores.length; j++) {
+                json.value(scores[j]);
+            }
+            json.endArray().endArray();
+            json.endObject();
+            json.endObject();
+        }
+        json.endArray();
+        json.finish();
+    }
+
+    static String format(double value) {
+        return String.format("%.3f", value);
+    }
+
+    private static String pad(String string, int width) {
+        StringBuffer result = new StringBuffer(string);
+        while (result.length() < width) {
+            result.append(' ');
+        }
+        return result.toString();
+    }
+
+    private static String padLeft(String string, int width) {
+        StringBuffer result = new StringBuffer();
+        for (int i = string.length(); i < width; i++) {
+            result.append(' ');
+        }
+        return result.append(string).toString();
+    }
+
+    /**
+     * The result of measuring one benchmark.
+     */
+    public static class Result {
+        private String name;
+        private String unit;
+        private double[] scores;
+        private double mean;
+        private double standardDeviation;
+
+        Result(String name, String unit, double[] scores) {
+            this.name = name;
+            this.unit = unit;
+            this.scores = scores;
+            double sum = 0;
+            for (int i = 0; i < scores.length; i++) {
+                sum += scores[i];
+            }
+            mean = (scores.length > 0) ? sum / scores.length : Double.NaN;
+            double squares = 0;
+            for (int i = 0; i < scores.length; i++) {
+                squares += (scores[i] - mean) * (scores[i] - mean);
+            }
+            standardDeviation = (scores.length > 1) ? Math.sqrt(squares / (scores.length - 1)) : Double.NaN;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public int getCount() {
+            return scores.length;
+        }
+
+        public double[] getScores() {
+            return scores;
+        }
+
+        /**
+         * @return mean score of the measurement iterations.
+         */
+        public double getScore() {
+            return mean;
+        }
+
+        public double getStandardDeviation() {
+            return standardDeviation;
+        }
+
+        /**
+         * @return half-width of the 99.9% confidence interval of the score, or NaN if
+         * there were fewer than two measurement iterations.
+         */
+        public double getError() {
+            int freedom = scores.length - 1;
+            if (freedom < 1) {
+                return Double.NaN;
+            }
+            double t = (freedom <= T_999.length) ? T_999[freedom - 1] : Z_999;
+            return t * standardDeviation / Math.sqrt(scores.length);
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package mars.bench;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.assembler.TokenList;
+import mars.assembler.Tokenizer;
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+import mars.simulator.Simulator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/**
+ * Micro-benchmarks of the paths MARS spends its time on, so a change to one of them
+ * can be shown to help or hurt:
+ * <ul>
+ * <li>memory.*: Memory.getWord, setWord and getByte across the data, heap and stack
+ * segments, and Memory.getStatement in the text segment (instruction fetch).
+ * <li>decoder.findByBinaryCode: InstructionSet.findByBinaryCode on the machine code of
+ * the bundled kernels.
+ * <li>simulator.&lt;kernel&gt;: instructions simulated per second running each of the
+ * kernels in {@link Kernels}.  Assembly before each run is not timed.
+ * <li>simulator.recursion, simulator.syscalls: the same for programs of those kinds
+ * from {@link WorkloadGenerator}.
+ * <li>tokenizer.tokenizeLine: Tokenizer.tokenizeLine on the lines of a mixed program
+ * from {@link WorkloadGenerator}, each line a String.
+ * <li>tokenizer.tokenize: reading the same program whole and tokenizing it from its
+ * char buffer, as the assembler does.
+ * <li>assembler.&lt;kind&gt;: tokenizing and assembling a program of each of the other
+ * kinds from {@link WorkloadGenerator}.
+ * </ul>
+ * Generated programs have size 100000 unless the -lines option says otherwise; the
+ * tokenizer benchmarks use a program of 1000000 lines unless -tlines says otherwise.
+ * Run with <tt>java -cp Mars.jar mars.bench.HotPathBenchmarks [options] [name ...]</tt>.
+ * Names select the benchmarks whose names contain any of them; the default is all.
+ * Options: <tt>-wi n</tt> warmup iterations (default 3), <tt>-i n</tt> measurement
+ * iterations (default 5), <tt>-t ms</tt> iteration time (default 1000), <tt>-lines n</tt>
+ * size of the generated program, <tt>-tlines n</tt> size of the tokenizer program, <tt>-json file</tt> write results as JSON, <tt>-l</tt>
+ * list the benchmarks.
+ */
+public class HotPathBenchmarks {
+    private static final int MEMORY_WORDS = 4096;
+    private static final int DEFAULT_LINES = 100000;
+    private static final int DEFAULT_TOKENIZER_LINES = 1000000;
+    private static final PrintStream NOWHERE = new PrintStream(new OutputStream() {
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int offset, int length) {
+        }
+    });
+
+    public static void main(String[] args) {
+        BenchmarkRunner runner = new BenchmarkRunner(System.out);
+        int lines = DEFAULT_LINES;
+        int tokenizerLines = DEFAULT_TOKENIZER_LINES;
+        String jsonFile = null;
+        boolean list = false;
+        ArrayList names = new ArrayList();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-wi") && i + 1 < args.length) {
+                    runner.setWarmupIterations(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-i") && i + 1 < args.length) {
+                    runner.setMeasurementIterations(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-t") && i + 1 < args.length) {
+                    runner.setIterationMillis(Long.parseLong(args[++i]));
+                } else if (args[i].equals("-lines") && i + 1 < args.length) {
+                    lines = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-tlines") && i + 1 < args.length) {
+                    tokenizerLines = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-json") && i + 1 < args.length) {
+                    jsonFile = args[++i];
+                } else if (args[i].equals("-l")) {
+                    list = true;
+                } else if (args[i].startsWith("-")) {
+                    usage();
+                    return;
+                } else {
+                    names.add(args[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            usage();
+            return;
+        }
+        System.setProperty("java.awt.headless", "true");
+        Globals.initialize(false);
+        Simulator.getInstance().setSnapshotReadersOnly(true); // as on the command line
+        ArrayList results = new ArrayList();
+        try {
+            ArrayList benchmarks = createBenchmarks(lines, tokenizerLines);
+            for (int i = 0; i < benchmarks.size(); i++) {
+                Benchmark benchmark = (Benchmark) benchmarks.get(i);
+                if (!selected(benchmark.getName(), names)) {
+                    continue;
+                }
+                if (list) {
+                    System.out.println(benchmark.getName());
+                } else {
+                    results.add(runner.measure(benchmark));
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("Benchmark failed: " + describe(e));
+            System.exit(1);
+        }
+        if (list) {
+            return;
+        }
+        System.out.println();
+        BenchmarkRunner.printTable(results, System.out);
+        if (jsonFile != null) {
+            try {
+                PrintStream json = new PrintStream(new FileOutputStream(jsonFile));
+                runner.writeJson(results, json);
+                json.close();
+            } catch (IOException e) {
+                System.out.println("Cannot write " + jsonFile + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java -cp Mars.jar mars.bench.HotPathBenchmarks [-wi n] [-i n] [-t ms] [-lines n] [-tlines n] [-json file] [-l] [name ...]");
+    }
+
+    private static boolean selected(String name, ArrayList names) {
+        if (names.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < names.size(); i++) {
+            if (name.indexOf((String) names.get(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String describe(Exception e) {
+        if (e instanceof ProcessingException && ((ProcessingException) e).errors() != null) {
+            return ((ProcessingException) e).errors().generateErrorReport();
+        }
+        return e.toString();
+    }
+
+    private static ArrayList createBenchmarks(int lines, int tokenizerLines) throws Exception {
+        File directory = Kernels.createTemporaryDirectory();
+        File[] kernels = new File[Kernels.NAMES.length];
+        for (int i = 0; i < kernels.length; i++) {
+            kernels[i] = Kernels.extract(Kernels.NAMES[i], directory);
+        }
+        ArrayList benchmarks = new ArrayList();
+        int[] bases = {Memory.dataBaseAddress, Memory.heapBaseAddress, Memory.stackBaseAddress - 4 * MEMORY_WORDS};
+        String[] segments = {"data", "heap", "stack"};
+        for (int i = 0; i < bases.length; i++) {
+            benchmarks.add(new MemoryBenchmark("memory.getWord." + segments[i], MemoryBenchmark.GET_WORD, bases[i]));
+            benchmarks.add(new MemoryBenchmark("memory.setWord." + segments[i], MemoryBenchmark.SET_WORD, bases[i]));
+            benchmarks.add(new MemoryBenchmark("memory.getByte." + segments[i], MemoryBenchmark.GET_BYTE, bases[i]));
+        }
+        benchmarks.add(new FetchBenchmark(kernels[kernels.length - 1]));
+        benchmarks.add(new DecoderBenchmark(kernels));
+        for (int i = 0; i < kernels.length; i++) {
+            benchmarks.add(new SimulatorBenchmark("simulator." + Kernels.NAMES[i], kernels[i]));
+        }
+        for (int i = 0; i < WorkloadGenerator.KINDS.length; i++) {
+            String kind = WorkloadGenerator.KINDS[i];
+            File file = new File(directory, kind + ".asm");
+            generate(file, kind, lines);
+            if (kind.equals("recursion") || kind.equals("syscalls")) {
+                benchmarks.add(new SimulatorBenchmark("simulator." + kind, file));
+            } else {
+                benchmarks.add(new AssemblerBenchmark("assembler." + kind, file));
+            }
+        }
+        File tokenizerFile = new File(directory, "tokenizer.asm");
+        benchmarks.add(new TokenizerBenchmark("tokenizer.tokenizeLine", tokenizerFile, tokenizerLines, false));
+        benchmarks.add(new TokenizerBenchmark("tokenizer.tokenize", tokenizerFile, tokenizerLines, true));
+        return benchmarks;
+    }
+
+    // Write a program from WorkloadGenerator to a temporary file.
+    private static void generate(File file, String kind, int lines) throws IOException {
+        file.deleteOnExit();
+        PrintStream out = new PrintStream(new FileOutputStream(file));
+        WorkloadGenerator.generate(kind, lines, out);
+        out.close();
+    }
+
+    // Assemble a program, leaving it ready to run from its first instruction.
+    private static MIPSprogram assemble(File file) throws ProcessingException {
+        MIPSprogram program = new MIPSprogram();
+        ArrayList files = new ArrayList();
+        files.add(file.getPath());
+        ArrayList programs = program.prepareFilesForAssembly(files, file.getPath(), null);
+        program.assemble(programs, true, false);
+        RegisterFile.resetRegisters();
+        Coprocessor1.resetRegisters();
+        Coprocessor0.resetRegisters();
+        RegisterFile.initializeProgramCounter(false);
+        return program;
+    }
+
+    private static String[] readLines(File file) throws IOException {
+        ArrayList lines = new ArrayList();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                lines.add(line);
+            }
+        } finally {
+            in.close();
+        }
+        return (String[]) lines.toArray(new String[lines.size()]);
+    }
+
+    private static class MemoryBenchmark extends Benchmark {
+        static final int GET_WORD = 0;
+        static final int SET_WORD = 1;
+        static final int GET_BYTE = 2;
+        private int kind;
+        private int base;
+        int checksum; // keeps the values read from being optimized away
+
+        MemoryBenchmark(String name, int kind, int base) {
+            super(name, "accesses");
+            this.kind = kind;
+            this.base = base;
+        }
+
+        public void setUp() throws Exception {
+            Globals.memory.clear();
+        }
+
+        public long run() throws Exception {
+            Memory memory = Globals.memory;
+            int result = 0;
+            int limit = base + 4 * MEMORY_WORDS;
+            switch (kind) {
+                case GET_WORD:
+                    for (int address = base; address != limit; address += 4) {
+                        result += memory.getWord(address);
+                    }
+                    break;
+                case SET_WORD:
+                    for (int address = base; address != limit; address += 4) {
+                        result += memory.setWord(address, address);
+                    }
+                    break;
+                default:
+                    for (int address = base; address != limit; address += 4) {
+                        result += memory.getByte(address + (address >> 2 & 3));
+                    }
+                    break;
+            }
+            checksum = result;
+            return MEMORY_WORDS;
+        }
+    }
+
+    private static class FetchBenchmark extends Benchmark {
+        private File file;
+        private int[] addresses;
+
+        FetchBenchmark(File file) {
+            super("memory.getStatement.text", "fetches");
+            this.file = file;
+        }
+
+        public void setUp() throws Exception {
+            if (addresses == null) {
+                ArrayList statements = assemble(file).getMachineList();
+                addresses = new int[statements.size()];
+                for (int i = 0; i < addresses.length; i++) {
+                    addresses[i] = ((ProgramStatement) statements.get(i)).getAddress();
+                }
+            }
+        }
+
+        public long run() throws Exception {
+            long fetched = 0;
+            for (int repeat = 0; repeat < 16; repeat++) {
+                for (int i = 0; i < addresses.length; i++) {
+                    if (Globals.memory.getStatement(addresses[i]) != null) {
+                        fetched++;
+                    }
+                }
+            }
+            return fetched;
+        }
+    }
+
+    private static class DecoderBenchmark extends Benchmark {
+        private File[] files;
+        private int[] codes;
+
+        DecoderBenchmark(File[] files) {
+            super("decoder.findByBinaryCode", "instructions");
+            this.files = files;
+        }
+
+        public void setUp() throws Exception {
+            if (codes == null) {
+                ArrayList all = new ArrayList();
+                for (int i = 0; i < files.length; i++) {
+                    all.addAll(assemble(files[i]).getMachineList());
+                }
+                codes = new int[all.size()];
+                for (int i = 0; i < codes.length; i++) {
+                    codes[i] = ((ProgramStatement) all.get(i)).getBinaryStatement();
+                }
+            }
+        }
+
+        public long run() {
+            long found = 0;
+            for (int repeat = 0; repeat < 16; repeat++) {
+                for (int i = 0; i < codes.length; i++) {
+                    if (Globals.instructionSet.findByBinaryCode(codes[i]) != null) {
+                        found++;
+                    }
+                }
+            }
+            return found;
+        }
+    }
+
+    private static class SimulatorBenchmark extends Benchmark {
+        private File file;
+        private MIPSprogram program;
+
+        SimulatorBenchmark(String name, File file) {
+            super(name, "instructions");
+            this.file = file;
+        }
+
+        public void setUp() throws Exception {
+            program = assemble(file);
+        }
+
+        public long run() throws Exception {
+            Simulator simulator = Simulator.getInstance();
+            long start = simulator.getInstructionCount();
+            PrintStream out = System.out;
+            System.setOut(NOWHERE);
+            try {
+                program.simulate(-1);
+            } finally {
+                System.setOut(out);
+            }
+            return simulator.getInstructionCount() - start;
+        }
+    }
+
+    // Tokenizes a mixed program, generated when first set up, either line by line from
+    // Strings read beforehand, or by reading the file whole and tokenizing it as the
+    // assembler does.  The two benchmarks share the file.
+    private static class TokenizerBenchmark extends Benchmark {
+        private File file;
+        private int size;
+        private boolean whole;
+        private String[] lines;
+        private int lineCount;
+        long tokens; // keeps the token lists from being optimized away
+
+        TokenizerBenchmark(String name, File file, int size, boolean whole) {
+            super(name, "lines");
+            this.file = file;
+            this.size = size;
+            this.whole = whole;
+        }
+
+        public void setUp() throws Exception {
+            if (!file.exists()) {
+                generate(file, "mixed", size);
+            }
+            if (lineCount == 0) {
+                lines = readLines(file);
+                lineCount = lines.length;
+                if (whole) {
+                    lines = null;
+                }
+            }
+        }
+
+        public long run() throws Exception {
+            long tokens = 0;
+            if (whole) {
+                MIPSprogram program = new MIPSprogram();
+                program.readSource(file.getPath());
+                program.tokenize();
+                ArrayList tokenLists = program.getTokenList();
+                for (int i = 0; i < tokenLists.size(); i++) {
+                    tokens += ((TokenList) tokenLists.get(i)).size();
+                }
+            } else {
+                Tokenizer tokenizer = new Tokenizer();
+                for (int i = 0; i < lines.length; i++) {
+                    tokens += tokenizer.tokenizeLine(i + 1, lines[i]).size();
+                }
+            }
+            this.tokens = tokens;
+            return lineCount;
+        }
+    }
+
+    private static class AssemblerBenchmark extends Benchmark {
+        private File file;
+        private int lines;
+
+        AssemblerBenchmark(String name, File file) {
+            super(name, "lines");
+            this.file = file;
+        }
+
+        public void setUp() throws Exception {
+            if (lines == 0) {
+                lines = readLines(file).length;
+            }
+        }
+
+        public long run() throws Exception {
+            assemble(file);
+            return lines;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package mars.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The MIPS programs bundled with MARS for benchmarking, stored as resources beside
+ * this class.  Each is a small kernel that runs a few hundred thousand instructions,
+ * prints one integer and exits:
+ * <ul>
+ * <li>loopsum: a counted loop of arithmetic.
+ * <li>fib: recursive Fibonacci, exercising calls and the stack.
+ * <li>bubblesort: sorting an array, exercising loads, stores and branches.
+ * <li>matmul: integer matrix multiplication, exercising multiply and strided loads.
+ * </ul>
+ */
+public class Kernels {
+    /**
+     * Names of the kernels.
+     */
+    public static final String[] NAMES = {"loopsum", "fib", "bubblesort", "matmul"};
+
+    private Kernels() {
+    }
+
+    /**
+     * Copy a kernel's source to a file, since the assembler reads its source from files.
+     *
+     * @param name      name of the kernel.
+     * @param directory directory to create the file in; it is named after the kernel.
+     * @return the file.
+     * @throws IOException if there is no such kernel or the file cannot be written.
+     */
+    public static File extract(String name, File directory) throws IOException {
+        InputStream in = Kernels.class.getResourceAsStream(name + ".asm");
+        if (in == null) {
+            throw new IOException("no benchmark kernel named " + name);
+        }
+        File file = new File(directory, name + ".asm");
+        file.deleteOnExit();
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[8192];
+                for (int length = in.read(buffer); length >= 0; length = in.read(buffer)) {
+                    out.write(buffer, 0, length);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        return file;
+    }
+
+    /**
+     * Create a temporary directory, deleted with its files when the JVM exits.
+     *
+     * @return the directory.
+     * @throws IOException if it cannot be created.
+     */
+    public static File createTemporaryDirectory() throws IOException {
+        File directory = File.createTempFile("marsbench", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("cannot create temporary directory " + directory);
+        }
+        directory.deleteOnExit();
+        return directory;
+    }
+}
@@ -0,0 +1,310 @@
+package mars.bench;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.ProcessingException;
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.RegisterFile;
+import mars.simulator.ProgramArgumentList;
+import mars.simulator.Simulator;
+import mars.util.JsonWriter;
+import mars.util.SystemIO;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times a whole MARS run of a program, as the "bench" command line option does: the
+ * program is assembled and simulated a number of times to warm up the JVM, then a
+ * number of times more that are measured.  Each measured run records the time to
+ * assemble, the time to simulate and the number of instructions executed.  Over the
+ * measured runs as a whole, time spent in garbage collection and the peak size of the
+ * heap are recorded too.
+ * <p>
+ * Program output is discarded.  Every run is given the same standard input.
+ */
+public class ProgramBenchmark {
+    private static final PrintStream NOWHERE = new PrintStream(new OutputStream() {
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int offset, int length) {
+        }
+    });
+
+    private String name;
+    private ArrayList files;
+    private String leadFilename;
+    private boolean pseudo = true;
+    private boolean warningsAreErrors = false;
+    private boolean startAtMain = false;
+    private int maxSteps = -1;
+    private ArrayList programArguments = null;
+
+    private long[] assemblyNanos = new long[0];
+    private long[] simulationNanos = new long[0];
+    private long[] instructions = new long[0];
+    private int exitCode;
+    private long gcMillis;
+    private long gcCount;
+    private long peakHeapBytes;
+    private boolean simulating; // the current run has been assembled and is being simulated
+
+    /**
+     * @param name         name of the program, for the report.
+     * @param files        ArrayList of the names of the files to assemble.
+     * @param leadFilename name of the main file, which must be one of them.
+     */
+    public ProgramBenchmark(String name, ArrayList files, String leadFilename) {
+        this.name = name;
+        this.files = files;
+        this.leadFilename = leadFilename;
+    }
+
+    /**
+     * A benchmark of one of the kernels bundled with MARS.
+     *
+     * @param file the kernel's source, from {@link Kernels#extract}.
+     * @return the benchmark, named after the kernel.
+     */
+    public static ProgramBenchmark forKernel(File file) {
+        ArrayList files = new ArrayList();
+        files.add(file.getPath());
+        String name = file.getName();
+        return new ProgramBenchmark(name.substring(0, name.lastIndexOf('.')), files, file.getPath());
+    }
+
+    /**
+     * Set the options programs are assembled and simulated with, which default to
+     * those of a plain command line run.
+     *
+     * @param pseudo            whether pseudo-instructions are allowed.
+     * @param warningsAreErrors whether assembler warnings are errors.
+     * @param startAtMain       whether to start at the global label main.
+     * @param maxSteps          maximum number of instructions per run, or -1 for no maximum.
+     * @param programArguments  ArrayList of program arguments, or null for none.
+     */
+    public void setOptions(boolean pseudo, boolean warningsAreErrors, boolean startAtMain,
+                           int maxSteps, ArrayList programArguments) {
+        this.pseudo = pseudo;
+        this.warningsAreErrors = warningsAreErrors;
+        this.startAtMain = startAtMain;
+        this.maxSteps = maxSteps;
+        this.programArguments = programArguments;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return whether the error that stopped measure(), if any, occurred while
+     * simulating rather than while assembling.
+     */
+    public boolean failedInSimulation() {
+        return simulating;
+    }
+
+    /**
+     * Warm up, then measure.
+     *
+     * @param warmupRuns   number of runs not measured.
+     * @param measuredRuns number of runs measured.
+     * @param input        standard input for every run.
+     * @throws ProcessingException if the program fails to assemble or simulate.
+     */
+    public void measure(int warmupRuns, int measuredRuns, byte[] input) throws ProcessingException {
+        long[] run = new long[3];
+        for (int i = 0; i < warmupRuns; i++) {
+            run(input, run);
+        }
+        assemblyNanos = new long[measuredRuns];
+        simulationNanos = new long[measuredRuns];
+        instructions = new long[measuredRuns];
+        // Start from a collected heap, so the peak and collections are those of the runs.
+        System.gc();
+        List pools = ManagementFactory.getMemoryPoolMXBeans();
+        for (int i = 0; i < pools.size(); i++) {
+            ((MemoryPoolMXBean) pools.get(i)).resetPeakUsage();
+        }
+        long gcMillisBefore = collectionMillis();
+        long gcCountBefore = collectionCount();
+        for (int i = 0; i < measuredRuns; i++) {
+            run(input, run);
+            assemblyNanos[i] = run[0];
+            simulationNanos[i] = run[1];
+            instructions[i] = run[2];
+        }
+        gcMillis = collectionMillis() - gcMillisBefore;
+        gcCount = collectionCount() - gcCountBefore;
+        peakHeapBytes = 0;
+        for (int i = 0; i < pools.size(); i++) {
+            MemoryPoolMXBean pool = (MemoryPoolMXBean) pools.get(i);
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peakHeapBytes += pool.getPeakUsage().getUsed();
+            }
+        }
+    }
+
+    // Assemble and simulate once, storing nanoseconds assembling, nanoseconds
+    // simulating and instructions executed in result.
+    private void run(byte[] input, long[] result) throws ProcessingException {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        System.setIn(new ByteArrayInputStream(input));
+        SystemIO.resetInput();
+        System.setOut(NOWHERE);
+        System.setErr(NOWHERE);
+        simulating = false;
+        try {
+            long start = System.nanoTime();
+            MIPSprogram program = new MIPSprogram();
+            ArrayList programs = program.prepareFilesForAssembly(files, leadFilename, null);
+            program.assemble(programs, pseudo, warningsAreErrors);
+            result[0] = System.nanoTime() - start;
+            RegisterFile.resetRegisters();
+            Coprocessor1.resetRegisters();
+            Coprocessor0.resetRegisters();
+            RegisterFile.initializeProgramCounter(startAtMain);
+            new ProgramArgumentList(programArguments).storeProgramArguments();
+            Globals.exitCode = 0;
+            long count = Simulator.getInstance().getInstructionCount();
+            simulating = true;
+            start = System.nanoTime();
+            program.simulate(maxSteps);
+            result[1] = System.nanoTime() - start;
+            result[2] = Simulator.getInstance().getInstructionCount() - count;
+            exitCode = Globals.exitCode;
+            simulating = false;
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+    }
+
+    private static long collectionMillis() {
+        long total = 0;
+        List collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        for (int i = 0; i < collectors.size(); i++) {
+            total += Math.max(0, ((GarbageCollectorMXBean) collectors.get(i)).getCollectionTime());
+        }
+        return total;
+    }
+
+    private static long collectionCount() {
+        long total = 0;
+        List collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        for (int i = 0; i < collectors.size(); i++) {
+            total += Math.max(0, ((GarbageCollectorMXBean) collectors.get(i)).getCollectionCount());
+        }
+        return total;
+    }
+
+    /**
+     * Write the results of measured benchmarks as a JSON object, with the MARS and JVM
+     * versions and the JVM's arguments, so results from different builds and flags
+     * can be told apart.
+     *
+     * @param benchmarks   ArrayList of ProgramBenchmark, each measured.
+     * @param warmupRuns   number of warmup runs of each.
+     * @param measuredRuns number of measured runs of each.
+     * @param out          stream to write to.
+     */
+    public static void writeReport(ArrayList benchmarks, int warmupRuns, int measuredRuns, PrintStream out) {
+        JsonWriter json = new JsonWriter(out);
+        json.beginObject();
+        json.name("mars").value(Globals.version);
+        json.name("jvm").beginObject();
+        json.name("name").value(System.getProperty("java.vm.name"));
+        json.name("version").value(System.getProperty("java.version"));
+        json.name("arguments").beginArray();
+        List arguments = ManagementFactory.getRuntimeMXBean().getInputArguments();
+        for (int i = 0; i < arguments.size(); i++) {
+            json.value((String) arguments.get(i));
+        }
+        json.endArray();
+        json.endObject();
+        json.name("warmupRuns").value(warmupRuns);
+        json.name("measuredRuns").value(measuredRuns);
+        json.name("programs").beginArray();
+        for (int i = 0; i < benchmarks.size(); i++) {
+            ((ProgramBenchmark) benchmarks.get(i)).writeJson(json);
+        }
+        json.endArray();
+        json.endObject();
+        json.finish();
+    }
+
+    private void writeJson(JsonWriter json) {
+        int runs = instructions.length;
+        double[] assemblyMillis = new double[runs];
+        double[] simulationMillis = new double[runs];
+        double[] perSecond = new double[runs];
+        long totalInstructions = 0;
+        long totalNanos = 0;
+        for (int i = 0; i < runs; i++) {
+            assemblyMillis[i] = assemblyNanos[i] / 1e6;
+            simulationMillis[i] = simulationNanos[i] / 1e6;
+            perSecond[i] = instructions[i] * 1e9 / simulationNanos[i];
+            totalInstructions += instructions[i];
+            totalNanos += simulationNanos[i];
+        }
+        json.beginObject();
+        json.name("name").value(name);
+        json.name("files").beginArray();
+        for (int i = 0; i < files.size(); i++) {
+            json.value((String) files.get(i));
+        }
+        json.endArray();
+        json.name("exitCode").value(exitCode);
+        json.name("instructions").value((runs > 0) ? instructions[runs - 1] : 0);
+        json.name("assemblyMillis");
+        writeSummary(json, assemblyMillis);
+        json.name("simulationMillis");
+        writeSummary(json, simulationMillis);
+        json.name("instructionsPerSecond");
+        writeSummary(json, perSecond);
+        json.name("overallInstructionsPerSecond").value(totalInstructions * 1e9 / totalNanos);
+        json.name("gcMillis").value(gcMillis);
+        json.name("gcCount").value(gcCount);
+        json.name("peakHeapBytes").value(peakHeapBytes);
+        json.endObject();
+    }
+
+    // Mean, standard deviation, minimum, maximum and all the values.
+    private static void writeSummary(JsonWriter json, double[] values) {
+        double sum = 0;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        for (int i = 0; i < values.length; i++) {
+            sum += values[i];
+            min = (i == 0) ? values[i] : Math.min(min, values[i]);
+            max = (i == 0) ? values[i] : Math.max(max, values[i]);
+        }
+        double mean = sum / values.length;
+        double squares = 0;
+        for (int i = 0; i < values.length; i++) {
+            squares += (values[i] - mean) * (values[i] - mean);
+        }
+        json.beginObject();
+        json.name("mean").value(mean);
+        json.name("stdev").value((values.length > 1) ? Math.sqrt(squares / (values.length - 1)) : Double.NaN);
+        json.name("min").value(min);
+        json.name("max").value(max);
+        json.name("values").beginArray();
+        for (int i = 0; i < values.length; i++) {
+            json.value(values[i]);
+        }
+        json.endArray();
+        json.endObject();
+    }
+}
@@ -0,0 +1,378 @@
+package mars.bench;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Generates MIPS programs of a chosen kind and size, for testing and benchmarking
+ * the assembler and simulator on programs as large as compilers produce.  Every
+ * program assembles without error, prints one integer and exits, so the same value
+ * can be checked from one version of MARS to the next.  The kinds are:
+ * <ul>
+ * <li>straight: about <i>size</i> lines of straight-line basic instructions.
+ * <li>recursion: a recursive sum of 1 to <i>size</i>, <i>size</i> calls deep.
+ * <li>data: a <tt>.data</tt> segment of <i>size</i> labeled lines mixing words,
+ * halves, bytes and strings, so many labels need aligning.
+ * <li>pseudo: about <i>size</i> lines of pseudo-instructions, with labels and
+ * forward branches every 16 lines.
+ * <li>labels: <i>size</i> labeled lines invoking macros, with branches to labels far
+ * forward and back.
+ * <li>syscalls: a loop making <i>size</i> print syscalls.
+ * <li>mixed: about <i>size</i> lines of data words and code mixing basic and
+ * pseudo-instructions, with a label every 16 lines and branches to nearby ones.
+ * </ul>
+ * Run with <tt>java -cp Mars.jar mars.bench.WorkloadGenerator &lt;kind&gt; &lt;size&gt; [file]</tt>.
+ * The program is written to standard output if no file is given.
+ */
+public class WorkloadGenerator {
+    /**
+     * Names of the kinds of program.
+     */
+    public static final String[] KINDS = {"straight", "recursion", "data", "pseudo", "labels", "syscalls", "mixed"};
+
+    private static final String[] REGISTERS = {"$t0", "$t1", "$t2", "$t3", "$t4", "$t5", "$t6", "$t7"};
+
+    private WorkloadGenerator() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3 || !isKind(args[0])) {
+            usage();
+            return;
+        }
+        int size;
+        try {
+            size = Integer.parseInt(args[1]);
+        } catch (NumberFormatException e) {
+            size = -1;
+        }
+        if (size < 1) {
+            usage();
+            return;
+        }
+        try {
+            PrintStream out = (args.length == 3) ? new PrintStream(new FileOutputStream(args[2])) : System.out;
+            generate(args[0], size, out);
+            out.close();
+            if (out.checkError()) {
+                throw new IOException("write failed");
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot write " + args[2] + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        StringBuffer kinds = new StringBuffer();
+        for (int i = 0; i < KINDS.length; i++) {
+            kinds.append((i == 0) ? "" : ", ").append(KINDS[i]);
+        }
+        System.err.println("Usage: java -cp Mars.jar mars.bench.WorkloadGenerator <kind> <size> [file]");
+        System.err.println("  <kind> is one of " + kinds + "; <size> is at least 1.");
+    }
+
+    /**
+     * @param kind a string.
+     * @return whether it names a kind of program.
+     */
+    public static boolean isKind(String kind) {
+        for (int i = 0; i < KINDS.length; i++) {
+            if (KINDS[i].equals(kind)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write a program.
+     *
+     * @param kind one of {@link #KINDS}.
+     * @param size size of the program, in the sense the kind gives it.
+     * @param out  stream to write the program to.
+     * @throws IllegalArgumentException if there is no such kind.
+     */
+    public static void generate(String kind, int size, PrintStream out) {
+        out.println("# Generated by mars.bench.WorkloadGenerator " + kind + " " + size);
+        if (kind.equals("straight")) {
+            straight(size, out);
+        } else if (kind.equals("recursion")) {
+            recursion(size, out);
+        } else if (kind.equals("data")) {
+            data(size, out);
+        } else if (kind.equals("pseudo")) {
+            pseudo(size, out);
+        } else if (kind.equals("labels")) {
+            labels(size, out);
+        } else if (kind.equals("syscalls")) {
+            syscalls(size, out);
+        } else if (kind.equals("mixed")) {
+            mixed(size, out);
+        } else {
+            throw new IllegalArgumentException("no kind of program named " + kind);
+        }
+    }
+
+    private static void straight(int size, PrintStream out) {
+        String[] operations = {"addu", "xor", "subu", "or", "addu", "and", "xor", "slt"};
+        out.println("        .text");
+        out.println("main:");
+        for (int i = 0; i < size; i++) {
+            String d = REGISTERS[i % 8];
+            String s = REGISTERS[(i + 3) % 8];
+            String t = REGISTERS[(i + 5) % 8];
+            switch (i % 4) {
+                case 0:
+                    line(out, "", "addiu   " + d + ", " + s + ", " + (i % 1000));
+                    break;
+                case 1:
+                    line(out, "", "sll     " + d + ", " + s + ", " + (i % 5));
+                    break;
+                default:
+                    line(out, "", pad(operations[i % 8], 8) + d + ", " + s + ", " + t);
+                    break;
+            }
+        }
+        exit("$t0", out);
+    }
+
+    private static void recursion(int size, PrintStream out) {
+        out.println("        .text");
+        out.println("main:");
+        line(out, "", "li      $a0, " + size);
+        line(out, "", "jal     sum");
+        exit("$v0", out);
+        out.println("# sum(n) = n + sum(n - 1), sum(0) = 0");
+        line(out, "sum:", "addiu   $sp, $sp, -8");
+        line(out, "", "sw      $ra, 4($sp)");
+        line(out, "", "sw      $a0, 0($sp)");
+        line(out, "", "bne     $a0, $zero, recurse");
+        line(out, "", "move    $v0, $zero");
+        line(out, "", "addiu   $sp, $sp, 8");
+        line(out, "", "jr      $ra");
+        line(out, "recurse:", "addiu   $a0, $a0, -1");
+        line(out, "", "jal     sum");
+        line(out, "", "lw      $a0, 0($sp)");
+        line(out, "", "addu    $v0, $v0, $a0");
+        line(out, "", "lw      $ra, 4($sp)");
+        line(out, "", "addiu   $sp, $sp, 8");
+        line(out, "", "jr      $ra");
+    }
+
+    private static void data(int size, PrintStream out) {
+        out.println("        .data");
+        int lastWord = 0;
+        for (int i = 0; i < size; i++) {
+            switch (i % 5) {
+                case 0:
+                    line(out, "w" + i + ":", ".word   " + i + ", " + (i * 3) + ", " + -i + ", " + (i ^ 0x5A5A));
+                    lastWord = i;
+                    break;
+                case 1:
+                    line(out, "s" + i + ":", ".asciiz \"string " + i + "\"");
+                    break;
+                case 2:
+                    line(out, "h" + i + ":", ".half   " + (i % 30000) + ", " + -(i % 30000));
+                    break;
+                case 3:
+                    line(out, "b" + i + ":", ".byte   " + (i % 100) + ", " + (i % 7) + ", " + -(i % 100));
+                    break;
+                default:
+                    line(out, "p" + i + ":", ".space  " + (1 + i % 3));
+                    break;
+            }
+        }
+        out.println("        .text");
+        out.println("main:");
+        line(out, "", "lw      $t0, w0+4");
+        line(out, "", "lw      $t1, w" + lastWord + "+4");
+        line(out, "", "addu    $t0, $t0, $t1");
+        exit("$t0", out);
+    }
+
+    private static void pseudo(int size, PrintStream out) {
+        out.println("        .data");
+        line(out, "buffer:", ".space  64");
+        out.println("        .text");
+        out.println("main:");
+        int lines = Math.max(1, size - 16);
+        for (int i = 0; i < lines; i++) {
+            String label = (i % 16 == 0) ? "p" + (i / 16) + ":" : "";
+            String d = REGISTERS[i % 8];
+            String s = REGISTERS[(i + 3) % 8];
+            String instruction;
+            switch (i % 12) {
+                case 0:
+                    instruction = "li      " + d + ", " + (0x10000 + i * 17);
+                    break;
+                case 1:
+                    instruction = "la      " + d + ", buffer";
+                    break;
+                case 2:
+                    instruction = "sw      " + s + ", buffer+" + (4 * (i % 16));
+                    break;
+                case 3:
+                    instruction = "lw      " + d + ", buffer+" + (4 * ((i + 5) % 16));
+                    break;
+                case 4:
+                    instruction = "mul     " + d + ", " + s + ", " + (3 + i % 100);
+                    break;
+                case 5:
+                    instruction = "div     " + d + ", " + s + ", " + (7 + i % 50);
+                    break;
+                case 6:
+                    instruction = "rem     " + d + ", " + s + ", " + (3 + i % 20);
+                    break;
+                case 7:
+                    // Never taken: no register exceeds 2^31 - 1.
+                    instruction = "bgt     " + s + ", 2147483647, p" + (i / 16 + 1);
+                    break;
+                case 8:
+                    instruction = "seq     " + d + ", " + s + ", " + (i % 9);
+                    break;
+                case 9:
+                    instruction = "rol     " + d + ", " + s + ", " + (1 + i % 31);
+                    break;
+                case 10:
+                    instruction = "abs     " + d + ", " + s;
+                    break;
+                default:
+                    instruction = "subi    " + d + ", " + s + ", " + (100000 + i);
+                    break;
+            }
+            line(out, label, instruction);
+        }
+        line(out, "p" + ((lines + 15) / 16) + ":", "");
+        for (int i = 1; i < REGISTERS.length; i++) {
+            line(out, "", "xor     $t0, $t0, " + REGISTERS[i]);
+        }
+        exit("$t0", out);
+    }
+
+    private static void labels(int size, PrintStream out) {
+        out.println(".macro  accumulate (%register, %value)");
+        line(out, "", "addiu   %register, %register, %value");
+        line(out, "", "xor     $t9, $t9, %register");
+        out.println(".end_macro");
+        out.println(".macro  skip (%register)");
+        line(out, "", "beq     %register, $t8, skipped");
+        line(out, "", "addu    $t9, $t9, %register");
+        out.println("skipped:");
+        out.println(".end_macro");
+        out.println("        .text");
+        out.println("main:");
+        line(out, "", "li      $t8, -1");
+        for (int i = 0; i < size; i++) {
+            String label = "l" + i + ":";
+            String register = REGISTERS[i % 8];
+            switch (i % 4) {
+                case 0:
+                    line(out, label, "accumulate (" + register + ", " + (i % 1000) + ")");
+                    break;
+                case 1:
+                    // Never taken: $t8 stays -1 and these registers stay non-negative.
+                    line(out, label, "beq     " + register + ", $t8, l" + ((i * 7919L) % size));
+                    break;
+                case 2:
+                    line(out, label, "skip (" + register + ")");
+                    break;
+                default:
+                    line(out, label, "bltz    " + register + ", l" + ((i + size / 2) % size));
+                    break;
+            }
+        }
+        exit("$t9", out);
+    }
+
+    private static void syscalls(int size, PrintStream out) {
+        out.println("        .text");
+        out.println("main:");
+        line(out, "", "li      $s0, 0");
+        line(out, "", "li      $s1, " + size);
+        line(out, "", "li      $s2, 0");
+        line(out, "loop:", "beq     $s0, $s1, done");
+        line(out, "", "move    $a0, $s0");
+        line(out, "", "li      $v0, 1");
+        line(out, "", "syscall");
+        line(out, "", "li      $a0, 32");
+        line(out, "", "li      $v0, 11");
+        line(out, "", "syscall");
+        line(out, "", "addu    $s2, $s2, $s0");
+        line(out, "", "addiu   $s0, $s0, 1");
+        line(out, "", "j       loop");
+        line(out, "done:", "li      $a0, 10");
+        line(out, "", "li      $v0, 11");
+        line(out, "", "syscall");
+        exit("$s2", out);
+    }
+
+    private static void mixed(int size, PrintStream out) {
+        int dataLines = size / 20;
+        out.println("        .data");
+        for (int i = 0; i < dataLines; i++) {
+            line(out, "d" + i + ":", ".word   " + i + ", " + (i * 3) + ", " + (i * 7) + ", " + (i ^ 0x5555));
+        }
+        out.println("        .text");
+        out.println("main:");
+        int codeLines = Math.max(1, size - dataLines - 8);
+        for (int i = 0; i < codeLines; i++) {
+            String label = (i % 16 == 0) ? "L" + (i / 16) + ":" : "";
+            String instruction;
+            switch (i % 8) {
+                case 0:
+                    instruction = "addiu   $t0, $t0, " + (i % 100);
+                    break;
+                case 1:
+                    instruction = "addu    $t1, $t1, $t0";
+                    break;
+                case 2:
+                    instruction = (dataLines > 0) ? "lw      $t2, d" + ((i / 8) % dataLines) : "li      $t2, 7";
+                    break;
+                case 3:
+                    instruction = "sll     $t3, $t2, 2";
+                    break;
+                case 4:
+                    instruction = "li      $t4, " + (100000 + i);
+                    break;
+                case 5:
+                    instruction = "xor     $t1, $t1, $t4";
+                    break;
+                case 6:
+                    // Never taken: $zero is never 1.  Targets a label at most two ahead.
+                    instruction = "beq     $zero, 1, L" + (i / 16 + 1 + (i / 8) % 2);
+                    break;
+                default:
+                    instruction = "subu    $t5, $t1, $t3";
+                    break;
+            }
+            line(out, label, instruction);
+        }
+        int labels = (codeLines + 15) / 16;
+        out.println("L" + labels + ":");
+        out.println("L" + (labels + 1) + ":");
+        exit("$t1", out);
+    }
+
+    // Print the register as an integer and exit.
+    private static void exit(String register, PrintStream out) {
+        line(out, "", "move    $a0, " + register);
+        line(out, "", "li      $v0, 1");
+        line(out, "", "syscall");
+        line(out, "", "li      $v0, 10");
+        line(out, "", "syscall");
+    }
+
+    private static void line(PrintStream out, String label, String statement) {
+        out.println(pad(label, 8) + statement);
+    }
+
+    private static String pad(String string, int width) {
+        StringBuffer result = new StringBuffer(string);
+        do {
+            result.append(' ');
+        } while (result.length() < width);
+        return result.toString();
+    }
+}
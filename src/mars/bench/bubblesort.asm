@@ -0,0 +1,49 @@
+# Benchmark kernel: bubble sort of 400 pseudo-random words.  Exercises loads,
+# stores and data-dependent branches.  Prints a checksum of the sorted array,
+# the sum of a[i] * (i + 1) modulo 2^32.
+        .data
+array:  .space  1600                    # 400 words
+        .text
+main:   la      $s0, array
+        li      $s1, 400                # number of words
+        # Fill with a linear congruential sequence.
+        li      $t0, 0
+        li      $t1, 12345              # seed
+        li      $t3, 1103515245
+fill:   mul     $t1, $t1, $t3
+        addiu   $t1, $t1, 12345
+        srl     $t4, $t1, 16
+        sll     $t2, $t0, 2
+        addu    $t2, $s0, $t2
+        sw      $t4, 0($t2)
+        addiu   $t0, $t0, 1
+        blt     $t0, $s1, fill
+        # Sort: each pass moves the largest remaining word to the end.
+        addiu   $t5, $s1, -1            # number of pairs to compare
+outer:  blez    $t5, sorted
+        li      $t0, 0
+        move    $t2, $s0
+inner:  lw      $t3, 0($t2)
+        lw      $t4, 4($t2)
+        ble     $t3, $t4, noswap
+        sw      $t4, 0($t2)
+        sw      $t3, 4($t2)
+noswap: addiu   $t2, $t2, 4
+        addiu   $t0, $t0, 1
+        blt     $t0, $t5, inner
+        addiu   $t5, $t5, -1
+        j       outer
+sorted: li      $t0, 0
+        li      $t1, 0                  # checksum
+        move    $t2, $s0
+check:  lw      $t3, 0($t2)
+        addiu   $t0, $t0, 1
+        mul     $t3, $t3, $t0
+        addu    $t1, $t1, $t3
+        addiu   $t2, $t2, 4
+        blt     $t0, $s1, check
+        move    $a0, $t1
+        li      $v0, 1                  # print int
+        syscall
+        li      $v0, 10                 # exit
+        syscall
@@ -0,0 +1,31 @@
+# Benchmark kernel: recursive Fibonacci, fib(20).  Exercises calls, returns
+# and the stack.  Prints 6765.
+        .text
+main:   li      $a0, 20
+        jal     fib
+        move    $a0, $v0
+        li      $v0, 1                  # print int
+        syscall
+        li      $v0, 10                 # exit
+        syscall
+
+# fib(n) = n < 2 ? n : fib(n - 1) + fib(n - 2)
+fib:    slti    $t0, $a0, 2
+        beqz    $t0, recurse
+        move    $v0, $a0
+        jr      $ra
+recurse:
+        addiu   $sp, $sp, -12
+        sw      $ra, 8($sp)
+        sw      $a0, 4($sp)
+        addiu   $a0, $a0, -1
+        jal     fib
+        sw      $v0, 0($sp)             # fib(n - 1)
+        lw      $a0, 4($sp)
+        addiu   $a0, $a0, -2
+        jal     fib
+        lw      $t0, 0($sp)
+        addu    $v0, $v0, $t0
+        lw      $ra, 8($sp)
+        addiu   $sp, $sp, 12
+        jr      $ra
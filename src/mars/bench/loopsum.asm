@@ -0,0 +1,13 @@
+# Benchmark kernel: sum of the integers 1 to 200000 in a counted loop.
+# Prints the sum, modulo 2^32.
+        .text
+main:   li      $t0, 200000             # counter
+        li      $t1, 0                  # sum
+loop:   addu    $t1, $t1, $t0
+        addiu   $t0, $t0, -1
+        bgtz    $t0, loop
+        move    $a0, $t1
+        li      $v0, 1                  # print int
+        syscall
+        li      $v0, 10                 # exit
+        syscall
@@ -0,0 +1,69 @@
+# Benchmark kernel: product of two 32 x 32 integer matrices, with
+# a[i][j] = i + j and b[i][j] = i - j.  Exercises multiplication and strided
+# loads.  Prints the sum of the elements of the product, modulo 2^32.
+        .data
+a:      .space  4096
+b:      .space  4096
+c:      .space  4096
+        .text
+main:   li      $s7, 32                 # n
+        la      $s0, a
+        la      $s1, b
+        la      $s2, c
+        li      $t0, 0                  # i
+initi:  li      $t1, 0                  # j
+initj:  mul     $t2, $t0, $s7
+        addu    $t2, $t2, $t1
+        sll     $t2, $t2, 2             # offset of [i][j]
+        addu    $t3, $s0, $t2
+        addu    $t4, $t0, $t1
+        sw      $t4, 0($t3)
+        addu    $t3, $s1, $t2
+        subu    $t4, $t0, $t1
+        sw      $t4, 0($t3)
+        addiu   $t1, $t1, 1
+        blt     $t1, $s7, initj
+        addiu   $t0, $t0, 1
+        blt     $t0, $s7, initi
+        # c[i][j] = sum over k of a[i][k] * b[k][j]
+        li      $t0, 0                  # i
+multi:  li      $t1, 0                  # j
+multj:  li      $t5, 0                  # sum
+        li      $t2, 0                  # k
+        mul     $t6, $t0, $s7
+        sll     $t6, $t6, 2
+        addu    $t6, $s0, $t6           # &a[i][0]
+        sll     $t7, $t1, 2
+        addu    $t7, $s1, $t7           # &b[0][j]
+multk:  lw      $t3, 0($t6)
+        lw      $t4, 0($t7)
+        mul     $t3, $t3, $t4
+        addu    $t5, $t5, $t3
+        addiu   $t6, $t6, 4
+        addiu   $t7, $t7, 128           # next row of b
+        addiu   $t2, $t2, 1
+        blt     $t2, $s7, multk
+        mul     $t8, $t0, $s7
+        addu    $t8, $t8, $t1
+        sll     $t8, $t8, 2
+        addu    $t8, $s2, $t8
+        sw      $t5, 0($t8)
+        addiu   $t1, $t1, 1
+        blt     $t1, $s7, multj
+        addiu   $t0, $t0, 1
+        blt     $t0, $s7, multi
+        # Checksum of c.
+        li      $t0, 0
+        li      $t5, 0
+        move    $t6, $s2
+        li      $t1, 1024
+sum:    lw      $t3, 0($t6)
+        addu    $t5, $t5, $t3
+        addiu   $t6, $t6, 4
+        addiu   $t0, $t0, 1
+        blt     $t0, $t1, sum
+        move    $a0, $t5
+        li      $v0, 1                  # print int
+        syscall
+        li      $v0, 10                 # exit
+        syscall
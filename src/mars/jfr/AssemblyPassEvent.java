@@ -0,0 +1,34 @@
+package mars.jfr;
+
+/**
+ * One pass of Assembler.assemble(): the first pass over a file, the second pass
+ * (pseudo-instruction expansion) over a file, or code generation for all files.
+ */
+public class AssemblyPassEvent extends MarsEvent {
+    /**
+     * Values of pass.
+     */
+    public static final String FIRST = "first";
+    public static final String SECOND = "second";
+    public static final String CODE_GENERATION = "code generation";
+
+    private static final Type TYPE = new Type("mars.AssemblyPass", "Assembly Pass", new String[]{"MARS", "Assembler"},
+            "A pass of the assembler over a source file, or code generation", null, new Field[]{
+            new Field(String.class, "pass", "Pass", null, false),
+            new Field(String.class, "file", "File", "Source file, or null for code generation", false),
+            new Field(int.class, "lines", "Lines", "Source lines processed, 0 for code generation", false),
+            new Field(int.class, "statements", "Statements", "Program statements produced", false)});
+
+    public String pass;
+    public String file;
+    public int lines;
+    public int statements;
+
+    public AssemblyPassEvent() {
+        super(TYPE);
+    }
+
+    protected Object[] values() {
+        return new Object[]{pass, file, new Integer(lines), new Integer(statements)};
+    }
+}
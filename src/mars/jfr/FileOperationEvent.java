@@ -0,0 +1,35 @@
+package mars.jfr;
+
+/**
+ * An open, close, read or write of a file by the MIPS program through SystemIO.
+ * Reads and writes of standard input and output are not recorded; see SyscallEvent.
+ */
+public class FileOperationEvent extends MarsEvent {
+    /**
+     * Values of operation.
+     */
+    public static final String OPEN = "open";
+    public static final String CLOSE = "close";
+    public static final String READ = "read";
+    public static final String WRITE = "write";
+
+    private static final Type TYPE = new Type("mars.FileOperation", "File Operation", new String[]{"MARS", "Simulator"},
+            "A file operation of the MIPS program", null, new Field[]{
+            new Field(String.class, "operation", "Operation", null, false),
+            new Field(String.class, "file", "File", null, false),
+            new Field(int.class, "descriptor", "Descriptor", "File descriptor, or -1 if the operation failed", false),
+            new Field(int.class, "bytes", "Bytes", "Bytes read or written, or -1 if the operation failed", true)});
+
+    public String operation;
+    public String file;
+    public int descriptor;
+    public int bytes;
+
+    public FileOperationEvent() {
+        super(TYPE);
+    }
+
+    protected Object[] values() {
+        return new Object[]{operation, file, new Integer(descriptor), new Integer(bytes)};
+    }
+}
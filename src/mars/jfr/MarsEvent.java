@@ -0,0 +1,218 @@
+package mars.jfr;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base of the Java Flight Recorder events MARS emits.  An event is used as a
+ * jdk.jfr.Event would be: begin(), end(), then if shouldCommit(), set its fields
+ * and commit().
+ * <p>
+ * MARS must build and run on Java 8 releases without JFR (before 8u262), so the
+ * jdk.jfr API is only reached by reflection: each event type is defined through
+ * jdk.jfr.EventFactory.  Whether that API is there is checked once, when this class
+ * is loaded.  If it is not, or a type cannot be defined, its events do nothing; so
+ * do events of a type no recording has enabled, besides one check per event.
+ * Events record no stack trace: it would begin with the reflection frames of
+ * commit(), not the MARS code making the event.
+ */
+public abstract class MarsEvent {
+    private static boolean available;
+    private static Constructor annotationElement;
+    private static Constructor valueDescriptor;
+    private static Method create, getEventType, isEnabled, newEvent;
+    private static Method begin, end, shouldCommit, set, commit;
+
+    static {
+        try {
+            Class annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+            Class valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+            Class eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+            Class eventTypeClass = Class.forName("jdk.jfr.EventType");
+            Class eventClass = Class.forName("jdk.jfr.Event");
+            annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+            valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+            create = eventFactoryClass.getMethod("create", List.class, List.class);
+            getEventType = eventFactoryClass.getMethod("getEventType");
+            isEnabled = eventTypeClass.getMethod("isEnabled");
+            newEvent = eventFactoryClass.getMethod("newEvent");
+            begin = eventClass.getMethod("begin");
+            end = eventClass.getMethod("end");
+            shouldCommit = eventClass.getMethod("shouldCommit");
+            set = eventClass.getMethod("set", int.class, Object.class);
+            commit = eventClass.getMethod("commit");
+            available = true;
+        } catch (Throwable e) {
+            available = false; // no JFR: events do nothing
+        }
+    }
+
+    private Object event; // the jdk.jfr.Event, or null if this event does nothing
+
+    /**
+     * @param type the type of the event, defined once by the subclass.
+     */
+    protected MarsEvent(Type type) {
+        event = type.newEvent();
+    }
+
+    /**
+     * Values of the fields, in the order the type lists them.
+     *
+     * @return the values, primitives wrapped.
+     */
+    protected abstract Object[] values();
+
+    /**
+     * Start timing the event.
+     */
+    public void begin() {
+        invoke(begin, null);
+    }
+
+    /**
+     * Stop timing the event.
+     */
+    public void end() {
+        invoke(end, null);
+    }
+
+    /**
+     * @return true if the event is to be committed: a recording has its type enabled
+     * and the event lasted at least the type's threshold.
+     */
+    public boolean shouldCommit() {
+        return Boolean.TRUE.equals(invoke(shouldCommit, null));
+    }
+
+    /**
+     * Record the event with the current values of its fields.
+     */
+    public void commit() {
+        if (event == null) {
+            return;
+        }
+        Object[] values = values();
+        for (int i = 0; i < values.length; i++) {
+            invoke(set, new Object[]{new Integer(i), values[i]});
+        }
+        invoke(commit, null);
+    }
+
+    private Object invoke(Method method, Object[] args) {
+        if (event == null) {
+            return null;
+        }
+        try {
+            return method.invoke(event, args);
+        } catch (Exception e) {
+            event = null; // give up on this event rather than fail MARS
+            return null;
+        }
+    }
+
+    /**
+     * A type of event: its name, label, categories, description, optional
+     * threshold and fields, as the annotations on a jdk.jfr.Event subclass would give.
+     */
+    protected static class Type {
+        private Object factory; // the jdk.jfr.EventFactory, or null if JFR is not available
+        private Object eventType;
+
+        /**
+         * @param name        name of the type, e.g. "mars.Tokenize".
+         * @param label       human-readable name.
+         * @param category    category path, e.g. {"MARS", "Assembler"}.
+         * @param description description of the type.
+         * @param threshold   least duration of a recorded event by default, e.g. "10 ms"; null for none.
+         * @param fields      the fields, in the order values() gives them.
+         */
+        protected Type(String name, String label, String[] category, String description, String threshold,
+                       Field[] fields) {
+            if (!available) {
+                return;
+            }
+            try {
+                List annotations = new ArrayList();
+                annotations.add(annotation("Name", name));
+                annotations.add(annotation("Label", label));
+                annotations.add(annotation("Category", category));
+                annotations.add(annotation("Description", description));
+                annotations.add(annotation("StackTrace", Boolean.FALSE));
+                if (threshold != null) {
+                    annotations.add(annotation("Threshold", threshold));
+                }
+                List descriptors = new ArrayList();
+                for (int i = 0; i < fields.length; i++) {
+                    descriptors.add(fields[i].descriptor());
+                }
+                factory = create.invoke(null, new Object[]{annotations, descriptors});
+                eventType = getEventType.invoke(factory, (Object[]) null);
+            } catch (Throwable e) {
+                factory = null;
+            }
+        }
+
+        // A new jdk.jfr.Event of this type, or null if it would not be recorded.
+        private Object newEvent() {
+            if (factory == null) {
+                return null;
+            }
+            try {
+                if (!Boolean.TRUE.equals(isEnabled.invoke(eventType, (Object[]) null))) {
+                    return null;
+                }
+                return newEvent.invoke(factory, (Object[]) null);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * A field of an event type.
+     */
+    protected static class Field {
+        private Class type;
+        private String name;
+        private String label;
+        private String description;
+        private boolean dataAmount;
+
+        /**
+         * @param type        int.class, long.class or String.class.
+         * @param name        name of the field.
+         * @param label       human-readable name.
+         * @param description description of the field, or null.
+         * @param dataAmount  true if the field is an amount of bytes.
+         */
+        protected Field(Class type, String name, String label, String description, boolean dataAmount) {
+            this.type = type;
+            this.name = name;
+            this.label = label;
+            this.description = description;
+            this.dataAmount = dataAmount;
+        }
+
+        private Object descriptor() throws Exception {
+            List annotations = new ArrayList();
+            annotations.add(annotation("Label", label));
+            if (description != null) {
+                annotations.add(annotation("Description", description));
+            }
+            if (dataAmount) {
+                annotations.add(annotation("DataAmount", "BYTES"));
+            }
+            return valueDescriptor.newInstance(new Object[]{type, name, annotations});
+        }
+    }
+
+    // A jdk.jfr.AnnotationElement for the annotation of the given simple name in jdk.jfr.
+    private static Object annotation(String annotation, Object value) throws Exception {
+        Class annotationType = Class.forName("jdk.jfr." + annotation).asSubclass(Annotation.class);
+        return annotationElement.newInstance(new Object[]{annotationType, value});
+    }
+}
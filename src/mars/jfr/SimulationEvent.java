@@ -0,0 +1,26 @@
+package mars.jfr;
+
+/**
+ * A simulation run, from start to stop, which may be a single step.
+ */
+public class SimulationEvent extends MarsEvent {
+    private static final Type TYPE = new Type("mars.Simulation", "Simulation", new String[]{"MARS", "Simulator"},
+            "A run of the simulator from start to stop", null, new Field[]{
+            new Field(String.class, "reason", "Reason", "Why the run stopped, as given by Simulator.getReasonName()", false),
+            new Field(long.class, "instructions", "Instructions", "Instructions executed by the run", false),
+            new Field(int.class, "maxSteps", "Maximum Steps", "Step limit of the run, or -1 for none", false),
+            new Field(int.class, "startAddress", "Start Address", null, false)});
+
+    public String reason;
+    public long instructions;
+    public int maxSteps;
+    public int startAddress;
+
+    public SimulationEvent() {
+        super(TYPE);
+    }
+
+    protected Object[] values() {
+        return new Object[]{reason, new Long(instructions), new Integer(maxSteps), new Integer(startAddress)};
+    }
+}
@@ -0,0 +1,23 @@
+package mars.jfr;
+
+/**
+ * A syscall taking longer than the threshold, 10 ms unless the recording's settings
+ * say otherwise, e.g. one waiting for input.
+ */
+public class SyscallEvent extends MarsEvent {
+    private static final Type TYPE = new Type("mars.Syscall", "Syscall", new String[]{"MARS", "Simulator"},
+            "A syscall service taking longer than the threshold", "10 ms", new Field[]{
+            new Field(int.class, "number", "Number", null, false),
+            new Field(String.class, "name", "Name", null, false)});
+
+    public int number;
+    public String name;
+
+    public SyscallEvent() {
+        super(TYPE);
+    }
+
+    protected Object[] values() {
+        return new Object[]{new Integer(number), name};
+    }
+}
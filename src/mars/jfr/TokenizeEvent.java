@@ -0,0 +1,22 @@
+package mars.jfr;
+
+/**
+ * Tokenizing of one source file, with the files it includes.
+ */
+public class TokenizeEvent extends MarsEvent {
+    private static final Type TYPE = new Type("mars.Tokenize", "Tokenize", new String[]{"MARS", "Assembler"},
+            "Tokenizing of a source file by Tokenizer.tokenize", null, new Field[]{
+            new Field(String.class, "file", "File", null, false),
+            new Field(int.class, "lines", "Lines", "Source lines, including those of included files", false)});
+
+    public String file;
+    public int lines;
+
+    public TokenizeEvent() {
+        super(TYPE);
+    }
+
+    protected Object[] values() {
+        return new Object[]{file, new Integer(lines)};
+    }
+}
@@ -1,9 +1,9 @@
 package mars.mips.dump;
 
-import mars.util.FilenameFinder;
-
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -36,16 +36,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 /****************************************************************************/
 /* This class provides functionality to bring external memory dump format definitions
- * into MARS.  This is adapted from the ToolLoader class, which is in turn adapted
- * from Bret Barker's GameServer class from the book "Developing Games In Java".
+ * into MARS.  The formats built into MARS are listed below; others are found with
+ * java.util.ServiceLoader, by naming their classes in a
+ * META-INF/services/mars.mips.dump.DumpFormat file on the classpath.
  */
 
 public class DumpFormatLoader {
 
-    private static final String CLASS_PREFIX = "mars.mips.dump.";
-    private static final String DUMP_DIRECTORY_PATH = "mars/mips/dump";
-    private static final String SYSCALL_INTERFACE = "DumpFormat.class";
-    private static final String CLASS_EXTENSION = "class";
+    // Dump formats built into MARS, in the order they are offered.  A new one must be added to this list.
+    private static final Class[] FORMAT_CLASSES = {
+            BinaryDumpFormat.class, BinaryTextDumpFormat.class, HexTextDumpFormat.class,
+            AsciiTextDumpFormat.class, SegmentWindowDumpFormat.class, IntelHexDumpFormat.class
+    };
 
     private static ArrayList formatList = null;
 
@@ -61,33 +63,29 @@ public class DumpFormatLoader {
     }
 
     /**
-     * Dynamically loads dump formats into an ArrayList.  This method is adapted from
-     * the loadGameControllers() method in Bret Barker's GameServer class.
-     * Barker (bret@hypefiend.com) is co-author of the book "Developing Games
-     * in Java".  Also see the ToolLoader and SyscallLoader classes elsewhere in MARS.
+     * Loads the dump formats into an ArrayList.
+     *
+     * @return ArrayList of DumpFormat objects, the same one on every call.
      */
 
     public ArrayList loadDumpFormats() {
         // The list will be populated only the first time this method is called.
         if (formatList == null) {
             formatList = new ArrayList();
-            // grab all class files in the dump directory
-            ArrayList candidates = FilenameFinder.getFilenameList(this.getClass().getClassLoader(),
-                    DUMP_DIRECTORY_PATH, CLASS_EXTENSION);
-            for (int i = 0; i < candidates.size(); i++) {
-                String file = (String) candidates.get(i);
+            for (int i = 0; i < FORMAT_CLASSES.length; i++) {
                 try {
-                    // grab the class, make sure it implements DumpFormat, instantiate, add to list
-                    String formatClassName = CLASS_PREFIX + file.substring(0, file.indexOf(CLASS_EXTENSION) - 1);
-                    Class clas = Class.forName(formatClassName);
-                    if (DumpFormat.class.isAssignableFrom(clas) &&
-                            !Modifier.isAbstract(clas.getModifiers()) &&
-                            !Modifier.isInterface(clas.getModifiers())) {
-                        formatList.add(clas.newInstance());
-                    }
+                    formatList.add(FORMAT_CLASSES[i].newInstance());
                 } catch (Exception e) {
-                    System.out.println("Error instantiating DumpFormat from file " + file + ": " + e);
+                    System.out.println("Error instantiating DumpFormat " + FORMAT_CLASSES[i].getName() + ": " + e);
+                }
+            }
+            try {
+                Iterator others = ServiceLoader.load(DumpFormat.class).iterator();
+                while (others.hasNext()) {
+                    formatList.add(others.next());
                 }
+            } catch (ServiceConfigurationError e) {
+                System.out.println("Error instantiating DumpFormat: " + e.getMessage());
             }
         }
         return formatList;
@@ -1,6 +1,7 @@
 package mars.mips.hardware;
 
 import mars.Globals;
+import mars.simulator.ExecutionTrace;
 
 import java.util.Observer;
 
@@ -88,6 +89,7 @@ public class Coprocessor0 {
             if (("$" + registers[i].getNumber()).equals(n) || registers[i].getName().equals(n)) {
                 oldValue = registers[i].getValue();
                 registers[i].setValue(val);
+                ExecutionTrace.coprocessor0Written(registers[i].getNumber(), val);
                 break;
             }
         }
@@ -103,6 +105,7 @@ public class Coprocessor0 {
      **/
     public static int updateRegister(int num, int val) {
         int old = 0;
+        ExecutionTrace.coprocessor0Written(num, val);
         for (int i = 0; i < registers.length; i++) {
             if (registers[i].getNumber() == num) {
                 old = (Globals.getSettings().getBackSteppingEnabled())
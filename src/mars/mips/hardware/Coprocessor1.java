@@ -1,6 +1,7 @@
 package mars.mips.hardware;
 
 import mars.Globals;
+import mars.simulator.ExecutionTrace;
 import mars.util.Binary;
 
 import java.util.Observer;
@@ -109,6 +110,7 @@ public class Coprocessor1 {
     public static void setRegisterToFloat(int reg, float val) {
         if (reg >= 0 && reg < registers.length) {
             registers[reg].setValue(Float.floatToRawIntBits(val));
+            ExecutionTrace.coprocessor1Written(reg, Float.floatToRawIntBits(val));
         }
     }
 
@@ -136,6 +138,7 @@ public class Coprocessor1 {
     public static void setRegisterToInt(int reg, int val) {
         if (reg >= 0 && reg < registers.length) {
             registers[reg].setValue(val);
+            ExecutionTrace.coprocessor1Written(reg, val);
         }
     }
 
@@ -158,6 +161,8 @@ public class Coprocessor1 {
         long bits = Double.doubleToRawLongBits(val);
         registers[reg + 1].setValue(Binary.highOrderLongToInt(bits));  // high order 32 bits
         registers[reg].setValue(Binary.lowOrderLongToInt(bits)); // low order 32 bits
+        ExecutionTrace.coprocessor1Written(reg + 1, Binary.highOrderLongToInt(bits));
+        ExecutionTrace.coprocessor1Written(reg, Binary.lowOrderLongToInt(bits));
     }
 
 
@@ -194,6 +199,8 @@ public class Coprocessor1 {
         }
         registers[reg + 1].setValue(Binary.highOrderLongToInt(val));  // high order 32 bits
         registers[reg].setValue(Binary.lowOrderLongToInt(val)); // low order 32 bits
+        ExecutionTrace.coprocessor1Written(reg + 1, Binary.highOrderLongToInt(val));
+        ExecutionTrace.coprocessor1Written(reg, Binary.lowOrderLongToInt(val));
     }
 
 
@@ -346,6 +353,7 @@ public class Coprocessor1 {
 
     public static int updateRegister(int num, int val) {
         int old = 0;
+        ExecutionTrace.coprocessor1Written(num, val);
         for (int i = 0; i < registers.length; i++) {
             if (registers[i].getNumber() == num) {
                 old = (Globals.getSettings().getBackSteppingEnabled())
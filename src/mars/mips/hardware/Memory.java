@@ -5,8 +5,14 @@ import mars.ProgramStatement;
 import mars.Settings;
 import mars.mips.instructions.Instruction;
 import mars.simulator.Exceptions;
+import mars.simulator.ExecutionTrace;
+import mars.simulator.ResourceLimits;
 import mars.util.Binary;
 
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 	
 	/*
@@ -240,6 +246,16 @@ public class Memory extends Observable {
     private int[][] memoryMapBlockTable;
     private ProgramStatement[][] textBlockTable;
     private ProgramStatement[][] kernelTextBlockTable;
+    // For time travel snapshots: the latest snapshot taken or restored, and for each
+    // table, which blocks have been written since.  Writes are only marked while
+    // there is such a snapshot.
+    private Snapshot lastSnapshot;
+    private boolean[] dataBlockDirty;
+    private boolean[] kernelDataBlockDirty;
+    private boolean[] stackBlockDirty;
+    private boolean[] memoryMapBlockDirty;
+    private boolean[] textBlockDirty;
+    private boolean[] kernelTextBlockDirty;
 
     /*
      * Private constructor for Memory.  Separate data structures for text and data segments.
@@ -455,9 +471,336 @@ public class Memory extends Observable {
         kernelDataBlockTable = new int[BLOCK_TABLE_LENGTH][];
         stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
         memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
+        dataBlockDirty = new boolean[BLOCK_TABLE_LENGTH];
+        kernelDataBlockDirty = new boolean[BLOCK_TABLE_LENGTH];
+        stackBlockDirty = new boolean[BLOCK_TABLE_LENGTH];
+        memoryMapBlockDirty = new boolean[MMIO_TABLE_LENGTH];
+        textBlockDirty = new boolean[TEXT_BLOCK_TABLE_LENGTH];
+        kernelTextBlockDirty = new boolean[TEXT_BLOCK_TABLE_LENGTH];
+        lastSnapshot = null;
         System.gc(); // call garbage collector on any Table memory just deallocated.
     }
 
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Names of the segments counted by getAllocatedBlockCounts(), in its order.  The
+     * heap is part of the data segment.
+     **/
+    public static final String[] BLOCK_SEGMENT_NAMES = {"text", "data", "stack", "ktext", "kdata", "mmio"};
+
+    /**
+     * Count the 4K byte blocks allocated so far in each segment.  Blocks are
+     * allocated when first written and kept until memory is cleared, so this is
+     * also the peak.  Does not lock memory, so may be called during a run.
+     *
+     * @return number of blocks in each segment, in the order of BLOCK_SEGMENT_NAMES.
+     **/
+    public int[] getAllocatedBlockCounts() {
+        return new int[]{
+                countBlocks(textBlockTable), countBlocks(dataBlockTable), countBlocks(stackBlockTable),
+                countBlocks(kernelTextBlockTable), countBlocks(kernelDataBlockTable), countBlocks(memoryMapBlockTable)};
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Take a snapshot of the entire contents of MIPS memory, including the text
+     * segments and the heap pointer.  If the given previous snapshot is the latest
+     * one taken or restored, only the blocks written since are copied and the others
+     * are shared with it, so a series of snapshots costs time and memory only for
+     * the blocks written between them.  Observers are not notified.
+     *
+     * @param previous The most recent earlier snapshot, or null if there is none.
+     * @return The new snapshot.
+     **/
+    public synchronized Snapshot takeSnapshot(Snapshot previous) {
+        if (previous != lastSnapshot) {
+            previous = null; // the dirty marks are not relative to it, so copy everything
+        }
+        Snapshot snapshot = new Snapshot();
+        snapshot.heapAddress = heapAddress;
+        snapshot.dataBlocks = copyBlocks(dataBlockTable, dataBlockDirty, (previous == null) ? null : previous.dataBlocks);
+        snapshot.kernelDataBlocks = copyBlocks(kernelDataBlockTable, kernelDataBlockDirty, (previous == null) ? null : previous.kernelDataBlocks);
+        snapshot.stackBlocks = copyBlocks(stackBlockTable, stackBlockDirty, (previous == null) ? null : previous.stackBlocks);
+        snapshot.memoryMapBlocks = copyBlocks(memoryMapBlockTable, memoryMapBlockDirty, (previous == null) ? null : previous.memoryMapBlocks);
+        snapshot.textBlocks = copyBlocks(textBlockTable, textBlockDirty, (previous == null) ? null : previous.textBlocks);
+        snapshot.kernelTextBlocks = copyBlocks(kernelTextBlockTable, kernelTextBlockDirty, (previous == null) ? null : previous.kernelTextBlocks);
+        lastSnapshot = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Replace the entire contents of MIPS memory with those of a snapshot taken
+     * by takeSnapshot().  The snapshot itself is left intact, so it can be restored
+     * again.  Observers are not notified.
+     *
+     * @param snapshot The snapshot to restore.
+     **/
+    public synchronized void restoreSnapshot(Snapshot snapshot) {
+        heapAddress = snapshot.heapAddress;
+        dataBlockTable = copyBlocks(snapshot.dataBlocks, dataBlockDirty, null);
+        kernelDataBlockTable = copyBlocks(snapshot.kernelDataBlocks, kernelDataBlockDirty, null);
+        stackBlockTable = copyBlocks(snapshot.stackBlocks, stackBlockDirty, null);
+        memoryMapBlockTable = copyBlocks(snapshot.memoryMapBlocks, memoryMapBlockDirty, null);
+        textBlockTable = copyBlocks(snapshot.textBlocks, textBlockDirty, null);
+        kernelTextBlockTable = copyBlocks(snapshot.kernelTextBlocks, kernelTextBlockDirty, null);
+        lastSnapshot = snapshot;
+    }
+
+    // Copy a block table, sharing any block not marked dirty with the one at the same
+    // position in the given previous copy.  The dirty marks are cleared.
+    private static int[][] copyBlocks(int[][] blockTable, boolean[] dirty, int[][] previous) {
+        int[][] copy = new int[blockTable.length][];
+        for (int i = 0; i < blockTable.length; i++) {
+            if (blockTable[i] != null) {
+                copy[i] = (previous != null && previous[i] != null && !dirty[i])
+                        ? previous[i]
+                        : (int[]) blockTable[i].clone();
+            }
+            dirty[i] = false;
+        }
+        return copy;
+    }
+
+    private static ProgramStatement[][] copyBlocks(ProgramStatement[][] blockTable, boolean[] dirty, ProgramStatement[][] previous) {
+        ProgramStatement[][] copy = new ProgramStatement[blockTable.length][];
+        for (int i = 0; i < blockTable.length; i++) {
+            if (blockTable[i] != null) {
+                copy[i] = (previous != null && previous[i] != null && !dirty[i])
+                        ? previous[i]
+                        : (ProgramStatement[]) blockTable[i].clone();
+            }
+            dirty[i] = false;
+        }
+        return copy;
+    }
+
+    // Note that a block of the given table is being written, if a snapshot may share it.
+    private void markDirty(Object[] blockTable, int block) {
+        if (lastSnapshot == null) {
+            return;
+        }
+        if (blockTable == dataBlockTable) {
+            dataBlockDirty[block] = true;
+        } else if (blockTable == stackBlockTable) {
+            stackBlockDirty[block] = true;
+        } else if (blockTable == textBlockTable) {
+            textBlockDirty[block] = true;
+        } else if (blockTable == kernelDataBlockTable) {
+            kernelDataBlockDirty[block] = true;
+        } else if (blockTable == memoryMapBlockTable) {
+            memoryMapBlockDirty[block] = true;
+        } else if (blockTable == kernelTextBlockTable) {
+            kernelTextBlockDirty[block] = true;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Write the entire contents of MIPS memory, including the text segments and the
+     * heap pointer, to a channel for a persistent checkpoint.  Only allocated blocks
+     * are written.  Text segments are written as binary machine code; statements are
+     * rebuilt from it by readCheckpoint().  Observers are not notified.
+     *
+     * @param channel The channel to write to.
+     * @throws IOException if the channel cannot be written.
+     **/
+    public synchronized void writeCheckpoint(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((2 + TEXT_BLOCK_LENGTH_WORDS / 32 + BLOCK_LENGTH_WORDS) * WORD_LENGTH_BYTES);
+        buffer.putInt(heapAddress);
+        writeFully(channel, buffer);
+        writeBlocks(channel, buffer, dataBlockTable);
+        writeBlocks(channel, buffer, kernelDataBlockTable);
+        writeBlocks(channel, buffer, stackBlockTable);
+        writeBlocks(channel, buffer, memoryMapBlockTable);
+        writeBlocks(channel, buffer, textBlockTable);
+        writeBlocks(channel, buffer, kernelTextBlockTable);
+    }
+
+    /**
+     * Read the entire contents of MIPS memory as written by writeCheckpoint(),
+     * without changing memory; restoreCheckpoint() then puts them in place.  So
+     * damaged contents are found before anything is replaced.  Statements already in
+     * the text segments are kept where their binary code is unchanged, so source
+     * information of the assembled program survives.
+     *
+     * @param buffer The buffer to read from, positioned at the start of the memory contents.
+     * @return The contents read.
+     * @throws IOException if the buffer ends too early or a block lies outside its segment.
+     **/
+    public synchronized Snapshot readCheckpoint(ByteBuffer buffer) throws IOException {
+        return readCheckpoint(buffer, textBlockTable, kernelTextBlockTable);
+    }
+
+    /**
+     * Replace the entire contents of MIPS memory with contents returned by
+     * readCheckpoint().  They are taken over rather than copied, so must not be
+     * restored again.  Observers are not notified.
+     *
+     * @param contents The contents to put in place.
+     **/
+    public synchronized void restoreCheckpoint(Snapshot contents) {
+        lastSnapshot = null;
+        heapAddress = contents.heapAddress;
+        dataBlockTable = contents.dataBlocks;
+        kernelDataBlockTable = contents.kernelDataBlocks;
+        stackBlockTable = contents.stackBlocks;
+        memoryMapBlockTable = contents.memoryMapBlocks;
+        textBlockTable = contents.textBlocks;
+        kernelTextBlockTable = contents.kernelTextBlocks;
+    }
+
+    private Snapshot readCheckpoint(ByteBuffer buffer, ProgramStatement[][] textBlocks,
+                                    ProgramStatement[][] kernelTextBlocks) throws IOException {
+        try {
+            Snapshot contents = new Snapshot();
+            contents.heapAddress = buffer.getInt();
+            contents.dataBlocks = readBlocks(buffer, BLOCK_TABLE_LENGTH);
+            contents.kernelDataBlocks = readBlocks(buffer, BLOCK_TABLE_LENGTH);
+            contents.stackBlocks = readBlocks(buffer, BLOCK_TABLE_LENGTH);
+            contents.memoryMapBlocks = readBlocks(buffer, MMIO_TABLE_LENGTH);
+            contents.textBlocks = readBlocks(buffer, textBlocks, textBaseAddress);
+            contents.kernelTextBlocks = readBlocks(buffer, kernelTextBlocks, kernelTextBaseAddress);
+            return contents;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("memory contents are truncated");
+        }
+    }
+
+    /**
+     * Replace the entire contents of MIPS memory with those written by writeCheckpoint()
+     * right after a program was assembled, placing the given statements in the text
+     * segment blocks directly rather than rebuilding them from their binary code.
+     * Memory is left unchanged if the contents are damaged.  Observers are not notified.
+     *
+     * @param buffer     The buffer to read from, positioned at the start of the memory contents.
+     * @param statements ArrayList of ProgramStatement, the assembled program.
+     * @throws IOException if the buffer ends too early or a block lies outside its segment.
+     **/
+    public synchronized void readCheckpoint(ByteBuffer buffer, ArrayList statements) throws IOException {
+        ProgramStatement[][] textBlocks = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
+        ProgramStatement[][] kernelTextBlocks = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
+        for (int i = 0; i < statements.size(); i++) {
+            ProgramStatement statement = (ProgramStatement) statements.get(i);
+            int address = statement.getAddress();
+            if (inTextSegment(address)) {
+                storeProgramStatement(address, statement, textBaseAddress, textBlocks);
+            } else if (inKernelTextSegment(address)) {
+                storeProgramStatement(address, statement, kernelTextBaseAddress, kernelTextBlocks);
+            }
+        }
+        restoreCheckpoint(readCheckpoint(buffer, textBlocks, kernelTextBlocks));
+    }
+
+    // Each allocated block is written as its index followed by its words.
+    private static void writeBlocks(WritableByteChannel channel, ByteBuffer buffer, int[][] blockTable) throws IOException {
+        buffer.putInt(countBlocks(blockTable));
+        writeFully(channel, buffer);
+        for (int i = 0; i < blockTable.length; i++) {
+            if (blockTable[i] != null) {
+                buffer.putInt(i);
+                buffer.asIntBuffer().put(blockTable[i]);
+                buffer.position(buffer.position() + blockTable[i].length * WORD_LENGTH_BYTES);
+                writeFully(channel, buffer);
+            }
+        }
+    }
+
+    // Each allocated text block is written as its index, a bit mask of the words holding
+    // a statement (a nop and an empty word both have binary code 0), then the binary code.
+    private static void writeBlocks(WritableByteChannel channel, ByteBuffer buffer, ProgramStatement[][] blockTable) throws IOException {
+        buffer.putInt(countBlocks(blockTable));
+        writeFully(channel, buffer);
+        for (int i = 0; i < blockTable.length; i++) {
+            if (blockTable[i] != null) {
+                buffer.putInt(i);
+                int[] mask = new int[TEXT_BLOCK_LENGTH_WORDS / 32];
+                for (int j = 0; j < TEXT_BLOCK_LENGTH_WORDS; j++) {
+                    if (blockTable[i][j] != null) {
+                        mask[j >> 5] |= 1 << (j & 31);
+                    }
+                }
+                for (int j = 0; j < mask.length; j++) {
+                    buffer.putInt(mask[j]);
+                }
+                for (int j = 0; j < TEXT_BLOCK_LENGTH_WORDS; j++) {
+                    buffer.putInt((blockTable[i][j] == null) ? 0 : blockTable[i][j].getBinaryStatement());
+                }
+                writeFully(channel, buffer);
+            }
+        }
+    }
+
+    private static int countBlocks(Object[] blockTable) {
+        int count = 0;
+        for (int i = 0; i < blockTable.length; i++) {
+            if (blockTable[i] != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static int[][] readBlocks(ByteBuffer buffer, int tableLength) throws IOException {
+        int[][] blockTable = new int[tableLength][];
+        for (int count = readBlockCount(buffer, tableLength); count > 0; count--) {
+            int[] block = new int[BLOCK_LENGTH_WORDS];
+            blockTable[readBlockIndex(buffer, tableLength)] = block;
+            buffer.asIntBuffer().get(block);
+            buffer.position(buffer.position() + BLOCK_LENGTH_WORDS * WORD_LENGTH_BYTES);
+        }
+        return blockTable;
+    }
+
+    private static ProgramStatement[][] readBlocks(ByteBuffer buffer, ProgramStatement[][] current, int baseAddress) throws IOException {
+        ProgramStatement[][] blockTable = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
+        int[] mask = new int[TEXT_BLOCK_LENGTH_WORDS / 32];
+        for (int count = readBlockCount(buffer, TEXT_BLOCK_TABLE_LENGTH); count > 0; count--) {
+            int i = readBlockIndex(buffer, TEXT_BLOCK_TABLE_LENGTH);
+            ProgramStatement[] block = new ProgramStatement[TEXT_BLOCK_LENGTH_WORDS];
+            blockTable[i] = block;
+            buffer.asIntBuffer().get(mask);
+            buffer.position(buffer.position() + mask.length * WORD_LENGTH_BYTES);
+            for (int j = 0; j < TEXT_BLOCK_LENGTH_WORDS; j++) {
+                int binary = buffer.getInt();
+                if ((mask[j >> 5] & (1 << (j & 31))) == 0) {
+                    continue;
+                }
+                ProgramStatement statement = (current[i] == null) ? null : current[i][j];
+                block[j] = (statement != null && statement.getBinaryStatement() == binary)
+                        ? statement
+                        : new ProgramStatement(binary, baseAddress + (i * TEXT_BLOCK_LENGTH_WORDS + j) * WORD_LENGTH_BYTES);
+            }
+        }
+        return blockTable;
+    }
+
+    private static int readBlockCount(ByteBuffer buffer, int tableLength) throws IOException {
+        int count = buffer.getInt();
+        if (count < 0 || count > tableLength) {
+            throw new IOException("memory block count " + count + " out of range 0 to " + tableLength);
+        }
+        return count;
+    }
+
+    private static int readBlockIndex(ByteBuffer buffer, int tableLength) throws IOException {
+        int index = buffer.getInt();
+        if (index < 0 || index >= tableLength) {
+            throw new IOException("memory block index " + index + " out of range 0 to " + (tableLength - 1));
+        }
+        return index;
+    }
+
 
     /********************************  THE GETTER METHODS  ******************************/
 
@@ -483,6 +826,7 @@ public class Memory extends Observable {
         if (newHeapAddress >= dataSegmentLimitAddress) {
             throw new IllegalArgumentException("request (" + numBytes + ") exceeds available heap storage");
         }
+        ResourceLimits.checkHeap(newHeapAddress - heapBaseAddress);
         heapAddress = newHeapAddress;
         return result;
     }
@@ -570,6 +914,7 @@ public class Memory extends Observable {
             throw new AddressErrorException("address out of range ",
                     Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
+        ExecutionTrace.memoryWritten(address, length, value);
         notifyAnyObservers(AccessNotice.WRITE, address, length, value);
         return oldValue;
     }
@@ -638,6 +983,42 @@ public class Memory extends Observable {
         return oldValue;
     }
 
+    ///////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Starting at the given word address, write a run of words as is, without adjusting
+     * for byte order.  This is a bulk initialization store used by the assembler to
+     * install its staged data segment: it does not notify observers or record back-steps.
+     * Every word must fall in the data, kernel data, stack or memory-mapped I/O segment.
+     *
+     * @param address Starting address of Memory address to be set.  Must be word boundary.
+     * @param values  Array holding the words to be stored.
+     * @param offset  Index in values of the first word to store.
+     * @param count   Number of words to store.
+     * @throws AddressErrorException If address is not on word boundary or a word falls outside those segments.
+     **/
+    public synchronized void setRawWords(int address, int[] values, int offset, int count) throws AddressErrorException {
+        if (address % WORD_LENGTH_BYTES != 0) {
+            throw new AddressErrorException("store address not aligned on word boundary ",
+                    Exceptions.ADDRESS_EXCEPTION_STORE, address);
+        }
+        for (int i = 0; i < count; i++, address += WORD_LENGTH_BYTES) {
+            int value = values[offset + i];
+            if (inDataSegment(address)) {
+                storeWordInTable(dataBlockTable, (address - dataSegmentBaseAddress) >> 2, value);
+            } else if (address > stackLimitAddress && address <= stackBaseAddress) {
+                storeWordInTable(stackBlockTable, (stackBaseAddress - address) >> 2, value);
+            } else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
+                storeWordInTable(memoryMapBlockTable, (address - memoryMapBaseAddress) >> 2, value);
+            } else if (inKernelDataSegment(address)) {
+                storeWordInTable(kernelDataBlockTable, (address - kernelDataBaseAddress) >> 2, value);
+            } else {
+                throw new AddressErrorException("store address out of range ",
+                        Exceptions.ADDRESS_EXCEPTION_STORE, address);
+            }
+        }
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////
 
@@ -807,6 +1188,7 @@ public class Memory extends Observable {
                     Exceptions.ADDRESS_EXCEPTION_LOAD, address);
         }
         if (notify) {
+            ExecutionTrace.memoryRead(address, length, value);
             notifyAnyObservers(AccessNotice.READ, address, length, value);
         }
         return value;
@@ -1288,6 +1670,7 @@ public class Memory extends Observable {
                 bytePositionInMemory = 3 - bytePositionInMemory;
             }
             if (op == STORE) {
+                markDirty(blockTable, block);
                 oldValue = replaceByte(blockTable[block][offset], bytePositionInMemory,
                         oldValue, bytePositionInValue);
                 blockTable[block][offset] = replaceByte(value, bytePositionInValue,
@@ -1309,6 +1692,7 @@ public class Memory extends Observable {
             // First time writing to this block, so allocate the space.
             blockTable[block] = new int[BLOCK_LENGTH_WORDS];
         }
+        markDirty(blockTable, block);
         oldValue = blockTable[block][offset];
         blockTable[block][offset] = value;
         return oldValue;
@@ -1408,6 +1792,7 @@ public class Memory extends Observable {
                 // No instructions are stored in this block, so allocate the block.
                 blockTable[block] = new ProgramStatement[BLOCK_LENGTH_WORDS];
             }
+            markDirty(blockTable, block);
             blockTable[block][offset] = statement;
         }
     }
@@ -1441,6 +1826,19 @@ public class Memory extends Observable {
         return null;
     }
 
+    /**
+     * The contents of MIPS memory at some point in time, as captured by
+     * takeSnapshot().  Opaque outside of this class.
+     **/
+    public static class Snapshot {
+        private int heapAddress;
+        private int[][] dataBlocks, kernelDataBlocks, stackBlocks, memoryMapBlocks;
+        private ProgramStatement[][] textBlocks, kernelTextBlocks;
+
+        private Snapshot() {
+        }
+    }
+
     /////////////////////////////////////////////////////////////////////////
     // Private class whose objects will represent an observable-observer pair
     // for a given memory address or range.
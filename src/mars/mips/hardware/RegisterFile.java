@@ -3,6 +3,7 @@ package mars.mips.hardware;
 import mars.Globals;
 import mars.assembler.SymbolTable;
 import mars.mips.instructions.Instruction;
+import mars.simulator.ExecutionTrace;
 import mars.util.Binary;
 
 import java.util.Observer;
@@ -95,6 +96,7 @@ public class RegisterFile {
 
     public static int updateRegister(int num, int val) {
         int old = 0;
+        ExecutionTrace.registerWritten(num, val);
         if (num == 0) {
             //System.out.println("You can not change the value of the zero register.");
         } else {
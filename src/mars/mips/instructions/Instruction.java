@@ -67,8 +67,9 @@ public abstract class Instruction {
     protected String description;
     /**
      * List of tokens generated by tokenizing example usage (see <tt>exampleFormat</tt>).
+     * Created on first use by getTokenList().
      **/
-    protected TokenList tokenList;
+    protected volatile TokenList tokenList;
 
 
     /**
@@ -108,10 +109,16 @@ public abstract class Instruction {
      * For example, the instruction with format "sw $1,100($2)" yields token list
      * <operator><register_number><integer><left_paren><register_number><right_parent>
      *
+     * The list is created the first time it is needed, so that startup does not
+     * tokenize the examples of instructions a program never uses.
+     *
      * @return TokenList object representing correct instruction usage.
      */
 
     public TokenList getTokenList() {
+        if (tokenList == null) {
+            createExampleTokenList();
+        }
         return tokenList;
     }
 
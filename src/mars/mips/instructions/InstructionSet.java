@@ -3,6 +3,7 @@ package mars.mips.instructions;
 import mars.Globals;
 import mars.ProcessingException;
 import mars.ProgramStatement;
+import mars.jfr.SyscallEvent;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Coprocessor0;
 import mars.mips.hardware.Coprocessor1;
@@ -10,6 +11,7 @@ import mars.mips.hardware.RegisterFile;
 import mars.mips.instructions.syscalls.Syscall;
 import mars.simulator.DelayedBranch;
 import mars.simulator.Exceptions;
+import mars.simulator.SimulationMetrics;
 import mars.util.Binary;
 
 import java.io.BufferedReader;
@@ -19,6 +21,7 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.StringTokenizer;
 
 	/*
@@ -61,6 +64,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 public class InstructionSet {
     private ArrayList instructionList;
     private ArrayList opcodeMatchMaps;
+    private HashMap operatorMap; // lower case mnemonic -> ArrayList of its Instructions, in set order
     private SyscallLoader syscallLoader;
 
     /**
@@ -2699,12 +2703,8 @@ public class InstructionSet {
         syscallLoader = new SyscallLoader();
         syscallLoader.loadSyscalls();
 
-        // Initialization step.  Create token list for each instruction example.  This is
-        // used by parser to determine user program correct syntax.
-        for (int i = 0; i < instructionList.size(); i++) {
-            Instruction inst = (Instruction) instructionList.get(i);
-            inst.createExampleTokenList();
-        }
+        // Token lists of the instruction examples, used by the parser to check syntax,
+        // are created on first use by Instruction.getTokenList().
 
         HashMap maskMap = new HashMap();
         ArrayList matchMaps = new ArrayList();
@@ -2725,6 +2725,21 @@ public class InstructionSet {
         }
         Collections.sort(matchMaps);
         this.opcodeMatchMaps = matchMaps;
+
+        // The assembler and tokenizer look up an operator for every line and token,
+        // so index them by mnemonic rather than searching the whole set each time.
+        HashMap operators = new HashMap();
+        for (int i = 0; i < instructionList.size(); i++) {
+            Instruction instruction = (Instruction) instructionList.get(i);
+            String key = instruction.getName().toLowerCase(Locale.ROOT);
+            ArrayList matches = (ArrayList) operators.get(key);
+            if (matches == null) {
+                matches = new ArrayList();
+                operators.put(key, matches);
+            }
+            matches.add(instruction);
+        }
+        this.operatorMap = operators;
     }
 
     public BasicInstruction findByBinaryCode(int binaryInstr) {
@@ -2807,23 +2822,14 @@ public class InstructionSet {
 
     /**
      * Given an operator mnemonic, will return the corresponding Instruction object(s)
-     * from the instruction set.  Uses straight linear search technique.
+     * from the instruction set.  Case-insensitive.  The list is shared by all
+     * callers and must not be modified.
      *
      * @param name operator mnemonic (e.g. addi, sw,...)
      * @return list of corresponding Instruction object(s), or null if not found.
      */
     public ArrayList matchOperator(String name) {
-        ArrayList matchingInstructions = null;
-        // Linear search for now....
-        for (int i = 0; i < instructionList.size(); i++) {
-            if (((Instruction) instructionList.get(i)).getName().equalsIgnoreCase(name)) {
-                if (matchingInstructions == null) {
-                    matchingInstructions = new ArrayList();
-                }
-                matchingInstructions.add(instructionList.get(i));
-            }
-        }
-        return matchingInstructions;
+        return (ArrayList) operatorMap.get(name.toLowerCase(Locale.ROOT));
     }
 
 
@@ -2861,7 +2867,20 @@ public class InstructionSet {
             throws ProcessingException {
         Syscall service = syscallLoader.findSyscall(number);
         if (service != null) {
-            service.simulate(statement);
+            SimulationMetrics.syscallStarted(service);
+            SyscallEvent event = new SyscallEvent();
+            event.begin();
+            try {
+                service.simulate(statement);
+            } finally {
+                SimulationMetrics.syscallFinished();
+                event.end();
+                if (event.shouldCommit()) {
+                    event.number = number;
+                    event.name = service.getName();
+                    event.commit();
+                }
+            }
             return;
         }
         throw new ProcessingException(statement,
@@ -1,12 +1,13 @@
 package mars.mips.instructions;
 
 import mars.Globals;
-import mars.mips.instructions.syscalls.Syscall;
-import mars.mips.instructions.syscalls.SyscallNumberOverride;
-import mars.util.FilenameFinder;
+import mars.mips.instructions.syscalls.*;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -41,67 +42,76 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 /* This class provides functionality to bring external Syscall definitions
  * into MARS.  This permits anyone with knowledge of the Mars public interfaces,
  * in particular of the Memory and Register classes, to write custom MIPS syscall
- * functions. This is adapted from the ToolLoader class, which is in turn adapted
- * from Bret Barker's GameServer class from the book "Developing Games In Java".
+ * functions.  The syscalls built into MARS are listed below; others are found with
+ * java.util.ServiceLoader, so a syscall outside MARS is added by naming its class in
+ * a META-INF/services/mars.mips.instructions.syscalls.Syscall file on the classpath.
+ * Nothing is found by listing directories or JAR files, which took much of the
+ * startup time of a command-line run.
  */
 
 class SyscallLoader {
 
-    private static final String CLASS_PREFIX = "mars.mips.instructions.syscalls.";
-    private static final String SYSCALLS_DIRECTORY_PATH = "mars/mips/instructions/syscalls";
-    private static final String SYSCALL_INTERFACE = "Syscall.class";
-    private static final String SYSCALL_ABSTRACT = "AbstractSyscall.class";
-    private static final String CLASS_EXTENSION = "class";
+    // Syscalls built into MARS.  A new one must be added to this list.
+    private static final Class[] SYSCALL_CLASSES = {
+            SyscallPrintInt.class, SyscallPrintFloat.class, SyscallPrintDouble.class,
+            SyscallPrintString.class, SyscallReadInt.class, SyscallReadFloat.class,
+            SyscallReadDouble.class, SyscallReadString.class, SyscallSbrk.class,
+            SyscallExit.class, SyscallPrintChar.class, SyscallReadChar.class,
+            SyscallOpen.class, SyscallRead.class, SyscallWrite.class, SyscallClose.class,
+            SyscallExit2.class, SyscallTime.class, SyscallMidiOut.class, SyscallSleep.class,
+            SyscallMidiOutSync.class, SyscallPrintIntHex.class, SyscallPrintIntBinary.class,
+            SyscallPrintIntUnsigned.class, SyscallRandSeed.class, SyscallRandInt.class,
+            SyscallRandIntRange.class, SyscallRandFloat.class, SyscallRandDouble.class,
+            SyscallConfirmDialog.class, SyscallInputDialogInt.class, SyscallInputDialogFloat.class,
+            SyscallInputDialogDouble.class, SyscallInputDialogString.class, SyscallMessageDialog.class,
+            SyscallMessageDialogInt.class, SyscallMessageDialogFloat.class,
+            SyscallMessageDialogDouble.class, SyscallMessageDialogString.class
+    };
+    // Service numbers up to this size are looked up in a table, others in a map.
+    private static final int MAXIMUM_TABLE_SIZE = 4096;
 
     private ArrayList syscallList;
+    private Syscall[] syscallTable;   // indexed by service number, null where there is none
+    private HashMap otherSyscalls;    // Integer service number to Syscall, for numbers outside the table
 
     /*
-     *  Dynamically loads Syscalls into an ArrayList.  This method is adapted from
-     *  the loadGameControllers() method in Bret Barker's GameServer class.
-     *  Barker (bret@hypefiend.com) is co-author of the book "Developing Games
-     *  in Java".  Also see the "loadMarsTools()" method from ToolLoader class.
+     *  Creates the Syscalls, applies the number overrides in the config file, then
+     *  builds the table that findSyscall() looks them up in.
      */
     void loadSyscalls() {
         syscallList = new ArrayList();
-        // grab all class files in the same directory as Syscall
-        ArrayList candidates = FilenameFinder.getFilenameList(this.getClass().getClassLoader(),
-                SYSCALLS_DIRECTORY_PATH, CLASS_EXTENSION);
-        HashMap syscalls = new HashMap();
-        for (int i = 0; i < candidates.size(); i++) {
-            String file = (String) candidates.get(i);
-            // Do not add class if already encountered (happens if run in MARS development directory)
-            if (syscalls.containsKey(file)) {
-                continue;
-            } else {
-                syscalls.put(file, file);
+        for (int i = 0; i < SYSCALL_CLASSES.length; i++) {
+            try {
+                addSyscall((Syscall) SYSCALL_CLASSES[i].newInstance());
+            } catch (Exception e) {
+                System.out.println("Error instantiating Syscall " + SYSCALL_CLASSES[i].getName() + ": " + e);
+                System.exit(0);
             }
-            if ((!file.equals(SYSCALL_INTERFACE)) &&
-                    (!file.equals(SYSCALL_ABSTRACT))) {
-                try {
-                    // grab the class, make sure it implements Syscall, instantiate, add to list
-                    String syscallClassName = CLASS_PREFIX + file.substring(0, file.indexOf(CLASS_EXTENSION) - 1);
-                    Class clas = Class.forName(syscallClassName);
-                    if (!Syscall.class.isAssignableFrom(clas)) {
-                        continue;
-                    }
-                    Syscall syscall = (Syscall) clas.newInstance();
-                    if (findSyscall(syscall.getNumber()) == null) {
-                        syscallList.add(syscall);
-                    } else {
-                        throw new Exception("Duplicate service number: " + syscall.getNumber() +
-                                " already registered to " +
-                                findSyscall(syscall.getNumber()).getName());
-                    }
-                } catch (Exception e) {
-                    System.out.println("Error instantiating Syscall from file " + file + ": " + e);
-                    System.exit(0);
-                }
+        }
+        try {
+            Iterator others = ServiceLoader.load(Syscall.class).iterator();
+            while (others.hasNext()) {
+                addSyscall((Syscall) others.next());
             }
+        } catch (ServiceConfigurationError e) {
+            System.out.println("Error instantiating Syscall: " + e.getMessage());
+            System.exit(0);
         }
         syscallList = processSyscallNumberOverrides(syscallList);
+        buildSyscallTable();
         return;
     }
 
+    private void addSyscall(Syscall syscall) {
+        Syscall other = findSyscallInList(syscall.getNumber());
+        if (other != null) {
+            System.out.println("Error instantiating Syscall " + syscall.getClass().getName()
+                    + ": Duplicate service number: " + syscall.getNumber() + " already registered to " + other.getName());
+            System.exit(0);
+        }
+        syscallList.add(syscall);
+    }
+
     // Will get any syscall number override specifications from MARS config file and
     // process them.  This will alter syscallList entry for affected names.
     private ArrayList processSyscallNumberOverrides(ArrayList syscallList) {
@@ -150,22 +160,53 @@ class SyscallLoader {
         return syscallList;
     }
 
+    // Once the numbers are final, put each syscall in the table at its number.
+    private void buildSyscallTable() {
+        int size = 0;
+        for (int i = 0; i < syscallList.size(); i++) {
+            int number = ((Syscall) syscallList.get(i)).getNumber();
+            if (number >= size && number < MAXIMUM_TABLE_SIZE) {
+                size = number + 1;
+            }
+        }
+        Syscall[] table = new Syscall[size];
+        HashMap others = new HashMap();
+        for (int i = 0; i < syscallList.size(); i++) {
+            Syscall syscall = (Syscall) syscallList.get(i);
+            int number = syscall.getNumber();
+            if (number >= 0 && number < size) {
+                table[number] = syscall;
+            } else {
+                others.put(Integer.valueOf(number), syscall);
+            }
+        }
+        otherSyscalls = others;
+        syscallTable = table;
+    }
+
     /*
      * Method to find Syscall object associated with given service number.
-     * Returns null if no associated object found.
+     * Returns null if no associated object found.  This is done for every
+     * syscall instruction executed, so it is a table lookup.
      */
     Syscall findSyscall(int number) {
-        // linear search is OK since number of syscalls is small.
-        Syscall service, match = null;
-        if (syscallList == null) {
+        if (syscallTable == null) {
             loadSyscalls();
         }
+        if (number >= 0 && number < syscallTable.length) {
+            return syscallTable[number];
+        }
+        return (Syscall) otherSyscalls.get(Integer.valueOf(number));
+    }
+
+    // Linear search, used only while the syscalls are being loaded.
+    private Syscall findSyscallInList(int number) {
         for (int index = 0; index < syscallList.size(); index++) {
-            service = (Syscall) syscallList.get(index);
+            Syscall service = (Syscall) syscallList.get(index);
             if (service.getNumber() == number) {
-                match = service;
+                return service;
             }
         }
-        return match;
+        return null;
     }
 }
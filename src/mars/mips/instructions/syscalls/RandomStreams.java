@@ -1,5 +1,6 @@
 package mars.mips.instructions.syscalls;
 
+import java.io.*;
 import java.util.HashMap;
 
 /*
@@ -43,4 +44,44 @@ public class RandomStreams {
      * The streams are by default not seeded.
      */
     static final HashMap randomStreams = new HashMap();
+
+    /**
+     * Returns a copy of the current state of all streams, to be put back later by
+     * restoreState().  Used for time travel snapshots.
+     *
+     * @return serialized streams, or null if no stream has been created yet.
+     */
+    public static byte[] saveState() {
+        if (randomStreams.isEmpty()) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(randomStreams);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            return null; // does not occur with an in-memory stream of java.util.Random
+        }
+    }
+
+    /**
+     * Replace all streams by those saved by saveState().
+     *
+     * @param state value returned by saveState().
+     */
+    public static void restoreState(byte[] state) {
+        randomStreams.clear();
+        if (state == null) {
+            return;
+        }
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state));
+            randomStreams.putAll((HashMap) in.readObject());
+            in.close();
+        } catch (IOException e) {
+        } catch (ClassNotFoundException e) {
+        }
+    }
 }
\ No newline at end of file
@@ -55,16 +55,21 @@ public class SyscallPrintString extends AbstractSyscall {
     public void simulate(ProgramStatement statement) throws ProcessingException {
         int byteAddress = RegisterFile.getValue(4);
         char ch = 0;
+        // Printed in one piece rather than a character at a time, which in the
+        // GUI cost an event per character.
+        StringBuffer string = new StringBuffer();
         try {
             ch = (char) Globals.memory.getByte(byteAddress);
             // won't stop until NULL byte reached!
             while (ch != 0) {
-                SystemIO.printString(new Character(ch).toString());
+                string.append(ch);
                 byteAddress++;
                 ch = (char) Globals.memory.getByte(byteAddress);
             }
         } catch (AddressErrorException e) {
+            SystemIO.printString(string.toString()); // as much as was printed before
             throw new ProcessingException(statement, e);
         }
+        SystemIO.printString(string.toString());
     }
 }
\ No newline at end of file
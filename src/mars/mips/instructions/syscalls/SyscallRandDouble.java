@@ -6,6 +6,7 @@ import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.InvalidRegisterAccessException;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.Exceptions;
+import mars.util.ResultCache;
 
 import java.util.Random;
 
@@ -63,6 +64,7 @@ public class SyscallRandDouble extends AbstractSyscall {
         Random stream = (Random) RandomStreams.randomStreams.get(index);
         if (stream == null) {
             stream = new Random(); // create a non-seeded stream
+            ResultCache.uncacheable(); // results differ from run to run
             RandomStreams.randomStreams.put(index, stream);
         }
         try {
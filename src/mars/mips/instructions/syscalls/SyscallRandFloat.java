@@ -4,6 +4,7 @@ import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.RegisterFile;
+import mars.util.ResultCache;
 
 import java.util.Random;
 
@@ -61,6 +62,7 @@ public class SyscallRandFloat extends AbstractSyscall {
         Random stream = (Random) RandomStreams.randomStreams.get(index);
         if (stream == null) {
             stream = new Random(); // create a non-seeded stream
+            ResultCache.uncacheable(); // results differ from run to run
             RandomStreams.randomStreams.put(index, stream);
         }
         Coprocessor1.setRegisterToFloat(0, stream.nextFloat());
@@ -3,6 +3,7 @@ package mars.mips.instructions.syscalls;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
+import mars.util.ResultCache;
 
 import java.util.Random;
 
@@ -58,6 +59,7 @@ public class SyscallRandInt extends AbstractSyscall {
         Random stream = (Random) RandomStreams.randomStreams.get(index);
         if (stream == null) {
             stream = new Random(); // create a non-seeded stream
+            ResultCache.uncacheable(); // results differ from run to run
             RandomStreams.randomStreams.put(index, stream);
         }
         RegisterFile.updateRegister(4, stream.nextInt());
@@ -4,6 +4,7 @@ import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
 import mars.util.Binary;
+import mars.util.ResultCache;
 
 /*
 Copyright (c) 2003-2007,  Pete Sanderson and Kenneth Vollmar
@@ -53,6 +54,7 @@ public class SyscallTime extends AbstractSyscall {
      */
     public void simulate(ProgramStatement statement) throws ProcessingException {
         long value = new java.util.Date().getTime();
+        ResultCache.uncacheable(); // results differ from run to run
         RegisterFile.updateRegister(4, Binary.lowOrderLongToInt(value)); // $a0
         RegisterFile.updateRegister(5, Binary.highOrderLongToInt(value)); // $a1
     }
@@ -5,7 +5,9 @@ import mars.venus.*;
 import mars.mips.hardware.*;
 import mars.mips.instructions.*;
 
+import java.io.*;
 import java.util.*;
+import java.util.zip.*;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -44,7 +46,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class BackStepper {
     // The types of "undo" actions.  Under 1.5, these would be enumerated type.
-    // These fit better in the BackStep class below but inner classes cannot have static members.
     private static final int MEMORY_RESTORE_RAW_WORD = 0;
     private static final int MEMORY_RESTORE_WORD = 1;
     private static final int MEMORY_RESTORE_HALF = 2;
@@ -57,28 +58,34 @@ public class BackStepper {
     private static final int COPROC1_CONDITION_SET = 9;
     private static final int DO_NOTHING = 10;  // instruction does not write anything.
 
-    // Flag to mark BackStep object as prepresenting specific situation: user manipulates
-    // memory/register value via GUI after assembling program but before running it.
-    private static final int NOT_PC_VALUE = -1;
+    // Bits of the flags recorded with each back-step.
+    private static final int IN_DELAY_SLOT = 1;
 
     private boolean engaged;
     private BackstepStack backSteps;
+    // The steps of the latest program assembled.  All programs run on the one machine,
+    // so assembling a program makes the steps of the one before it useless.
+    private static BackStepper latest;
 
-    // One can argue using java.util.Stack, given its clumsy implementation.
-    // A homegrown linked implementation will be more streamlined, but
-    // I anticipate that backstepping will only be used during timed
-    // (currently max 30 instructions/second) or stepped execution, where
-    // performance is not an issue.  Its Vector implementation may result
-    // in quicker garbage collection than a pure linked list implementation.
+    // Back-steps are recorded for every instruction executed whenever back-stepping
+    // is enabled, including flat-out runs, so recording has to be cheap: see
+    // BackstepStack below.
 
     /**
      * Create a fresh BackStepper.  It is enabled, which means all
      * subsequent instruction executions will have their "undo" action
-     * recorded here.
+     * recorded here.  The most recent Globals.maximumBacksteps steps are kept
+     * in memory; if Globals.backstepSpillEnabled, older ones go to a temporary file.
      */
     public BackStepper() {
         engaged = true;
-        backSteps = new BackstepStack(Globals.maximumBacksteps);
+        backSteps = new BackstepStack(Globals.maximumBacksteps, Globals.backstepSpillEnabled);
+        synchronized (BackStepper.class) {
+            if (latest != null) {
+                latest.reset(); // give up its spill file, if any
+            }
+            latest = this;
+        }
     }
 
     /**
@@ -108,6 +115,42 @@ public class BackStepper {
         return backSteps.empty();
     }
 
+    /**
+     * Discard all recorded steps.  Used when the machine state has been replaced
+     * wholesale (see TimeTravel), so the steps no longer apply.  The spill file,
+     * if any, is closed and deleted.
+     */
+    public void reset() {
+        backSteps.clear();
+    }
+
+    /**
+     * Number of back-steps held in memory, at most getCapacity().
+     *
+     * @return number of recorded steps not spilled to disk.
+     */
+    public int getSize() {
+        return backSteps.getSize();
+    }
+
+    /**
+     * Number of back-steps that can be held in memory.
+     *
+     * @return capacity of the in-memory buffer.
+     */
+    public int getCapacity() {
+        return backSteps.capacity;
+    }
+
+    /**
+     * Number of back-steps spilled to disk because the in-memory buffer was full.
+     *
+     * @return number of recorded steps on disk, 0 unless spilling is enabled.
+     */
+    public long getSpilledSize() {
+        return backSteps.getSpilledSize();
+    }
+
     /**
      * Determine whether the next back-step action occurred as the result of
      * an instruction that executed in the "delay slot" of a delayed branch.
@@ -117,7 +160,21 @@ public class BackStepper {
      */
     // Added 25 June 2007
     public boolean inDelaySlot() {
-        return !empty() && backSteps.peek().inDelaySlot;
+        return !empty() && (backSteps.peekFlags() & IN_DELAY_SLOT) != 0;
+    }
+
+    /**
+     * Mark the latest execution step as having occurred in the "delay slot" of a
+     * delayed branch.  Called by the simulator as it completes the branch, so
+     * that recording a step does not have to ask.  The step is the program counter
+     * restore recorded when the branch target was set.
+     *
+     * @param pc address of the instruction in the delay slot.
+     */
+    public void markDelaySlot(int pc) {
+        if (engaged && !backSteps.empty() && backSteps.peekPC() == pc) {
+            backSteps.markTop(IN_DELAY_SLOT);
+        }
     }
 
     /**
@@ -130,52 +187,57 @@ public class BackStepper {
     // all store their result in register pairs which results in two store operations.
     // Both must be undone transparently, so we need to detect that multiple steps happen
     // together and carry out all of them here.
-    // Use a do-while loop based on the backstep's program statement reference.
+    // Use a do-while loop based on the backstep's program counter: all the steps of one
+    // instruction were recorded with the same PC.  (Formerly based on the program statement
+    // looked up from the PC when the step was recorded; that lookup is now done here.)
     public void backStep() {
         if (engaged && !backSteps.empty()) {
-            ProgramStatement statement = ((BackStep) backSteps.peek()).ps;
+            int pc = backSteps.peekPC();
+            // The PC is not set if no statement can be associated with it.  The only situation
+            // causing this so far: user modifies memory or register contents through direct
+            // manipulation on the GUI, after assembling the program but before starting to
+            // run it (or after backstepping all the way to the start).  The action will not
+            // be associated with any instruction, but will be carried out.
+            boolean pcHasStatement = hasStatement(pc);
             engaged = false; // GOTTA DO THIS SO METHOD CALL IN SWITCH WILL NOT RESULT IN NEW ACTION ON STACK!
             do {
-                BackStep step = (BackStep) backSteps.pop();
-            /*
-            	System.out.println("backstep POP: action "+step.action+" pc "+mars.util.Binary.intToHexString(step.pc)+
-            	                   " source "+((step.ps==null)? "none":step.ps.getSource())+
-            							 " parm1 "+step.param1+" parm2 "+step.param2);
-            */
-                if (step.pc != NOT_PC_VALUE) {
-                    RegisterFile.setProgramCounter(step.pc);
+                backSteps.pop();
+                int param1 = backSteps.poppedParam1;
+                int param2 = backSteps.poppedParam2;
+                if (pcHasStatement) {
+                    RegisterFile.setProgramCounter(pc);
                 }
                 try {
-                    switch (step.action) {
+                    switch (backSteps.poppedAction) {
                         case MEMORY_RESTORE_RAW_WORD:
-                            Globals.memory.setRawWord(step.param1, step.param2);
+                            Globals.memory.setRawWord(param1, param2);
                             break;
                         case MEMORY_RESTORE_WORD:
-                            Globals.memory.setWord(step.param1, step.param2);
+                            Globals.memory.setWord(param1, param2);
                             break;
                         case MEMORY_RESTORE_HALF:
-                            Globals.memory.setHalf(step.param1, step.param2);
+                            Globals.memory.setHalf(param1, param2);
                             break;
                         case MEMORY_RESTORE_BYTE:
-                            Globals.memory.setByte(step.param1, step.param2);
+                            Globals.memory.setByte(param1, param2);
                             break;
                         case REGISTER_RESTORE:
-                            RegisterFile.updateRegister(step.param1, step.param2);
+                            RegisterFile.updateRegister(param1, param2);
                             break;
                         case PC_RESTORE:
-                            RegisterFile.setProgramCounter(step.param1);
+                            RegisterFile.setProgramCounter(param1);
                             break;
                         case COPROC0_REGISTER_RESTORE:
-                            Coprocessor0.updateRegister(step.param1, step.param2);
+                            Coprocessor0.updateRegister(param1, param2);
                             break;
                         case COPROC1_REGISTER_RESTORE:
-                            Coprocessor1.updateRegister(step.param1, step.param2);
+                            Coprocessor1.updateRegister(param1, param2);
                             break;
                         case COPROC1_CONDITION_CLEAR:
-                            Coprocessor1.clearConditionFlag(step.param1);
+                            Coprocessor1.clearConditionFlag(param1);
                             break;
                         case COPROC1_CONDITION_SET:
-                            Coprocessor1.setConditionFlag(step.param1);
+                            Coprocessor1.setConditionFlag(param1);
                             break;
                         case DO_NOTHING:
                             break;
@@ -185,11 +247,22 @@ public class BackStepper {
                     System.out.println("Internal MARS error: address exception while back-stepping.");
                     System.exit(0);
                 }
-            } while (!backSteps.empty() && statement == ((BackStep) backSteps.peek()).ps);
+            } while (!backSteps.empty() && backSteps.peekPC() == pc);
             engaged = true;  // RESET IT (was disabled at top of loop -- see comment)
         }
     }
 
+    // Want the program statement but do not want observers notified.  Only its
+    // existence matters: the lookup fails for addresses outside the text segments.
+    private boolean hasStatement(int pc) {
+        try {
+            Globals.memory.getStatementNoNotify(pc);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
 
     /* Convenience method called below to get program counter value.  If it needs to be
      * be modified (e.g. to subtract 4) that can be done here in one place.
@@ -340,91 +413,108 @@ public class BackStepper {
      * @return 0
      */
     public int addDoNothing(int pc) {
-        if (backSteps.empty() || backSteps.peek().pc != pc) {
+        if (backSteps.empty() || backSteps.peekPC() != pc) {
             backSteps.push(DO_NOTHING, pc);
         }
         return 0;
     }
 
 
-    // Represents a "back step" (undo action) on the stack.
-    private class BackStep {
-        private int action;  // what do do MEMORY_RESTORE_WORD, etc
-        private int pc;      // program counter value when original step occurred
-        private ProgramStatement ps;   // statement whose action is being "undone" here
-        private int param1;  // first parameter required by that action
-        private int param2;  // optional second parameter required by that action
-        private boolean inDelaySlot; // true if instruction executed in "delay slot" (delayed branching enabled)
-
-        // it is critical that BackStep object get its values by calling this method
-        // rather than assigning to individual members, because of the technique used
-        // to set its ps member (and possibly pc).
-        private void assign(int act, int programCounter, int parm1, int parm2) {
-            action = act;
-            pc = programCounter;
-            try {
-                // Client does not have direct access to program statement, and rather than making all
-                // of them go through the methods below to obtain it, we will do it here.
-                // Want the program statement but do not want observers notified.
-                ps = Globals.memory.getStatementNoNotify(programCounter);
-            } catch (Exception e) {
-                // The only situation causing this so far: user modifies memory or register
-                // contents through direct manipulation on the GUI, after assembling the program but
-                // before starting to run it (or after backstepping all the way to the start).
-                // The action will not be associated with any instruction, but will be carried out
-                // when popped.
-                ps = null;
-                pc = NOT_PC_VALUE; // Backstep method above will see this as flag to not set PC
-            }
-            param1 = parm1;
-            param2 = parm2;
-            inDelaySlot = Simulator.inDelaySlot(); // ADDED 25 June 2007
-         /*				
-            System.out.println("backstep PUSH: action "+action+" pc "+mars.util.Binary.intToHexString(pc)+
-         		                   " source "+((ps==null)? "none":ps.getSource())+
-         								 " parm1 "+param1+" parm2 "+param2);
-         */
-        }
-    }
-
     // *****************************************************************************
     // special purpose stack class for backstepping.  You've heard of circular queues
     // implemented with an array, right?  This is a circular stack!  When full, the
     // newly-pushed item overwrites the oldest item, with circular top!  All operations
     // are constant time.  It's synchronized too, to be safe (is used by both the
     // simulation thread and the GUI thread for the back-step button).
-    // Upon construction, it is filled with newly-created empty BackStep objects which
-    // will exist for the life of the stack.  Push does not create a BackStep object
-    // but instead overwrites the contents of the existing one.  Thus during MIPS
-    // program (simulated) execution, BackStep objects are never created or junked
-    // regardless of how many steps are executed.  This will speed things up a bit
-    // and make life easier for the garbage collector.
+    // Each back-step is stored across parallel primitive arrays, indexed by stack
+    // position, so a push is a handful of array stores: nothing is allocated and
+    // nothing is looked up during MIPS program (simulated) execution.
+    // Optionally, instead of overwriting the oldest items, the older half of a full
+    // stack is compressed and appended to a temporary file, and read back when the
+    // stack has been popped empty.  Back-stepping depth is then limited only by disk.
 
     private class BackstepStack {
         private int capacity;
         private int size;
         private int top;
-        private BackStep[] stack;
-
-        // Stack is created upon successful assembly or reset.  The one-time overhead of
-        // creating all the BackStep objects will not be noticed by the user, and enhances
-        // runtime performance by not having to create or recycle them during MIPS
-        // program execution.
-        private BackstepStack(int capacity) {
-            this.capacity = capacity;
+        private byte[] actions;
+        private byte[] flags;
+        private int[] pcs;
+        private int[] param1s;
+        private int[] param2s;
+        // Values of the most recently popped back-step.
+        private int poppedAction;
+        private int poppedParam1;
+        private int poppedParam2;
+        // Spill file, created when first needed, and the file offset, compressed length
+        // and item count of each chunk written to it, in order.
+        private boolean spillEnabled;
+        private RandomAccessFile spillFile;
+        private File spillFileName;
+        private ArrayList spilledChunks;
+
+        // Stack is created upon successful assembly or reset.
+        private BackstepStack(int capacity, boolean spillEnabled) {
+            this.capacity = Math.max(capacity, 1);
             this.size = 0;
             this.top = -1;
-            this.stack = new BackStep[capacity];
-            for (int i = 0; i < capacity; i++) {
-                this.stack[i] = new BackStep();
+            this.actions = new byte[this.capacity];
+            this.flags = new byte[this.capacity];
+            this.pcs = new int[this.capacity];
+            this.param1s = new int[this.capacity];
+            this.param2s = new int[this.capacity];
+            this.spillEnabled = spillEnabled && this.capacity > 1;
+            this.spilledChunks = new ArrayList();
+        }
+
+        private synchronized void clear() {
+            size = 0;
+            top = -1;
+            spilledChunks.clear();
+            closeSpillFile();
+        }
+
+        // Close and delete the spill file.  Another is created if the stack spills again.
+        private void closeSpillFile() {
+            if (spillFile != null) {
+                try {
+                    spillFile.close();
+                } catch (IOException e) {
+                    // NO ACTION -- file is being given up anyway
+                }
+                spillFileName.delete();
+                spillFile = null;
+                spillFileName = null;
             }
         }
 
+        // Turn spilling off after a spill file error.  Spilled back-steps are lost.
+        private void stopSpilling() {
+            spillEnabled = false;
+            spilledChunks.clear();
+            closeSpillFile();
+        }
+
         private synchronized boolean empty() {
-            return size == 0;
+            return size == 0 && spilledChunks.isEmpty();
+        }
+
+        private synchronized int getSize() {
+            return size;
+        }
+
+        private synchronized long getSpilledSize() {
+            long count = 0;
+            for (int i = 0; i < spilledChunks.size(); i++) {
+                count += ((long[]) spilledChunks.get(i))[2];
+            }
+            return count;
         }
 
         private synchronized void push(int act, int programCounter, int parm1, int parm2) {
+            if (size == capacity && spillEnabled) {
+                spill();
+            }
             if (size == 0) {
                 top = 0;
                 size++;
@@ -434,9 +524,11 @@ public class BackStepper {
             } else { // size == capacity.  The top moves up one, replacing oldest entry (goodbye!)
                 top = (top + 1) % capacity;
             }
-            // We'll re-use existing objects rather than create/discard each time.
-            // Must use assign() method rather than series of assignment statements!
-            stack[top].assign(act, programCounter, parm1, parm2);
+            actions[top] = (byte) act;
+            flags[top] = 0; // IN_DELAY_SLOT set afterwards by markTop(), see markDelaySlot()
+            pcs[top] = programCounter;
+            param1s[top] = parm1;
+            param2s[top] = parm2;
         }
 
         private synchronized void push(int act, int programCounter, int parm1) {
@@ -448,25 +540,105 @@ public class BackStepper {
         }
 
         // NO PROTECTION.  This class is used only within this file so there is no excuse
-        // for trying to pop from empty stack.
-        private synchronized BackStep pop() {
-            BackStep bs;
-            bs = stack[top];
+        // for trying to pop from empty stack.  Values are left in the popped fields.
+        // (Only if a spilled chunk could not be read back can the stack turn out empty
+        // here; the pop is then a do-nothing.)
+        private synchronized void pop() {
+            reload();
+            if (size == 0) {
+                poppedAction = DO_NOTHING;
+                return;
+            }
+            poppedAction = actions[top];
+            poppedParam1 = param1s[top];
+            poppedParam2 = param2s[top];
             if (size == 1) {
                 top = -1;
             } else {
                 top = (top + capacity - 1) % capacity;
             }
             size--;
-            return bs;
         }
 
         // NO PROTECTION.  This class is used only within this file so there is no excuse
         // for trying to peek from empty stack.
-        private synchronized BackStep peek() {
-            return stack[top];
+        private synchronized int peekPC() {
+            reload();
+            return (size == 0) ? 0 : pcs[top];
         }
 
-    }
+        private synchronized int peekFlags() {
+            reload();
+            return (size == 0) ? 0 : flags[top];
+        }
+
+        private synchronized void markTop(int flag) {
+            if (size > 0) {
+                flags[top] |= flag;
+            }
+        }
 
-}
\ No newline at end of file
+        // Compress the older half of the (full) stack and append it to the spill file.
+        // If the file cannot be written, spilling is turned off and the oldest entries
+        // are overwritten as usual.
+        private void spill() {
+            int count = capacity / 2;
+            int bottom = (top - size + 1 + capacity) % capacity;
+            try {
+                if (spillFile == null) {
+                    spillFileName = File.createTempFile("mars-backstep", ".tmp");
+                    spillFileName.deleteOnExit();
+                    spillFile = new RandomAccessFile(spillFileName, "rw");
+                }
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(
+                        new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED)));
+                for (int i = 0, j = bottom; i < count; i++, j = (j + 1) % capacity) {
+                    out.writeByte(actions[j]);
+                    out.writeByte(flags[j]);
+                    out.writeInt(pcs[j]);
+                    out.writeInt(param1s[j]);
+                    out.writeInt(param2s[j]);
+                }
+                out.close();
+                long offset = spillFile.length();
+                spillFile.seek(offset);
+                spillFile.write(bytes.toByteArray());
+                spilledChunks.add(new long[]{offset, bytes.size(), count});
+                size -= count;
+            } catch (IOException e) {
+                stopSpilling();
+            }
+        }
+
+        // If the stack has been popped empty, read back the most recent spilled chunk.
+        private void reload() {
+            if (size > 0 || spilledChunks.isEmpty()) {
+                return;
+            }
+            long[] chunk = (long[]) spilledChunks.remove(spilledChunks.size() - 1);
+            try {
+                byte[] compressed = new byte[(int) chunk[1]];
+                spillFile.seek(chunk[0]);
+                spillFile.readFully(compressed);
+                spillFile.setLength(chunk[0]);
+                DataInputStream in = new DataInputStream(
+                        new InflaterInputStream(new ByteArrayInputStream(compressed)));
+                int count = (int) chunk[2];
+                for (int i = 0; i < count; i++) {
+                    actions[i] = in.readByte();
+                    flags[i] = in.readByte();
+                    pcs[i] = in.readInt();
+                    param1s[i] = in.readInt();
+                    param2s[i] = in.readInt();
+                }
+                in.close();
+                top = count - 1;
+                size = count;
+            } catch (IOException e) {
+                // Older back-steps are lost; behave as if they had been overwritten.
+                stopSpilling();
+            }
+        }
+    }
+}
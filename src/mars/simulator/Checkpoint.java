@@ -0,0 +1,250 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.ProgramStatement;
+import mars.Settings;
+import mars.mips.hardware.*;
+import mars.util.SystemIO;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent checkpoint of a simulation, so that a long run can be stopped and
+ * resumed later, possibly by another invocation of Mars.
+ * <p>
+ * A checkpoint holds everything the simulated machine needs to continue: registers,
+ * coprocessor 0 and 1 registers, memory (including the heap pointer and the text
+ * segments, as binary code), delayed branch and random number stream state, the
+ * files the program has open with their positions, and the number of instructions
+ * executed so far.  The assembled program itself is not saved: it must be assembled
+ * again, from the same sources and with the same settings, before the checkpoint is
+ * read.  A fingerprint of the machine code guards against resuming a different program.
+ * <p>
+ * Checkpoints are written through a FileChannel and read by mapping the file into memory.
+ */
+public class Checkpoint {
+    private static final byte[] MAGIC = {'M', 'A', 'R', 'S', 'C', 'K', 'P', 'T'};
+    private static final int VERSION = 1;
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Write the current state of the simulated machine to a checkpoint file.  The
+     * simulation must not be running.
+     *
+     * @param file             the file to write; replaced if it exists.
+     * @param program          the assembled program being simulated.
+     * @param instructionCount the number of instructions executed so far.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(File file, MIPSprogram program, long instructionCount) throws IOException {
+        MachineState state = MachineState.capture();
+        ArrayList openFiles = SystemIO.getOpenFiles();
+        byte[][] fileNames = new byte[openFiles.size()][];
+        int size = MAGIC.length + 4 + 4 + 8
+                + 4 * (3 + state.registers.length + state.coprocessor0.length + state.coprocessor1.length) + 4 * 4
+                + 4 * 2
+                + 4 + ((state.randomStreams == null) ? 0 : state.randomStreams.length)
+                + 4;
+        for (int i = 0; i < fileNames.length; i++) {
+            fileNames[i] = ((SystemIO.OpenFile) openFiles.get(i)).name.getBytes(ENCODING);
+            size += 4 + 4 + 8 + 4 + fileNames[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(fingerprint(program));
+        buffer.putLong(instructionCount);
+        putInts(buffer, state.registers);
+        buffer.putInt(state.hi);
+        buffer.putInt(state.lo);
+        buffer.putInt(state.pc);
+        putInts(buffer, state.coprocessor0);
+        putInts(buffer, state.coprocessor1);
+        buffer.putInt(state.conditionFlags);
+        buffer.putInt(state.delayedBranch[0]);
+        buffer.putInt(state.delayedBranch[1]);
+        if (state.randomStreams == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(state.randomStreams.length);
+            buffer.put(state.randomStreams);
+        }
+        buffer.putInt(openFiles.size());
+        for (int i = 0; i < fileNames.length; i++) {
+            SystemIO.OpenFile openFile = (SystemIO.OpenFile) openFiles.get(i);
+            buffer.putInt(openFile.descriptor);
+            buffer.putInt(openFile.flags);
+            buffer.putLong(openFile.position);
+            buffer.putInt(fileNames[i].length);
+            buffer.put(fileNames[i]);
+        }
+        buffer.flip();
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            Globals.memory.writeCheckpoint(channel);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Replace the state of the simulated machine with that of a checkpoint file, and
+     * reopen the files the program had open.  The program must have been assembled
+     * and the simulation must not be running.
+     *
+     * @param file    the checkpoint file.
+     * @param program the assembled program, which must be the one the checkpoint was taken of.
+     * @return the number of instructions executed when the checkpoint was taken.
+     * @throws IOException if the file cannot be read, is not a checkpoint, or belongs to another program.
+     */
+    public static long read(File file, MIPSprogram program) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer, program);
+        } finally {
+            in.close();
+        }
+    }
+
+    // The whole file is read and checked before anything is changed, so a damaged
+    // checkpoint leaves the machine as it was.  Reopening the files is the only step
+    // that can still fail, so it comes before the machine state is replaced.
+    private static long read(ByteBuffer buffer, MIPSprogram program) throws IOException {
+        long instructionCount;
+        MachineState state = new MachineState();
+        ArrayList openFiles = new ArrayList();
+        Memory.Snapshot memory;
+        try {
+            checkHeader(buffer, program);
+            instructionCount = readContents(buffer, state, openFiles);
+            memory = Globals.memory.readCheckpoint(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("checkpoint file is truncated");
+        } catch (RuntimeException e) {
+            throw new IOException("checkpoint file is damaged: " + e);
+        }
+
+        SystemIO.reopenFiles(openFiles);
+        synchronized (Globals.memoryAndRegistersLock) {
+            state.restore();
+            Globals.memory.restoreCheckpoint(memory);
+        }
+        return instructionCount;
+    }
+
+    private static void checkHeader(ByteBuffer buffer, MIPSprogram program) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("not a checkpoint file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported checkpoint version " + version);
+        }
+        if (buffer.getInt() != fingerprint(program)) {
+            throw new IOException("checkpoint was taken of a different program or memory configuration");
+        }
+    }
+
+    // Read the instruction count, machine state and open files that precede memory.
+    private static long readContents(ByteBuffer buffer, MachineState state, ArrayList openFiles) throws IOException {
+        long instructionCount = buffer.getLong();
+        if (instructionCount < 0) {
+            throw new IOException("invalid instruction count " + instructionCount);
+        }
+        state.registers = getInts(buffer, RegisterFile.getRegisters().length);
+        state.hi = buffer.getInt();
+        state.lo = buffer.getInt();
+        state.pc = buffer.getInt();
+        state.coprocessor0 = getInts(buffer, Coprocessor0.getRegisters().length);
+        state.coprocessor1 = getInts(buffer, Coprocessor1.getRegisters().length);
+        state.conditionFlags = buffer.getInt();
+        state.delayedBranch = new int[]{buffer.getInt(), buffer.getInt()};
+        int length = buffer.getInt();
+        if (length >= 0) {
+            state.randomStreams = new byte[length];
+            buffer.get(state.randomStreams);
+        }
+        for (int count = buffer.getInt(); count > 0; count--) {
+            int descriptor = buffer.getInt();
+            int flags = buffer.getInt();
+            long position = buffer.getLong();
+            if (position < 0) {
+                throw new IOException("invalid position " + position + " of file descriptor " + descriptor);
+            }
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            openFiles.add(new SystemIO.OpenFile(descriptor, flags, new String(name, ENCODING), position));
+        }
+        return instructionCount;
+    }
+
+    /**
+     * Fingerprint of an assembled program: a checksum of its machine code and of the
+     * memory configuration and settings that affect how it runs.
+     *
+     * @param program the assembled program.
+     * @return the fingerprint.
+     */
+    public static int fingerprint(MIPSprogram program) {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        int[] layout = {Memory.textBaseAddress, Memory.dataSegmentBaseAddress, Memory.stackBaseAddress,
+                Memory.kernelTextBaseAddress, Memory.kernelDataBaseAddress, Memory.memoryMapBaseAddress,
+                Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED) ? 1 : 0,
+                Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED) ? 1 : 0};
+        for (int i = 0; i < layout.length; i++) {
+            buffer.clear();
+            buffer.putInt(layout[i]);
+            crc.update(buffer.array(), 0, 4);
+        }
+        ArrayList machineList = program.getMachineList();
+        for (int i = 0; i < machineList.size(); i++) {
+            ProgramStatement statement = (ProgramStatement) machineList.get(i);
+            buffer.clear();
+            buffer.putInt(statement.getAddress());
+            buffer.putInt(statement.getBinaryStatement());
+            crc.update(buffer.array(), 0, 8);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.putInt(values.length);
+        for (int i = 0; i < values.length; i++) {
+            buffer.putInt(values[i]);
+        }
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int expected) throws IOException {
+        int length = buffer.getInt();
+        if (length != expected) {
+            throw new IOException("checkpoint register count " + length + " does not match " + expected);
+        }
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = buffer.getInt();
+        }
+        return values;
+    }
+}
@@ -158,4 +158,26 @@ public class DelayedBranch {
         return branchTargetAddress;
     }
 
+    /**
+     * Return the complete delayed branch state (registration status and target
+     * address), so that it can later be put back by restoreState().  Used for time
+     * travel snapshots.  This method has package visibility.
+     *
+     * @return two-element array holding status and target address.
+     */
+    static int[] saveState() {
+        return new int[]{ state, branchTargetAddress };
+    }
+
+    /**
+     * Put back a delayed branch state returned by saveState().  This method has
+     * package visibility.
+     *
+     * @param saved two-element array returned by saveState().
+     */
+    static void restoreState(int[] saved) {
+        state = saved[0];
+        branchTargetAddress = saved[1];
+    }
+
 }  // DelayedBranch
\ No newline at end of file
@@ -0,0 +1,269 @@
+package mars.simulator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Records a compact binary trace of a simulation to a file: the address of every
+ * instruction executed, every register written with its new value, and the address,
+ * length and value of every memory load and store.  Read it back with
+ * {@link ExecutionTraceReader}.
+ * <p>
+ * The simulator, register files and memory report to the trace directly rather than
+ * through observers, and only while a trace is being recorded.  Records are encoded
+ * as a tag byte followed by variable-length integers: an instruction that follows its
+ * predecessor sequentially is a single byte, other addresses and register values are
+ * stored as the difference from the previous one.  Records collect in a large direct
+ * buffer, which a background thread writes to the file while the simulation fills a
+ * second one.
+ */
+public class ExecutionTrace {
+    static final byte[] MAGIC = {'M', 'A', 'R', 'S', 'T', 'R', 'C', 'E'};
+    static final int VERSION = 1;
+
+    // Record tags.  LOAD and STORE are combined with the access length in bytes.
+    static final int STEP = 0x01;         // instruction at previous address + 4
+    static final int JUMP = 0x02;         // instruction elsewhere; address difference follows
+    static final int REGISTER = 0x03;     // register number and value difference follow
+    static final int COPROCESSOR1 = 0x04;
+    static final int COPROCESSOR0 = 0x05;
+    static final int LOAD = 0x10;         // address difference and value follow
+    static final int STORE = 0x20;
+
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int RECORD_MAXIMUM = 16; // longest record is 11 bytes
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    // Trace being recorded, or null.  Set before simulation starts, so no need for volatile.
+    private static ExecutionTrace current = null;
+
+    private FileOutputStream out;
+    private ByteBuffer buffer;
+    private ArrayBlockingQueue<ByteBuffer> full;
+    private ArrayBlockingQueue<ByteBuffer> empty;
+    private Thread writer;
+    private volatile IOException error;
+    private long instructionCount;
+    private int nextAddress;
+    private int lastMemoryAddress;
+    private int[] registers = new int[35];
+    private int[] coprocessor1 = new int[32];
+    private int[] coprocessor0 = new int[32];
+
+    private ExecutionTrace(File file) throws IOException {
+        out = new FileOutputStream(file);
+        full = new ArrayBlockingQueue<ByteBuffer>(2);
+        empty = new ArrayBlockingQueue<ByteBuffer>(2);
+        empty.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        writer = new Thread(new Runnable() {
+            public void run() {
+                write();
+            }
+        }, "MIPS trace writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Start recording a trace of everything simulated from now on, until stop().
+     *
+     * @param file the file to write the trace to; replaced if it exists.
+     * @return the trace.
+     * @throws IOException if the file cannot be created.
+     */
+    public static ExecutionTrace start(File file) throws IOException {
+        current = new ExecutionTrace(file);
+        return current;
+    }
+
+    /**
+     * Stop recording, write out what remains and close the file.
+     *
+     * @throws IOException if writing the trace failed at any point.
+     */
+    public void stop() throws IOException {
+        if (current == this) {
+            current = null;
+        }
+        try {
+            hand(buffer);
+            full.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            error = new IOException("interrupted while writing trace");
+        } finally {
+            out.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * @return the number of instructions recorded so far.
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    // The trace being recorded, or null.  For the simulator.
+    static ExecutionTrace getCurrent() {
+        return current;
+    }
+
+    // Record an instruction about to be executed.
+    void instruction(int address) {
+        reserve();
+        if (address == nextAddress) {
+            buffer.put((byte) STEP);
+        } else {
+            buffer.put((byte) JUMP);
+            putSigned(address - nextAddress);
+        }
+        nextAddress = address + 4;
+        instructionCount++;
+    }
+
+    /**
+     * Record a write to a register of the register file, if a trace is being recorded.
+     *
+     * @param number register number, 33 for hi and 34 for lo.
+     * @param value  new value.
+     */
+    public static void registerWritten(int number, int value) {
+        ExecutionTrace trace = current;
+        if (trace != null && number > 0 && number < trace.registers.length) {
+            trace.registerRecord(REGISTER, trace.registers, number, value);
+        }
+    }
+
+    /**
+     * Record a write to a coprocessor 1 (floating point) register, if a trace is being recorded.
+     *
+     * @param number register number.
+     * @param value  new bit pattern.
+     */
+    public static void coprocessor1Written(int number, int value) {
+        ExecutionTrace trace = current;
+        if (trace != null && number >= 0 && number < trace.coprocessor1.length) {
+            trace.registerRecord(COPROCESSOR1, trace.coprocessor1, number, value);
+        }
+    }
+
+    /**
+     * Record a write to a coprocessor 0 register, if a trace is being recorded.
+     *
+     * @param number register number.
+     * @param value  new value.
+     */
+    public static void coprocessor0Written(int number, int value) {
+        ExecutionTrace trace = current;
+        if (trace != null && number >= 0 && number < trace.coprocessor0.length) {
+            trace.registerRecord(COPROCESSOR0, trace.coprocessor0, number, value);
+        }
+    }
+
+    /**
+     * Record a memory load, if a trace is being recorded.
+     *
+     * @param address address of the first byte.
+     * @param length  number of bytes, 1, 2 or 4.
+     * @param value   value loaded.
+     */
+    public static void memoryRead(int address, int length, int value) {
+        ExecutionTrace trace = current;
+        if (trace != null) {
+            trace.memoryRecord(LOAD | length, address, value);
+        }
+    }
+
+    /**
+     * Record a memory store, if a trace is being recorded.
+     *
+     * @param address address of the first byte.
+     * @param length  number of bytes, 1, 2 or 4.
+     * @param value   value stored.
+     */
+    public static void memoryWritten(int address, int length, int value) {
+        ExecutionTrace trace = current;
+        if (trace != null) {
+            trace.memoryRecord(STORE | length, address, value);
+        }
+    }
+
+    private void registerRecord(int tag, int[] values, int number, int value) {
+        reserve();
+        buffer.put((byte) tag);
+        buffer.put((byte) number);
+        putSigned(value - values[number]);
+        values[number] = value;
+    }
+
+    private void memoryRecord(int tag, int address, int value) {
+        reserve();
+        buffer.put((byte) tag);
+        putSigned(address - lastMemoryAddress);
+        putUnsigned(value);
+        lastMemoryAddress = address;
+    }
+
+    // Zigzag encoding keeps small negative differences short.
+    private void putSigned(int value) {
+        putUnsigned((value << 1) ^ (value >> 31));
+    }
+
+    private void putUnsigned(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // Make room for the longest record, handing a full buffer to the writer thread.
+    private void reserve() {
+        if (buffer.remaining() < RECORD_MAXIMUM) {
+            try {
+                hand(buffer);
+                buffer = empty.take();
+            } catch (InterruptedException e) {
+                error = new IOException("interrupted while writing trace");
+                buffer.clear(); // records are lost, stop() reports it
+            }
+        }
+    }
+
+    private void hand(ByteBuffer filled) throws InterruptedException {
+        filled.flip();
+        full.put(filled);
+    }
+
+    // Body of the writer thread.  After a failure keeps taking buffers so the simulation is not blocked.
+    private void write() {
+        FileChannel channel = out.getChannel();
+        try {
+            for (ByteBuffer filled = full.take(); filled != END; filled = full.take()) {
+                if (error == null) {
+                    try {
+                        while (filled.hasRemaining()) {
+                            channel.write(filled);
+                        }
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                }
+                filled.clear();
+                empty.put(filled);
+            }
+        } catch (InterruptedException e) {
+            error = new IOException("interrupted while writing trace");
+        }
+    }
+}
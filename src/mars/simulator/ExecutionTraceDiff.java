@@ -0,0 +1,223 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.ProgramStatement;
+import mars.assembler.Symbol;
+import mars.assembler.SymbolTable;
+import mars.mips.hardware.AddressErrorException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/**
+ * Finds the first point where two traces recorded by {@link ExecutionTrace} differ:
+ * an instruction at a different address, a register written with a different value,
+ * or a memory load or store of a different address or value.  The traces are read in
+ * lockstep, keeping only a few records of context, so traces of any length can be
+ * compared in constant memory.
+ * <p>
+ * If a program has been assembled, instructions in the report are annotated with
+ * the nearest preceding text label and their source file, line and statement.
+ */
+public class ExecutionTraceDiff {
+    // Records remembered for context before the divergence, of which at most this many instructions are shown.
+    private static final int CONTEXT_RECORDS = 64;
+    private static final int CONTEXT_INSTRUCTIONS = 3;
+    // Records shown from each trace from the divergence on, ending early after this many further instructions.
+    private static final int FOLLOWING_RECORDS = 12;
+    private static final int FOLLOWING_INSTRUCTIONS = 2;
+
+    private int[] kinds = new int[CONTEXT_RECORDS];
+    private long[] counts = new long[CONTEXT_RECORDS];
+    private int[] instructionAddresses = new int[CONTEXT_RECORDS];
+    private int[] numbers = new int[CONTEXT_RECORDS];
+    private int[] values = new int[CONTEXT_RECORDS];
+    private int[] addresses = new int[CONTEXT_RECORDS];
+    private int[] lengths = new int[CONTEXT_RECORDS];
+    private long recorded;
+
+    private ExecutionTraceDiff() {
+    }
+
+    /**
+     * Compare two traces and report the first difference, with context.
+     *
+     * @param first  the first trace file.
+     * @param second the second trace file.
+     * @param out    stream for the report.
+     * @return true if the traces are identical.
+     * @throws IOException if a trace cannot be read.
+     */
+    public static boolean compare(File first, File second, PrintStream out) throws IOException {
+        ExecutionTraceReader a = new ExecutionTraceReader(first);
+        ExecutionTraceReader b;
+        try {
+            b = new ExecutionTraceReader(second);
+        } catch (IOException e) {
+            a.close();
+            throw e;
+        }
+        try {
+            return new ExecutionTraceDiff().compare(a, b, first.getName(), second.getName(), out);
+        } finally {
+            a.close();
+            b.close();
+        }
+    }
+
+    private boolean compare(ExecutionTraceReader a, ExecutionTraceReader b, String firstName, String secondName,
+                            PrintStream out) throws IOException {
+        while (true) {
+            boolean moreA = a.next();
+            boolean moreB = b.next();
+            if (!moreA && !moreB) {
+                out.println("Traces are identical: " + a.getInstructionCount() + " instructions.");
+                return true;
+            }
+            if (moreA && moreB && a.sameRecord(b)) {
+                remember(a);
+                continue;
+            }
+            String difference;
+            long count;
+            int instructionAddress;
+            if (!moreA || !moreB) {
+                ExecutionTraceReader longer = moreA ? a : b;
+                difference = (moreA ? secondName : firstName) + " ends";
+                count = longer.getInstructionCount();
+                instructionAddress = longer.getInstructionAddress();
+            } else {
+                difference = difference(a, b);
+                count = a.getInstructionCount();
+                instructionAddress = a.getInstructionAddress();
+            }
+            out.println("Traces diverge at instruction " + count + ": " + difference + ".");
+            out.println(ExecutionTraceReader.describe(ExecutionTraceReader.INSTRUCTION, count, instructionAddress, 0, 0, 0, 0)
+                    + annotate(instructionAddress));
+            out.println("Last records in common:");
+            printContext(out);
+            out.println("From the divergence on, " + firstName + ":");
+            printFollowing(a, moreA, out);
+            out.println("From the divergence on, " + secondName + ":");
+            printFollowing(b, moreB, out);
+            return false;
+        }
+    }
+
+    private static String difference(ExecutionTraceReader a, ExecutionTraceReader b) {
+        if (a.getKind() != b.getKind()) {
+            return "different registers or memory accessed";
+        }
+        switch (a.getKind()) {
+            case ExecutionTraceReader.INSTRUCTION:
+                return "program counter differs";
+            case ExecutionTraceReader.LOAD:
+                return "memory load differs";
+            case ExecutionTraceReader.STORE:
+                return "memory store differs";
+            default:
+                return "register write differs";
+        }
+    }
+
+    // Keep the current record in the ring of context records.
+    private void remember(ExecutionTraceReader reader) {
+        int i = (int) (recorded % CONTEXT_RECORDS);
+        kinds[i] = reader.getKind();
+        counts[i] = reader.getInstructionCount();
+        instructionAddresses[i] = reader.getInstructionAddress();
+        numbers[i] = reader.getNumber();
+        values[i] = reader.getValue();
+        addresses[i] = reader.getAddress();
+        lengths[i] = reader.getLength();
+        recorded++;
+    }
+
+    private void printContext(PrintStream out) {
+        long oldest = Math.max(0, recorded - CONTEXT_RECORDS);
+        long start = oldest;
+        int instructions = 0;
+        for (long r = recorded - 1; r >= oldest; r--) {
+            if (kinds[(int) (r % CONTEXT_RECORDS)] == ExecutionTraceReader.INSTRUCTION) {
+                start = r;
+                if (++instructions == CONTEXT_INSTRUCTIONS) {
+                    break;
+                }
+            }
+        }
+        if (recorded == 0) {
+            out.println("  (none)");
+        }
+        for (long r = start; r < recorded; r++) {
+            int i = (int) (r % CONTEXT_RECORDS);
+            String line = ExecutionTraceReader.describe(kinds[i], counts[i], instructionAddresses[i],
+                    numbers[i], values[i], addresses[i], lengths[i]);
+            out.println("  " + line + ((kinds[i] == ExecutionTraceReader.INSTRUCTION) ? annotate(instructionAddresses[i]) : ""));
+        }
+    }
+
+    private static void printFollowing(ExecutionTraceReader reader, boolean more, PrintStream out) throws IOException {
+        if (!more) {
+            out.println("  (end of trace)");
+            return;
+        }
+        int instructions = 0;
+        for (int records = 0; more && records < FOLLOWING_RECORDS; records++) {
+            boolean instruction = reader.getKind() == ExecutionTraceReader.INSTRUCTION;
+            if (instruction && records > 0 && ++instructions > FOLLOWING_INSTRUCTIONS) {
+                break;
+            }
+            out.println("  " + reader.toString() + (instruction ? annotate(reader.getInstructionAddress()) : ""));
+            more = reader.next();
+        }
+    }
+
+    // Label, source position and source statement of the instruction at the given address,
+    // or nothing if no assembled statement is there.
+    private static String annotate(int address) {
+        ProgramStatement statement = null;
+        try {
+            statement = Globals.memory.getStatementNoNotify(address);
+        } catch (AddressErrorException e) {
+        }
+        if (statement == null) {
+            return "";
+        }
+        StringBuffer result = new StringBuffer();
+        Symbol label = nearestLabel(Globals.symbolTable, address, null);
+        MIPSprogram program = statement.getSourceMIPSprogram();
+        if (program != null) {
+            label = nearestLabel(program.getLocalSymbolTable(), address, label);
+        }
+        if (label != null) {
+            result.append("  ").append(label.getName());
+            if (label.getAddress() != address) {
+                result.append("+").append(address - label.getAddress());
+            }
+        }
+        if (program != null) {
+            result.append("  ").append(new File(program.getFilename()).getName()).append(":").append(statement.getSourceLine());
+        }
+        if (statement.getSource() != null) {
+            result.append("  ").append(statement.getSource().trim());
+        }
+        return result.toString();
+    }
+
+    private static Symbol nearestLabel(SymbolTable table, int address, Symbol best) {
+        if (table == null) {
+            return best;
+        }
+        ArrayList symbols = table.getTextSymbols();
+        for (int i = 0; i < symbols.size(); i++) {
+            Symbol symbol = (Symbol) symbols.get(i);
+            if (symbol.getAddress() <= address && (best == null || symbol.getAddress() > best.getAddress())) {
+                best = symbol;
+            }
+        }
+        return best;
+    }
+}
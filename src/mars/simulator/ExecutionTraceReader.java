@@ -0,0 +1,309 @@
+package mars.simulator;
+
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+import mars.util.Binary;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads a trace written by {@link ExecutionTrace} one record at a time, using a
+ * fixed amount of memory however long the trace is.  Each instruction record is
+ * followed by the records of the registers and memory it read and wrote.
+ */
+public class ExecutionTraceReader {
+    /**
+     * Kinds of record.
+     */
+    public static final int INSTRUCTION = 0;
+    public static final int REGISTER = 1;
+    public static final int COPROCESSOR1 = 2;
+    public static final int COPROCESSOR0 = 3;
+    public static final int LOAD = 4;
+    public static final int STORE = 5;
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private FileInputStream in;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private boolean endOfFile;
+    private int kind;
+    private long instructionCount;
+    private int instructionAddress;
+    private int nextAddress;
+    private int number;
+    private int value;
+    private int address;
+    private int length;
+    private int lastMemoryAddress;
+    private int[] registers = new int[35];
+    private int[] coprocessor1 = new int[32];
+    private int[] coprocessor0 = new int[32];
+
+    /**
+     * Open a trace file.
+     *
+     * @param file the trace file.
+     * @throws IOException if the file cannot be read or is not a trace.
+     */
+    public ExecutionTraceReader(File file) throws IOException {
+        in = new FileInputStream(file);
+        channel = in.getChannel();
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.flip();
+        fill(ExecutionTrace.MAGIC.length + 4);
+        byte[] magic = new byte[ExecutionTrace.MAGIC.length];
+        if (buffer.remaining() >= magic.length + 4) {
+            buffer.get(magic);
+        }
+        if (!Arrays.equals(magic, ExecutionTrace.MAGIC)) {
+            close();
+            throw new IOException(file + " is not a trace file");
+        }
+        int version = buffer.getInt();
+        if (version != ExecutionTrace.VERSION) {
+            close();
+            throw new IOException("unsupported trace version " + version);
+        }
+    }
+
+    /**
+     * Advance to the next record.
+     *
+     * @return false if there are no more records.
+     * @throws IOException if the file cannot be read or ends in the middle of a record.
+     */
+    public boolean next() throws IOException {
+        fill(16);
+        if (!buffer.hasRemaining()) {
+            return false;
+        }
+        int tag = buffer.get() & 0xFF;
+        switch (tag) {
+            case ExecutionTrace.STEP:
+                kind = INSTRUCTION;
+                instructionAddress = nextAddress;
+                nextAddress += 4;
+                instructionCount++;
+                break;
+            case ExecutionTrace.JUMP:
+                kind = INSTRUCTION;
+                instructionAddress = nextAddress + getSigned();
+                nextAddress = instructionAddress + 4;
+                instructionCount++;
+                break;
+            case ExecutionTrace.REGISTER:
+                kind = REGISTER;
+                readRegister(registers);
+                break;
+            case ExecutionTrace.COPROCESSOR1:
+                kind = COPROCESSOR1;
+                readRegister(coprocessor1);
+                break;
+            case ExecutionTrace.COPROCESSOR0:
+                kind = COPROCESSOR0;
+                readRegister(coprocessor0);
+                break;
+            default:
+                if ((tag & ~0x07) == ExecutionTrace.LOAD) {
+                    kind = LOAD;
+                } else if ((tag & ~0x07) == ExecutionTrace.STORE) {
+                    kind = STORE;
+                } else {
+                    throw new IOException("corrupt trace after instruction " + instructionCount);
+                }
+                length = tag & 0x07;
+                address = lastMemoryAddress + getSigned();
+                value = getUnsigned();
+                lastMemoryAddress = address;
+        }
+        return true;
+    }
+
+    /**
+     * @return the kind of the current record: INSTRUCTION, REGISTER, COPROCESSOR1,
+     * COPROCESSOR0, LOAD or STORE.
+     */
+    public int getKind() {
+        return kind;
+    }
+
+    /**
+     * @return number of instructions up to and including the current one, counting from 1.
+     * For other records, that of the instruction they belong to.
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * @return address of the current instruction, or of the instruction the current record belongs to.
+     */
+    public int getInstructionAddress() {
+        return instructionAddress;
+    }
+
+    /**
+     * @return register number of a register record.
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * @return new register value, or the value loaded or stored.
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * @return memory address of a load or store record.
+     */
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * @return number of bytes loaded or stored.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Compare the current record with that of another reader.
+     *
+     * @param other the other reader.
+     * @return true if both records are of the same kind and have the same contents.
+     */
+    public boolean sameRecord(ExecutionTraceReader other) {
+        if (kind != other.kind) {
+            return false;
+        }
+        switch (kind) {
+            case INSTRUCTION:
+                return instructionAddress == other.instructionAddress;
+            case LOAD:
+            case STORE:
+                return address == other.address && length == other.length && value == other.value;
+            default:
+                return number == other.number && value == other.value;
+        }
+    }
+
+    /**
+     * @return the current record as one line of text.  Instructions are preceded by
+     * their count, the registers and memory they accessed are indented.
+     */
+    public String toString() {
+        return describe(kind, instructionCount, instructionAddress, number, value, address, length);
+    }
+
+    /**
+     * Describe a record as one line of text, as toString() does for the current record.
+     *
+     * @param kind               kind of record.
+     * @param instructionCount   count of the instruction.
+     * @param instructionAddress address of the instruction.
+     * @param number             register number.
+     * @param value              register value, or value loaded or stored.
+     * @param address            memory address loaded or stored.
+     * @param length             number of bytes loaded or stored.
+     * @return the description.
+     */
+    public static String describe(int kind, long instructionCount, int instructionAddress, int number,
+                                  int value, int address, int length) {
+        switch (kind) {
+            case INSTRUCTION:
+                return instructionCount + " " + Binary.intToHexString(instructionAddress);
+            case REGISTER:
+                return "    " + registerName(number) + " = " + Binary.intToHexString(value);
+            case COPROCESSOR1:
+                return "    $f" + number + " = " + Binary.intToHexString(value);
+            case COPROCESSOR0:
+                return "    " + coprocessor0Name(number) + " = " + Binary.intToHexString(value);
+            case LOAD:
+                return "    load " + length + " " + Binary.intToHexString(address) + " -> " + Binary.intToHexString(value);
+            default:
+                return "    store " + length + " " + Binary.intToHexString(address) + " <- " + Binary.intToHexString(value);
+        }
+    }
+
+    /**
+     * Close the trace file.
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static String registerName(int number) {
+        if (number == 33) {
+            return "hi";
+        } else if (number == 34) {
+            return "lo";
+        }
+        Register[] registers = RegisterFile.getRegisters();
+        return (number >= 0 && number < registers.length) ? registers[number].getName() : "$" + number;
+    }
+
+    private static String coprocessor0Name(int number) {
+        Register[] registers = Coprocessor0.getRegisters();
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i].getNumber() == number) {
+                return registers[i].getName();
+            }
+        }
+        return "$" + number;
+    }
+
+    private void readRegister(int[] values) throws IOException {
+        number = buffer.get() & 0xFF;
+        if (number >= values.length) {
+            throw new IOException("corrupt trace after instruction " + instructionCount);
+        }
+        values[number] += getSigned();
+        value = values[number];
+    }
+
+    private int getSigned() throws IOException {
+        int encoded = getUnsigned();
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    private int getUnsigned() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("trace ends in the middle of a record");
+            }
+            int b = buffer.get();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("corrupt trace after instruction " + instructionCount);
+    }
+
+    // Make sure at least the given number of bytes are buffered, unless the file ends first.
+    private void fill(int wanted) throws IOException {
+        if (buffer.remaining() >= wanted || endOfFile) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < wanted && !endOfFile) {
+            if (channel.read(buffer) < 0) {
+                endOfFile = true;
+            }
+        }
+        buffer.flip();
+    }
+}
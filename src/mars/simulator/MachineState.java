@@ -0,0 +1,79 @@
+package mars.simulator;
+
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+import mars.mips.instructions.syscalls.RandomStreams;
+
+/**
+ * The state of the simulated machine apart from memory: registers with HI, LO and
+ * the program counter, coprocessor 0 and 1 registers, the condition flags, and
+ * delayed branch and random number stream state.  Captured and put back as one by
+ * {@link TimeTravel} snapshots and {@link Checkpoint} files, which take care of
+ * memory themselves.
+ */
+class MachineState {
+    int[] registers;
+    int hi, lo, pc;
+    int[] coprocessor0;
+    int[] coprocessor1;
+    int conditionFlags;
+    int[] delayedBranch;
+    byte[] randomStreams;
+
+    /**
+     * Copy the current state.  The simulation must not be running, or this must be
+     * called by the simulation thread.
+     *
+     * @return the state.
+     */
+    static MachineState capture() {
+        MachineState state = new MachineState();
+        state.registers = values(RegisterFile.getRegisters());
+        state.hi = RegisterFile.getValue(33);
+        state.lo = RegisterFile.getValue(34);
+        state.pc = RegisterFile.getProgramCounter();
+        state.coprocessor0 = values(Coprocessor0.getRegisters());
+        state.coprocessor1 = values(Coprocessor1.getRegisters());
+        state.conditionFlags = Coprocessor1.getConditionFlags();
+        state.delayedBranch = DelayedBranch.saveState();
+        state.randomStreams = RandomStreams.saveState();
+        return state;
+    }
+
+    /**
+     * Make this the current state.  The caller holds Globals.memoryAndRegistersLock.
+     */
+    void restore() {
+        setValues(RegisterFile.getRegisters(), registers);
+        RegisterFile.updateRegister(33, hi);
+        RegisterFile.updateRegister(34, lo);
+        RegisterFile.initializeProgramCounter(pc);
+        setValues(Coprocessor0.getRegisters(), coprocessor0);
+        setValues(Coprocessor1.getRegisters(), coprocessor1);
+        for (int flag = 0; flag < Coprocessor1.getConditionFlagCount(); flag++) {
+            if (((conditionFlags >> flag) & 1) != 0) {
+                Coprocessor1.setConditionFlag(flag);
+            } else {
+                Coprocessor1.clearConditionFlag(flag);
+            }
+        }
+        DelayedBranch.restoreState(delayedBranch);
+        RandomStreams.restoreState(randomStreams);
+    }
+
+    private static int[] values(Register[] registers) {
+        int[] values = new int[registers.length];
+        for (int i = 0; i < registers.length; i++) {
+            values[i] = registers[i].getValueNoNotify();
+        }
+        return values;
+    }
+
+    private static void setValues(Register[] registers, int[] values) {
+        for (int i = 0; i < registers.length; i++) {
+            registers[i].setValue(values[i]);
+        }
+    }
+}
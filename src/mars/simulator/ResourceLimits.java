@@ -0,0 +1,213 @@
+package mars.simulator;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Limits on the resources a simulation run may use: wall-clock time, bytes of console
+ * output, growth of the heap, and instructions executed (a 64-bit count, unlike the
+ * int step limit of MIPSprogram.simulate()).  When a limit is exceeded the run is
+ * stopped, and getExceeded() tells which limit it was.
+ * <p>
+ * To apply limits to a run, set them, call start() before simulating and finish()
+ * after.  This works the same from the command line and for programs embedding MARS.
+ * Output beyond the output limit is not printed; a heap request beyond the heap limit
+ * fails as if the heap were full.
+ */
+public class ResourceLimits {
+    /**
+     * Limits, as returned by getExceeded().
+     */
+    public static final int NONE = 0;
+    public static final int TIME = 1;
+    public static final int OUTPUT = 2;
+    public static final int HEAP = 3;
+    public static final int INSTRUCTIONS = 4;
+
+    // Limits being applied, or null.  Set before simulation starts.
+    private static ResourceLimits current = null;
+
+    private long timeLimit = 0;          // milliseconds, 0 for none
+    private long outputLimit = -1;       // bytes, -1 for none
+    private long heapLimit = -1;         // bytes, -1 for none
+    private long instructionLimit = 0;   // instructions, 0 for none
+    private volatile int exceeded = NONE;
+    private long startTime;
+    private long endTime;
+    private long startInstructionCount;
+    private long endInstructionCount;
+    private long outputBytes;
+    private int heapBytes;
+    private Timer watchdog;
+
+    /**
+     * Set the wall-clock time limit.
+     *
+     * @param milliseconds time limit, or 0 for none.
+     */
+    public void setTimeLimit(long milliseconds) {
+        timeLimit = milliseconds;
+    }
+
+    /**
+     * Set the limit on console output.
+     *
+     * @param bytes maximum number of bytes printed, or -1 for no limit.
+     */
+    public void setOutputLimit(long bytes) {
+        outputLimit = bytes;
+    }
+
+    /**
+     * Set the limit on heap growth, in addition to the size of the heap segment.
+     *
+     * @param bytes maximum number of bytes allocated from the heap, or -1 for no limit.
+     */
+    public void setHeapLimit(long bytes) {
+        heapLimit = bytes;
+    }
+
+    /**
+     * Set the limit on instructions executed.
+     *
+     * @param count maximum number of instructions, or 0 for none.
+     */
+    public void setInstructionLimit(long count) {
+        instructionLimit = count;
+    }
+
+    /**
+     * @return true if no limit is set.
+     */
+    public boolean isEmpty() {
+        return timeLimit <= 0 && outputLimit < 0 && heapLimit < 0 && instructionLimit <= 0;
+    }
+
+    /**
+     * Start applying these limits to whatever is simulated until finish().
+     */
+    public void start() {
+        exceeded = NONE;
+        outputBytes = 0;
+        heapBytes = 0;
+        startInstructionCount = Simulator.getInstance().getInstructionCount();
+        startTime = System.currentTimeMillis();
+        current = this;
+        if (timeLimit > 0) {
+            watchdog = new Timer("MIPS watchdog", true);
+            watchdog.schedule(new TimerTask() {
+                public void run() {
+                    exceed(TIME);
+                }
+            }, timeLimit);
+        }
+    }
+
+    /**
+     * Stop applying these limits.  The statistics of the run remain available.
+     */
+    public void finish() {
+        if (watchdog != null) {
+            watchdog.cancel();
+            watchdog = null;
+        }
+        endTime = System.currentTimeMillis();
+        endInstructionCount = Simulator.getInstance().getInstructionCount();
+        if (current == this) {
+            current = null;
+        }
+    }
+
+    /**
+     * @return the limit that stopped the run: TIME, OUTPUT, HEAP or INSTRUCTIONS, or NONE.
+     */
+    public int getExceeded() {
+        return exceeded;
+    }
+
+    /**
+     * @return one line describing the limit exceeded, if any, and the resources the run used.
+     */
+    public String getSummary() {
+        String used = "instructions " + (endInstructionCount - startInstructionCount)
+                + ", time " + (endTime - startTime) + " ms"
+                + ", output " + outputBytes + " bytes"
+                + ", heap " + heapBytes + " bytes";
+        switch (exceeded) {
+            case TIME:
+                return "Time limit of " + timeLimit + " ms exceeded: " + used + ".";
+            case OUTPUT:
+                return "Output limit of " + outputLimit + " bytes exceeded: " + used + ".";
+            case HEAP:
+                return "Heap limit of " + heapLimit + " bytes exceeded: " + used + ".";
+            case INSTRUCTIONS:
+                return "Instruction limit of " + instructionLimit + " reached: " + used + ".";
+            default:
+                return "Resources used: " + used + ".";
+        }
+    }
+
+    /**
+     * Account for console output about to be printed, if limits are being applied.
+     *
+     * @param bytes number of bytes (characters) to be printed.
+     * @return how many of them may be printed.  Fewer than requested if the output limit is reached.
+     */
+    public static int allowOutput(int bytes) {
+        ResourceLimits limits = current;
+        if (limits == null) {
+            return bytes;
+        }
+        if (limits.outputLimit >= 0 && limits.outputBytes + bytes > limits.outputLimit) {
+            bytes = (int) Math.max(0, limits.outputLimit - limits.outputBytes);
+            limits.exceed(OUTPUT);
+        }
+        limits.outputBytes += bytes;
+        return bytes;
+    }
+
+    /**
+     * Check a heap allocation, if limits are being applied.
+     *
+     * @param heapSize size the heap would have after the allocation, in bytes.
+     * @throws IllegalArgumentException if the heap limit would be exceeded.
+     */
+    public static void checkHeap(int heapSize) throws IllegalArgumentException {
+        ResourceLimits limits = current;
+        if (limits == null) {
+            return;
+        }
+        if (limits.heapLimit >= 0 && heapSize > limits.heapLimit) {
+            limits.exceed(HEAP);
+            throw new IllegalArgumentException("heap size " + heapSize + " exceeds limit of " + limits.heapLimit + " bytes");
+        }
+        limits.heapBytes = heapSize;
+    }
+
+    // Value of Simulator.getInstructionCount() at which to stop, for the simulator.
+    static long getInstructionCountLimit() {
+        ResourceLimits limits = current;
+        if (limits == null || limits.instructionLimit <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return limits.startInstructionCount + limits.instructionLimit;
+    }
+
+    // Called by the simulator when it stops at the instruction limit.
+    static void instructionLimitReached() {
+        ResourceLimits limits = current;
+        if (limits != null) {
+            limits.exceed(INSTRUCTIONS);
+        }
+    }
+
+    // Record the first limit exceeded, and stop the run.
+    private void exceed(int limit) {
+        synchronized (this) {
+            if (exceeded == NONE) {
+                exceeded = limit;
+            }
+        }
+        Simulator.getInstance().requestStop();
+    }
+}
@@ -0,0 +1,292 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.RegisterFile;
+import mars.mips.instructions.syscalls.Syscall;
+import mars.util.Binary;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+
+/**
+ * Live figures on the simulation in progress: instructions executed and their rate,
+ * the program counter, syscalls made and the one in progress, memory blocks
+ * allocated, the heap break and back-step buffer occupancy.  They show whether a
+ * long run is progressing, looping or blocked on input.
+ * <p>
+ * The simulator updates only plain counters, costing next to nothing per instruction;
+ * everything else is read from the machine when asked for.  The figures can be
+ * published as a JMX MBean with register(), and printed periodically with
+ * startProgressReports().
+ */
+public class SimulationMetrics implements SimulationMetricsMXBean {
+    /**
+     * Name under which register() publishes the metrics.
+     */
+    public static final String OBJECT_NAME = "mars:type=SimulationMetrics";
+
+    private static final SimulationMetrics instance = new SimulationMetrics();
+    private static final int COUNTED_SERVICES = 64; // services counted in an array; others in a map
+
+    // Written only by the simulation thread, read by others without locking.
+    private static final long[] syscallCounts = new long[COUNTED_SERVICES];
+    private static final String[] syscallNames = new String[COUNTED_SERVICES];
+    private static final TreeMap otherSyscallCounts = new TreeMap(); // "number name" -> long[1]
+    private static volatile boolean running = false;
+    private static volatile int currentSyscall = -1;
+    private static volatile long currentSyscallStart;
+
+    private InstructionRate rate; // for getInstructionsPerSecond(), made by its first call
+
+    private SimulationMetrics() {
+    }
+
+    /**
+     * @return the metrics of this simulator.
+     */
+    public static SimulationMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Publish the metrics in the platform MBean server, under OBJECT_NAME, unless they
+     * already are.
+     *
+     * @throws JMException if they cannot be published.
+     */
+    public static void register() throws JMException {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(instance, name);
+            instance.getInstructionsPerSecond(); // start measuring the rate
+        }
+    }
+
+    /**
+     * Print a one-line report of the metrics to the given stream at a fixed rate,
+     * from a daemon thread, until the returned timer is cancelled.
+     *
+     * @param period milliseconds between reports.
+     * @param out    stream to print to, normally System.err.
+     * @return the timer making the reports.
+     */
+    public static Timer startProgressReports(long period, final PrintStream out) {
+        final long start = System.currentTimeMillis();
+        final InstructionRate rate = new InstructionRate(); // each report gives the rate since the previous one
+        Timer timer = new Timer("MIPS progress", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            public void run() {
+                out.println(instance.getReport(System.currentTimeMillis() - start, rate.sample()));
+            }
+        }, period, period);
+        return timer;
+    }
+
+    /**
+     * One line summarizing the metrics.
+     *
+     * @param elapsed milliseconds since the run began, shown first.
+     * @param rate    instructions per second, as measured by the caller.
+     * @return the summary.
+     */
+    public String getReport(long elapsed, double rate) {
+        StringBuffer report = new StringBuffer("[progress] ");
+        report.append(elapsed / 1000).append('.').append(elapsed % 1000 / 100).append(" s: ");
+        report.append(getInstructionCount()).append(" instructions, ");
+        report.append(Math.round(rate)).append("/s, pc ").append(getProgramCounter());
+        int syscall = currentSyscall;
+        if (syscall >= 0) {
+            report.append(", in syscall ").append(syscall).append(" for ").append(getCurrentSyscallMillis()).append(" ms");
+        }
+        long syscalls = 0;
+        Map counts = getSyscallCounts();
+        for (Iterator i = counts.values().iterator(); i.hasNext(); ) {
+            syscalls += ((Long) i.next()).longValue();
+        }
+        report.append(", syscalls ").append(syscalls);
+        report.append(", heap ").append(getHeapAddress()).append(", blocks");
+        int[] blocks = Globals.memory.getAllocatedBlockCounts();
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] > 0) {
+                report.append(' ').append(Memory.BLOCK_SEGMENT_NAMES[i]).append(' ').append(blocks[i]);
+            }
+        }
+        if (getBackStepCapacity() > 0) {
+            report.append(", back-steps ").append(getBackStepCount()).append('/').append(getBackStepCapacity());
+        }
+        if (!running) {
+            report.append(" (not running)");
+        }
+        return report.toString();
+    }
+
+    // Called by the simulator as each run starts and stops.
+    static void runStarted() {
+        running = true;
+    }
+
+    static void runStopped() {
+        running = false;
+        currentSyscall = -1;
+    }
+
+    /**
+     * Called by the simulator just before a syscall service is simulated.
+     *
+     * @param service the service.
+     */
+    public static void syscallStarted(Syscall service) {
+        int number = service.getNumber();
+        if (!TimeTravel.isReplaying()) { // replayed syscalls were counted when first made
+            if (number >= 0 && number < COUNTED_SERVICES) {
+                if (syscallNames[number] == null) {
+                    syscallNames[number] = service.getName();
+                }
+                syscallCounts[number]++;
+            } else {
+                synchronized (otherSyscallCounts) {
+                    String key = number + " " + service.getName();
+                    long[] count = (long[]) otherSyscallCounts.get(key);
+                    if (count == null) {
+                        count = new long[1];
+                        otherSyscallCounts.put(key, count);
+                    }
+                    count[0]++;
+                }
+            }
+        }
+        currentSyscallStart = System.currentTimeMillis();
+        currentSyscall = number;
+    }
+
+    /**
+     * Called by the simulator when a syscall service returns or throws.
+     */
+    public static void syscallFinished() {
+        currentSyscall = -1;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getInstructionCount() {
+        return Simulator.getInstance().getInstructionCount();
+    }
+
+    public synchronized double getInstructionsPerSecond() {
+        if (rate == null) {
+            rate = new InstructionRate();
+        }
+        return rate.sample();
+    }
+
+    public String getProgramCounter() {
+        return Binary.intToHexString(RegisterFile.getProgramCounter());
+    }
+
+    public Map<String, Long> getSyscallCounts() {
+        TreeMap<String, Long> counts = new TreeMap<String, Long>();
+        for (int i = 0; i < COUNTED_SERVICES; i++) {
+            if (syscallCounts[i] > 0) {
+                counts.put(i + " " + syscallNames[i], new Long(syscallCounts[i]));
+            }
+        }
+        synchronized (otherSyscallCounts) {
+            for (Iterator i = otherSyscallCounts.entrySet().iterator(); i.hasNext(); ) {
+                Map.Entry entry = (Map.Entry) i.next();
+                counts.put((String) entry.getKey(), new Long(((long[]) entry.getValue())[0]));
+            }
+        }
+        return counts;
+    }
+
+    public int getCurrentSyscall() {
+        return currentSyscall;
+    }
+
+    public long getCurrentSyscallMillis() {
+        return (currentSyscall < 0) ? 0 : System.currentTimeMillis() - currentSyscallStart;
+    }
+
+    public Map<String, Integer> getMemoryBlocks() {
+        TreeMap<String, Integer> blocks = new TreeMap<String, Integer>();
+        int[] counts = Globals.memory.getAllocatedBlockCounts();
+        for (int i = 0; i < counts.length; i++) {
+            blocks.put(Memory.BLOCK_SEGMENT_NAMES[i], new Integer(counts[i]));
+        }
+        return blocks;
+    }
+
+    public String getHeapAddress() {
+        return Binary.intToHexString(Memory.heapAddress);
+    }
+
+    public int getBackStepCount() {
+        BackStepper backStepper = getBackStepper();
+        return (backStepper == null) ? 0 : backStepper.getSize();
+    }
+
+    public int getBackStepCapacity() {
+        BackStepper backStepper = getBackStepper();
+        return (backStepper == null) ? 0 : backStepper.getCapacity();
+    }
+
+    public long getBackStepsSpilled() {
+        BackStepper backStepper = getBackStepper();
+        return (backStepper == null) ? 0 : backStepper.getSpilledSize();
+    }
+
+    // Back-steps are recorded only for the program of the IDE, and only if enabled.
+    private static BackStepper getBackStepper() {
+        MIPSprogram program = Globals.program;
+        if (program == null || !Globals.getSettings().getBackSteppingEnabled()) {
+            return null;
+        }
+        return program.getBackStepper();
+    }
+
+    /**
+     * Rate of instructions executed, measured for one caller over its own intervals:
+     * each sample() gives the rate since the previous one, or since this was made.
+     * Callers sampling at different periods, such as progress reports and the IDE's run
+     * status, each use their own.
+     */
+    public static class InstructionRate {
+        private long sampleTime;
+        private long sampleCount;
+        private double rate;
+
+        /**
+         * Start measuring from the current instruction count.
+         */
+        public InstructionRate() {
+            sampleTime = System.currentTimeMillis();
+            sampleCount = Simulator.getInstance().getInstructionCount();
+        }
+
+        /**
+         * @return instructions executed per second since the previous sample.  A sample
+         * taken in the same millisecond as the previous one repeats its rate.
+         */
+        public synchronized double sample() {
+            long now = System.currentTimeMillis();
+            long count = Simulator.getInstance().getInstructionCount();
+            if (now > sampleTime) {
+                rate = Math.max(0, count - sampleCount) * 1000.0 / (now - sampleTime);
+                sampleTime = now;
+                sampleCount = count;
+            }
+            return rate;
+        }
+    }
+}
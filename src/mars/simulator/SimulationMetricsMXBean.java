@@ -0,0 +1,71 @@
+package mars.simulator;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link SimulationMetrics}, through which JMX clients such
+ * as jconsole watch a simulation in progress.  All values may lag slightly behind the
+ * simulation; they are read without stopping it.
+ */
+public interface SimulationMetricsMXBean {
+    /**
+     * @return true while a simulation is running.
+     */
+    boolean isRunning();
+
+    /**
+     * @return number of instructions executed, counting all runs.
+     */
+    long getInstructionCount();
+
+    /**
+     * @return instructions executed per second, measured since the previous call.
+     */
+    double getInstructionsPerSecond();
+
+    /**
+     * @return program counter, in hexadecimal.
+     */
+    String getProgramCounter();
+
+    /**
+     * @return number of each syscall service made, by "number name", counting all runs.
+     */
+    Map<String, Long> getSyscallCounts();
+
+    /**
+     * @return service number of the syscall being simulated, e.g. a read waiting for
+     * input, or -1 if none.
+     */
+    int getCurrentSyscall();
+
+    /**
+     * @return milliseconds spent so far in the current syscall, or 0 if none.
+     */
+    long getCurrentSyscallMillis();
+
+    /**
+     * @return 4K byte blocks of memory allocated in each segment.
+     */
+    Map<String, Integer> getMemoryBlocks();
+
+    /**
+     * @return heap break, the address of the next heap allocation, in hexadecimal.
+     */
+    String getHeapAddress();
+
+    /**
+     * @return back-steps recorded in memory, or 0 if back-stepping is off.
+     */
+    int getBackStepCount();
+
+    /**
+     * @return back-steps that fit in memory, or 0 if back-stepping is off.
+     */
+    int getBackStepCapacity();
+
+    /**
+     * @return back-steps spilled to disk.
+     */
+    long getBackStepsSpilled();
+}
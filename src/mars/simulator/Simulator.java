@@ -5,8 +5,12 @@ import mars.venus.*;
 import mars.util.*;
 import mars.mips.hardware.*;
 import mars.mips.instructions.*;
+import mars.jfr.SimulationEvent;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.*;
 import java.awt.event.*;
 	
@@ -63,8 +67,19 @@ public class Simulator extends Observable {
     public static volatile int externalInterruptingDevice = NO_DEVICE;
     private static Simulator simulator = null;  // Singleton object
     private static Runnable interactiveGUIUpdater = null;
+    // Whether interactiveGUIUpdater is queued and has not run yet.  At most one is
+    // queued, so a GUI slower than the run speed falls behind by one update, not many.
+    private static final AtomicBoolean guiUpdatePending = new AtomicBoolean(false);
     private SimThread simulatorThread;
+    private long instructionCount = 0; // instructions started by all runs, including the current one
     private ArrayList<StopListener> stopListeners = new ArrayList<StopListener>(1);
+    private SimulationEvent runEvent; // flight recorder event of the current run
+    private long runStartCount; // instructionCount at the start of the current run
+    private static final long SNAPSHOT_WAIT = 20; // milliseconds a reader waits for a running simulation
+    private final Object snapshotReaders = new Object(); // readers take turns; the simulation never waits
+    private volatile SnapshotRequest snapshotRequest; // request the simulation thread is to serve, or null
+    private volatile Thread simulationThread; // thread running the program, or null between runs
+    private volatile boolean snapshotReadersOnly = false;
 
     private Simulator() {
         simulatorThread = null;
@@ -155,6 +170,121 @@ public class Simulator extends Observable {
         }
     }
 
+    /**
+     * Ask the running simulation to stop after the current instruction, as
+     * stopExecution() does, but without notifying stop listeners.  For use from
+     * within the simulation (e.g. by a syscall) or from another thread when
+     * running from the command line, where simulate() is still waiting for the run.
+     * simulate() then returns false.
+     */
+    public void requestStop() {
+        SimThread thread = simulatorThread;
+        if (thread != null) {
+            thread.setStop(null);
+        }
+    }
+
+    /**
+     * Number of instructions executed by this simulator, counting all runs.  During a
+     * run, the instruction being executed is included.  Exact only when read from the
+     * simulation thread or after a run; otherwise it may lag behind.
+     *
+     * @return number of instructions executed.
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * Consistent copy of the registers and of a range of memory, for the GUI and tools
+     * to read while a program runs without taking Globals.memoryAndRegistersLock.
+     * While the program runs, the simulation thread copies the state between two
+     * instructions and the caller waits for it, which at full speed takes a few
+     * microseconds.  During a syscall, e.g. one waiting for input, the state is not
+     * changing and the caller copies it.  If the run does not reach the next instruction
+     * soon because it is running slowly, the caller copies the state only if no other
+     * thread writes it (see setSnapshotReadersOnly); otherwise there is no snapshot this
+     * time.  Nor does the caller wait for Globals.memoryAndRegistersLock: the simulation thread
+     * may hold it in a syscall waiting for the event thread, e.g. for an input dialog.
+     * Between runs the state is copied directly.
+     *
+     * @param firstAddress word-aligned address of the memory range to copy.
+     * @param wordCount    number of words of memory to copy; 0 for registers only.
+     * @return the snapshot, or null if the run did not reach the next instruction in time
+     * and the state might be changed by another thread during a copy.
+     */
+    public StateSnapshot getSnapshot(int firstAddress, int wordCount) {
+        synchronized (snapshotReaders) {
+            Thread thread = simulationThread;
+            if (thread != null && thread != Thread.currentThread()
+                    && SimulationMetrics.getInstance().getCurrentSyscall() < 0) {
+                SnapshotRequest request = new SnapshotRequest(firstAddress, wordCount);
+                snapshotRequest = request;
+                try {
+                    if (request.taken.await(SNAPSHOT_WAIT, TimeUnit.MILLISECONDS)) {
+                        return request.snapshot;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                snapshotRequest = null;
+                if (!snapshotReadersOnly) {
+                    return null; // a copy might not be consistent, and waiting for the lock might deadlock
+                }
+            }
+            return new StateSnapshot(firstAddress, wordCount);
+        }
+    }
+
+    /**
+     * Declare whether, during runs, other threads only read the machine state, through
+     * getSnapshot() or by reading single values, and never write it.  Then the
+     * simulator does not take Globals.memoryAndRegistersLock around each instruction.
+     * The command-line launcher sets this; in the IDE, windows and tools may change
+     * registers and memory during a run, so by default the lock is taken.
+     *
+     * @param readersOnly true if no other thread writes registers or memory during runs.
+     */
+    public void setSnapshotReadersOnly(boolean readersOnly) {
+        snapshotReadersOnly = readersOnly;
+    }
+
+    // Called by the simulation thread between instructions when a reader is waiting.
+    private void serveSnapshot() {
+        SnapshotRequest request = snapshotRequest;
+        if (request != null) {
+            snapshotRequest = null;
+            request.snapshot = new StateSnapshot(request.firstAddress, request.wordCount);
+            request.taken.countDown();
+        }
+    }
+
+    /**
+     * Name of a reason for a run to stop, for reports.
+     *
+     * @param reason BREAKPOINT, EXCEPTION, MAX_STEPS, NORMAL_TERMINATION, CLIFF_TERMINATION
+     *               or PAUSE_OR_STOP.
+     * @return its name, e.g. "normal" or "cliff".
+     */
+    public static String getReasonName(int reason) {
+        switch (reason) {
+            case BREAKPOINT:
+                return "breakpoint";
+            case EXCEPTION:
+                return "exception";
+            case MAX_STEPS:
+                return "max steps";
+            case NORMAL_TERMINATION:
+                return "normal";
+            case CLIFF_TERMINATION:
+                return "cliff";
+            case PAUSE_OR_STOP:
+                return "stopped";
+            default:
+                return "unknown";
+        }
+    }
+
     public void addStopListener(StopListener l) {
         stopListeners.add(l);
     }
@@ -171,15 +301,39 @@ public class Simulator extends Observable {
     // by Stop button, by Pause button, by Step button, by runtime exception, by
     // instruction count limit, by breakpoint, or by end of simulation (truly done).
     private void notifyObserversOfExecutionStart(int maxSteps, int programCounter) {
+        simulationThread = Thread.currentThread();
+        if (TimeTravel.isReplaying()) {
+            return; // replay is invisible
+        }
+        SimulationMetrics.runStarted();
+        runEvent = new SimulationEvent();
+        runEvent.begin();
+        runEvent.maxSteps = maxSteps;
+        runEvent.startAddress = programCounter;
+        runStartCount = instructionCount;
         this.setChanged();
         this.notifyObservers(new SimulatorNotice(SimulatorNotice.SIMULATOR_START,
                 maxSteps, RunSpeedPanel.getInstance().getRunSpeed(), programCounter));
     }
 
-    private void notifyObserversOfExecutionStop(int maxSteps, int programCounter) {
+    private void notifyObserversOfExecutionStop(int maxSteps, int programCounter, int reason) {
+        simulationThread = null;
+        if (TimeTravel.isReplaying()) {
+            return;
+        }
+        SimulationMetrics.runStopped();
+        if (runEvent != null) {
+            runEvent.end();
+        }
+        if (runEvent != null && runEvent.shouldCommit()) {
+            runEvent.reason = getReasonName(reason);
+            runEvent.instructions = instructionCount - runStartCount;
+            runEvent.commit();
+        }
+        runEvent = null;
         this.setChanged();
         this.notifyObservers(new SimulatorNotice(SimulatorNotice.SIMULATOR_STOP,
-                maxSteps, RunSpeedPanel.getInstance().getRunSpeed(), programCounter));
+                maxSteps, RunSpeedPanel.getInstance().getRunSpeed(), programCounter, reason));
     }
 
     /* This interface is required by the Asker class in MassagesPane
@@ -271,6 +425,13 @@ public class Simulator extends Observable {
             Simulator.getInstance().notifyObserversOfExecutionStart(maxSteps, pc);
 
             RegisterFile.initializeProgramCounter(pc);
+            // Snapshots for running back, if enabled.  Replays are run flat out and unseen.
+            TimeTravel timeTravel = TimeTravel.start(p);
+            boolean replaying = timeTravel != null && TimeTravel.isReplaying();
+            // Binary trace of instructions and their register and memory accesses, if recording.
+            ExecutionTrace trace = ExecutionTrace.getCurrent();
+            // Instruction count at which a resource limit stops the run, if any.
+            long instructionLimit = ResourceLimits.getInstructionCountLimit();
             ProgramStatement statement = null;
             try {
                 statement = Globals.memory.getStatement(RegisterFile.getProgramCounter());
@@ -286,7 +447,7 @@ public class Simulator extends Observable {
                 this.constructReturnReason = EXCEPTION;
                 this.done = true;
                 SystemIO.resetFiles(); // close any files opened in MIPS program
-                Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
+                Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc, constructReturnReason);
                 return new Boolean(done);
             }
             int steps = 0;
@@ -322,80 +483,57 @@ public class Simulator extends Observable {
             // *********************************************************************
 
             int pc = 0;  // added: 7/26/06 (explanation above)
+            boolean exclusive = !snapshotReadersOnly;
 
             while (statement != null) {
                 pc = RegisterFile.getProgramCounter(); // added: 7/26/06 (explanation above)
+                instructionCount++;
+                if (trace != null) {
+                    trace.instruction(pc);
+                }
                 RegisterFile.incrementPC();
                 // Perform the MIPS instruction in synchronized block.  If external threads agree
                 // to access MIPS memory and registers only through synchronized blocks on same
                 // lock variable, then full (albeit heavy-handed) protection of MIPS memory and
                 // registers is assured.  Not as critical for reading from those resources.
-                synchronized (Globals.memoryAndRegistersLock) {
-                    try {
-                        if (Simulator.externalInterruptingDevice != NO_DEVICE) {
-                            int deviceInterruptCode = externalInterruptingDevice;
-                            Simulator.externalInterruptingDevice = NO_DEVICE;
-                            throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
-                        }
-                        BasicInstruction instruction = (BasicInstruction) statement.getInstruction();
-                        if (instruction == null) {
-                            throw new ProcessingException(statement,
-                                    "undefined instruction (" + Binary.intToHexString(statement.getBinaryStatement()) + ")",
-                                    Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
-                        }
-                        // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
-                        instruction.getSimulationCode().simulate(statement);
-
-                        // IF statement added 7/26/06 (explanation above)
-                        if (Globals.getSettings().getBackSteppingEnabled()) {
-                            Globals.program.getBackStepper().addDoNothing(pc);
-                        }
-                    } catch (ProcessingException pe) {
-                        if (pe.errors() == null) {
-                            this.constructReturnReason = NORMAL_TERMINATION;
-                            this.done = true;
-                            SystemIO.resetFiles(); // close any files opened in MIPS program
-                            Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                            return new Boolean(done); // execution completed without error.
-                        } else {
-                            // See if an exception handler is present.  Assume this is the case
-                            // if and only if memory location Memory.exceptionHandlerAddress
-                            // (e.g. 0x80000180) contains an instruction.  If so, then set the
-                            // program counter there and continue.  Otherwise terminate the
-                            // MIPS program with appropriate error message.
-                            ProgramStatement exceptionHandler = null;
-                            try {
-                                exceptionHandler = Globals.memory.getStatement(Memory.exceptionHandlerAddress);
-                            } catch (AddressErrorException aee) {
-                            } // will not occur with this well-known addres
-                            if (exceptionHandler != null) {
-                                RegisterFile.setProgramCounter(Memory.exceptionHandlerAddress);
-                            } else {
-                                this.constructReturnReason = EXCEPTION;
-                                this.pe = pe;
-                                this.done = true;
-                                SystemIO.resetFiles(); // close any files opened in MIPS program
-                                Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                                return new Boolean(done);
-                            }
-                        }
+                // Skipped when only snapshot readers are about (see setSnapshotReadersOnly).
+                boolean executed;
+                if (exclusive) {
+                    synchronized (Globals.memoryAndRegistersLock) {
+                        executed = execute(statement, pc);
                     }
-                }// end synchronized block
+                } else {
+                    executed = execute(statement, pc);
+                }
+                if (!executed) {
+                    return new Boolean(done);
+                }
 
                 ///////// DPS 15 June 2007.  Handle delayed branching if it occurs./////
                 if (DelayedBranch.isTriggered()) {
                     RegisterFile.setProgramCounter(DelayedBranch.getBranchTargetAddress());
                     DelayedBranch.clear();
+                    if (Globals.getSettings().getBackSteppingEnabled()) {
+                        Globals.program.getBackStepper().markDelaySlot(pc);
+                    }
                 } else if (DelayedBranch.isRegistered()) {
                     DelayedBranch.trigger();
                 }//////////////////////////////////////////////////////////////////////
 
+                if (timeTravel != null) {
+                    timeTravel.stepped();
+                }
+                // Serve a reader waiting in getSnapshot(), now that the instruction is complete.
+                if (snapshotRequest != null) {
+                    serveSnapshot();
+                }
+
                 // Volatile variable initialized false but can be set true by the main thread.
                 // Used to stop or pause a running MIPS program.  See stopSimulation() above.
                 if (stop == true) {
                     this.constructReturnReason = PAUSE_OR_STOP;
                     this.done = false;
-                    Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
+                    Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc, constructReturnReason);
                     return new Boolean(done);
                 }
                 //	Return if we've reached a breakpoint.
@@ -403,7 +541,7 @@ public class Simulator extends Observable {
                         (Arrays.binarySearch(breakPoints, RegisterFile.getProgramCounter()) >= 0)) {
                     this.constructReturnReason = BREAKPOINT;
                     this.done = false;
-                    Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
+                    Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc, constructReturnReason);
                     return new Boolean(done); // false;
                 }
                 // Check number of MIPS instructions executed.  Return if at limit (-1 is no limit).
@@ -412,20 +550,29 @@ public class Simulator extends Observable {
                     if (steps >= maxSteps) {
                         this.constructReturnReason = MAX_STEPS;
                         this.done = false;
-                        Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
+                        Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc, constructReturnReason);
                         return new Boolean(done);// false;
                     }
                 }
+                // Stop if the 64-bit instruction budget of the run's resource limits is used up.
+                if (instructionCount >= instructionLimit) {
+                    ResourceLimits.instructionLimitReached();
+                    this.constructReturnReason = PAUSE_OR_STOP;
+                    this.done = false;
+                    Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc, constructReturnReason);
+                    return new Boolean(done);
+                }
 
                 // schedule GUI update only if: there is in fact a GUI! AND
                 //                              using Run,  not Step (maxSteps > 1) AND
                 //                              running slowly enough for GUI to keep up
                 //if (Globals.getGui() != null && maxSteps != 1 &&
-                if (interactiveGUIUpdater != null && maxSteps != 1 &&
-                        RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
+                if (interactiveGUIUpdater != null && maxSteps != 1 && !replaying &&
+                        RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED
+                        && guiUpdatePending.compareAndSet(false, true)) {
                     SwingUtilities.invokeLater(interactiveGUIUpdater);
                 }
-                if (Globals.getGui() != null || Globals.runSpeedPanelExists) { // OR added by DPS 24 July 2008 to enable speed control by stand-alone tool
+                if ((Globals.getGui() != null || Globals.runSpeedPanelExists) && !replaying) { // OR added by DPS 24 July 2008 to enable speed control by stand-alone tool
                     if (maxSteps != 1 &&
                             RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
                         try {
@@ -452,7 +599,7 @@ public class Simulator extends Observable {
                     this.constructReturnReason = EXCEPTION;
                     this.done = true;
                     SystemIO.resetFiles(); // close any files opened in MIPS program
-                    Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
+                    Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc, constructReturnReason);
                     return new Boolean(done);
                 }
             }
@@ -469,11 +616,72 @@ public class Simulator extends Observable {
             this.constructReturnReason = CLIFF_TERMINATION;
             this.done = true;
             SystemIO.resetFiles(); // close any files opened in MIPS program
-            Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
+            Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc, constructReturnReason);
             return new Boolean(done); // true;  // execution completed
         }
 
 
+        /**
+         * Simulate one statement, or the exception handler's response to it.
+         *
+         * @param statement the statement, whose address is pc.
+         * @param pc        address of the statement.
+         * @return false if the run ended; construct() then returns.
+         */
+        private boolean execute(ProgramStatement statement, int pc) {
+            try {
+                if (Simulator.externalInterruptingDevice != NO_DEVICE) {
+                    int deviceInterruptCode = externalInterruptingDevice;
+                    Simulator.externalInterruptingDevice = NO_DEVICE;
+                    throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
+                }
+                BasicInstruction instruction = (BasicInstruction) statement.getInstruction();
+                if (instruction == null) {
+                    throw new ProcessingException(statement,
+                            "undefined instruction (" + Binary.intToHexString(statement.getBinaryStatement()) + ")",
+                            Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
+                }
+                // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
+                instruction.getSimulationCode().simulate(statement);
+
+                // IF statement added 7/26/06 (explanation above)
+                if (Globals.getSettings().getBackSteppingEnabled()) {
+                    Globals.program.getBackStepper().addDoNothing(pc);
+                }
+            } catch (ProcessingException pe) {
+                if (pe.errors() == null) {
+                    this.constructReturnReason = NORMAL_TERMINATION;
+                    this.done = true;
+                    SystemIO.resetFiles(); // close any files opened in MIPS program
+                    Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc, constructReturnReason);
+                    return false; // execution completed without error.
+                } else {
+                    // See if an exception handler is present.  Assume this is the case
+                    // if and only if memory location Memory.exceptionHandlerAddress
+                    // (e.g. 0x80000180) contains an instruction.  If so, then set the
+                    // program counter there and continue.  Otherwise terminate the
+                    // MIPS program with appropriate error message.
+                    ProgramStatement exceptionHandler = null;
+                    try {
+                        exceptionHandler = Globals.memory.getStatement(Memory.exceptionHandlerAddress);
+                    } catch (AddressErrorException aee) {
+                    } // will not occur with this well-known addres
+                    if (exceptionHandler != null) {
+                        RegisterFile.setProgramCounter(Memory.exceptionHandlerAddress);
+                    } else {
+                        this.constructReturnReason = EXCEPTION;
+                        this.pe = pe;
+                        this.done = true;
+                        SystemIO.resetFiles(); // close any files opened in MIPS program
+                        Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc, constructReturnReason);
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+
         /**
          * This method is invoked by the SwingWorker when the "construct" method returns.
          * It will update the GUI appropriately.  According to Sun's documentation, it
@@ -483,10 +691,10 @@ public class Simulator extends Observable {
          * Its action depends on what caused the return from construct() and what
          * action led to the call of construct() in the first place.
          */
-
         public void finished() {
             // If running from the command-line, then there is no GUI to update.
-            if (Globals.getGui() == null) {
+            // Nor is there when replaying for TimeTravel, which has no starter.
+            if (Globals.getGui() == null || starter == null) {
                 return;
             }
             String starterName = (String) starter.getValue(AbstractAction.NAME);
@@ -512,8 +720,22 @@ public class Simulator extends Observable {
 
     }
 
+    // A getSnapshot() call waiting for the simulation thread.
+    private static class SnapshotRequest {
+        final int firstAddress;
+        final int wordCount;
+        final CountDownLatch taken = new CountDownLatch(1);
+        StateSnapshot snapshot;
+
+        SnapshotRequest(int firstAddress, int wordCount) {
+            this.firstAddress = firstAddress;
+            this.wordCount = wordCount;
+        }
+    }
+
     private class UpdateGUI implements Runnable {
         public void run() {
+            guiUpdatePending.set(false);
             if (Globals.getGui().getRegistersPane().getSelectedComponent() ==
                     Globals.getGui().getMainPane().getExecutePane().getRegistersWindow()) {
                 Globals.getGui().getMainPane().getExecutePane().getRegistersWindow().updateRegisters();
@@ -44,16 +44,25 @@ public class SimulatorNotice {
     private int maxSteps;
     private double runSpeed;
     private int programCounter;
+    private int reason;
 
     /**
      * Constructor will be called only within this package, so assume
      * address and length are in valid ranges.
      */
     public SimulatorNotice(int action, int maxSteps, double runSpeed, int programCounter) {
+        this(action, maxSteps, runSpeed, programCounter, 0);
+    }
+
+    /**
+     * Constructor for a stop notice, giving the reason the simulation stopped.
+     */
+    public SimulatorNotice(int action, int maxSteps, double runSpeed, int programCounter, int reason) {
         this.action = action;
         this.maxSteps = maxSteps;
         this.runSpeed = runSpeed;
         this.programCounter = programCounter;
+        this.reason = reason;
     }
 
     /**
@@ -84,6 +93,15 @@ public class SimulatorNotice {
         return this.programCounter;
     }
 
+    /**
+     * Fetch the reason the simulation stopped: one of Simulator.BREAKPOINT, EXCEPTION,
+     * MAX_STEPS, NORMAL_TERMINATION, CLIFF_TERMINATION or PAUSE_OR_STOP, or 0 for
+     * a start notice.
+     */
+    public int getReason() {
+        return this.reason;
+    }
+
     /**
      * String representation indicates access type, address and length in bytes
      */
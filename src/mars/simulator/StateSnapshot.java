@@ -0,0 +1,150 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.ProgramStatement;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Coprocessor0;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+
+/**
+ * A copy of the registers and of one range of memory, all taken at the same point
+ * between two instructions.  Obtained from {@link Simulator#getSnapshot}, which the
+ * GUI and tools may call while a program runs to read a consistent state without
+ * taking Globals.memoryAndRegistersLock.  Only the memory asked for is copied.
+ */
+public class StateSnapshot {
+    private final long instructionCount;
+    private final int[] registers;      // by number; 32 is the PC, 33 HI and 34 LO
+    private final int[] coprocessor0;   // in the order of Coprocessor0.getRegisters()
+    private final int[] coprocessor1;
+    private final int conditionFlags;
+    private final int firstAddress;
+    private final int[] words;
+
+    /**
+     * Copy the current state.  Must be called by the simulation thread, or when no
+     * program is running.
+     *
+     * @param firstAddress word-aligned address of the memory range to copy.
+     * @param wordCount    number of words of memory to copy.
+     */
+    StateSnapshot(int firstAddress, int wordCount) {
+        instructionCount = Simulator.getInstance().getInstructionCount();
+        registers = new int[35];
+        for (int i = 0; i < 32; i++) {
+            registers[i] = RegisterFile.getValue(i);
+        }
+        registers[32] = RegisterFile.getProgramCounter();
+        registers[33] = RegisterFile.getValue(33);
+        registers[34] = RegisterFile.getValue(34);
+        Register[] cop0 = Coprocessor0.getRegisters();
+        coprocessor0 = new int[cop0.length];
+        for (int i = 0; i < cop0.length; i++) {
+            coprocessor0[i] = cop0[i].getValue();
+        }
+        coprocessor1 = new int[32];
+        for (int i = 0; i < coprocessor1.length; i++) {
+            coprocessor1[i] = Coprocessor1.getValue(i);
+        }
+        conditionFlags = Coprocessor1.getConditionFlags();
+        this.firstAddress = firstAddress;
+        words = new int[Math.max(0, wordCount)];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = readWord(firstAddress + i * Memory.WORD_LENGTH_BYTES);
+        }
+    }
+
+    /**
+     * @return number of instructions executed by the simulator when the snapshot was taken.
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * @return the program counter.
+     */
+    public int getProgramCounter() {
+        return registers[32];
+    }
+
+    /**
+     * Value of a register of the register file.
+     *
+     * @param number register number: 0-31, 32 for the PC, or 33 for HI and 34 for LO as in RegisterFile.
+     * @return its value.
+     */
+    public int getRegister(int number) {
+        return registers[number];
+    }
+
+    /**
+     * Value of a Coprocessor 0 register.
+     *
+     * @param position position of the register in Coprocessor0.getRegisters().
+     * @return its value.
+     */
+    public int getCoprocessor0Register(int position) {
+        return coprocessor0[position];
+    }
+
+    /**
+     * Value of a Coprocessor 1 (floating point) register.
+     *
+     * @param number register number, 0-31.
+     * @return its bits.
+     */
+    public int getCoprocessor1Register(int number) {
+        return coprocessor1[number];
+    }
+
+    /**
+     * @return the Coprocessor 1 condition flags, flag 0 in the low bit.
+     */
+    public int getConditionFlags() {
+        return conditionFlags;
+    }
+
+    /**
+     * @return first address of the memory range copied.
+     */
+    public int getFirstAddress() {
+        return firstAddress;
+    }
+
+    /**
+     * @return number of words of memory copied.
+     */
+    public int getWordCount() {
+        return words.length;
+    }
+
+    /**
+     * Word of the memory range copied.  Text segment words are the binary statements;
+     * addresses outside the simulated memory read as 0.
+     *
+     * @param address word-aligned address within the range.
+     * @return the word at that address.
+     * @throws IndexOutOfBoundsException if the address was not copied.
+     */
+    public int getWord(int address) {
+        return words[(address - firstAddress) / Memory.WORD_LENGTH_BYTES];
+    }
+
+    // Read without notifying observers, and without the setting that forbids
+    // reading the text segment, which applies only to the MIPS program.
+    private static int readWord(int address) {
+        try {
+            if (Memory.inTextSegment(address) || Memory.inKernelTextSegment(address)) {
+                ProgramStatement statement = Globals.memory.getStatementNoNotify(address);
+                return (statement == null) ? 0 : statement.getBinaryStatement();
+            }
+            return Globals.memory.getWordNoNotify(address);
+        } catch (AddressErrorException e) {
+            return 0;
+        }
+    }
+}
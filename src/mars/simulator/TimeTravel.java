@@ -0,0 +1,424 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.ProcessingException;
+import mars.mips.hardware.*;
+
+import java.util.ArrayList;
+
+/**
+ * Reverse execution ("time travel") of a MIPS program by periodic snapshots and replay.
+ * <p>
+ * While the program runs, a snapshot of the machine is taken every
+ * Globals.snapshotInterval instructions: registers, coprocessor 0 and 1 registers,
+ * memory, delayed branch and random number stream state, and the position in the log
+ * of console input.  Memory blocks not written since the previous snapshot are shared
+ * with it.  Nothing is recorded between snapshots, so unlike {@link BackStepper} this
+ * costs next to nothing per instruction, and there is no limit on how far back one
+ * can go.  To run back to an earlier instruction, the nearest snapshot at or before it
+ * is restored and the program replayed forward from there, with console input served
+ * from the log and console output suppressed.
+ * <p>
+ * Replay reproduces the original run only as far as the simulated machine is
+ * deterministic.  The time syscall, dialog syscalls, random streams created without a
+ * seed after the snapshot and memory-mapped I/O devices may behave differently.  Files
+ * read or written by the program cannot be rewound, so running back to before a file
+ * operation is refused.
+ */
+public class TimeTravel {
+    // Keep at most this many snapshots.  When there would be more, every other one is
+    // dropped and the interval between snapshots doubled: running back gets slower but
+    // still reaches all the way to the start.
+    private static final int MAXIMUM_SNAPSHOTS = 256;
+
+    // TimeTravel of the program being simulated, for SystemIO.  Set when simulation starts.
+    private static TimeTravel current = null;
+
+    private MIPSprogram program;
+    private int interval;
+    private long instructionCount;
+    private long nextSnapshot;
+    private long lastFileOperation;
+    private ArrayList<Snapshot> snapshots;
+    private ArrayList<ConsoleInput> inputs;
+    private int inputPosition;
+    private volatile boolean replaying;
+    private Register watched;
+    private int watchedValue;
+    private long watchedChange;
+    private String message;
+
+    /**
+     * Create a TimeTravel for the given program.  Recording starts when the program
+     * is first simulated.
+     *
+     * @param program the assembled program.
+     */
+    public TimeTravel(MIPSprogram program) {
+        this.program = program;
+        this.interval = Math.max(Globals.snapshotInterval, 1);
+        this.instructionCount = 0;
+        this.nextSnapshot = interval;
+        this.lastFileOperation = -1;
+        this.snapshots = new ArrayList<Snapshot>();
+        this.inputs = new ArrayList<ConsoleInput>();
+        this.inputPosition = 0;
+        this.replaying = false;
+    }
+
+    /**
+     * Number of instructions executed by the program so far.  Running back to
+     * instruction <i>n</i> returns the machine to its state after the first <i>n</i>.
+     *
+     * @return instruction count.
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * Explains why the latest runBackTo() or runBackToChange() did not get there.
+     *
+     * @return the reason, or null if it succeeded.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Run back to the state after the given number of instructions had been executed.
+     *
+     * @param target instruction count to return to, from 0 to getInstructionCount().
+     * @return true if the machine is now at target, false if not (see getMessage()).
+     */
+    public boolean runBackTo(long target) {
+        message = null;
+        if (target < 0 || target > instructionCount) {
+            message = "instruction " + target + " is out of range 0 to " + instructionCount;
+            return false;
+        }
+        if (!replayable(snapshotAtOrBefore(target))) {
+            return false;
+        }
+        BackStepper backStepper = program.getBackStepper();
+        boolean engaged = backStepper.enabled();
+        backStepper.setEnabled(false);
+        try {
+            return replayTo(target);
+        } finally {
+            truncate(instructionCount);
+            backStepper.reset();
+            backStepper.setEnabled(engaged);
+        }
+    }
+
+    /**
+     * Run back to just before the latest instruction that changed the given register,
+     * so that it is the next one to execute.
+     *
+     * @param register the register to watch.
+     * @return true if such an instruction was found and the machine is now just before
+     * it, false otherwise (see getMessage()).
+     */
+    public boolean runBackToChange(Register register) {
+        message = null;
+        long end = instructionCount;
+        BackStepper backStepper = program.getBackStepper();
+        boolean engaged = backStepper.enabled();
+        backStepper.setEnabled(false);
+        boolean moved = false;
+        try {
+            // Replay one interval between snapshots at a time, latest first.
+            for (int i = snapshots.size() - 1; i >= 0; i--) {
+                Snapshot snapshot = snapshots.get(i);
+                if (snapshot.instructionCount >= end) {
+                    continue;
+                }
+                if (!replayable(snapshot)) {
+                    break;
+                }
+                long segmentEnd = (i + 1 < snapshots.size())
+                        ? Math.min(snapshots.get(i + 1).instructionCount, end)
+                        : end;
+                restore(snapshot);
+                moved = true;
+                watched = register;
+                watchedValue = register.getValueNoNotify();
+                watchedChange = -1;
+                try {
+                    if (!replay(segmentEnd)) {
+                        return false;
+                    }
+                } finally {
+                    watched = null;
+                }
+                if (watchedChange >= 0) {
+                    return replayTo(watchedChange);
+                }
+            }
+            if (message == null) {
+                message = register.getName() + " was not changed in instructions 0 to " + end;
+            }
+            // Put the machine back where it was.
+            if (moved) {
+                String reason = message;
+                replayTo(end);
+                message = reason;
+            }
+            return false;
+        } finally {
+            if (moved) {
+                truncate(instructionCount);
+                backStepper.reset();
+            }
+            backStepper.setEnabled(engaged);
+        }
+    }
+
+    /**
+     * Note that the latest instruction has been undone by the BackStepper.
+     */
+    public void backStepped() {
+        if (instructionCount > 0) {
+            instructionCount--;
+            truncate(instructionCount);
+        }
+    }
+
+    /**
+     * Find a register by name for runBackToChange(): a general purpose register
+     * ($t0 or $8), a coprocessor 1 register ($f0), a coprocessor 0 register ($12)
+     * or pc.  The $ may be left off.
+     *
+     * @param name register name.
+     * @return the register, or null if there is no such register.
+     */
+    public static Register findRegister(String name) {
+        name = name.trim();
+        if (name.length() == 0) {
+            return null;
+        }
+        if (name.equals("pc") || name.equals("$pc")) {
+            return RegisterFile.getProgramCounterRegister();
+        }
+        if (name.charAt(0) != '$') {
+            name = "$" + name;
+        }
+        Register register = RegisterFile.getUserRegister(name);
+        if (register == null) {
+            register = Coprocessor1.getRegister(name);
+        }
+        if (register == null) {
+            register = Coprocessor0.getRegister(name);
+        }
+        return register;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Called by the simulator.
+
+    // Simulation of the given program is starting.  The first time, record the initial
+    // state.  Returns the program's TimeTravel, null if it has none.
+    static TimeTravel start(MIPSprogram program) {
+        current = (program == null) ? null : program.getTimeTravel();
+        if (current != null && current.snapshots.isEmpty()) {
+            current.takeSnapshot();
+        }
+        return current;
+    }
+
+    // One more instruction has been executed.
+    void stepped() {
+        instructionCount++;
+        if (watched != null) {
+            int value = watched.getValueNoNotify();
+            if (value != watchedValue) {
+                watchedValue = value;
+                watchedChange = instructionCount - 1;
+            }
+        }
+        if (instructionCount == nextSnapshot) {
+            takeSnapshot();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Called by SystemIO for the program being simulated.
+
+    /**
+     * Whether the program is being replayed, in which case console output is suppressed.
+     *
+     * @return true while replaying.
+     */
+    public static boolean isReplaying() {
+        TimeTravel timeTravel = current;
+        return timeTravel != null && timeTravel.replaying;
+    }
+
+    /**
+     * During replay, returns the console input the program read originally.
+     *
+     * @return the input, or null if not replaying or none was logged.
+     */
+    public static String replayInput() {
+        TimeTravel timeTravel = current;
+        if (timeTravel == null || !timeTravel.replaying || timeTravel.inputPosition >= timeTravel.inputs.size()) {
+            return null;
+        }
+        return timeTravel.inputs.get(timeTravel.inputPosition++).text;
+    }
+
+    /**
+     * Log console input read by the program, for replay.
+     *
+     * @param text the input.
+     */
+    public static void recordInput(String text) {
+        TimeTravel timeTravel = current;
+        if (timeTravel == null || timeTravel.replaying) {
+            return;
+        }
+        timeTravel.truncateInputs(timeTravel.inputPosition);
+        timeTravel.inputs.add(new ConsoleInput(timeTravel.instructionCount, text));
+        timeTravel.inputPosition++;
+    }
+
+    /**
+     * Note that the program is operating on a file, which replay cannot undo.
+     */
+    public static void recordFileOperation() {
+        TimeTravel timeTravel = current;
+        if (timeTravel != null) {
+            timeTravel.lastFileOperation = timeTravel.instructionCount;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void takeSnapshot() {
+        Snapshot previous = snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+        snapshots.add(capture(previous));
+        if (snapshots.size() > MAXIMUM_SNAPSHOTS) {
+            ArrayList<Snapshot> kept = new ArrayList<Snapshot>();
+            for (int i = 0; i < snapshots.size(); i += 2) {
+                kept.add(snapshots.get(i));
+            }
+            snapshots = kept;
+            interval *= 2;
+        }
+        nextSnapshot = instructionCount + interval;
+    }
+
+    private Snapshot snapshotAtOrBefore(long target) {
+        for (int i = snapshots.size() - 1; i > 0; i--) {
+            if (snapshots.get(i).instructionCount <= target) {
+                return snapshots.get(i);
+            }
+        }
+        return snapshots.get(0);
+    }
+
+    private boolean replayable(Snapshot snapshot) {
+        if (lastFileOperation >= snapshot.instructionCount) {
+            message = "cannot replay past the file operation at instruction " + lastFileOperation;
+            return false;
+        }
+        return true;
+    }
+
+    private boolean replayTo(long target) {
+        Snapshot snapshot = snapshotAtOrBefore(target);
+        if (!replayable(snapshot)) {
+            return false;
+        }
+        restore(snapshot);
+        return replay(target);
+    }
+
+    // Execute instructions from the current state until the instruction count reaches target.
+    private boolean replay(long target) {
+        replaying = true;
+        try {
+            while (instructionCount < target) {
+                long expected = instructionCount + Math.min(target - instructionCount, Integer.MAX_VALUE);
+                boolean done = Simulator.getInstance().simulate(program, RegisterFile.getProgramCounter(),
+                        (int) (expected - instructionCount), null, null);
+                if (done) {
+                    message = "program terminated during replay at instruction " + instructionCount;
+                    return false;
+                }
+                if (instructionCount != expected) {
+                    message = "replay stopped at instruction " + instructionCount;
+                    return false;
+                }
+            }
+            return true;
+        } catch (ProcessingException e) {
+            message = "runtime error during replay at instruction " + instructionCount;
+            return false;
+        } finally {
+            replaying = false;
+        }
+    }
+
+    // Forget history after the given instruction count, which is where the machine now is.
+    private void truncate(long count) {
+        while (snapshots.size() > 1 && snapshots.get(snapshots.size() - 1).instructionCount > count) {
+            snapshots.remove(snapshots.size() - 1);
+        }
+        int keep = inputs.size();
+        while (keep > 0 && inputs.get(keep - 1).instruction >= count) {
+            keep--;
+        }
+        truncateInputs(keep);
+        inputPosition = Math.min(inputPosition, keep);
+        nextSnapshot = snapshots.get(snapshots.size() - 1).instructionCount + interval;
+        while (nextSnapshot <= count) {
+            nextSnapshot += interval;
+        }
+    }
+
+    private void truncateInputs(int size) {
+        while (inputs.size() > size) {
+            inputs.remove(inputs.size() - 1);
+        }
+    }
+
+    private Snapshot capture(Snapshot previous) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.instructionCount = instructionCount;
+        snapshot.inputPosition = inputPosition;
+        snapshot.machine = MachineState.capture();
+        snapshot.memory = Globals.memory.takeSnapshot((previous == null) ? null : previous.memory);
+        return snapshot;
+    }
+
+    private void restore(Snapshot snapshot) {
+        synchronized (Globals.memoryAndRegistersLock) {
+            snapshot.machine.restore();
+            Globals.memory.restoreSnapshot(snapshot.memory);
+            instructionCount = snapshot.instructionCount;
+            inputPosition = snapshot.inputPosition;
+        }
+    }
+
+    // The machine state after some number of instructions.
+    private static class Snapshot {
+        private long instructionCount;
+        private int inputPosition;
+        private MachineState machine;
+        private Memory.Snapshot memory;
+    }
+
+    // One item of console input, and the instruction (count before it executed) that read it.
+    private static class ConsoleInput {
+        private long instruction;
+        private String text;
+
+        private ConsoleInput(long instruction, String text) {
+            this.instruction = instruction;
+            this.text = text;
+        }
+    }
+}
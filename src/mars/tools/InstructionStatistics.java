@@ -32,6 +32,7 @@ import mars.mips.hardware.AccessNotice;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.MemoryAccessNotice;
+import mars.simulator.TimeTravel;
 import mars.util.InstructionStatisticsHelper;
 
 import javax.swing.*;
@@ -219,7 +220,8 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication {
      */
     protected void processMIPSUpdate(Observable resource, AccessNotice notice) {
 
-        if (!notice.accessIsFromMIPS()) {
+        // instructions replayed when running back in time were counted when first executed
+        if (!notice.accessIsFromMIPS() || TimeTravel.isReplaying()) {
             return;
         }
 
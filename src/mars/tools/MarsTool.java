@@ -47,6 +47,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  * published methods PROVIDED any such communication is
  * wrapped inside a block synchronized on the
  * Mars.Globals.memoryAndRegistersLock object.
+ * <p>
+ * To read registers and memory while a program runs without
+ * holding up the simulation, a tool may instead use
+ * Mars.simulator.Simulator.getSnapshot(), which returns a
+ * consistent copy of the registers and of a range of memory,
+ * or null if the simulation did not pause for one in time.
  */
 
 public interface MarsTool {
@@ -0,0 +1,198 @@
+package mars.util;
+
+import mars.simulator.Simulator;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Compares the console output of a MIPS program with the contents of an expected-output
+ * file as the output is produced, instead of after the run.  At the first byte that
+ * differs the simulation is asked to stop, so a program that goes wrong early does not
+ * use up its whole step limit.  Output to STDOUT by the print syscalls and by writes
+ * to file descriptor 1 is compared; output to STDERR is not.  A carriage return
+ * before a line feed in the expected-output file is ignored, so files with Windows
+ * line endings can be used.
+ */
+public class ExpectedOutput {
+    private static final int END = -1;
+
+    // Comparison in progress, or null.  Set before simulation starts.
+    private static ExpectedOutput current = null;
+
+    private InputStream expected;
+    private long offset;
+    private boolean mismatch;
+    private int expectedByte;
+    private int actualByte;
+    private long instructionCount;
+    private IOException error;
+
+    private ExpectedOutput(File file) throws IOException {
+        expected = new BufferedInputStream(new FileInputStream(file), 65536);
+    }
+
+    /**
+     * Start comparing program output with the contents of a file.
+     *
+     * @param file the expected-output file.
+     * @return the comparison.
+     * @throws IOException if the file cannot be opened.
+     */
+    public static ExpectedOutput start(File file) throws IOException {
+        current = new ExpectedOutput(file);
+        return current;
+    }
+
+    /**
+     * Stop comparing and close the expected-output file.  If the output so far
+     * matches but the file holds more, that counts as a mismatch at the end of the output.
+     *
+     * @return false if the output differs from the expected output.
+     */
+    public boolean finish() {
+        if (current == this) {
+            current = null;
+        }
+        if (!mismatch) {
+            int next = read();
+            if (next != END) {
+                setMismatch(next, END);
+            }
+        }
+        try {
+            expected.close();
+        } catch (IOException e) {
+        }
+        return !mismatch;
+    }
+
+    /**
+     * @return true if output has differed from the expected output.
+     */
+    public boolean isMismatch() {
+        return mismatch;
+    }
+
+    /**
+     * @return offset in bytes of the first difference, in the program output.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return instruction count (see Simulator.getInstructionCount()) when the difference occurred.
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * @return description of the first difference, or null if there is none.
+     */
+    public String getMessage() {
+        if (!mismatch) {
+            return null;
+        }
+        if (error != null) {
+            return "cannot read expected output: " + error.getMessage();
+        }
+        return "output differs from expected at byte offset " + offset + ": expected "
+                + describe(expectedByte) + ", got " + describe(actualByte);
+    }
+
+    /**
+     * Compare a string printed to the console, if a comparison is in progress.
+     *
+     * @param string the string, encoded as System.out encodes it.
+     */
+    static void printed(String string) {
+        ExpectedOutput comparison = current;
+        if (comparison == null || comparison.mismatch) {
+            return;
+        }
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) >= 0x80) {
+                byte[] bytes = string.getBytes();
+                comparison.compare(bytes, bytes.length);
+                return;
+            }
+        }
+        for (int i = 0; i < string.length() && !comparison.mismatch; i++) {
+            comparison.compare(string.charAt(i));
+        }
+    }
+
+    /**
+     * Compare bytes written to STDOUT, if a comparison is in progress.
+     *
+     * @param bytes  buffer of bytes written.
+     * @param length number of bytes written from the start of the buffer.
+     */
+    static void written(byte[] bytes, int length) {
+        ExpectedOutput comparison = current;
+        if (comparison != null && !comparison.mismatch) {
+            comparison.compare(bytes, length);
+        }
+    }
+
+    private void compare(byte[] bytes, int length) {
+        for (int i = 0; i < length && !mismatch; i++) {
+            compare(bytes[i] & 0xFF);
+        }
+    }
+
+    private void compare(int actual) {
+        int next = read();
+        if (next == '\r' && actual == '\n') {
+            expected.mark(1);
+            next = read();
+            if (next != '\n') {
+                resetExpected();
+                next = '\r';
+            }
+        }
+        if (next != actual) {
+            setMismatch(next, actual);
+        } else {
+            offset++;
+        }
+    }
+
+    private int read() {
+        try {
+            return expected.read();
+        } catch (IOException e) {
+            error = e;
+            return END;
+        }
+    }
+
+    private void resetExpected() {
+        try {
+            expected.reset();
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    private void setMismatch(int expectedByte, int actualByte) {
+        this.mismatch = true;
+        this.expectedByte = expectedByte;
+        this.actualByte = actualByte;
+        this.instructionCount = Simulator.getInstance().getInstructionCount();
+        Simulator.getInstance().requestStop();
+    }
+
+    private static String describe(int b) {
+        if (b == END) {
+            return "end of output";
+        }
+        String hex = "0x" + Integer.toHexString(0x100 | b).substring(1);
+        return (b >= 0x20 && b < 0x7F) ? "'" + (char) b + "' (" + hex + ")" : hex;
+    }
+}
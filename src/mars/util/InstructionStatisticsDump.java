@@ -6,6 +6,7 @@ import mars.mips.hardware.AccessNotice;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
 import mars.mips.hardware.MemoryAccessNotice;
+import mars.simulator.TimeTravel;
 
 import java.io.FileWriter;
 import java.io.IOException;
@@ -17,6 +18,11 @@ import java.util.Observer;
  * It has no GUI dependencies and can be used in a headless environment.
  */
 public class InstructionStatisticsDump implements Observer {
+    /**
+     * File the statistics are written to, in the current directory.
+     */
+    public static final String FILE_NAME = "InstructionStatistics.txt";
+
     private final InstructionStatisticsHelper m_helper = new InstructionStatisticsHelper();
     private int lastAddress = -1;
 
@@ -24,20 +30,29 @@ public class InstructionStatisticsDump implements Observer {
         addAsObserver();
     }
 
+    // Instructions replayed to run back in time (the "tt" option) are not counted.
     @Override
     public void update(Observable resource, Object accessNotice) {
-        if (((AccessNotice) accessNotice).accessIsFromMIPS()) {
+        if (((AccessNotice) accessNotice).accessIsFromMIPS() && !TimeTravel.isReplaying()) {
             processMIPSUpdate(resource, (AccessNotice) accessNotice);
         }
     }
 
+    /**
+     * @return the final statistics of the instruction categories, for other reports.
+     */
+    public InstructionStatisticsHelper getStatistics() {
+        m_helper.updateFinalCycle();
+        return m_helper;
+    }
+
     /**
      * Outputs the final statistics of the instruction categories to a file.
      */
     public void dump() {
         m_helper.updateFinalCycle();
         try {
-            FileWriter fw = new FileWriter("InstructionStatistics.txt", false);
+            FileWriter fw = new FileWriter(FILE_NAME, false);
             for (int i = 0; i < InstructionStatisticsHelper.MAX_CATEGORY; i++) {
                 fw.write(String.format("%s (%.1f): %d\n",
                         m_helper.getCategoryLabel(i),
@@ -0,0 +1,171 @@
+package mars.util;
+
+import java.io.PrintStream;
+
+/**
+ * Writes JSON text to a stream, for machine-readable reports.  Objects and arrays are
+ * opened and closed explicitly, and commas between their members are inserted as
+ * needed.  Each member of an object is written as name() followed by a value.
+ * Output is indented, two spaces per level.
+ */
+public class JsonWriter {
+    private PrintStream out;
+    private int depth = 0;
+    private boolean first = true;     // nothing written yet in the innermost object or array
+    private boolean afterName = false; // a member name has just been written
+
+    /**
+     * @param out stream to write the JSON text to.
+     */
+    public JsonWriter(PrintStream out) {
+        this.out = out;
+    }
+
+    public JsonWriter beginObject() {
+        return open('{');
+    }
+
+    public JsonWriter endObject() {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() {
+        return open('[');
+    }
+
+    public JsonWriter endArray() {
+        return close(']');
+    }
+
+    /**
+     * Write the name of the next member of the current object.
+     *
+     * @param name the member name.
+     * @return this writer.
+     */
+    public JsonWriter name(String name) {
+        separate();
+        out.print(quote(name));
+        out.print(": ");
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        separate();
+        out.print((value == null) ? "null" : quote(value));
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        separate();
+        out.print(value);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        separate();
+        out.print(value);
+        return this;
+    }
+
+    /**
+     * Write a floating point value.  JSON has no infinity or NaN, so those are written as null.
+     *
+     * @param value the value.
+     * @return this writer.
+     */
+    public JsonWriter value(double value) {
+        separate();
+        out.print((Double.isNaN(value) || Double.isInfinite(value)) ? "null" : Double.toString(value));
+        return this;
+    }
+
+    /**
+     * Finish the text with a newline and flush the stream.
+     */
+    public void finish() {
+        out.println();
+        out.flush();
+    }
+
+    /**
+     * Quote a string as a JSON string literal.
+     *
+     * @param string the string.
+     * @return the string in double quotes, with quotes, backslashes and control characters escaped.
+     */
+    public static String quote(String string) {
+        StringBuffer result = new StringBuffer(string.length() + 2);
+        result.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                    result.append("\\\"");
+                    break;
+                case '\\':
+                    result.append("\\\\");
+                    break;
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                case '\t':
+                    result.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        result.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        result.append(c);
+                    }
+            }
+        }
+        result.append('"');
+        return result.toString();
+    }
+
+    private JsonWriter open(char bracket) {
+        separate();
+        out.print(bracket);
+        depth++;
+        first = true;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) {
+        depth--;
+        if (!first) {
+            newline();
+        }
+        out.print(bracket);
+        first = false;
+        return this;
+    }
+
+    // Before a value or name: a comma and new line if it follows another member, or just
+    // a new line if it is the first, unless it is the value of the name just written.
+    private void separate() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (!first) {
+                out.print(',');
+            }
+            newline();
+        }
+        first = false;
+    }
+
+    private void newline() {
+        out.println();
+        for (int i = 0; i < depth; i++) {
+            out.print("  ");
+        }
+    }
+}
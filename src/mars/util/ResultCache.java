@@ -0,0 +1,383 @@
+package mars.util;
+
+import mars.Globals;
+import mars.MIPSprogram;
+import mars.mips.hardware.RegisterFile;
+import mars.simulator.Checkpoint;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An on-disk cache of the results of command-line runs, so that running the same
+ * program again with the same input returns its earlier result without simulating.
+ * A result is the standard output and standard error of the run, the exit code and
+ * the instruction statistics file or run report, which is replayed as it was written
+ * by the original run.  It is stored under a SHA-256 hash of everything that
+ * determines it: the assembled memory image (text, data and program arguments), the
+ * memory configuration and settings, the starting program counter, the command-line
+ * arguments, the contents of standard input and any other input files.
+ * <p>
+ * Standard input is read to its end before a run that uses the cache.  Runs that
+ * depend on anything else, such as the time of day, an unseeded random number
+ * stream or a file opened by the MIPS program, are not stored.  When the results
+ * stored exceed the size limit, the least recently used are deleted.
+ */
+public class ResultCache {
+    private static final byte[] MAGIC = {'M', 'A', 'R', 'S', 'R', 'S', 'L', 'T'};
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".result";
+    // Runs producing more output than this are not stored.
+    private static final int CAPTURE_MAXIMUM = 16 * 1024 * 1024;
+
+    // Cache capturing the current run, or null.  Set before simulation starts.
+    private static ResultCache current = null;
+
+    private File directory;
+    private long maximumSize;
+    private File statisticsFile;
+    private String key;
+    private byte[][] stored;
+    private int storedExitCode;
+    private boolean cacheable;
+    private PrintStream originalOut;
+    private PrintStream originalErr;
+    private ByteArrayOutputStream capturedOut;
+    private ByteArrayOutputStream capturedErr;
+
+    /**
+     * Use a cache directory.
+     *
+     * @param directory      directory holding the results; created if necessary.
+     * @param maximumSize    total size in bytes of the results to keep.
+     * @param statisticsFile file the run writes its instruction statistics or report to.
+     */
+    public ResultCache(File directory, long maximumSize, File statisticsFile) {
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+        this.statisticsFile = statisticsFile;
+    }
+
+    /**
+     * Note that the result of the current run, if it is being captured, depends on
+     * something other than its inputs and must not be stored.
+     */
+    public static void uncacheable() {
+        ResultCache cache = current;
+        if (cache != null) {
+            cache.cacheable = false;
+        }
+    }
+
+    /**
+     * Compute the key of the run about to start and look for its result.  Call after
+     * the program is assembled and its arguments are stored in memory.  Standard input
+     * is read to its end, and then read by the run from memory.
+     *
+     * @param program    the assembled program.
+     * @param arguments  the command-line arguments.
+     * @param inputFiles names of other files whose contents affect the result, or null.
+     * @return true if a result is stored for the run; replay() replays it.
+     * @throws IOException if standard input or an input file cannot be read.
+     */
+    public boolean find(MIPSprogram program, String[] arguments, String[] inputFiles) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available");
+        }
+        DataOutputStream data = new DataOutputStream(new DigestChannel(digest));
+        data.writeUTF(Globals.version);
+        data.writeInt(Checkpoint.fingerprint(program));
+        data.writeInt(RegisterFile.getProgramCounter());
+        data.writeInt(arguments.length);
+        for (int i = 0; i < arguments.length; i++) {
+            data.writeUTF(arguments[i]);
+        }
+        byte[] input = readFully(System.in);
+        System.setIn(new ByteArrayInputStream(input));
+        data.writeInt(input.length);
+        data.write(input);
+        if (inputFiles != null) {
+            for (int i = 0; i < inputFiles.length; i++) {
+                byte[] contents = readFile(new File(inputFiles[i]));
+                data.writeInt(contents.length);
+                data.write(contents);
+            }
+        }
+        data.flush();
+        Globals.memory.writeCheckpoint(new DigestChannel(digest));
+        key = toHex(digest.digest());
+        stored = load(new File(directory, key + SUFFIX));
+        return stored != null;
+    }
+
+    /**
+     * Replay the result found by find(): write its output to standard output and
+     * standard error, and its instruction statistics to their file.
+     *
+     * @return the exit code of the run.
+     */
+    public int replay() {
+        System.out.write(stored[0], 0, stored[0].length);
+        System.out.flush();
+        System.err.write(stored[1], 0, stored[1].length);
+        System.err.flush();
+        if (stored[2] != null) {
+            try {
+                OutputStream statistics = new FileOutputStream(statisticsFile);
+                statistics.write(stored[2]);
+                statistics.close();
+            } catch (IOException e) {
+            }
+        }
+        // Most recently used results are the last to be evicted.
+        new File(directory, key + SUFFIX).setLastModified(System.currentTimeMillis());
+        return storedExitCode;
+    }
+
+    /**
+     * Start capturing standard output and standard error, which are replaced by streams
+     * that also copy to the original ones.  Call after find() fails, before the run.
+     */
+    public void startCapture() {
+        cacheable = true;
+        originalOut = System.out;
+        originalErr = System.err;
+        capturedOut = new ByteArrayOutputStream();
+        capturedErr = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(new CaptureOutputStream(originalOut, capturedOut), true));
+        System.setErr(new PrintStream(new CaptureOutputStream(originalErr, capturedErr), true));
+        current = this;
+    }
+
+    /**
+     * Stop capturing and, unless the run was uncacheable, store its result.  Call
+     * after everything the run produces has been written.  Failure to store is ignored;
+     * the cache is only an optimization.
+     *
+     * @param exitCode exit code of the run.
+     */
+    public void store(int exitCode) {
+        if (current != this) {
+            return;
+        }
+        current = null;
+        System.out.flush();
+        System.err.flush();
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        if (!cacheable) {
+            return;
+        }
+        File temporary = null;
+        try {
+            directory.mkdirs();
+            temporary = File.createTempFile("result", ".tmp", directory);
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(temporary));
+            try {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(exitCode);
+                writeBytes(out, capturedOut.toByteArray());
+                writeBytes(out, capturedErr.toByteArray());
+                writeBytes(out, statisticsFile.isFile() ? readFile(statisticsFile) : null);
+            } finally {
+                out.close();
+            }
+            File result = new File(directory, key + SUFFIX);
+            result.delete(); // renameTo does not replace on all platforms
+            if (temporary.renameTo(result)) {
+                temporary = null;
+            }
+            evict();
+        } catch (IOException e) {
+        } finally {
+            if (temporary != null) {
+                temporary.delete();
+            }
+        }
+    }
+
+    // Delete the least recently used results until those left fit the size limit.
+    private void evict() {
+        File[] results = directory.listFiles();
+        if (results == null) {
+            return;
+        }
+        long total = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i].getName().endsWith(SUFFIX)) {
+                total += results[i].length();
+            }
+        }
+        if (total <= maximumSize) {
+            return;
+        }
+        Arrays.sort(results, new Comparator() {
+            public int compare(Object a, Object b) {
+                long difference = ((File) a).lastModified() - ((File) b).lastModified();
+                return (difference < 0) ? -1 : ((difference > 0) ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < results.length && total > maximumSize; i++) {
+            if (results[i].getName().endsWith(SUFFIX)) {
+                long length = results[i].length();
+                if (results[i].delete()) {
+                    total -= length;
+                }
+            }
+        }
+    }
+
+    // The stored output, error output and statistics, or null if there is no usable result.
+    private byte[][] load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                byte[] magic = new byte[MAGIC.length];
+                in.readFully(magic);
+                if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+                    return null;
+                }
+                storedExitCode = in.readInt();
+                return new byte[][]{readBytes(in), readBytes(in), readBytes(in)};
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null; // damaged or being replaced; run again
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuffer hex = new StringBuffer(bytes.length * 2);
+        for (int i = 0; i < bytes.length; i++) {
+            hex.append(Integer.toHexString(0x100 | (bytes[i] & 0xFF)).substring(1));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return readFully(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int length = in.read(buffer); length >= 0; length = in.read(buffer)) {
+            bytes.write(buffer, 0, length);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Feeds everything written to it to a message digest.
+    private static class DigestChannel extends OutputStream implements WritableByteChannel {
+        private MessageDigest digest;
+
+        DigestChannel(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        public void write(int b) {
+            digest.update((byte) b);
+        }
+
+        public void write(byte[] b, int offset, int length) {
+            digest.update(b, offset, length);
+        }
+
+        public int write(ByteBuffer buffer) {
+            int length = buffer.remaining();
+            digest.update(buffer);
+            return length;
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+    }
+
+    // Copies output to the original stream and keeps it, up to a limit beyond which the run is not stored.
+    private class CaptureOutputStream extends OutputStream {
+        private OutputStream original;
+        private ByteArrayOutputStream captured;
+
+        CaptureOutputStream(OutputStream original, ByteArrayOutputStream captured) {
+            this.original = original;
+            this.captured = captured;
+        }
+
+        public void write(int b) throws IOException {
+            original.write(b);
+            keep(1);
+            if (cacheable) {
+                captured.write(b);
+            }
+        }
+
+        public void write(byte[] b, int offset, int length) throws IOException {
+            original.write(b, offset, length);
+            keep(length);
+            if (cacheable) {
+                captured.write(b, offset, length);
+            }
+        }
+
+        public void flush() throws IOException {
+            original.flush();
+        }
+
+        private void keep(int length) {
+            if (capturedOut.size() + capturedErr.size() + length > CAPTURE_MAXIMUM) {
+                cacheable = false;
+                capturedOut.reset();
+                capturedErr.reset();
+            }
+        }
+    }
+}
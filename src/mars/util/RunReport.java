@@ -0,0 +1,139 @@
+package mars.util;
+
+import mars.Globals;
+import mars.mips.hardware.Memory;
+import mars.simulator.SimulationMetrics;
+import mars.simulator.Simulator;
+import mars.simulator.SimulatorNotice;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+
+/**
+ * A machine-readable report of a command-line run, written as JSON for the "report"
+ * option in place of the fixed-format {@link InstructionStatisticsDump#FILE_NAME}.
+ * It holds the instruction statistics (each category's count and weight, and the
+ * final cycle), the number of instructions executed, why the simulation stopped,
+ * the wall, assembly and simulation times, the memory blocks allocated in each
+ * segment and the number of each syscall service made.
+ * <p>
+ * Memory blocks are never freed during a run, so the blocks allocated at the end
+ * are also the most the run used.
+ */
+public class RunReport implements Observer {
+    private final long startTime = System.nanoTime();
+    private long assemblyTime;
+    private long simulationTime;
+    private long simulationStart;
+    private long instructions;
+    private long runStartCount;
+    private int reason = -1; // stop reason of the last run, or -1 if none ran
+
+    /**
+     * Start a report, timing the run from now and observing the simulator for the
+     * simulation time and stop reason.
+     */
+    public RunReport() {
+        Simulator.getInstance().addObserver(this);
+    }
+
+    public void update(Observable simulator, Object notice) {
+        if (!(notice instanceof SimulatorNotice)) {
+            return;
+        }
+        long count = Simulator.getInstance().getInstructionCount();
+        if (((SimulatorNotice) notice).getAction() == SimulatorNotice.SIMULATOR_START) {
+            simulationStart = System.nanoTime();
+            runStartCount = count;
+        } else {
+            simulationTime += System.nanoTime() - simulationStart;
+            instructions += count - runStartCount;
+            reason = ((SimulatorNotice) notice).getReason();
+        }
+    }
+
+    /**
+     * Add time spent assembling, or loading an assembled image.
+     *
+     * @param nanoseconds the time taken.
+     */
+    public void addAssemblyTime(long nanoseconds) {
+        assemblyTime += nanoseconds;
+    }
+
+    /**
+     * Write the report.  The file is written under a temporary name and then renamed,
+     * so a program waiting for it never reads it half-written.
+     *
+     * @param file          file to write.
+     * @param statistics    instruction statistics of the run.
+     * @param limitExceeded description of the resource limit exceeded, or null.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(File file, InstructionStatisticsHelper statistics, String limitExceeded) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporary = File.createTempFile("report", ".tmp", directory);
+        try {
+            PrintStream out = new PrintStream(new FileOutputStream(temporary), false, "UTF-8");
+            try {
+                write(new JsonWriter(out), statistics, limitExceeded);
+                if (out.checkError()) {
+                    throw new IOException("write failed");
+                }
+            } finally {
+                out.close();
+            }
+            file.delete(); // renameTo does not replace on all platforms
+            if (!temporary.renameTo(file)) {
+                throw new IOException("cannot rename " + temporary);
+            }
+            temporary = null;
+        } finally {
+            if (temporary != null) {
+                temporary.delete();
+            }
+        }
+    }
+
+    private void write(JsonWriter json, InstructionStatisticsHelper statistics, String limitExceeded) {
+        json.beginObject();
+        json.name("exitReason").value((reason < 0) ? "not run" : Simulator.getReasonName(reason));
+        json.name("exitCode").value(Globals.exitCode);
+        json.name("limitExceeded").value(limitExceeded);
+        json.name("instructions").value(instructions);
+        json.name("finalCycle").value(statistics.getFinalCycle());
+        json.name("categories").beginArray();
+        for (int i = 0; i < InstructionStatisticsHelper.MAX_CATEGORY; i++) {
+            json.beginObject();
+            json.name("name").value(statistics.getCategoryLabel(i));
+            json.name("weight").value(statistics.getInstWeight(i));
+            json.name("count").value(statistics.getCounter(i));
+            json.endObject();
+        }
+        json.endArray();
+        json.name("wallMillis").value((System.nanoTime() - startTime) / 1e6);
+        json.name("assemblyMillis").value(assemblyTime / 1e6);
+        json.name("simulationMillis").value(simulationTime / 1e6);
+        json.name("memoryBlocks").beginObject();
+        int[] blocks = Globals.memory.getAllocatedBlockCounts();
+        for (int i = 0; i < blocks.length; i++) {
+            json.name(Memory.BLOCK_SEGMENT_NAMES[i]).value(blocks[i]);
+        }
+        json.endObject();
+        json.name("syscalls").beginObject();
+        Map syscalls = SimulationMetrics.getInstance().getSyscallCounts();
+        for (Iterator i = syscalls.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) i.next();
+            json.name((String) entry.getKey()).value(((Long) entry.getValue()).longValue());
+        }
+        json.endObject();
+        json.endObject();
+        json.finish();
+    }
+}
@@ -2,8 +2,13 @@ package mars.util;
 
 import mars.Globals;
 import mars.Settings;
+import mars.jfr.FileOperationEvent;
+import mars.simulator.ResourceLimits;
+import mars.simulator.TimeTravel;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 	
 	/*
 Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
@@ -70,6 +75,8 @@ public class SystemIO {
     // Will use one buffered reader for all keyboard/redirected/piped input.
     // Added by DPS 28 Feb 2008.  See getInputReader() below.
     private static BufferedReader inputReader = null;
+    // Raw bytes read from STDIN are logged for TimeTravel as a string of this one-byte-per-char charset.
+    private static final java.nio.charset.Charset CONSOLE_BYTES = java.nio.charset.Charset.forName("ISO-8859-1");
 
     /**
      * Implements syscall to read an integer value.
@@ -80,19 +87,23 @@ public class SystemIO {
      */
 
     public static int readInteger(int serviceNumber) {
-        String input = "0";
-        if (Globals.getGui() == null) {
-            try {
-                input = getInputReader().readLine();
-            } catch (IOException e) {
-            }
-        } else {
-            if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
-                input = Globals.getGui().getMessagesPane().getInputString(
-                        "Enter an integer value (syscall " + serviceNumber + ")");
+        String input = TimeTravel.replayInput(); // when running back, what was read originally
+        if (input == null) {
+            input = "0";
+            if (Globals.getGui() == null) {
+                try {
+                    input = getInputReader().readLine();
+                } catch (IOException e) {
+                }
             } else {
-                input = Globals.getGui().getMessagesPane().getInputString(-1);
+                if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
+                    input = Globals.getGui().getMessagesPane().getInputString(
+                            "Enter an integer value (syscall " + serviceNumber + ")");
+                } else {
+                    input = Globals.getGui().getMessagesPane().getInputString(-1);
+                }
             }
+            TimeTravel.recordInput(input);
         }
 
         // Client is responsible for catching NumberFormatException
@@ -109,19 +120,23 @@ public class SystemIO {
      * Feb 14 2005 Ken Vollmar
      */
     public static float readFloat(int serviceNumber) {
-        String input = "0";
-        if (Globals.getGui() == null) {
-            try {
-                input = getInputReader().readLine();
-            } catch (IOException e) {
-            }
-        } else {
-            if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
-                input = Globals.getGui().getMessagesPane().getInputString(
-                        "Enter a float value (syscall " + serviceNumber + ")");
+        String input = TimeTravel.replayInput(); // when running back, what was read originally
+        if (input == null) {
+            input = "0";
+            if (Globals.getGui() == null) {
+                try {
+                    input = getInputReader().readLine();
+                } catch (IOException e) {
+                }
             } else {
-                input = Globals.getGui().getMessagesPane().getInputString(-1);
+                if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
+                    input = Globals.getGui().getMessagesPane().getInputString(
+                            "Enter a float value (syscall " + serviceNumber + ")");
+                } else {
+                    input = Globals.getGui().getMessagesPane().getInputString(-1);
+                }
             }
+            TimeTravel.recordInput(input);
         }
         return new Float(input.trim()).floatValue();
 
@@ -137,19 +152,23 @@ public class SystemIO {
      * 1 Aug 2005 DPS, based on Ken Vollmar's readFloat
      */
     public static double readDouble(int serviceNumber) {
-        String input = "0";
-        if (Globals.getGui() == null) {
-            try {
-                input = getInputReader().readLine();
-            } catch (IOException e) {
-            }
-        } else {
-            if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
-                input = Globals.getGui().getMessagesPane().getInputString(
-                        "Enter a double value (syscall " + serviceNumber + ")");
+        String input = TimeTravel.replayInput(); // when running back, what was read originally
+        if (input == null) {
+            input = "0";
+            if (Globals.getGui() == null) {
+                try {
+                    input = getInputReader().readLine();
+                } catch (IOException e) {
+                }
             } else {
-                input = Globals.getGui().getMessagesPane().getInputString(-1);
+                if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
+                    input = Globals.getGui().getMessagesPane().getInputString(
+                            "Enter a double value (syscall " + serviceNumber + ")");
+                } else {
+                    input = Globals.getGui().getMessagesPane().getInputString(-1);
+                }
             }
+            TimeTravel.recordInput(input);
         }
         return new Double(input.trim()).doubleValue();
 
@@ -160,7 +179,15 @@ public class SystemIO {
      * Implements syscall having 4 in $v0, to print a string.
      */
     public static void printString(String string) {
+        if (TimeTravel.isReplaying()) {
+            return; // was displayed when originally run
+        }
+        int allowed = ResourceLimits.allowOutput(string.length());
+        if (allowed < string.length()) {
+            string = string.substring(0, allowed); // output limit reached
+        }
         if (Globals.getGui() == null) {
+            ExpectedOutput.printed(string);
             System.out.print(string);
         } else {
             Globals.getGui().getMessagesPane().postRunMessage(string);
@@ -177,23 +204,27 @@ public class SystemIO {
      * @return the entered string, truncated to maximum length if necessary
      */
     public static String readString(int serviceNumber, int maxLength) {
-        String input = "";
-        if (Globals.getGui() == null) {
-            try {
-                input = getInputReader().readLine();
-            } catch (IOException e) {
-            }
-        } else {
-            if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
-                input = Globals.getGui().getMessagesPane().getInputString(
-                        "Enter a string of maximum length " + maxLength
-                                + " (syscall " + serviceNumber + ")");
+        String input = TimeTravel.replayInput(); // when running back, what was read originally
+        if (input == null) {
+            input = "";
+            if (Globals.getGui() == null) {
+                try {
+                    input = getInputReader().readLine();
+                } catch (IOException e) {
+                }
             } else {
-                input = Globals.getGui().getMessagesPane().getInputString(maxLength);
-                if (input.endsWith("\n")) {
-                    input = input.substring(0, input.length() - 1);
+                if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
+                    input = Globals.getGui().getMessagesPane().getInputString(
+                            "Enter a string of maximum length " + maxLength
+                                    + " (syscall " + serviceNumber + ")");
+                } else {
+                    input = Globals.getGui().getMessagesPane().getInputString(maxLength);
+                    if (input.endsWith("\n")) {
+                        input = input.substring(0, input.length() - 1);
+                    }
                 }
             }
+            TimeTravel.recordInput(input);
         }
 
         if (input.length() > maxLength) {
@@ -212,30 +243,34 @@ public class SystemIO {
      * @return int value with lowest byte corresponding to user input
      */
     public static int readChar(int serviceNumber) {
-        String input = "0";
+        String input = TimeTravel.replayInput(); // when running back, what was read originally
         int returnValue = 0;
-        if (Globals.getGui() == null) {
-            try {
-                // 2024/07/31 TS:
-                // When reading a character in console mode, readLine will cause
-                // a different behavior than in GUI mode. In fact, we just need to
-                // read a single character, including whitespaces.
-                // was: input = getInputReader().readLine();
-                int ch = getInputReader().read();
-                if (ch == -1) {
-                    input = ""; // will throw exception below
-                } else {
-                    input = String.valueOf((char) ch);
+        if (input == null) {
+            input = "0";
+            if (Globals.getGui() == null) {
+                try {
+                    // 2024/07/31 TS:
+                    // When reading a character in console mode, readLine will cause
+                    // a different behavior than in GUI mode. In fact, we just need to
+                    // read a single character, including whitespaces.
+                    // was: input = getInputReader().readLine();
+                    int ch = getInputReader().read();
+                    if (ch == -1) {
+                        input = ""; // will throw exception below
+                    } else {
+                        input = String.valueOf((char) ch);
+                    }
+                } catch (IOException e) {
                 }
-            } catch (IOException e) {
-            }
-        } else {
-            if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
-                input = Globals.getGui().getMessagesPane().getInputString(
-                        "Enter a character value (syscall " + serviceNumber + ")");
             } else {
-                input = Globals.getGui().getMessagesPane().getInputString(1);
+                if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
+                    input = Globals.getGui().getMessagesPane().getInputString(
+                            "Enter a character value (syscall " + serviceNumber + ")");
+                } else {
+                    input = Globals.getGui().getMessagesPane().getInputString(1);
+                }
             }
+            TimeTravel.recordInput(input);
         }
         // The whole try-catch is not really necessary in this case since I'm
         // just propagating the runtime exception (the default behavior), but
@@ -262,15 +297,45 @@ public class SystemIO {
      */
 
     public static int writeToFile(int fd, byte[] myBuffer, int lengthRequested) {
+        if (fd == STDOUT || fd == STDERR) {
+            return write(fd, myBuffer, lengthRequested);
+        }
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
+        int written = write(fd, myBuffer, lengthRequested);
+        commitFileEvent(event, FileOperationEvent.WRITE, fd, FileIOData.getFileName(fd), written);
+        return written;
+    }
+
+    private static int write(int fd, byte[] myBuffer, int lengthRequested) {
+        if ((fd == STDOUT || fd == STDERR) && !TimeTravel.isReplaying()) {
+            int allowed = ResourceLimits.allowOutput(lengthRequested);
+            if (allowed < lengthRequested) { // output limit reached
+                myBuffer = Arrays.copyOf(myBuffer, allowed);
+                lengthRequested = allowed;
+            }
+        }
         /////////////// DPS 8-Jan-2013  ////////////////////////////////////////////////////
         /// Write to STDOUT or STDERR file descriptor while using IDE - write to Messages pane.
         if ((fd == STDOUT || fd == STDERR) && Globals.getGui() != null) {
             String data = new String(myBuffer);
-            Globals.getGui().getMessagesPane().postRunMessage(data);
+            if (!TimeTravel.isReplaying()) {
+                Globals.getGui().getMessagesPane().postRunMessage(data);
+            }
             return data.length();
         }
         ///////////////////////////////////////////////////////////////////////////////////
         //// When running in command mode, code below works for either regular file or STDOUT/STDERR
+        if (fd == STDOUT || fd == STDERR) {
+            if (TimeTravel.isReplaying()) {
+                return lengthRequested;
+            }
+            if (fd == STDOUT) {
+                ExpectedOutput.written(myBuffer, Math.min(lengthRequested, myBuffer.length));
+            }
+        } else {
+            TimeTravel.recordFileOperation();
+        }
 
         if (!FileIOData.fdInUse(fd, 1)) // Check the existence of the "write" fd
         {
@@ -309,7 +374,7 @@ public class SystemIO {
 
         return lengthRequested;
 
-    } // end writeToFile
+    } // end write
 
 
     /**
@@ -321,11 +386,26 @@ public class SystemIO {
      * @return number of bytes read, 0 on EOF, or -1 on error
      */
     public static int readFromFile(int fd, byte[] myBuffer, int lengthRequested) {
+        if (fd == STDIN) {
+            return read(fd, myBuffer, lengthRequested);
+        }
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
+        int read = read(fd, myBuffer, lengthRequested);
+        commitFileEvent(event, FileOperationEvent.READ, fd, FileIOData.getFileName(fd), read);
+        return read;
+    }
+
+    private static int read(int fd, byte[] myBuffer, int lengthRequested) {
         int retValue = -1;
         /////////////// DPS 8-Jan-2013  //////////////////////////////////////////////////
         /// Read from STDIN file descriptor while using IDE - get input from Messages pane.
         if (fd == STDIN && Globals.getGui() != null) {
-            String input = Globals.getGui().getMessagesPane().getInputString(lengthRequested);
+            String input = TimeTravel.replayInput();
+            if (input == null) {
+                input = Globals.getGui().getMessagesPane().getInputString(lengthRequested);
+                TimeTravel.recordInput(input);
+            }
             byte[] bytesRead = input.getBytes();
             ;
             for (int i = 0; i < myBuffer.length; i++) {
@@ -335,6 +415,16 @@ public class SystemIO {
         }
         ////////////////////////////////////////////////////////////////////////////////////
         //// When running in command mode, code below works for either regular file or STDIN
+        if (fd == STDIN) {
+            String input = TimeTravel.replayInput();
+            if (input != null) {
+                byte[] bytesRead = input.getBytes(CONSOLE_BYTES);
+                System.arraycopy(bytesRead, 0, myBuffer, 0, bytesRead.length);
+                return bytesRead.length;
+            }
+        } else {
+            TimeTravel.recordFileOperation();
+        }
 
         if (!FileIOData.fdInUse(fd, 0)) // Check the existence of the "read" fd
         {
@@ -352,6 +442,9 @@ public class SystemIO {
             if (retValue == -1) {
                 retValue = 0;
             }
+            if (fd == STDIN) {
+                TimeTravel.recordInput(new String(myBuffer, 0, retValue, CONSOLE_BYTES));
+            }
         } catch (IOException e) {
             fileErrorString = new String(
                     "IO Exception on read of file with fd " + fd);
@@ -363,7 +456,7 @@ public class SystemIO {
         }
         return retValue;
 
-    } // end readFromFile
+    } // end read
 
 
     /**
@@ -376,6 +469,14 @@ public class SystemIO {
      * @author Ken Vollmar
      */
     public static int openFile(String filename, int flags) {
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
+        int fd = open(filename, flags);
+        commitFileEvent(event, FileOperationEvent.OPEN, fd, filename, 0);
+        return fd;
+    }
+
+    private static int open(String filename, int flags) {
         // Internally, a "file descriptor" is an index into a table
         // of the filename, flag, and the File???putStream associated with
         // that file descriptor.
@@ -386,6 +487,8 @@ public class SystemIO {
         FileOutputStream outputStream;
         int fdToUse;
 
+        TimeTravel.recordFileOperation();
+        ResultCache.uncacheable(); // files are not part of the cached result
         // Check internal plausibility of opening this file
         fdToUse = FileIOData.nowOpening(filename, flags);
         retValue = fdToUse; // return value is the fd
@@ -427,7 +530,25 @@ public class SystemIO {
      * @param fd the file descriptor of an open file
      */
     public static void closeFile(int fd) {
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
+        String filename = FileIOData.getFileName(fd);
+        TimeTravel.recordFileOperation();
         FileIOData.close(fd);
+        commitFileEvent(event, FileOperationEvent.CLOSE, fd, filename, 0);
+    }
+
+    // Fill in and record a flight recorder event for a file operation, if it is being
+    // recorded.  A negative result means the operation failed.
+    private static void commitFileEvent(FileOperationEvent event, String operation, int fd, String filename, int result) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.file = filename;
+            event.descriptor = (result < 0) ? -1 : fd;
+            event.bytes = (result < 0) ? -1 : result;
+            event.commit();
+        }
     }
 
     /**
@@ -437,6 +558,58 @@ public class SystemIO {
         FileIOData.resetFiles();
     }
 
+    /**
+     * Describe the files opened by the MIPS program, for a persistent checkpoint.
+     * STDIN, STDOUT and STDERR are not included.
+     *
+     * @return list of OpenFile, one for each open file descriptor
+     * @throws IOException if the position in an open file cannot be determined
+     */
+    public static ArrayList getOpenFiles() throws IOException {
+        return FileIOData.getOpenFiles();
+    }
+
+    /**
+     * Reset all files, then reopen those described by getOpenFiles() under the same
+     * file descriptors and at the same positions.  Files open for writing are cut
+     * back to their position, dropping anything written after the description was taken.
+     *
+     * @param openFiles list of OpenFile
+     * @throws IOException if a file cannot be reopened
+     */
+    public static void reopenFiles(ArrayList openFiles) throws IOException {
+        FileIOData.resetFiles();
+        for (int i = 0; i < openFiles.size(); i++) {
+            FileIOData.reopen((OpenFile) openFiles.get(i));
+        }
+    }
+
+    /**
+     * A file opened by the MIPS program: its descriptor, opening flags, name and
+     * the position of the next byte read or written.
+     */
+    public static class OpenFile {
+        public final int descriptor;
+        public final int flags;
+        public final String name;
+        public final long position;
+
+        public OpenFile(int descriptor, int flags, String name, long position) {
+            this.descriptor = descriptor;
+            this.flags = flags;
+            this.name = name;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Forget the reader of standard input, so that input syscalls read from
+     * System.in as it is now, after System.setIn() has replaced it.
+     */
+    public static void resetInput() {
+        inputReader = null;
+    }
+
     /**
      * Retrieve file operation or error message
      *
@@ -492,6 +665,11 @@ public class SystemIO {
             System.err.flush();
         }
 
+        // Name of the file open with the given descriptor, or null if none.
+        private static String getFileName(int fd) {
+            return (fd < 0 || fd >= SYSCALL_MAXFILES) ? null : fileNames[fd];
+        }
+
         // Preserve a stream that is in use
         private static void setStreamInUse(int fd, Object s) {
             streams[fd] = s;
@@ -601,6 +779,39 @@ public class SystemIO {
 
         }
 
+        // Describe every file descriptor above STDERR with an open stream.
+        private static ArrayList getOpenFiles() throws IOException {
+            ArrayList openFiles = new ArrayList();
+            for (int i = STDERR + 1; i < SYSCALL_MAXFILES; i++) {
+                if (fileNames[i] != null && streams[i] != null) {
+                    long position = (fileFlags[i] == O_RDONLY)
+                            ? ((FileInputStream) streams[i]).getChannel().position()
+                            : ((FileOutputStream) streams[i]).getChannel().position();
+                    openFiles.add(new OpenFile(i, fileFlags[i], fileNames[i], position));
+                }
+            }
+            return openFiles;
+        }
+
+        // Reopen a file described by getOpenFiles() under its original descriptor.
+        private static void reopen(OpenFile file) throws IOException {
+            if (file.descriptor <= STDERR || file.descriptor >= SYSCALL_MAXFILES) {
+                throw new IOException("invalid file descriptor " + file.descriptor);
+            }
+            if (file.flags == O_RDONLY) {
+                FileInputStream inputStream = new FileInputStream(file.name);
+                inputStream.getChannel().position(file.position);
+                streams[file.descriptor] = inputStream;
+            } else {
+                // Append mode puts every write at the end, which is where truncation leaves it.
+                FileOutputStream outputStream = new FileOutputStream(file.name, true);
+                outputStream.getChannel().truncate(file.position);
+                streams[file.descriptor] = outputStream;
+            }
+            fileNames[file.descriptor] = file.name;
+            fileFlags[file.descriptor] = file.flags;
+        }
+
     } // end private class FileIOData
     ////////////////////////////////////////////////////////////////////////////////
 
@@ -147,6 +147,20 @@ public class Coprocessor0Window extends JPanel implements Observer {
         }
     }
 
+    /**
+     * Update register display from a snapshot taken while the program runs, using
+     * current display base (10 or 16)
+     *
+     * @param snapshot the snapshot
+     */
+    public void updateRegisters(StateSnapshot snapshot) {
+        int base = Globals.getGui().getMainPane().getExecutePane().getValueDisplayBase();
+        registers = Coprocessor0.getRegisters();
+        for (int i = 0; i < registers.length; i++) {
+            this.updateRegisterValue(registers[i].getNumber(), snapshot.getCoprocessor0Register(i), base);
+        }
+    }
+
     /**
      * This method handles the updating of the GUI.
      *
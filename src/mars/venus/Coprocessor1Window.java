@@ -205,6 +205,26 @@ public class Coprocessor1Window extends JPanel implements ActionListener, Observ
         updateConditionFlagDisplay();
     }
 
+    /**
+     * Redisplay registers from a snapshot taken while the program runs, using current
+     * display number base (10 or 16)
+     *
+     * @param snapshot the snapshot
+     */
+    public void updateRegisters(StateSnapshot snapshot) {
+        int base = Globals.getGui().getMainPane().getExecutePane().getValueDisplayBase();
+        for (int i = 0; i < 32; i++) {
+            updateFloatRegisterValue(i, snapshot.getCoprocessor1Register(i), base);
+            if (i % 2 == 0) {
+                long val = Binary.twoIntsToLong(snapshot.getCoprocessor1Register(i + 1), snapshot.getCoprocessor1Register(i));
+                ((RegTableModel) table.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatDoubleNumber(val, base), i, DOUBLE_COLUMN);
+            }
+        }
+        for (int i = 0; i < conditionFlagCheckBox.length; i++) {
+            conditionFlagCheckBox[i].setSelected((snapshot.getConditionFlags() & (1 << i)) != 0);
+        }
+    }
+
     private void updateConditionFlagDisplay() {
         for (int i = 0; i < conditionFlagCheckBox.length; i++) {
             conditionFlagCheckBox[i].setSelected((Coprocessor1.getConditionFlag(i) == 0) ? false : true);
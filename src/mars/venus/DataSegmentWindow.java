@@ -581,6 +581,30 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         updateModelForMemoryRange(this.firstAddress);
     }
 
+    /**
+     * Update data display to show the values in a snapshot taken while the program runs.
+     * Ignored if the snapshot does not hold the range displayed, e.g. because the user
+     * moved to another range after it was taken.
+     *
+     * @param snapshot snapshot of the MEMORY_CHUNK_SIZE bytes starting at firstAddress
+     */
+
+    public void updateValues(StateSnapshot snapshot) {
+        if (tablePanel.getComponentCount() == 0 || snapshot.getFirstAddress() != this.firstAddress
+                || snapshot.getWordCount() < MEMORY_CHUNK_SIZE / BYTES_PER_VALUE) {
+            return;
+        }
+        int valueBase = getValueDisplayFormat();
+        int address = this.firstAddress;
+        DataTableModel dataModel = (DataTableModel) dataTable.getModel();
+        for (int row = 0; row < NUMBER_OF_ROWS; row++) {
+            for (int column = 1; column < NUMBER_OF_COLUMNS; column++) {
+                dataModel.setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(snapshot.getWord(address), valueBase), row, column);
+                address += BYTES_PER_VALUE;
+            }
+        }
+    }
+
     /**
      * Reset range of memory addresses to base address of currently selected segment and update display.
      */
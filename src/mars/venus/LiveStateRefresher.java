@@ -0,0 +1,88 @@
+package mars.venus;
+
+import mars.simulator.*;
+
+import java.awt.event.*;
+import java.util.Observable;
+import java.util.Observer;
+import javax.swing.*;
+
+/**
+ * Keeps the Execute tab alive during a run at unlimited speed.  The windows stop
+ * observing registers and memory at that speed, so that the simulation runs flat out,
+ * and would otherwise show nothing until the program stops.  Instead, a few times a
+ * second, this samples the registers of the register tab in front and the memory
+ * range shown by the data segment window, and shows the program counter and
+ * instructions per second in place of the run speed label.  Values are read through
+ * a {@link StateSnapshot}, so they are consistent without the simulator pausing for
+ * more than the copy.
+ */
+class LiveStateRefresher implements Observer {
+    private static final int REFRESH_MILLISECONDS = 100;
+
+    private VenusUI gui;
+    private Timer timer;
+    private volatile SimulationMetrics.InstructionRate rate; // of the current run, sampled each refresh
+
+    LiveStateRefresher(VenusUI gui) {
+        this.gui = gui;
+        timer = new Timer(REFRESH_MILLISECONDS,
+                new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        refresh();
+                    }
+                });
+        Simulator.getInstance().addObserver(this);
+    }
+
+    /**
+     * Start sampling when a run at unlimited speed starts, and stop when it stops.
+     * Called on the simulation thread; Timer may be started and stopped from any thread.
+     */
+    public void update(Observable simulator, Object obj) {
+        SimulatorNotice notice = (SimulatorNotice) obj;
+        if (notice.getAction() == SimulatorNotice.SIMULATOR_START) {
+            if (notice.getRunSpeed() == RunSpeedPanel.UNLIMITED_SPEED && notice.getMaxSteps() != 1) {
+                rate = new SimulationMetrics.InstructionRate();
+                timer.start();
+            }
+        } else if (timer.isRunning()) {
+            timer.stop();
+            SwingUtilities.invokeLater(
+                    new Runnable() {
+                        public void run() {
+                            RunSpeedPanel.getInstance().setRunStatus(null);
+                        }
+                    });
+        }
+    }
+
+    // Runs on the event thread.
+    private void refresh() {
+        if (!timer.isRunning()) {
+            return; // a tick queued just before the run stopped
+        }
+        SimulationMetrics metrics = SimulationMetrics.getInstance();
+        RunSpeedPanel.getInstance().setRunStatus("Running " + Math.round(rate.sample())
+                + " inst/sec, PC " + metrics.getProgramCounter());
+        ExecutePane executePane = gui.getMainPane().getExecutePane();
+        if (gui.getMainPane().getSelectedComponent() != executePane) {
+            return;
+        }
+        DataSegmentWindow dataSegment = executePane.getDataSegmentWindow();
+        StateSnapshot snapshot = Simulator.getInstance().getSnapshot(dataSegment.firstAddress,
+                DataSegmentWindow.MEMORY_CHUNK_SIZE / DataSegmentWindow.BYTES_PER_VALUE);
+        if (snapshot == null) {
+            return; // the run is slow to reach the next instruction; try again next tick
+        }
+        JComponent registers = (JComponent) gui.getRegistersPane().getSelectedComponent();
+        if (registers == executePane.getRegistersWindow()) {
+            executePane.getRegistersWindow().updateRegisters(snapshot);
+        } else if (registers == executePane.getCoprocessor1Window()) {
+            executePane.getCoprocessor1Window().updateRegisters(snapshot);
+        } else if (registers == executePane.getCoprocessor0Window()) {
+            executePane.getCoprocessor0Window().updateRegisters(snapshot);
+        }
+        dataSegment.updateValues(snapshot);
+    }
+}
@@ -7,6 +7,9 @@ import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.event.DocumentListener;
 import javax.swing.undo.UndoableEdit;
 
@@ -58,8 +61,17 @@ public class MessagesPane extends JTabbedPane {
     // must obviously be smaller than the former.
     public static final int MAXIMUM_SCROLLED_CHARACTERS = Globals.maximumMessageCharacters;
     public static final int NUMBER_OF_CHARACTERS_TO_CUT = Globals.maximumMessageCharacters / 10; // 10%
+    // Output posted to the runtime display is appended at most this often, however
+    // many messages (e.g. one per character printed) are posted in between.
+    private static final int RUN_OUTPUT_FRAME_MILLISECONDS = 40;
     JTextArea assemble, run;
     JPanel assembleTab, runTab;
+    // Messages posted to the runtime display and not yet appended.  Any thread adds to
+    // the queue without locking; the event thread drains it when the timer fires.
+    private final ConcurrentLinkedQueue<String> pendingRunOutput = new ConcurrentLinkedQueue<String>();
+    private final AtomicInteger pendingRunLength = new AtomicInteger();
+    private final AtomicBoolean runOutputScheduled = new AtomicBoolean(false);
+    private final Timer runOutputTimer;
 
     /**
      * Constructor for the class, sets up two fresh tabbed text areas for program feedback.
@@ -173,6 +185,13 @@ public class MessagesPane extends JTabbedPane {
         this.addTab("Run I/O", runTab);
         this.setToolTipTextAt(0, "Messages produced by Run menu. Click on assemble error message to select erroneous line");
         this.setToolTipTextAt(1, "Simulated MIPS console input and output");
+        runOutputTimer = new Timer(RUN_OUTPUT_FRAME_MILLISECONDS,
+                new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        appendPendingRunOutput();
+                    }
+                });
+        runOutputTimer.setRepeats(false);
     }
 
     // Center given button in a box, centered vertically and 6 pixels on left and right
@@ -296,31 +315,57 @@ public class MessagesPane extends JTabbedPane {
      *
      * @param message String to append to runtime display text
      */
-    // The work of this method is done by "invokeLater" because
-    // its JTextArea is maintained by the main event thread
-    // but also used, via this method, by the execution thread for
-    // "print" syscalls. "invokeLater" schedules the code to be
-    // run under the event-processing thread no matter what.
-    // DPS, 23 Aug 2005.
+    // The message is appended by the event thread, which maintains the JTextArea,
+    // but this method is also used by the execution thread for "print" syscalls,
+    // often a character at a time.  So messages are queued, and the queue is
+    // appended in one go by a timer on the event thread, at most once a frame.
+    // A program printing heavily then costs the GUI a few appends per second
+    // instead of one event per call.
     public void postRunMessage(String message) {
-        final String mess = message;
-        SwingUtilities.invokeLater(
-                new Runnable() {
-                    public void run() {
-                        setSelectedComponent(runTab);
-                        run.append(mess);
-                        // can do some crude cutting here.  If the document gets "very large",
-                        // let's cut off the oldest text. This will limit scrolling but the limit
-                        // can be set reasonably high.
-                        if (run.getDocument().getLength() > MAXIMUM_SCROLLED_CHARACTERS) {
-                            try {
-                                run.getDocument().remove(0, NUMBER_OF_CHARACTERS_TO_CUT);
-                            } catch (BadLocationException ble) {
-                                // only if NUMBER_OF_CHARACTERS_TO_CUT > MAXIMUM_SCROLLED_CHARACTERS
-                            }
-                        }
-                    }
-                });
+        pendingRunOutput.add(message);
+        if (pendingRunLength.addAndGet(message.length()) > 2 * MAXIMUM_SCROLLED_CHARACTERS) {
+            // More than the display keeps is waiting: drop the oldest, which would be cut anyway.
+            String oldest;
+            while (pendingRunLength.get() > MAXIMUM_SCROLLED_CHARACTERS
+                    && (oldest = pendingRunOutput.poll()) != null) {
+                pendingRunLength.addAndGet(-oldest.length());
+            }
+        }
+        if (runOutputScheduled.compareAndSet(false, true)) {
+            runOutputTimer.start();
+        }
+    }
+
+    // Append all queued runtime messages.  Must be called on the event thread.
+    private void appendPendingRunOutput() {
+        runOutputScheduled.set(false);
+        StringBuffer text = new StringBuffer();
+        String message;
+        while ((message = pendingRunOutput.poll()) != null) {
+            pendingRunLength.addAndGet(-message.length());
+            text.append(message);
+        }
+        if (text.length() == 0) {
+            return;
+        }
+        setSelectedComponent(runTab);
+        if (text.length() > MAXIMUM_SCROLLED_CHARACTERS) {
+            text.delete(0, text.length() - MAXIMUM_SCROLLED_CHARACTERS);
+        }
+        // can do some crude cutting here.  If the document would get "very large",
+        // cut off the oldest text first, in whole multiples of NUMBER_OF_CHARACTERS_TO_CUT
+        // so that cuts, which move the rest of the text, stay rare.
+        Document document = run.getDocument();
+        int excess = document.getLength() + text.length() - MAXIMUM_SCROLLED_CHARACTERS;
+        if (excess > 0) {
+            int unit = Math.max(1, NUMBER_OF_CHARACTERS_TO_CUT);
+            try {
+                document.remove(0, Math.min(document.getLength(), (excess + unit - 1) / unit * unit));
+            } catch (BadLocationException ble) {
+                // cannot happen; the length removed is within the document
+            }
+        }
+        run.append(text.toString());
     }
 
     /**
@@ -457,6 +502,7 @@ public class MessagesPane extends JTabbedPane {
         }
 
         public void run() { // must be invoked from the GUI thread
+            appendPendingRunOutput(); // show the prompt before the input
             setSelectedComponent(runTab);
             run.setEditable(true);
             run.requestFocusInWindow();
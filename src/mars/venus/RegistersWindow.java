@@ -160,6 +160,22 @@ public class RegistersWindow extends JPanel implements Observer {
         updateRegisterValue(34, RegisterFile.getValue(34), base);
     }
 
+    /**
+     * update register display from a snapshot taken while the program runs, using
+     * current number base (10 or 16)
+     *
+     * @param snapshot the snapshot
+     */
+    public void updateRegisters(StateSnapshot snapshot) {
+        int base = Globals.getGui().getMainPane().getExecutePane().getValueDisplayBase();
+        for (int i = 0; i < 32; i++) {
+            updateRegisterValue(i, snapshot.getRegister(i), base);
+        }
+        updateRegisterUnsignedValue(32, snapshot.getProgramCounter(), base);
+        updateRegisterValue(33, snapshot.getRegister(33), base);
+        updateRegisterValue(34, snapshot.getRegister(34), base);
+    }
+
     /**
      * This method handles the updating of the GUI.
      *
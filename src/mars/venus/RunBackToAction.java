@@ -0,0 +1,103 @@
+package mars.venus;
+
+import mars.*;
+import mars.simulator.*;
+import mars.mips.hardware.*;
+
+import java.awt.event.*;
+import javax.swing.*;
+
+/**
+ * Action class for the Run -> Run Back To menu item.  Returns the machine to the state
+ * after a given number of instructions, or to just before the latest change of a given
+ * register, by restoring a snapshot and replaying (see {@link TimeTravel}).  Requires
+ * the time travel setting to have been enabled when the program was assembled.
+ */
+public class RunBackToAction extends GuiAction {
+
+    String name;
+    ExecutePane executePane;
+
+    public RunBackToAction(String name, Icon icon, String descrip,
+                           Integer mnemonic, KeyStroke accel, VenusUI gui) {
+        super(name, icon, descrip, mnemonic, accel, gui);
+    }
+
+    /**
+     * ask where to run back to, then go there in the background.
+     */
+    public void actionPerformed(ActionEvent e) {
+        name = this.getValue(Action.NAME).toString();
+        executePane = mainUI.getMainPane().getExecutePane();
+        if (!FileStatus.isAssembled()) {
+            JOptionPane.showMessageDialog(mainUI, "The program must be assembled before it can be run.");
+            return;
+        }
+        final TimeTravel timeTravel = Globals.program.getTimeTravel();
+        if (timeTravel == null) {
+            JOptionPane.showMessageDialog(mainUI, "Time travel is not enabled.  Enable it in the Settings menu, "
+                    + "then assemble the program again.");
+            return;
+        }
+        String answer = JOptionPane.showInputDialog(mainUI,
+                "Run back to instruction number (0 to " + timeTravel.getInstructionCount() + "),\n"
+                        + "or to the latest change of register (e.g. $t0):",
+                name, JOptionPane.QUESTION_MESSAGE);
+        if (answer == null || answer.trim().length() == 0) {
+            return;
+        }
+        long target = -1;
+        Register register = null;
+        try {
+            target = Long.parseLong(answer.trim());
+        } catch (NumberFormatException nfe) {
+            register = TimeTravel.findRegister(answer);
+            if (register == null) {
+                JOptionPane.showMessageDialog(mainUI, "\"" + answer.trim() + "\" is neither an instruction number nor a register name.");
+                return;
+            }
+        }
+        final long instruction = target;
+        final Register watched = register;
+        final long startedAt = timeTravel.getInstructionCount();
+        final int startedStatus = FileStatus.get();
+        mainUI.setStarted(true);
+        mainUI.messagesPane.setSelectedComponent(mainUI.messagesPane.runTab);
+        FileStatus.set(FileStatus.RUNNING);
+        // Replay can take a while, so do it off the event thread.  Stop and Pause interrupt it.
+        new Thread(new Runnable() {
+            public void run() {
+                final boolean arrived = (watched == null)
+                        ? timeTravel.runBackTo(instruction)
+                        : timeTravel.runBackToChange(watched);
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        finished(timeTravel, arrived, startedAt, startedStatus);
+                    }
+                });
+            }
+        }, "MIPS time travel").start();
+    }
+
+    private void finished(TimeTravel timeTravel, boolean arrived, long startedAt, int startedStatus) {
+        executePane.getRegistersWindow().updateRegisters();
+        executePane.getCoprocessor1Window().updateRegisters();
+        executePane.getCoprocessor0Window().updateRegisters();
+        executePane.getDataSegmentWindow().updateValues();
+        executePane.getTextSegmentWindow().setCodeHighlighting(true);
+        executePane.getTextSegmentWindow().highlightStepAtPC();
+        if (arrived) {
+            mainUI.messagesPane.postMarsMessage(
+                    name + ": now at instruction " + timeTravel.getInstructionCount() + "\n\n");
+        } else {
+            mainUI.messagesPane.postMarsMessage(
+                    name + ": " + timeTravel.getMessage() + "; now at instruction " + timeTravel.getInstructionCount() + "\n\n");
+        }
+        if (arrived || timeTravel.getInstructionCount() != startedAt) {
+            FileStatus.set(FileStatus.RUNNABLE);
+            mainUI.setReset(false);
+        } else {
+            FileStatus.set(startedStatus); // nothing changed
+        }
+    }
+}
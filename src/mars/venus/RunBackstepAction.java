@@ -71,6 +71,9 @@ public class RunBackstepAction extends GuiAction {
             Coprocessor0.addRegistersObserver(executePane.getCoprocessor0Window());
             Coprocessor1.addRegistersObserver(executePane.getCoprocessor1Window());
             Globals.program.getBackStepper().backStep();
+            if (Globals.program.getTimeTravel() != null) {
+                Globals.program.getTimeTravel().backStepped();
+            }
             Memory.getInstance().deleteObserver(executePane.getDataSegmentWindow());
             RegisterFile.deleteRegistersObserver(executePane.getRegistersWindow());
             executePane.getRegistersWindow().updateRegisters();
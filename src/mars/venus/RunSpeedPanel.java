@@ -114,6 +114,16 @@ public class RunSpeedPanel extends JPanel {
         return speedTable[runSpeedIndex];
     }
 
+    /**
+     * Show the status of a run in place of the run speed label, or show the run speed
+     * again.  Must be called on the event thread.
+     *
+     * @param status text to show, or null for the run speed.
+     */
+    public void setRunStatus(String status) {
+        sliderLabel.setText((status == null) ? setLabel(runSpeedIndex) : status);
+    }
+
     /*
      * set label wording depending on current speed setting
      */
@@ -0,0 +1,26 @@
+package mars.venus;
+
+import mars.*;
+
+import java.awt.event.*;
+import javax.swing.*;
+
+/**
+ * Action class for the Settings menu item to control whether the simulator takes
+ * periodic machine snapshots, so that execution can be run back to an earlier
+ * instruction (Run -> Run Back To...).  Takes effect at the next assemble.
+ */
+public class SettingsTimeTravelAction extends GuiAction {
+
+
+    public SettingsTimeTravelAction(String name, Icon icon, String descrip,
+                                    Integer mnemonic, KeyStroke accel, VenusUI gui) {
+        super(name, icon, descrip, mnemonic, accel, gui);
+    }
+
+    public void actionPerformed(ActionEvent e) {
+        Globals.getSettings().setBooleanSetting(Settings.TIME_TRAVEL_ENABLED,
+                ((JCheckBoxMenuItem) e.getSource()).isSelected());
+    }
+
+}
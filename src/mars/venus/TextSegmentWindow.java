@@ -61,16 +61,18 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     private JTextField programArgumentsTextField; // DPS 17-July-2008
     private JTable table;
     private JScrollPane tableScroller;
-    private Object[][] data;
     /* Maintain an int array of code addresses in parallel with ADDRESS_COLUMN,
-     * to speed model-row -> text-address mapping.  Maintain a Hashtable of
-     * (text-address, model-row) pairs to speed text-address -> model-row mapping.
+     * to speed model-row -> text-address mapping.  Maintain a sorted array of
+     * (text-address, model-row) pairs, each packed in a long, to speed
+     * text-address -> model-row mapping by binary search.
      * The former is used for breakpoints and changing display base (e.g. base 10
      * to 16); the latter is used for highlighting.  Both structures will remain
      * consistent once set up, since address column is not editable.
+     * Neither holds an object per row, so programs of a million statements cost
+     * a few megabytes here; the table cells are formatted only when displayed.
      */
     private int[] intAddresses;      // index is table model row, value is text address
-    private Hashtable addressRows;   // key is text address, value is table model row
+    private long[] addressRows;      // text address in high word, table model row in low word, sorted
     private Hashtable<Integer, ModifiedCode> executeMods;   // key is table model row, value is original code, basic, source.
     private Container contentPane;
     private TextTableModel tableModel;
@@ -109,47 +111,24 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         codeHighlighting = true;
         breakpointsEnabled = true;
         ArrayList sourceStatementList = Globals.program.getMachineList();
-        data = new Object[sourceStatementList.size()][columnNames.length];
-        intAddresses = new int[data.length];
-        addressRows = new Hashtable(data.length);
-        executeMods = new Hashtable<Integer, ModifiedCode>(data.length);
+        intAddresses = new int[sourceStatementList.size()];
+        addressRows = new long[intAddresses.length];
+        executeMods = new Hashtable<Integer, ModifiedCode>();
         // Get highest source line number to determine #leading spaces so line numbers will vertically align
         // In multi-file situation, this will not necessarily be the last line b/c sourceStatementList contains
         // source lines from all files.  DPS 3-Oct-10
         int maxSourceLineNumber = 0;
-        for (int i = sourceStatementList.size() - 1; i >= 0; i--) {
+        for (int i = 0; i < intAddresses.length; i++) {
             ProgramStatement statement = (ProgramStatement) sourceStatementList.get(i);
+            intAddresses[i] = statement.getAddress();
+            addressRows[i] = ((long) intAddresses[i] << 32) | i;
             if (statement.getSourceLine() > maxSourceLineNumber) {
                 maxSourceLineNumber = statement.getSourceLine();
             }
         }
-        int sourceLineDigits = ("" + maxSourceLineNumber).length();
-        int leadingSpaces = 0;
-        int lastLine = -1;
-        for (int i = 0; i < sourceStatementList.size(); i++) {
-            ProgramStatement statement = (ProgramStatement) sourceStatementList.get(i);
-            intAddresses[i] = statement.getAddress();
-            addressRows.put(new Integer(intAddresses[i]), new Integer(i));
-            data[i][BREAK_COLUMN] = Boolean.FALSE;
-            data[i][ADDRESS_COLUMN] = NumberDisplayBaseChooser.formatUnsignedInteger(statement.getAddress(), addressBase);
-            data[i][CODE_COLUMN] = NumberDisplayBaseChooser.formatNumber(statement.getBinaryStatement(), 16);
-            data[i][BASIC_COLUMN] = statement.getPrintableBasicAssemblyStatement();
-            String sourceString = "";
-            if (!statement.getSource().equals("")) {
-                leadingSpaces = sourceLineDigits - ("" + statement.getSourceLine()).length();
-                String lineNumber = "          ".substring(0, leadingSpaces)
-                        + statement.getSourceLine() + ": ";
-                if (statement.getSourceLine() == lastLine) {
-                    lineNumber = "          ".substring(0, sourceLineDigits) + "  ";
-                }
-                sourceString = lineNumber
-                        + mars.util.EditorFont.substituteSpacesForTabs(statement.getSource());
-            }
-            data[i][SOURCE_COLUMN] = sourceString;
-            lastLine = statement.getSourceLine();
-        }
+        Arrays.sort(addressRows);
         contentPane.removeAll();
-        tableModel = new TextTableModel(data);
+        tableModel = new TextTableModel(sourceStatementList, addressBase, ("" + maxSourceLineNumber).length());
         if (tableModelListener != null) {
             tableModel.addTableModelListener(tableModelListener);
             tableModel.fireTableDataChanged();// initialize listener
@@ -252,13 +231,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         if (contentPane.getComponentCount() == 0) {
             return; // ignore if no content to change
         }
-        int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-        int address;
-        String formattedAddress;
-        for (int i = 0; i < intAddresses.length; i++) {
-            formattedAddress = NumberDisplayBaseChooser.formatUnsignedInteger(intAddresses[i], addressBase);
-            table.getModel().setValueAt(formattedAddress, i, ADDRESS_COLUMN);
-        }
+        tableModel.setAddressBase(Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase());
     }
 
     /**
@@ -269,24 +242,19 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         if (contentPane.getComponentCount() == 0) {
             return; // ignore if no content to change
         }
-        ArrayList sourceStatementList = Globals.program.getMachineList();
-        for (int i = 0; i < sourceStatementList.size(); i++) {
-            // Loop has been extended to cover self-modifying code.  If code at this memory location has been
-            // modified at runtime, construct a ProgramStatement from the current address and binary code
-            // then display its basic code.  DPS 11-July-2013
-            if (executeMods.get(i) == null) { // not modified, so use original logic.
-                ProgramStatement statement = (ProgramStatement) sourceStatementList.get(i);
-                table.getModel().setValueAt(statement.getPrintableBasicAssemblyStatement(), i, BASIC_COLUMN);
-            } else {
-                try {
-                    ProgramStatement statement = new ProgramStatement(
-                            mars.util.Binary.stringToInt((String) table.getModel().getValueAt(i, CODE_COLUMN)),
-                            mars.util.Binary.stringToInt((String) table.getModel().getValueAt(i, ADDRESS_COLUMN))
-                    );
-                    table.getModel().setValueAt(statement.getPrintableBasicAssemblyStatement(), i, BASIC_COLUMN);
-                } catch (NumberFormatException e) { // should never happen but just in case...
-                    table.getModel().setValueAt("", i, BASIC_COLUMN);
-                }
+        // Rows not modified are formatted again when next displayed.
+        tableModel.reformat();
+        // If code at a memory location has been modified at runtime, construct a ProgramStatement from
+        // the current address and binary code then display its basic code.  DPS 11-July-2013
+        for (Enumeration<Integer> rows = executeMods.keys(); rows.hasMoreElements(); ) {
+            int i = rows.nextElement().intValue();
+            try {
+                ProgramStatement statement = new ProgramStatement(
+                        mars.util.Binary.stringToInt((String) tableModel.getValueAt(i, CODE_COLUMN)),
+                        intAddresses[i]);
+                tableModel.setValueAt(statement.getPrintableBasicAssemblyStatement(), i, BASIC_COLUMN);
+            } catch (NumberFormatException e) { // should never happen but just in case...
+                tableModel.setValueAt("", i, BASIC_COLUMN);
             }
         }
     }
@@ -375,8 +343,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
                 // called.  (2) it updates the memory cell which in turn notifies us which invokes
                 // the update() method - the method we're in right now.  All we need to do here is
                 // update the table model then notify the controller/view to update its display.
-                data[row][CODE_COLUMN] = strValue;
-                tableModel.fireTableCellUpdated(row, CODE_COLUMN);
+                tableModel.setCell(strValue, row, CODE_COLUMN);
                 // The other columns do not present a problem since they are not editable by user.
                 tableModel.setValueAt(strBasic, row, BASIC_COLUMN);
                 tableModel.setValueAt(strSource, row, SOURCE_COLUMN);
@@ -425,8 +392,8 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
 
     public int getBreakpointCount() {
         int breakpointCount = 0;
-        for (int i = 0; i < data.length; i++) {
-            if (((Boolean) data[i][BREAK_COLUMN]).booleanValue()) {
+        for (int i = 0; i < intAddresses.length; i++) {
+            if (tableModel.isBreakpoint(i)) {
                 breakpointCount++;
             }
         }
@@ -446,8 +413,8 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         }
         int[] breakpoints = new int[breakpointCount];
         breakpointCount = 0;
-        for (int i = 0; i < data.length; i++) {
-            if (((Boolean) data[i][BREAK_COLUMN]).booleanValue()) {
+        for (int i = 0; i < intAddresses.length; i++) {
+            if (tableModel.isBreakpoint(i)) {
                 breakpoints[breakpointCount++] = intAddresses[i];
             }
         }
@@ -461,7 +428,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
      */
     public void clearAllBreakpoints() {
         for (int i = 0; i < tableModel.getRowCount(); i++) {
-            if (((Boolean) data[i][BREAK_COLUMN]).booleanValue()) {
+            if (tableModel.isBreakpoint(i)) {
                 // must use this method to assure display updated and listener notified
                 tableModel.setValueAt(Boolean.FALSE, i, BREAK_COLUMN);
             }
@@ -567,8 +534,8 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     public void unhighlightAllSteps() {
         boolean saved = this.getCodeHighlighting();
         this.setCodeHighlighting(false);
-        table.tableChanged(new TableModelEvent(tableModel, 0, data.length - 1, BASIC_COLUMN));
-        table.tableChanged(new TableModelEvent(tableModel, 0, data.length - 1, SOURCE_COLUMN));
+        table.tableChanged(new TableModelEvent(tableModel, 0, tableModel.getRowCount() - 1, BASIC_COLUMN));
+        table.tableChanged(new TableModelEvent(tableModel, 0, tableModel.getRowCount() - 1, SOURCE_COLUMN));
         this.setCodeHighlighting(saved);
     }
 
@@ -666,32 +633,57 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
      *  Helper method to find the table row corresponding to the given.
      *  text segment address.  This method is called by
      *  a couple different public methods.  Returns the table row
-     *  corresponding to this address.
+     *  corresponding to this address, found by binary search.
      */
     private int findRowForAddress(int address) throws IllegalArgumentException {
-        int addressRow = 0;
-        try {
-            addressRow = ((Integer) addressRows.get(new Integer(address))).intValue();
-        } catch (NullPointerException e) {
-            throw new IllegalArgumentException(); // address not found in map
-            //return addressRow;// if address not in map, do nothing.
+        int low = 0;
+        int high = addressRows.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleAddress = (int) (addressRows[middle] >> 32);
+            if (middleAddress < address) {
+                low = middle + 1;
+            } else if (middleAddress > address) {
+                high = middle - 1;
+            } else {
+                return (int) addressRows[middle];
+            }
         }
-        return addressRow;
+        throw new IllegalArgumentException(); // address not found
     }
 
 
     /**
-     * Inner class to implement the Table model for this JTable.
+     * Inner class to implement the Table model for this JTable.  Rows are not stored but
+     * formatted from the program statements when the table asks for them, which it does
+     * only for the rows in view.  The most recently formatted rows are cached, and only
+     * cells changed since assembly (self-modifying code, display base of modified code)
+     * are kept for every row.
      */
     class TextTableModel extends AbstractTableModel {
-        Object[][] data;
-
-        public TextTableModel(Object[][] d) {
-            data = d;
+        private static final int CACHED_ROWS = 512; // several screenfuls
+        private ArrayList statements;
+        private boolean[] breakpoints;
+        private int addressBase;
+        private int sourceLineDigits;
+        private Hashtable<Integer, Object[]> changedCells; // key is row, value is the cells set, null if not set
+        private LinkedHashMap<Integer, Object[]> formattedRows;
+
+        public TextTableModel(ArrayList statements, int addressBase, int sourceLineDigits) {
+            this.statements = statements;
+            this.addressBase = addressBase;
+            this.sourceLineDigits = sourceLineDigits;
+            breakpoints = new boolean[statements.size()];
+            changedCells = new Hashtable<Integer, Object[]>();
+            formattedRows = new LinkedHashMap<Integer, Object[]>(CACHED_ROWS * 4 / 3 + 1, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest) {
+                    return size() > CACHED_ROWS;
+                }
+            };
         }
 
         public int getRowCount() {
-            return data.length;
+            return breakpoints.length;
         }
 
         public int getColumnCount() {
@@ -699,7 +691,19 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         }
 
         public Object getValueAt(int row, int col) {
-            return data[row][col];
+            if (col == BREAK_COLUMN) {
+                return Boolean.valueOf(breakpoints[row]);
+            }
+            Object[] changed = changedCells.get(row);
+            if (changed != null && changed[col] != null) {
+                return changed[col];
+            }
+            Object[] formatted = formattedRows.get(row);
+            if (formatted == null) {
+                formatted = formatRow(row);
+                formattedRows.put(row, formatted);
+            }
+            return formatted[col];
         }
 
         public String getColumnName(int col) {
@@ -713,7 +717,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
          * rather than a check box.
          */
         public Class getColumnClass(int c) {
-            return getValueAt(0, c).getClass();
+            return (c == BREAK_COLUMN) ? Boolean.class : String.class;
         }
 
         /*
@@ -737,35 +741,25 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         @Override
         public void setValueAt(Object value, int row, int col) {
             if (col != CODE_COLUMN) {
-                data[row][col] = value;
-                fireTableCellUpdated(row, col);
+                setCell(value, row, col);
                 return;
             }
             // Handle changes in the Code column.
             int val = 0;
-            int address = 0;
-            if (value.equals(data[row][col])) {
+            if (value.equals(getValueAt(row, col))) {
                 return;
             }
             try {
                 val = mars.util.Binary.stringToInt((String) value);
             } catch (NumberFormatException nfe) {
-                data[row][col] = "INVALID";
-                fireTableCellUpdated(row, col);
+                setCell("INVALID", row, col);
                 return;
             }
-            // calculate address from row and column
-            try {
-                address = mars.util.Binary.stringToInt((String) data[row][ADDRESS_COLUMN]);
-            } catch (NumberFormatException nfe) {
-                // can't really happen since memory addresses are completely under
-                // the control of my software.
-            }
             //  Assures that if changed during MIPS program execution, the update will
             //  occur only between MIPS instructions.
             synchronized (Globals.memoryAndRegistersLock) {
                 try {
-                    Globals.memory.setRawWord(address, val);
+                    Globals.memory.setRawWord(intAddresses[row], val);
                 }
                 // somehow, user was able to display out-of-range address.  Most likely to occur between
                 // stack base and Kernel.  
@@ -777,6 +771,66 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
             return;
         }
 
+        /**
+         * Set cell contents in the table model without writing memory, and update the display.
+         */
+        void setCell(Object value, int row, int col) {
+            if (col == BREAK_COLUMN) {
+                breakpoints[row] = ((Boolean) value).booleanValue();
+            } else {
+                Object[] changed = changedCells.get(row);
+                if (changed == null) {
+                    changed = new Object[columnNames.length];
+                    changedCells.put(row, changed);
+                }
+                changed[col] = value;
+            }
+            fireTableCellUpdated(row, col);
+        }
+
+        boolean isBreakpoint(int row) {
+            return breakpoints[row];
+        }
+
+        /**
+         * Display the addresses in a new base.
+         */
+        void setAddressBase(int addressBase) {
+            this.addressBase = addressBase;
+            reformat();
+        }
+
+        /**
+         * Format the rows again when next displayed, after a change of display base.
+         */
+        void reformat() {
+            formattedRows.clear();
+            fireTableRowsUpdated(0, getRowCount() - 1);
+        }
+
+        // Address, code, basic and source of a row as first assembled, indexed by column.
+        private Object[] formatRow(int row) {
+            ProgramStatement statement = (ProgramStatement) statements.get(row);
+            Object[] formatted = new Object[columnNames.length];
+            formatted[ADDRESS_COLUMN] = NumberDisplayBaseChooser.formatUnsignedInteger(statement.getAddress(), addressBase);
+            formatted[CODE_COLUMN] = NumberDisplayBaseChooser.formatNumber(statement.getBinaryStatement(), 16);
+            formatted[BASIC_COLUMN] = statement.getPrintableBasicAssemblyStatement();
+            String sourceString = "";
+            if (!statement.getSource().equals("")) {
+                int leadingSpaces = sourceLineDigits - ("" + statement.getSourceLine()).length();
+                String lineNumber = "          ".substring(0, leadingSpaces)
+                        + statement.getSourceLine() + ": ";
+                // Blank the line number of all but the first statement generated from a source line.
+                if (row > 0 && statement.getSourceLine() == ((ProgramStatement) statements.get(row - 1)).getSourceLine()) {
+                    lineNumber = "          ".substring(0, sourceLineDigits) + "  ";
+                }
+                sourceString = lineNumber
+                        + mars.util.EditorFont.substituteSpacesForTabs(statement.getSource());
+            }
+            formatted[SOURCE_COLUMN] = sourceString;
+            return formatted;
+        }
+
 
         private void printDebugData() {
             int numRows = getRowCount();
@@ -785,7 +839,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
             for (int i = 0; i < numRows; i++) {
                 System.out.print("    row " + i + ":");
                 for (int j = 0; j < numCols; j++) {
-                    System.out.print("  " + data[i][j]);
+                    System.out.print("  " + getValueAt(i, j));
                 }
                 System.out.println();
             }
@@ -1057,7 +1111,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
                         JCheckBox check = ((JCheckBox) ((DefaultCellEditor) table.getCellEditor(0, index)).getComponent());
                         breakpointsEnabled = !breakpointsEnabled;
                         check.setEnabled(breakpointsEnabled);
-                        table.tableChanged(new TableModelEvent(tableModel, 0, data.length - 1, BREAK_COLUMN));
+                        table.tableChanged(new TableModelEvent(tableModel, 0, tableModel.getRowCount() - 1, BREAK_COLUMN));
                     }
                 }
 
@@ -73,10 +73,10 @@ public class VenusUI extends JFrame {
     private JMenu file, run, window, help, edit, settings;
     private JMenuItem fileNew, fileOpen, fileClose, fileCloseAll, fileSave, fileSaveAs, fileSaveAll, fileDumpMemory, filePrint, fileExit;
     private JMenuItem editUndo, editRedo, editCut, editCopy, editPaste, editFindReplace, editSelectAll;
-    private JMenuItem runGo, runStep, runBackstep, runReset, runAssemble, runStop, runPause, runClearBreakpoints, runToggleBreakpoints;
+    private JMenuItem runGo, runStep, runBackstep, runBackTo, runReset, runAssemble, runStop, runPause, runClearBreakpoints, runToggleBreakpoints;
     private JCheckBoxMenuItem settingsLabel, settingsPopupInput, settingsValueDisplayBase, settingsAddressDisplayBase,
             settingsExtended, settingsAssembleOnOpen, settingsAssembleAll, settingsWarningsAreErrors, settingsStartAtMain,
-            settingsDelayedBranching, settingsProgramArguments, settingsSelfModifyingCode;
+            settingsDelayedBranching, settingsProgramArguments, settingsSelfModifyingCode, settingsTimeTravel;
     private JMenuItem settingsExceptionHandler, settingsEditor, settingsHighlighting, settingsMemoryConfiguration;
     private JMenuItem helpHelp, helpAbout;
     // components of the toolbar
@@ -91,13 +91,14 @@ public class VenusUI extends JFrame {
     private Action fileNewAction, fileOpenAction, fileCloseAction, fileCloseAllAction, fileSaveAction;
     private Action fileSaveAsAction, fileSaveAllAction, fileDumpMemoryAction, filePrintAction, fileExitAction;
     private Action editCutAction, editCopyAction, editPasteAction, editFindReplaceAction, editSelectAllAction;
-    private Action runAssembleAction, runGoAction, runStepAction, runBackstepAction, runResetAction,
+    private Action runAssembleAction, runGoAction, runStepAction, runBackstepAction, runBackToAction, runResetAction,
             runStopAction, runPauseAction, runClearBreakpointsAction, runToggleBreakpointsAction;
     private Action settingsLabelAction, settingsPopupInputAction, settingsValueDisplayBaseAction, settingsAddressDisplayBaseAction,
             settingsExtendedAction, settingsAssembleOnOpenAction, settingsAssembleAllAction,
             settingsWarningsAreErrorsAction, settingsStartAtMainAction, settingsProgramArgumentsAction,
             settingsDelayedBranchingAction, settingsExceptionHandlerAction, settingsEditorAction,
-            settingsHighlightingAction, settingsMemoryConfigurationAction, settingsSelfModifyingCodeAction;
+            settingsHighlightingAction, settingsMemoryConfigurationAction, settingsSelfModifyingCodeAction,
+            settingsTimeTravelAction;
     private Action helpHelpAction, helpAboutAction;
 
 
@@ -175,6 +176,7 @@ public class VenusUI extends JFrame {
         horizonSplitter = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, splitter, registersPane);
         horizonSplitter.setOneTouchExpandable(true);
         horizonSplitter.resetToPreferredSizes();
+        new LiveStateRefresher(mainUI);
 
         // due to dependencies, do not set up menu/toolbar until now.
         this.createActionObjects();
@@ -435,6 +437,12 @@ public class VenusUI extends JFrame {
                     "Undo the last step", new Integer(KeyEvent.VK_B),
                     KeyStroke.getKeyStroke(KeyEvent.VK_F8, 0),
                     mainUI);
+            runBackToAction = new RunBackToAction("Run Back To...",
+                    null,
+                    "Run back to an earlier instruction, or to the latest change of a register (requires time travel setting)",
+                    new Integer(KeyEvent.VK_K),
+                    null,
+                    mainUI);
             runPauseAction = new RunPauseAction("Pause",
                     new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Pause22.png"))),
                     "Pause the currently running program", new Integer(KeyEvent.VK_P),
@@ -523,6 +531,11 @@ public class VenusUI extends JFrame {
                     "If set, the MIPS program can write and branch to both text and data segments.",
                     null, null,
                     mainUI);
+            settingsTimeTravelAction = new SettingsTimeTravelAction("Time travel (run back to)",
+                    null,
+                    "If set, execution can be run back to an earlier instruction.  Takes effect at next assemble.",
+                    null, null,
+                    mainUI);
             settingsEditorAction = new SettingsEditorAction("Editor...",
                     null,
                     "View and modify text editor settings.",
@@ -644,6 +657,8 @@ public class VenusUI extends JFrame {
         runStep.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "StepForward16.png"))));//"MyStepForward16.gif"))));
         runBackstep = new JMenuItem(runBackstepAction);
         runBackstep.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "StepBack16.png"))));//"MyStepBack16.gif"))));
+        runBackTo = new JMenuItem(runBackToAction);
+        runBackTo.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "MyBlank16.gif"))));
         runReset = new JMenuItem(runResetAction);
         runReset.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Reset16.png"))));//"MyReset16.gif"))));
         runStop = new JMenuItem(runStopAction);
@@ -659,6 +674,7 @@ public class VenusUI extends JFrame {
         run.add(runGo);
         run.add(runStep);
         run.add(runBackstep);
+        run.add(runBackTo);
         run.add(runPause);
         run.add(runStop);
         run.add(runReset);
@@ -684,6 +700,8 @@ public class VenusUI extends JFrame {
         settingsDelayedBranching.setSelected(Globals.getSettings().getDelayedBranchingEnabled());
         settingsSelfModifyingCode = new JCheckBoxMenuItem(settingsSelfModifyingCodeAction);
         settingsSelfModifyingCode.setSelected(Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED));
+        settingsTimeTravel = new JCheckBoxMenuItem(settingsTimeTravelAction);
+        settingsTimeTravel.setSelected(Globals.getSettings().getBooleanSetting(Settings.TIME_TRAVEL_ENABLED));
         settingsAssembleOnOpen = new JCheckBoxMenuItem(settingsAssembleOnOpenAction);
         settingsAssembleOnOpen.setSelected(Globals.getSettings().getAssembleOnOpenEnabled());
         settingsAssembleAll = new JCheckBoxMenuItem(settingsAssembleAllAction);
@@ -713,6 +731,7 @@ public class VenusUI extends JFrame {
         settings.add(settingsExtended);
         settings.add(settingsDelayedBranching);
         settings.add(settingsSelfModifyingCode);
+        settings.add(settingsTimeTravel);
         settings.addSeparator();
         settings.add(settingsEditor);
         settings.add(settingsHighlighting);
@@ -845,6 +864,7 @@ public class VenusUI extends JFrame {
         runGoAction.setEnabled(false);
         runStepAction.setEnabled(false);
         runBackstepAction.setEnabled(false);
+        runBackToAction.setEnabled(false);
         runResetAction.setEnabled(false);
         runStopAction.setEnabled(false);
         runPauseAction.setEnabled(false);
@@ -885,6 +905,7 @@ public class VenusUI extends JFrame {
             runGoAction.setEnabled(false);
             runStepAction.setEnabled(false);
             runBackstepAction.setEnabled(false);
+            runBackToAction.setEnabled(false);
             runResetAction.setEnabled(false);
             runStopAction.setEnabled(false);
             runPauseAction.setEnabled(false);
@@ -920,6 +941,7 @@ public class VenusUI extends JFrame {
         runGoAction.setEnabled(false);
         runStepAction.setEnabled(false);
         runBackstepAction.setEnabled(false);
+        runBackToAction.setEnabled(false);
         runResetAction.setEnabled(false);
         runStopAction.setEnabled(false);
         runPauseAction.setEnabled(false);
@@ -956,6 +978,7 @@ public class VenusUI extends JFrame {
         runGoAction.setEnabled(false);
         runStepAction.setEnabled(false);
         runBackstepAction.setEnabled(false);
+        runBackToAction.setEnabled(false);
         runResetAction.setEnabled(false);
         runStopAction.setEnabled(false);
         runPauseAction.setEnabled(false);
@@ -994,6 +1017,8 @@ public class VenusUI extends JFrame {
         runBackstepAction.setEnabled(
                 (Globals.getSettings().getBackSteppingEnabled() && !Globals.program.getBackStepper().empty())
                         ? true : false);
+        runBackToAction.setEnabled(Globals.program.getTimeTravel() != null
+                && Globals.program.getTimeTravel().getInstructionCount() > 0);
         runResetAction.setEnabled(true);
         runStopAction.setEnabled(false);
         runPauseAction.setEnabled(false);
@@ -1029,6 +1054,7 @@ public class VenusUI extends JFrame {
         runGoAction.setEnabled(false);
         runStepAction.setEnabled(false);
         runBackstepAction.setEnabled(false);
+        runBackToAction.setEnabled(false);
         runResetAction.setEnabled(false);
         runStopAction.setEnabled(true);
         runPauseAction.setEnabled(true);
@@ -1066,6 +1092,8 @@ public class VenusUI extends JFrame {
         runBackstepAction.setEnabled(
                 (Globals.getSettings().getBackSteppingEnabled() && !Globals.program.getBackStepper().empty())
                         ? true : false);
+        runBackToAction.setEnabled(Globals.program.getTimeTravel() != null
+                && Globals.program.getTimeTravel().getInstructionCount() > 0);
         runResetAction.setEnabled(true);
         runStopAction.setEnabled(false);
         runPauseAction.setEnabled(false);